@@ -0,0 +1,19 @@
+package cn.wzz.middleware.db.router.annotation;
+
+/**
+ * 广播执行时各分表结果的合并方式
+ */
+public enum BroadcastMerge {
+    // 拼接各分表返回的集合; 返回单个对象时取第一个非 null 结果
+    CONCAT,
+    // 各分表结果已按 orderBy 字段有序, 多路归并后截取前 limit 条
+    ORDER_BY,
+    // 计数求和
+    COUNT,
+    // 数值求和
+    SUM,
+    // 取最小值
+    MIN,
+    // 取最大值
+    MAX
+}
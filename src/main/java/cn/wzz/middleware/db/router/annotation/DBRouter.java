@@ -1,5 +1,7 @@
 package cn.wzz.middleware.db.router.annotation;
 
+import cn.wzz.middleware.db.router.strategy.IDBRouterStrategy;
+
 import java.lang.annotation.*;
 
 /**
@@ -12,4 +14,29 @@ import java.lang.annotation.*;
 public @interface DBRouter {
     // 分库分表字段
     String key() default "";
+
+    // 路由策略, 默认使用类上 @RouterStrategy 指定的策略, 均未指定时使用全局默认策略
+    Class<? extends IDBRouterStrategy> strategy() default IDBRouterStrategy.class;
+
+    // 广播执行: 不需要路由键, 在全部分库分表上并行执行后合并结果, 用于后台管理、报表等查询
+    // 类上 @RouterStrategy(splitTable = false) 时每个分库只执行一次
+    boolean broadcast() default false;
+
+    // 广播结果合并方式
+    BroadcastMerge merge() default BroadcastMerge.CONCAT;
+
+    // ORDER_BY 合并的排序字段, 要求各分表 SQL 已按该字段排序
+    String orderBy() default "";
+
+    // ORDER_BY 合并是否降序
+    boolean desc() default false;
+
+    // ORDER_BY 合并后保留的条数, 0 表示不限制; 各分表 SQL 需要至少返回 limit 条(不带 offset)
+    int limit() default 0;
+
+    // 广播范围裁剪, 仅用于范围分片策略: 入参对象中区间下界、上界(均含)的字段名,
+    // 两个字段都读取到值时只在区间涉及的分表上执行, 否则在全部分表上执行
+    String rangeFrom() default "";
+
+    String rangeTo() default "";
 }
@@ -5,6 +5,9 @@ import java.lang.annotation.*;
 
 /**
  * 注解在方法上, 支持跨库事务
+ * 默认的串行提交在一个分库提交失败后回滚其余分库; 配置并行提交时其余分库照常提交。
+ * 两种方式都可能部分提交, 此时抛出的 MultiDSTransactionException#isPartiallyCommitted 为 true,
+ * 需要原子提交时使用 XA 模式
  */
 @Documented
 @Retention(RetentionPolicy.RUNTIME)
@@ -0,0 +1,13 @@
+package cn.wzz.middleware.db.router.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 读请求标记: 方法内获取的连接优先使用当前分库的从库
+ * 在 @MultiDSTransaction 跨连接事务中不生效, 事务内的读写都使用主库
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface ReadOnly {
+}
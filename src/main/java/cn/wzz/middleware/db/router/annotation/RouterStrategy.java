@@ -1,5 +1,7 @@
 package cn.wzz.middleware.db.router.annotation;
 
+import cn.wzz.middleware.db.router.strategy.IDBRouterStrategy;
+
 import java.lang.annotation.*;
 
 @Documented
@@ -9,4 +11,7 @@ public @interface RouterStrategy {
     // 是否需要进行分表, 默认需要分表
     // false: 只分库, 不分表; true: 即分库, 也分表
     boolean splitTable() default true;
+
+    // 该类中 @DBRouter 方法使用的路由策略, 默认使用全局默认策略
+    Class<? extends IDBRouterStrategy> strategy() default IDBRouterStrategy.class;
 }
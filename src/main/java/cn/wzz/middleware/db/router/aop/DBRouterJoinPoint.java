@@ -2,21 +2,44 @@ package cn.wzz.middleware.db.router.aop;
 
 import cn.wzz.middleware.db.router.DBRouterConfig;
 import cn.wzz.middleware.db.router.annotation.DBRouter;
-import cn.wzz.middleware.db.router.annotation.RouterKey;
+import cn.wzz.middleware.db.router.annotation.RouterStrategy;
+import cn.wzz.middleware.db.router.broadcast.ShardResultMerger;
+import cn.wzz.middleware.db.router.context.RouteContext;
+import cn.wzz.middleware.db.router.hotspot.HotSpotDetector;
+import cn.wzz.middleware.db.router.metrics.RouterMetrics;
 import cn.wzz.middleware.db.router.strategy.IDBRouterStrategy;
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+import cn.wzz.middleware.db.router.strategy.ShardRouteTable;
+import cn.wzz.middleware.db.router.strategy.impl.DBRouterStrategyRange;
+import cn.wzz.middleware.db.router.util.FieldReader;
 import cn.wzz.middleware.db.router.util.StringUtils;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
 import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 @Aspect
-public class DBRouterJoinPoint {
+public class DBRouterJoinPoint implements BeanFactoryAware {
 
     private DBRouterConfig dbRouterConfig;
 
@@ -24,11 +47,41 @@ public class DBRouterJoinPoint {
 
     private TransactionTemplate transactionTemplate;
 
+    private ListableBeanFactory beanFactory;
+
+    // 广播执行线程池, 为 null 时广播方法在调用线程上逐个分表串行执行
+    private final ExecutorService broadcastExecutor;
+
+    // 路由耗时度量, 默认不记录
+    private RouterMetrics routerMetrics = RouterMetrics.NOOP;
+
+    // 热点探测, 为 null 时不记录
+    private HotSpotDetector hotSpotDetector;
+
+    // 方法 -> 路由元数据
+    private final ConcurrentHashMap<Method, RoutedMethod> methodCache = new ConcurrentHashMap<>();
+
+    // 策略类型 -> 策略实例, 用于 @DBRouter / @RouterStrategy 指定的非默认策略
+    private final ConcurrentHashMap<Class<?>, IDBRouterStrategy> strategyCache = new ConcurrentHashMap<>();
 
     public DBRouterJoinPoint(DBRouterConfig dbRouterConfig, IDBRouterStrategy dbRouterStrategy, TransactionTemplate transactionTemplate) {
+        this(dbRouterConfig, dbRouterStrategy, transactionTemplate, null);
+    }
+
+    public DBRouterJoinPoint(DBRouterConfig dbRouterConfig, IDBRouterStrategy dbRouterStrategy,
+                             TransactionTemplate transactionTemplate, ExecutorService broadcastExecutor) {
         this.dbRouterConfig = dbRouterConfig;
         this.dbRouterStrategy = dbRouterStrategy;
         this.transactionTemplate = transactionTemplate;
+        this.broadcastExecutor = broadcastExecutor;
+    }
+
+    public void setRouterMetrics(RouterMetrics routerMetrics) {
+        this.routerMetrics = routerMetrics;
+    }
+
+    public void setHotSpotDetector(HotSpotDetector hotSpotDetector) {
+        this.hotSpotDetector = hotSpotDetector;
     }
 
     @Pointcut("@annotation(cn.wzz.middleware.db.router.annotation.DBRouter)")
@@ -43,78 +96,244 @@ public class DBRouterJoinPoint {
      */
     @Around("@annotation(dbRouter)")
     public Object dbRouter(ProceedingJoinPoint joinPoint, DBRouter dbRouter) throws Throwable {
-        // 1. 确定根据哪个字段进行路由
-        String fieldName = dbRouter.key();
-        // 2. 获取路由字段的值
-        Object[] args = joinPoint.getArgs();
-        Object fieldValue = null;
-
-        if(!StringUtils.isEmpty(fieldName)) {
-            for(Object arg: args) {
-                fieldValue = getFieldValue(arg, fieldName);
-                if (fieldValue != null){
-                    break;
-                }
+        // 1. 获取方法对应的路由元数据, 路由字段、@RouterKey 入参与路由策略只在首次调用时解析
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        RoutedMethod routedMethod = methodCache.get(method);
+        if (routedMethod == null) {
+            routedMethod = createRoutedMethod(method, dbRouter);
+            RoutedMethod prev = methodCache.putIfAbsent(method, routedMethod);
+            if (prev != null) {
+                routedMethod = prev;
             }
         }
 
-        if (fieldValue == null){
-            // 获取方法入参的注解, 解析是否存在@RouterKey标记的入参, 获取入参值作为路由键
-            MethodSignature signature = (MethodSignature)joinPoint.getSignature();
-            Annotation[][] parameterAnnotations = signature.getMethod().getParameterAnnotations();
-            for(int i = 0; i < args.length; i++) {
-                if (fieldValue != null) break;
-                Annotation[] annotations = parameterAnnotations[i];
-                for (Annotation annotation: annotations) {
-                    if(annotation instanceof RouterKey) {
-                        fieldValue = args[i];
-                        break;
-                    }
-                }
+        RouteContext ctx = RouteContext.current();
+        ctx.enterScope();
+        try {
+            if (routedMethod.isBroadcast()) {
+                return broadcast(joinPoint, routedMethod);
             }
+
+            // 2. 获取路由字段的值
+            boolean timed = routerMetrics.isEnabled();
+            long start = timed ? System.nanoTime() : 0;
+            Object fieldValue = routedMethod.getExtractor().extract(joinPoint.getArgs());
             if (fieldValue == null){
-                throw new RuntimeException(String.format("sharding field %s can't be found in args", fieldName));
+                throw new RuntimeException(String.format("sharding field %s can't be found in args", dbRouter.key()));
+            }
+
+            // 3. 通过路由字段计算 dbIdx 和 tbIdx
+            IDBRouterStrategy strategy = routedMethod.getStrategy();
+            String routingKey = String.valueOf(fieldValue);
+            strategy.dbRouter(routingKey);
+            if (timed) {
+                routerMetrics.recordRoute(System.nanoTime() - start);
+            }
+            if (hotSpotDetector != null) {
+                hotSpotDetector.record(routingKey, ctx.getRoute());
+            }
+
+            try {
+                return joinPoint.proceed();
+            }  finally {
+                // 清除线程上下文中的路由结果
+                strategy.clear();
+            }
+        } finally {
+            // 最外层路由作用域退出时清空线程上下文
+            ctx.exitScope();
+        }
+    }
+
+    /**
+     * 广播执行: 在每个分库分表上各执行一次目标方法, 再按 @DBRouter#merge 合并结果
+     * 范围分片策略配置了 rangeFrom / rangeTo 时, 只在区间涉及的分表上执行
+     * 跨连接事务或 Spring 事务中串行执行, 保证所有语句使用当前线程上的事务连接
+     */
+    private Object broadcast(ProceedingJoinPoint joinPoint, RoutedMethod routedMethod) throws Throwable {
+        List<ShardRoute> routes = broadcastRoutes(routedMethod, joinPoint.getArgs());
+        List<Object> results = new ArrayList<>(routes.size());
+        RouteContext ctx = RouteContext.current();
+
+        if (broadcastExecutor == null || routes.size() == 1 || ctx.isTxOpen()
+                || TransactionSynchronizationManager.isActualTransactionActive()) {
+            ShardRoute prev = ctx.getRoute();
+            try {
+                for (ShardRoute route : routes) {
+                    ctx.setRoute(route);
+                    results.add(joinPoint.proceed());
+                }
+            } finally {
+                ctx.setRoute(prev);
+            }
+            return routedMethod.getMerger().merge(results);
+        }
+
+        // Spring AOP 的 proceed() 每次都会克隆方法调用链, 可以在多个线程上并发执行;
+        // 读标记(@ReadOnly)随任务传递到工作线程, 与串行执行时一样使用从库
+        boolean read = ctx.isRead();
+        List<Future<Object>> futures = new ArrayList<>(routes.size());
+        try {
+            for (ShardRoute route : routes) {
+                futures.add(broadcastExecutor.submit(() -> proceedOn(joinPoint, route, read)));
+            }
+            for (Future<Object> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof ShardExecutionException ? cause.getCause() : cause;
+        } finally {
+            // 任一分表失败时取消尚未开始的任务, 已经在执行的 SQL 不做中断
+            for (Future<Object> future : futures) {
+                future.cancel(false);
             }
         }
+        return routedMethod.getMerger().merge(results);
+    }
 
-        // 3. 通过路由字段计算 dbIdx 和 tbIdx
-        String routingKey = String.valueOf(fieldValue);
-        dbRouterStrategy.dbRouter(routingKey);
+    private static List<ShardRoute> broadcastRoutes(RoutedMethod routedMethod, Object[] args) throws Throwable {
+        if (routedMethod.getRangeFrom() == null) {
+            return routedMethod.getBroadcastRoutes();
+        }
+        Object from = readField(routedMethod.getRangeFrom(), args);
+        Object to = readField(routedMethod.getRangeTo(), args);
+        if (from == null || to == null) {
+            return routedMethod.getBroadcastRoutes();
+        }
+        DBRouterStrategyRange strategy = (DBRouterStrategyRange) routedMethod.getStrategy();
+        List<ShardRoute> routes = strategy.routes(String.valueOf(from), String.valueOf(to));
+        if (!routedMethod.isDbOnly()) {
+            return routes;
+        }
+        ShardRouteTable routeTable = strategy.getRouteTable();
+        Set<ShardRoute> dbRoutes = new LinkedHashSet<>();
+        for (ShardRoute route : routes) {
+            dbRoutes.add(routeTable.get(route.getDbIdx(), 0));
+        }
+        return new ArrayList<>(dbRoutes);
+    }
+
+    private static Object readField(FieldReader reader, Object[] args) throws Throwable {
+        for (Object arg : args) {
+            if (arg == null) {
+                continue;
+            }
+            Object value = reader.read(arg);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
 
+    private static Object proceedOn(ProceedingJoinPoint joinPoint, ShardRoute route, boolean read) throws ShardExecutionException {
+        // 线程池饱和时任务由调用线程执行(CallerRunsPolicy), 因此需要恢复原路由与读标记而不是直接清除
+        RouteContext ctx = RouteContext.current();
+        ShardRoute prev = ctx.getRoute();
+        boolean prevRead = ctx.isRead();
+        ctx.enterScope();
+        ctx.setRoute(route);
+        ctx.setRead(read);
         try {
             return joinPoint.proceed();
-        }  finally {
-            // 释放 ThreadLocalMap 对象
-            dbRouterStrategy.clear();
+        } catch (Throwable e) {
+            throw new ShardExecutionException(e);
+        } finally {
+            ctx.setRoute(prev);
+            ctx.setRead(prevRead);
+            ctx.exitScope();
         }
     }
 
-    private Object getFieldValue(Object item, String fieldName) {
-        boolean find = false;
-        Class<?> clazz = item.getClass();
-        Field field = null;
-        while (!find && clazz != null){
-            try {
-                field = clazz.getDeclaredField(fieldName);
-                find = true;
-            } catch (NoSuchFieldException e) {
-                clazz = clazz.getSuperclass();
+    private RoutedMethod createRoutedMethod(Method method, DBRouter dbRouter) {
+        IDBRouterStrategy strategy = resolveStrategy(method, dbRouter);
+        RouterKeyExtractor extractor = new RouterKeyExtractor(method, dbRouter.key());
+        if (!dbRouter.broadcast()) {
+            return new RoutedMethod(extractor, strategy);
+        }
+
+        // 只分库不分表时, 每个分库只执行一次
+        ShardRouteTable routeTable = strategy.getRouteTable();
+        RouterStrategy routerStrategy = AnnotationUtils.findAnnotation(method.getDeclaringClass(), RouterStrategy.class);
+        boolean dbOnly = routerStrategy != null && !routerStrategy.splitTable();
+        List<ShardRoute> routes;
+        if (dbOnly) {
+            routes = new ArrayList<>(routeTable.getDbCount());
+            for (int dbIdx = 1; dbIdx <= routeTable.getDbCount(); dbIdx++) {
+                routes.add(routeTable.get(dbIdx, 0));
             }
+            routes = Collections.unmodifiableList(routes);
+        } else {
+            routes = routeTable.all();
         }
+        ShardResultMerger merger = new ShardResultMerger(dbRouter.merge(), dbRouter.orderBy(), dbRouter.desc(),
+                dbRouter.limit(), method.getReturnType());
 
-        if (find) {
-            field.setAccessible(true);
-            Object res = null;
-            try {
-                res = field.get(item);
-            } catch (IllegalAccessException e) {
-                return null;
+        FieldReader rangeFrom = null;
+        FieldReader rangeTo = null;
+        if (!StringUtils.isEmpty(dbRouter.rangeFrom()) || !StringUtils.isEmpty(dbRouter.rangeTo())) {
+            if (StringUtils.isEmpty(dbRouter.rangeFrom()) || StringUtils.isEmpty(dbRouter.rangeTo())
+                    || !(strategy instanceof DBRouterStrategyRange)) {
+                throw new IllegalArgumentException(String.format(
+                        "%s: rangeFrom and rangeTo must be set together and require DBRouterStrategyRange", method));
             }
-            field.setAccessible(false);
-            return res;
+            rangeFrom = new FieldReader(dbRouter.rangeFrom());
+            rangeTo = new FieldReader(dbRouter.rangeTo());
+        }
+        return new RoutedMethod(extractor, strategy, routes, merger, rangeFrom, rangeTo, dbOnly);
+    }
+
+    /**
+     * 路由策略优先级: 方法上 @DBRouter#strategy > 类上 @RouterStrategy#strategy > 全局默认策略
+     */
+    private IDBRouterStrategy resolveStrategy(Method method, DBRouter dbRouter) {
+        Class<? extends IDBRouterStrategy> strategyClass = dbRouter.strategy();
+        if (strategyClass == IDBRouterStrategy.class) {
+            RouterStrategy routerStrategy = AnnotationUtils.findAnnotation(method.getDeclaringClass(), RouterStrategy.class);
+            if (routerStrategy != null) {
+                strategyClass = routerStrategy.strategy();
+            }
+        }
+        if (strategyClass == IDBRouterStrategy.class || strategyClass.isInstance(dbRouterStrategy)) {
+            return dbRouterStrategy;
+        }
+
+        IDBRouterStrategy strategy = strategyCache.get(strategyClass);
+        if (strategy == null) {
+            // 优先使用容器中的策略 Bean, 不存在时通过 (DBRouterConfig) 构造器创建
+            strategy = beanFactory == null ? null : beanFactory.getBeanProvider(strategyClass).getIfAvailable();
+            if (strategy == null) {
+                try {
+                    strategy = BeanUtils.instantiateClass(strategyClass.getConstructor(DBRouterConfig.class), dbRouterConfig);
+                } catch (NoSuchMethodException e) {
+                    throw new IllegalStateException(String.format(
+                            "router strategy %s is neither a bean nor has a (DBRouterConfig) constructor", strategyClass.getName()), e);
+                }
+            }
+            IDBRouterStrategy prev = strategyCache.putIfAbsent(strategyClass, strategy);
+            if (prev != null) {
+                strategy = prev;
+            }
+        }
+        return strategy;
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        if (beanFactory instanceof ListableBeanFactory) {
+            this.beanFactory = (ListableBeanFactory) beanFactory;
         }
-        return null;
     }
 
+    // 包装分表执行时抛出的 Throwable, 在调用线程上还原为原始异常
+    private static final class ShardExecutionException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        ShardExecutionException(Throwable cause) {
+            super(cause);
+        }
+    }
 
 }
@@ -1,8 +1,10 @@
 package cn.wzz.middleware.db.router.aop;
 
-import cn.wzz.middleware.db.router.context.ConnectionContext;
-import cn.wzz.middleware.db.router.context.TransactionContext;
-import cn.wzz.middleware.db.router.dynamic.CustomConnection;
+import cn.wzz.middleware.db.router.context.RouteContext;
+import cn.wzz.middleware.db.router.metrics.RouterMetrics;
+import cn.wzz.middleware.db.router.tx.MultiDSTransactionException;
+import cn.wzz.middleware.db.router.tx.MultiDSTxCoordinator;
+import cn.wzz.middleware.db.router.tx.ShardTxOutcome;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
@@ -10,42 +12,121 @@ import org.aspectj.lang.annotation.Pointcut;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.sql.SQLException;
+import java.util.List;
+
 @Aspect
 public class MultiDSTransactionJoinPoint {
 
     private Logger logger = LoggerFactory.getLogger(MultiDSTransactionJoinPoint.class);
 
+    // 提交/回滚阶段, 串行或并行执行
+    private final MultiDSTxCoordinator coordinator;
+
+    // 提交耗时度量, 默认不记录
+    private RouterMetrics routerMetrics = RouterMetrics.NOOP;
+
+    public MultiDSTransactionJoinPoint() {
+        this(new MultiDSTxCoordinator());
+    }
+
+    public MultiDSTransactionJoinPoint(MultiDSTxCoordinator coordinator) {
+        this.coordinator = coordinator;
+    }
+
+    public void setRouterMetrics(RouterMetrics routerMetrics) {
+        this.routerMetrics = routerMetrics;
+    }
+
     @Pointcut("@annotation(cn.wzz.middleware.db.router.annotation.MultiDSTransaction)")
     public void pointcut(){}
 
     @Around("pointcut()")
     public Object multiTxAop(ProceedingJoinPoint jp) throws Throwable {
-        // 打开事务开关
-        TransactionContext.openTx();
-        logger.info("开启跨连接事务!");
+        RouteContext ctx = RouteContext.current();
+        ctx.enterScope();
         try {
+            // 打开事务开关
+            ctx.openTx();
+            coordinator.begin(ctx);
+            logger.info("开启跨连接事务!");
+
             // 执行业务
-            Object result = jp.proceed();
+            Object result;
+            try {
+                result = jp.proceed();
+            } catch (Throwable e) {
+                rollback(ctx, e);
+                throw e;
+            }
 
-            // 提交事务并释放连接并释放连接
-            for(CustomConnection conn: ConnectionContext.getConnectionList()) {
-                conn.commitMultiTx();
-                conn.closeMultiTx();
+            // 只涉及一个数据源时按本地事务直接提交
+            int participants = ctx.getTxConnectionCount();
+            boolean timed = routerMetrics.isEnabled();
+            long start = timed ? System.nanoTime() : 0;
+            if (participants <= 1) {
+                boolean success = false;
+                try {
+                    if (ctx.getFirstTxConnection() != null) {
+                        coordinator.commitSingle(ctx.getFirstTxConnection());
+                    }
+                    success = true;
+                } finally {
+                    if (timed) {
+                        routerMetrics.recordCommit(participants, System.nanoTime() - start, success);
+                    }
+                }
+                logger.info("跨连接事务提交成功!");
+                return result;
             }
-            logger.info("跨连接事务提交成功!");
-            return result;
-        } catch (Throwable e) {
-            // 回滚事务
-            for(CustomConnection conn: ConnectionContext.getConnectionList()) {
-                conn.rollbackMultiTx();
-                conn.closeMultiTx();
+
+            // 提交事务并释放连接, 任一分库失败时抛出异常并带上各分库的结果
+            List<ShardTxOutcome> outcomes = coordinator.commit(ctx.getTxConnections());
+            boolean success = true;
+            for (ShardTxOutcome outcome : outcomes) {
+                success &= !outcome.isFailed();
+            }
+            if (timed) {
+                routerMetrics.recordCommit(participants, System.nanoTime() - start, success);
+            }
+            if (!success) {
+                MultiDSTransactionException e = new MultiDSTransactionException("跨连接事务提交失败!", outcomes);
+                if (e.isPartiallyCommitted()) {
+                    logger.error("跨连接事务部分提交! 已提交的分库: {}, {}", e.getCommittedDsKeys(), outcomes);
+                }
+                throw e;
             }
-            logger.info("跨连接事务回滚成功!");
-            throw e;
+            logger.info("跨连接事务提交成功! {}", outcomes);
+            return result;
         } finally {
-            // 清除事务标记, 情况连接集合
-            ConnectionContext.clear();
-            TransactionContext.closeTx();
+            // 清除事务标记, 清空连接集合; 最外层作用域退出时清空线程上下文
+            ctx.resetTx();
+            ctx.exitScope();
+        }
+    }
+
+    // 回滚事务并释放连接, 回滚失败的原因附加到业务异常上
+    private void rollback(RouteContext ctx, Throwable e) {
+        if (ctx.getTxConnectionCount() <= 1) {
+            if (ctx.getFirstTxConnection() != null) {
+                try {
+                    coordinator.rollbackSingle(ctx.getFirstTxConnection());
+                } catch (SQLException rollbackError) {
+                    logger.error("跨连接事务回滚失败!", rollbackError);
+                    e.addSuppressed(rollbackError);
+                }
+            }
+            logger.info("跨连接事务回滚完成!");
+            return;
+        }
+
+        List<ShardTxOutcome> outcomes = coordinator.rollback(ctx.getTxConnections());
+        for (ShardTxOutcome outcome : outcomes) {
+            if (outcome.isFailed()) {
+                logger.error("跨连接事务回滚失败! {}", outcome, outcome.getError());
+                e.addSuppressed(outcome.getError());
+            }
         }
+        logger.info("跨连接事务回滚完成! {}", outcomes);
     }
 }
@@ -0,0 +1,32 @@
+package cn.wzz.middleware.db.router.aop;
+
+import cn.wzz.middleware.db.router.context.RouteContext;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+
+/**
+ * @ReadOnly 标记的方法或类: 执行期间在线程上下文中设置读请求标记, 结束后恢复原值
+ */
+@Aspect
+public class ReadOnlyJoinPoint {
+
+    @Pointcut("@annotation(cn.wzz.middleware.db.router.annotation.ReadOnly) || @within(cn.wzz.middleware.db.router.annotation.ReadOnly)")
+    public void pointcut() {
+    }
+
+    @Around("pointcut()")
+    public Object readOnly(ProceedingJoinPoint jp) throws Throwable {
+        RouteContext ctx = RouteContext.current();
+        boolean prev = ctx.isRead();
+        ctx.enterScope();
+        ctx.setRead(true);
+        try {
+            return jp.proceed();
+        } finally {
+            ctx.setRead(prev);
+            ctx.exitScope();
+        }
+    }
+}
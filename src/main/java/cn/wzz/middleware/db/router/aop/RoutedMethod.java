@@ -0,0 +1,78 @@
+package cn.wzz.middleware.db.router.aop;
+
+import cn.wzz.middleware.db.router.broadcast.ShardResultMerger;
+import cn.wzz.middleware.db.router.util.FieldReader;
+import cn.wzz.middleware.db.router.strategy.IDBRouterStrategy;
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+
+import java.util.List;
+
+/**
+ * 被 @DBRouter 标记的方法在首次调用时解析出的路由元数据
+ */
+class RoutedMethod {
+
+    private final RouterKeyExtractor extractor;
+
+    private final IDBRouterStrategy strategy;
+
+    // 广播方法需要执行的分库分表, 非广播方法为 null
+    private final List<ShardRoute> broadcastRoutes;
+
+    private final ShardResultMerger merger;
+
+    // 广播范围裁剪的区间下界、上界字段, 未配置时为 null
+    private final FieldReader rangeFrom;
+
+    private final FieldReader rangeTo;
+
+    // 广播时每个分库只执行一次(@RouterStrategy(splitTable = false))
+    private final boolean dbOnly;
+
+    RoutedMethod(RouterKeyExtractor extractor, IDBRouterStrategy strategy) {
+        this(extractor, strategy, null, null, null, null, false);
+    }
+
+    RoutedMethod(RouterKeyExtractor extractor, IDBRouterStrategy strategy, List<ShardRoute> broadcastRoutes,
+                 ShardResultMerger merger, FieldReader rangeFrom, FieldReader rangeTo, boolean dbOnly) {
+        this.extractor = extractor;
+        this.strategy = strategy;
+        this.broadcastRoutes = broadcastRoutes;
+        this.merger = merger;
+        this.rangeFrom = rangeFrom;
+        this.rangeTo = rangeTo;
+        this.dbOnly = dbOnly;
+    }
+
+    RouterKeyExtractor getExtractor() {
+        return extractor;
+    }
+
+    IDBRouterStrategy getStrategy() {
+        return strategy;
+    }
+
+    boolean isBroadcast() {
+        return broadcastRoutes != null;
+    }
+
+    List<ShardRoute> getBroadcastRoutes() {
+        return broadcastRoutes;
+    }
+
+    ShardResultMerger getMerger() {
+        return merger;
+    }
+
+    FieldReader getRangeFrom() {
+        return rangeFrom;
+    }
+
+    FieldReader getRangeTo() {
+        return rangeTo;
+    }
+
+    boolean isDbOnly() {
+        return dbOnly;
+    }
+}
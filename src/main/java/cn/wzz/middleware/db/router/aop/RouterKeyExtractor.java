@@ -0,0 +1,67 @@
+package cn.wzz.middleware.db.router.aop;
+
+import cn.wzz.middleware.db.router.annotation.RouterKey;
+import cn.wzz.middleware.db.router.util.FieldReader;
+import cn.wzz.middleware.db.router.util.StringUtils;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 路由键提取器, 每个被 @DBRouter 标记的方法对应一个实例
+ * 1. 创建时一次性解析 @RouterKey 标记的入参下标
+ * 2. 路由字段通过 FieldReader 读取, 按入参类型缓存 MethodHandle getter; Map 入参不按 key 读取路由字段
+ */
+public class RouterKeyExtractor {
+
+    private final FieldReader fieldReader;
+
+    // @RouterKey 标记的入参下标
+    private final int[] routerKeyIndexes;
+
+    public RouterKeyExtractor(Method method, String fieldName) {
+        this.fieldReader = StringUtils.isEmpty(fieldName) ? null : new FieldReader(fieldName, false);
+
+        List<Integer> indexes = new ArrayList<>();
+        Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+        for (int i = 0; i < parameterAnnotations.length; i++) {
+            for (Annotation annotation : parameterAnnotations[i]) {
+                if (annotation instanceof RouterKey) {
+                    indexes.add(i);
+                    break;
+                }
+            }
+        }
+        this.routerKeyIndexes = new int[indexes.size()];
+        for (int i = 0; i < routerKeyIndexes.length; i++) {
+            routerKeyIndexes[i] = indexes.get(i);
+        }
+    }
+
+    /**
+     * 获取路由键: 优先读取入参对象中的路由字段, 其次使用 @RouterKey 标记的入参值
+     * @return 路由键, 不存在时返回 null
+     */
+    public Object extract(Object[] args) throws Throwable {
+        if (fieldReader != null) {
+            for (Object arg : args) {
+                if (arg == null) {
+                    continue;
+                }
+                Object value = fieldReader.read(arg);
+                if (value != null) {
+                    return value;
+                }
+            }
+        }
+
+        for (int idx : routerKeyIndexes) {
+            if (args[idx] != null) {
+                return args[idx];
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,127 @@
+package cn.wzz.middleware.db.router.batch;
+
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 分片批量执行结果, 按分库分表记录每个分片的执行情况
+ * 1. 不在事务中执行时各分片独立提交, 失败分片整体回滚, 部分分片失败时其余分片的数据已经写入,
+ *    调用方需要根据失败分片自行重试或补偿
+ * 2. 在跨连接事务或 Spring 事务中执行时各分片都不单独提交(committed 为 false), 由外层事务统一提交或回滚,
+ *    失败分片已 flush 的语句仍在外层事务中, 存在失败时调用方应回滚外层事务
+ */
+public class ShardBatchReport {
+
+    private final List<ShardOutcome> outcomes;
+
+    ShardBatchReport(List<ShardOutcome> outcomes) {
+        this.outcomes = Collections.unmodifiableList(outcomes);
+    }
+
+    public List<ShardOutcome> getOutcomes() {
+        return outcomes;
+    }
+
+    public boolean isSuccess() {
+        for (ShardOutcome outcome : outcomes) {
+            if (!outcome.isSuccess()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public List<ShardOutcome> getFailures() {
+        List<ShardOutcome> failures = new ArrayList<>();
+        for (ShardOutcome outcome : outcomes) {
+            if (!outcome.isSuccess()) {
+                failures.add(outcome);
+            }
+        }
+        return failures;
+    }
+
+    public long getAffectedRows() {
+        long affected = 0;
+        for (ShardOutcome outcome : outcomes) {
+            affected += outcome.getAffectedRows();
+        }
+        return affected;
+    }
+
+    @Override
+    public String toString() {
+        return "ShardBatchReport{shards=" + outcomes.size() + ", failures=" + getFailures().size()
+                + ", affectedRows=" + getAffectedRows() + '}';
+    }
+
+    /**
+     * 单个分片的执行结果
+     */
+    public static class ShardOutcome {
+
+        private final ShardRoute route;
+
+        // 分到该分片的记录数
+        private final int rows;
+
+        // 已经 flush 到数据库且未被回滚的记录数: 成功时等于 rows, 独立执行失败回滚后为 0,
+        // 外层事务中失败时为失败前已 flush 的记录数(随外层事务提交或回滚)
+        private final int flushedRows;
+
+        // 与 flushedRows 对应的 JDBC 影响行数, 驱动返回 SUCCESS_NO_INFO 时按 1 行计
+        private final long affectedRows;
+
+        // 是否已由该分片的 session 独立提交, 加入外层事务时始终为 false
+        private final boolean committed;
+
+        private final RuntimeException error;
+
+        ShardOutcome(ShardRoute route, int rows, int flushedRows, long affectedRows, boolean committed,
+                     RuntimeException error) {
+            this.route = route;
+            this.rows = rows;
+            this.flushedRows = flushedRows;
+            this.affectedRows = affectedRows;
+            this.committed = committed;
+            this.error = error;
+        }
+
+        public ShardRoute getRoute() {
+            return route;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public int getFlushedRows() {
+            return flushedRows;
+        }
+
+        public long getAffectedRows() {
+            return affectedRows;
+        }
+
+        public boolean isCommitted() {
+            return committed;
+        }
+
+        public RuntimeException getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        @Override
+        public String toString() {
+            return "ShardOutcome{route=" + route + ", rows=" + rows + ", flushedRows=" + flushedRows
+                    + ", affectedRows=" + affectedRows + ", committed=" + committed + (error == null ? "" : ", error=" + error) + '}';
+        }
+    }
+}
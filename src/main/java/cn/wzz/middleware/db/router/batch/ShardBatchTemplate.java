@@ -0,0 +1,292 @@
+package cn.wzz.middleware.db.router.batch;
+
+import cn.wzz.middleware.db.router.batch.ShardBatchReport.ShardOutcome;
+import cn.wzz.middleware.db.router.context.RouteContext;
+import cn.wzz.middleware.db.router.dynamic.CustomConnection;
+import cn.wzz.middleware.db.router.strategy.IDBRouterStrategy;
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+import cn.wzz.middleware.db.router.strategy.ShardRouteTable;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.ConnectionHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 分片批量写入模板: 替代逐行调用 @DBRouter 方法的批量导入方式
+ * 1. 一次遍历按路由策略把记录分组到 (db, table), 每条记录只计算一次路由
+ * 2. 每个分片打开一个 ExecutorType.BATCH 的 SqlSession, 每 batchSize 条 flush 一次, 最后提交;
+ *    连接处于自动提交时(eg: mybatis-spring 的 SpringManagedTransaction)由模板在连接上显式开启事务,
+ *    保证分片失败时已 flush 的语句可以回滚
+ * 3. 不同分片在线程池上并行执行, 在跨连接事务或 Spring 事务中则在调用线程上串行执行并加入当前事务,
+ *    此时 session 的提交与回滚不生效, 由外层事务统一提交或回滚;
+ *    Spring 事务只绑定开启事务时所在库的一个连接, mybatis-spring 的 session 都使用该连接,
+ *    因此 Spring 事务中只接受全部落在该库的批次, 跨库批次直接拒绝, 避免数据写入错误的库
+ * 4. 单个分片失败不影响其它分片, 失败信息记录在 ShardBatchReport 中
+ */
+public class ShardBatchTemplate {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardBatchTemplate.class);
+
+    private final SqlSessionFactory sqlSessionFactory;
+
+    private final IDBRouterStrategy dbRouterStrategy;
+
+    // 为 null 时各分片串行执行
+    private final ExecutorService executor;
+
+    private final int batchSize;
+
+    public ShardBatchTemplate(SqlSessionFactory sqlSessionFactory, IDBRouterStrategy dbRouterStrategy,
+                              ExecutorService executor, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        this.sqlSessionFactory = sqlSessionFactory;
+        this.dbRouterStrategy = dbRouterStrategy;
+        this.executor = executor;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 使用同一个路由策略、线程池, 但不同 batchSize 的模板
+     */
+    public ShardBatchTemplate withBatchSize(int batchSize) {
+        return new ShardBatchTemplate(sqlSessionFactory, dbRouterStrategy, executor, batchSize);
+    }
+
+    /**
+     * 使用其它路由策略(eg: 范围分片)的模板
+     */
+    public ShardBatchTemplate withStrategy(IDBRouterStrategy dbRouterStrategy) {
+        return new ShardBatchTemplate(sqlSessionFactory, dbRouterStrategy, executor, batchSize);
+    }
+
+    /**
+     * 按 Mapper 语句批量执行 insert/update/delete
+     * @param statement Mapper 语句 id, eg: cn.xxx.dao.IUserDao.insertUser
+     * @param keyExtractor 从记录中读取路由键
+     */
+    public <T> ShardBatchReport execute(String statement, Collection<? extends T> entities, Function<? super T, ?> keyExtractor) {
+        return execute(entities, keyExtractor, (session, entity) -> session.update(statement, entity));
+    }
+
+    /**
+     * @param action 对单条记录执行的写操作, eg: (session, user) -> session.getMapper(IUserDao.class).insertUser(user)
+     */
+    public <T> ShardBatchReport execute(Collection<? extends T> entities, Function<? super T, ?> keyExtractor,
+                                        BiConsumer<SqlSession, ? super T> action) {
+        // 1. 按分片分组, 分组下标即 ShardRoute#slot
+        ShardRouteTable routeTable = dbRouterStrategy.getRouteTable();
+        List<T>[] groups = newGroups(routeTable.size());
+        for (T entity : entities) {
+            Object key = keyExtractor.apply(entity);
+            if (key == null) {
+                throw new IllegalArgumentException("[ShardBatchTemplate] router key is null for entity: " + entity);
+            }
+            int slot = dbRouterStrategy.route(String.valueOf(key)).getSlot();
+            List<T> group = groups[slot];
+            if (group == null) {
+                group = groups[slot] = new ArrayList<>();
+            }
+            group.add(entity);
+        }
+
+        List<ShardRoute> routes = new ArrayList<>();
+        for (int slot = 0; slot < groups.length; slot++) {
+            if (groups[slot] != null) {
+                routes.add(routeTable.get(slot));
+            }
+        }
+
+        // 2. 逐个或并行执行各分片
+        List<ShardOutcome> outcomes = new ArrayList<>(routes.size());
+        RouteContext ctx = RouteContext.current();
+        boolean springTx = TransactionSynchronizationManager.isActualTransactionActive();
+        if (springTx) {
+            checkSpringTxDataSource(routes);
+        }
+        boolean joined = ctx.isTxOpen() || springTx;
+        if (executor == null || routes.size() <= 1 || joined) {
+            for (ShardRoute route : routes) {
+                outcomes.add(executeShard(route, groups[route.getSlot()], action, joined));
+            }
+            return new ShardBatchReport(outcomes);
+        }
+
+        List<Future<ShardOutcome>> futures = new ArrayList<>(routes.size());
+        for (ShardRoute route : routes) {
+            List<T> group = groups[route.getSlot()];
+            futures.add(executor.submit(() -> executeShard(route, group, action, false)));
+        }
+        try {
+            for (Future<ShardOutcome> future : futures) {
+                outcomes.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("[ShardBatchTemplate] interrupted while waiting for shards", e);
+        } catch (ExecutionException e) {
+            // 分片内的 RuntimeException 已记录在 ShardOutcome 中, 这里只会是 Error
+            Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        return new ShardBatchReport(outcomes);
+    }
+
+    /**
+     * @param joined 是否加入了外层事务, 加入时 commit/rollback 不生效, 分片结果标记为未提交
+     */
+    private <T> ShardOutcome executeShard(ShardRoute route, List<T> rows, BiConsumer<SqlSession, ? super T> action,
+                                          boolean joined) {
+        RouteContext ctx = RouteContext.current();
+        ShardRoute prev = ctx.getRoute();
+        ctx.enterScope();
+        ctx.setRoute(route);
+        int flushed = 0;
+        long affected = 0;
+        try (SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+            Connection conn = null;
+            // 连接处于自动提交时由模板开启并结束事务, 结束后恢复自动提交
+            boolean ownTx = false;
+            try {
+                if (!joined) {
+                    // SpringManagedTransaction 等不修改 autoCommit 的事务实现中, 连接保持自动提交,
+                    // flushStatements 会立即提交, session 的提交与回滚也不生效, 因此显式关闭自动提交
+                    conn = session.getConnection();
+                    if (conn.getAutoCommit()) {
+                        conn.setAutoCommit(false);
+                        ownTx = true;
+                    }
+                }
+                int pending = 0;
+                for (T row : rows) {
+                    action.accept(session, row);
+                    if (++pending == batchSize) {
+                        affected += affectedRows(session.flushStatements());
+                        flushed += pending;
+                        pending = 0;
+                    }
+                }
+                affected += affectedRows(session.flushStatements());
+                flushed += pending;
+                session.commit();
+                if (ownTx) {
+                    conn.commit();
+                }
+                return new ShardOutcome(route, rows.size(), flushed, affected, !joined, null);
+            } catch (RuntimeException | SQLException cause) {
+                RuntimeException e = cause instanceof SQLException
+                        ? new PersistenceException("[ShardBatchTemplate] shard " + route + " failed", cause)
+                        : (RuntimeException) cause;
+                logger.error("[ShardBatchTemplate] shard {} failed after {}/{} rows", route, flushed, rows.size(), e);
+                try {
+                    session.rollback();
+                } catch (RuntimeException rollbackError) {
+                    e.addSuppressed(rollbackError);
+                }
+                if (ownTx) {
+                    try {
+                        conn.rollback();
+                    } catch (SQLException rollbackError) {
+                        e.addSuppressed(rollbackError);
+                    }
+                }
+                if (!joined) {
+                    // 已 flush 的语句随回滚一起撤销, 该分片没有写入任何数据
+                    return new ShardOutcome(route, rows.size(), 0, 0, false, e);
+                }
+                // 外层事务中回滚不生效, 已 flush 的语句仍在外层事务中, 由调用方决定回滚外层事务
+                return new ShardOutcome(route, rows.size(), flushed, affected, false, e);
+            } finally {
+                if (ownTx) {
+                    try {
+                        conn.setAutoCommit(true);
+                    } catch (SQLException e) {
+                        logger.warn("[ShardBatchTemplate] restore autoCommit on shard {} failed", route, e);
+                    }
+                }
+            }
+        } finally {
+            ctx.setRoute(prev);
+            ctx.exitScope();
+        }
+    }
+
+    // Spring 事务中所有 session 共用事务绑定的连接, 批次只能写入该连接所在的库
+    private void checkSpringTxDataSource(List<ShardRoute> routes) {
+        if (routes.isEmpty()) {
+            return;
+        }
+        String dsKey = routes.get(0).getDataSourceKey();
+        for (ShardRoute route : routes) {
+            if (!dsKey.equals(route.getDataSourceKey())) {
+                throw new IllegalStateException(String.format("[ShardBatchTemplate] batch spans %s and %s inside a Spring "
+                        + "transaction, which binds a single connection; split the batch per database or run it outside "
+                        + "the transaction", dsKey, route.getDataSourceKey()));
+            }
+        }
+        Object boundKey = boundDataSourceKey();
+        if (boundKey != null && !dsKey.equals(boundKey)) {
+            throw new IllegalStateException(String.format("[ShardBatchTemplate] batch targets %s but the Spring "
+                    + "transaction is bound to %s", dsKey, boundKey));
+        }
+    }
+
+    // Spring 事务绑定的连接所在的库, 无法判断时返回 null
+    private Object boundDataSourceKey() {
+        Environment environment = sqlSessionFactory.getConfiguration().getEnvironment();
+        if (environment == null) {
+            return null;
+        }
+        Object resource = TransactionSynchronizationManager.getResource(environment.getDataSource());
+        if (!(resource instanceof ConnectionHolder)) {
+            return null;
+        }
+        Connection conn = ((ConnectionHolder) resource).getConnection();
+        return conn instanceof CustomConnection ? ((CustomConnection) conn).getDsKey() : null;
+    }
+
+    private static long affectedRows(List<BatchResult> results) {
+        long affected = 0;
+        for (BatchResult result : results) {
+            for (int count : result.getUpdateCounts()) {
+                if (count >= 0) {
+                    affected += count;
+                } else if (count == Statement.SUCCESS_NO_INFO) {
+                    affected++;
+                }
+            }
+        }
+        return affected;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T>[] newGroups(int size) {
+        return (List<T>[]) new List<?>[size];
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+}
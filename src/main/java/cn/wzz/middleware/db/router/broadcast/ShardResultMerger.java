@@ -0,0 +1,215 @@
+package cn.wzz.middleware.db.router.broadcast;
+
+import cn.wzz.middleware.db.router.annotation.BroadcastMerge;
+import cn.wzz.middleware.db.router.util.FieldReader;
+import cn.wzz.middleware.db.router.util.StringUtils;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * 广播执行结果合并器, 每个广播方法对应一个实例
+ * 1. CONCAT: 拼接集合, 单个对象返回第一个非 null 结果
+ * 2. ORDER_BY: 各分表结果已按排序字段有序, 使用小顶堆做 k 路归并, 只取前 limit 条
+ * 3. COUNT / SUM: 数值求和, 按方法返回值类型转换
+ * 4. MIN / MAX: 按 Comparable 比较
+ */
+public class ShardResultMerger {
+
+    private final BroadcastMerge merge;
+
+    private final FieldReader orderBy;
+
+    private final boolean desc;
+
+    private final int limit;
+
+    private final Class<?> returnType;
+
+    public ShardResultMerger(BroadcastMerge merge, String orderBy, boolean desc, int limit, Class<?> returnType) {
+        if (merge == BroadcastMerge.ORDER_BY && StringUtils.isEmpty(orderBy)) {
+            throw new IllegalArgumentException("[ShardResultMerger] ORDER_BY merge requires orderBy field");
+        }
+        if (merge == BroadcastMerge.ORDER_BY && !Collection.class.isAssignableFrom(returnType)) {
+            throw new IllegalArgumentException("[ShardResultMerger] ORDER_BY merge requires a collection return type");
+        }
+        this.merge = merge;
+        this.orderBy = StringUtils.isEmpty(orderBy) ? null : new FieldReader(orderBy, true);
+        this.desc = desc;
+        this.limit = limit;
+        this.returnType = returnType;
+    }
+
+    /**
+     * @param results 各分表的执行结果, 与分表顺序一致
+     */
+    public Object merge(List<Object> results) throws Throwable {
+        switch (merge) {
+            case ORDER_BY:
+                return mergeSorted(results);
+            case COUNT:
+            case SUM:
+                return sum(results);
+            case MIN:
+                return extreme(results, false);
+            case MAX:
+                return extreme(results, true);
+            default:
+                return concat(results);
+        }
+    }
+
+    private Object concat(List<Object> results) {
+        if (!Collection.class.isAssignableFrom(returnType)) {
+            for (Object result : results) {
+                if (result != null) {
+                    return result;
+                }
+            }
+            return null;
+        }
+        Collection<Object> merged = Set.class.isAssignableFrom(returnType) ? new LinkedHashSet<>() : new ArrayList<>();
+        for (Object result : results) {
+            if (result != null) {
+                merged.addAll((Collection<?>) result);
+            }
+        }
+        return merged;
+    }
+
+    private Object mergeSorted(List<Object> results) throws Throwable {
+        PriorityQueue<Cursor> heap = new PriorityQueue<>(Math.max(1, results.size()), (a, b) -> {
+            int cmp = compare(a.key, b.key);
+            return desc ? -cmp : cmp;
+        });
+        int total = 0;
+        for (Object result : results) {
+            if (result == null) {
+                continue;
+            }
+            Collection<?> rows = (Collection<?>) result;
+            total += rows.size();
+            Iterator<?> it = rows.iterator();
+            if (it.hasNext()) {
+                Cursor cursor = new Cursor(it);
+                cursor.advance(orderBy);
+                heap.add(cursor);
+            }
+        }
+
+        int size = limit > 0 ? Math.min(limit, total) : total;
+        Collection<Object> merged = Set.class.isAssignableFrom(returnType) ? new LinkedHashSet<>() : new ArrayList<>(size);
+        while (!heap.isEmpty() && merged.size() < size) {
+            Cursor cursor = heap.poll();
+            merged.add(cursor.head);
+            if (cursor.it.hasNext()) {
+                cursor.advance(orderBy);
+                heap.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    private Object sum(List<Object> results) {
+        BigDecimal sum = BigDecimal.ZERO;
+        boolean integral = true;
+        boolean present = false;
+        for (Object result : results) {
+            if (result == null) {
+                continue;
+            }
+            present = true;
+            Number number = (Number) result;
+            if (number instanceof BigDecimal) {
+                sum = sum.add((BigDecimal) number);
+                integral = false;
+            } else if (number instanceof BigInteger) {
+                sum = sum.add(new BigDecimal((BigInteger) number));
+            } else if (number instanceof Double || number instanceof Float) {
+                sum = sum.add(BigDecimal.valueOf(number.doubleValue()));
+                integral = false;
+            } else {
+                sum = sum.add(BigDecimal.valueOf(number.longValue()));
+            }
+        }
+        if (!present && !returnType.isPrimitive()) {
+            return null;
+        }
+        return convert(sum, integral);
+    }
+
+    private Object convert(BigDecimal sum, boolean integral) {
+        if (returnType == int.class || returnType == Integer.class) {
+            return sum.intValue();
+        }
+        if (returnType == long.class || returnType == Long.class) {
+            return sum.longValue();
+        }
+        if (returnType == short.class || returnType == Short.class) {
+            return sum.shortValue();
+        }
+        if (returnType == double.class || returnType == Double.class) {
+            return sum.doubleValue();
+        }
+        if (returnType == float.class || returnType == Float.class) {
+            return sum.floatValue();
+        }
+        if (returnType == BigInteger.class) {
+            return sum.toBigInteger();
+        }
+        if (returnType == BigDecimal.class) {
+            return sum;
+        }
+        return integral ? (Object) sum.longValue() : sum;
+    }
+
+    private Object extreme(List<Object> results, boolean max) {
+        Object best = null;
+        for (Object result : results) {
+            if (result == null) {
+                continue;
+            }
+            if (best == null || (max ? compare(result, best) > 0 : compare(result, best) < 0)) {
+                best = result;
+            }
+        }
+        return best;
+    }
+
+    // null 视为最小值
+    @SuppressWarnings("unchecked")
+    private static int compare(Object a, Object b) {
+        if (a == b) {
+            return 0;
+        }
+        if (a == null) {
+            return -1;
+        }
+        if (b == null) {
+            return 1;
+        }
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+
+    private static final class Cursor {
+        final Iterator<?> it;
+        Object head;
+        Object key;
+
+        Cursor(Iterator<?> it) {
+            this.it = it;
+        }
+
+        void advance(FieldReader orderBy) throws Throwable {
+            head = it.next();
+            key = head == null ? null : orderBy.read(head);
+        }
+    }
+}
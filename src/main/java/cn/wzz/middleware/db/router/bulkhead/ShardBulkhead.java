@@ -0,0 +1,207 @@
+package cn.wzz.middleware.db.router.bulkhead;
+
+import cn.wzz.middleware.db.router.dynamic.ConnectionListener;
+import cn.wzz.middleware.db.router.dynamic.CustomConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个分库数据源的舱壁, 限制同时借出(含等待连接池)的连接数, 全部状态无锁更新:
+ * 1. 并发许可: inflight 达到 limit 时立即抛出 SQLTransientConnectionException, 不进入连接池排队,
+ *    慢分库只会占住自己的许可, 请求线程不会全部阻塞在该分库的 getConnection 上
+ * 2. AIMD 自适应上限: 连接从申请许可到归还的耗时不超过 latencyThreshold 时加性增长(每个 RTT 约 +1),
+ *    超过阈值或获取连接失败时乘性减小(x0.9), 一个 RTT 内最多减小一次, 避免并发慢请求同时归还时上限骤降
+ * 3. 熔断: 连续 failureThreshold 次获取连接失败后打开, openNanos 内直接拒绝;
+ *    到期后只放行一个探测请求(半开), 探测成功关闭熔断, 失败重新打开
+ */
+public class ShardBulkhead implements ConnectionListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardBulkhead.class);
+
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private static final int CLOSED = 0;
+
+    private static final int OPEN = 1;
+
+    private static final int HALF_OPEN = 2;
+
+    private final String name;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final long latencyThresholdNanos;
+
+    private final int failureThreshold;
+
+    private final long openNanos;
+
+    // 当前上限, double 的 bit 表示, 加性增长需要保留小数部分
+    private final AtomicLong limitBits;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    private final AtomicLong lastBackoffAt = new AtomicLong(System.nanoTime());
+
+    private final AtomicInteger state = new AtomicInteger(CLOSED);
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    private volatile long openUntil;
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder trips = new LongAdder();
+
+    public ShardBulkhead(String name, int initialLimit, int minLimit, int maxLimit,
+                         long latencyThresholdNanos, int failureThreshold, long openNanos) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException(String.format("[ShardBulkhead] %s invalid limit, initial=%d min=%d max=%d",
+                    name, initialLimit, minLimit, maxLimit));
+        }
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("[ShardBulkhead] " + name + " failureThreshold must be positive");
+        }
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = latencyThresholdNanos;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openNanos;
+        this.limitBits = new AtomicLong(Double.doubleToRawLongBits(initialLimit));
+    }
+
+    /**
+     * 申请一个许可, 成功后调用方必须在获取连接后调用 onAcquired 或 onAcquireFailed
+     * @return 申请时间(System.nanoTime), 作为连接占用耗时的起点
+     * @throws SQLTransientConnectionException 熔断打开或并发达到上限
+     */
+    public long acquire() throws SQLTransientConnectionException {
+        boolean probe = false;
+        if (state.get() != CLOSED) {
+            probe = tryProbe();
+            if (!probe) {
+                rejected.increment();
+                throw new SQLTransientConnectionException("[ShardBulkhead] " + name + " circuit open, fail fast");
+            }
+        }
+        int limit = getLimit();
+        int cur;
+        do {
+            cur = inflight.get();
+            if (cur >= limit) {
+                if (probe) {
+                    // 探测请求没拿到许可, 恢复为打开状态, 下一个请求重新探测
+                    state.compareAndSet(HALF_OPEN, OPEN);
+                }
+                rejected.increment();
+                throw new SQLTransientConnectionException(String.format(
+                        "[ShardBulkhead] %s concurrency limit %d reached, fail fast", name, limit));
+            }
+        } while (!inflight.compareAndSet(cur, cur + 1));
+        return System.nanoTime();
+    }
+
+    // 熔断到期后只有一个线程能把状态从 OPEN 切到 HALF_OPEN, 成为探测请求
+    private boolean tryProbe() {
+        return state.get() == OPEN && System.nanoTime() - openUntil >= 0 && state.compareAndSet(OPEN, HALF_OPEN);
+    }
+
+    /**
+     * 获取连接成功, 注册为连接归还监听器, 连接关闭时释放许可
+     */
+    public void onAcquired(CustomConnection connection, long acquiredAt) {
+        if (consecutiveFailures.get() != 0) {
+            consecutiveFailures.set(0);
+        }
+        if (state.get() == HALF_OPEN && state.compareAndSet(HALF_OPEN, CLOSED)) {
+            logger.info("[ShardBulkhead] {} circuit closed", name);
+        }
+        connection.setListener(this, acquiredAt);
+    }
+
+    /**
+     * 获取连接失败(连接池超时、数据库不可达等), 释放许可并减小上限, 连续失败达到阈值时打开熔断
+     */
+    public void onAcquireFailed(long acquiredAt) {
+        inflight.decrementAndGet();
+        long now = System.nanoTime();
+        backoff(now, now - acquiredAt);
+        int failures = consecutiveFailures.incrementAndGet();
+        int s = state.get();
+        if ((s == HALF_OPEN || (s == CLOSED && failures >= failureThreshold)) && state.compareAndSet(s, OPEN)) {
+            openUntil = now + openNanos;
+            trips.increment();
+            logger.warn("[ShardBulkhead] {} circuit open for {}ms after {} consecutive failures, limit={}",
+                    name, openNanos / 1_000_000, failures, getLimit());
+        }
+    }
+
+    @Override
+    public void onClose(CustomConnection connection, long heldNanos) {
+        int cur = inflight.getAndDecrement();
+        if (heldNanos > latencyThresholdNanos) {
+            backoff(System.nanoTime(), heldNanos);
+            return;
+        }
+        // 并发远小于上限时说明上限不是瓶颈, 不增长, 避免空闲期上限无限膨胀
+        long prev = limitBits.get();
+        double limit = Double.longBitsToDouble(prev);
+        if (cur * 2 < limit || limit >= maxLimit) {
+            return;
+        }
+        double next = Math.min(maxLimit, limit + 1.0 / limit);
+        limitBits.compareAndSet(prev, Double.doubleToRawLongBits(next));
+    }
+
+    // 乘性减小, 距上次减小不足一个 RTT(本次样本耗时)时跳过
+    private void backoff(long now, long rttNanos) {
+        long last = lastBackoffAt.get();
+        if (now - last < rttNanos || !lastBackoffAt.compareAndSet(last, now)) {
+            return;
+        }
+        long prev;
+        long next;
+        do {
+            prev = limitBits.get();
+            next = Double.doubleToRawLongBits(Math.max(minLimit, Double.longBitsToDouble(prev) * BACKOFF_RATIO));
+        } while (!limitBits.compareAndSet(prev, next));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLimit() {
+        return (int) Double.longBitsToDouble(limitBits.get());
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    public boolean isOpen() {
+        return state.get() != CLOSED;
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getTripCount() {
+        return trips.sum();
+    }
+
+    @Override
+    public String toString() {
+        return name + "{limit=" + getLimit() + ", inflight=" + inflight.get() + ", open=" + isOpen()
+                + ", rejected=" + rejected.sum() + '}';
+    }
+}
@@ -3,26 +3,86 @@ package cn.wzz.middleware.db.router.config;
 import cn.wzz.middleware.db.router.DBRouterConfig;
 import cn.wzz.middleware.db.router.aop.DBRouterJoinPoint;
 import cn.wzz.middleware.db.router.aop.MultiDSTransactionJoinPoint;
+import cn.wzz.middleware.db.router.aop.ReadOnlyJoinPoint;
+import cn.wzz.middleware.db.router.batch.ShardBatchTemplate;
+import cn.wzz.middleware.db.router.bulkhead.ShardBulkhead;
+import cn.wzz.middleware.db.router.context.RouteContextTaskDecorator;
+import cn.wzz.middleware.db.router.dynamic.DataSourceInitializer;
 import cn.wzz.middleware.db.router.dynamic.DynamicDataSource;
 import cn.wzz.middleware.db.router.dynamic.DynamicMybatisPlugin;
+import cn.wzz.middleware.db.router.dynamic.PreparedStatementCache;
+import cn.wzz.middleware.db.router.dynamic.ReadWriteSplittingPlugin;
+import cn.wzz.middleware.db.router.dynamic.RouterTransactionManager;
+import cn.wzz.middleware.db.router.dynamic.StatementMetricsPlugin;
+import cn.wzz.middleware.db.router.hotspot.HotSpotDetector;
+import cn.wzz.middleware.db.router.hotspot.HotSpotListener;
+import cn.wzz.middleware.db.router.id.GeneIdGenerator;
+import cn.wzz.middleware.db.router.metrics.HistogramRouterMetrics;
+import cn.wzz.middleware.db.router.metrics.MicrometerRouterMetricsBinder;
+import cn.wzz.middleware.db.router.metrics.RouterMetrics;
+import cn.wzz.middleware.db.router.replica.Replica;
+import cn.wzz.middleware.db.router.replica.ReplicaSet;
 import cn.wzz.middleware.db.router.strategy.IDBRouterStrategy;
+import cn.wzz.middleware.db.router.strategy.ShardRouteTable;
+import cn.wzz.middleware.db.router.strategy.hash.HashFunction;
+import cn.wzz.middleware.db.router.strategy.impl.DBRouterStrategyConsistentHash;
+import cn.wzz.middleware.db.router.strategy.impl.DBRouterStrategyDirectory;
+import cn.wzz.middleware.db.router.strategy.impl.DBRouterStrategyGene;
 import cn.wzz.middleware.db.router.strategy.impl.DBRouterStrategyHash;
+import cn.wzz.middleware.db.router.strategy.impl.DBRouterStrategyRange;
+import cn.wzz.middleware.db.router.tx.MultiDSTxCoordinator;
+import cn.wzz.middleware.db.router.tx.XaDialect;
+import cn.wzz.middleware.db.router.tx.XaRecovery;
+import cn.wzz.middleware.db.router.tx.XaTxCoordinator;
+import cn.wzz.middleware.db.router.tx.XaTxLog;
+import cn.wzz.middleware.db.router.util.NamedThreadFactory;
 import cn.wzz.middleware.db.router.util.PropertyUtil;
 import cn.wzz.middleware.db.router.util.StringUtils;
 import org.apache.ibatis.plugin.Interceptor;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.SystemMetaObject;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.AutoConfigureBefore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.context.EnvironmentAware;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Primary;
 import org.springframework.core.env.Environment;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.core.type.AnnotatedTypeMetadata;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 当应用需要以 jar 包的形式提供给其他应用时, 可以考虑把它们封装为一个 Spring Boot Starter.
@@ -33,11 +93,65 @@ import java.util.Map;
  * 以对应的自动配置类为 value, 多个自动配置类之间以 ',' 隔开
  */
 @Configuration
+@AutoConfigureBefore(DataSourceTransactionManagerAutoConfiguration.class)
 public class DataSourceAutoConfig implements EnvironmentAware {
+    private static final Logger logger = LoggerFactory.getLogger(DataSourceAutoConfig.class);
+
     private int dbCount;
 
     private int tbCount;
 
+    // 分表 SQL 改写缓存容量
+    private int sqlCacheSize;
+
+    // 每个物理连接缓存的 PreparedStatement 数, 0 表示不缓存
+    private int statementCacheSize;
+
+    // 默认路由策略: hash(默认) / consistent-hash / range
+    private String routerStrategy;
+
+    // 哈希类路由策略使用的哈希函数: jdk(默认) / murmur3 / xxhash
+    private String hashFunction;
+
+    // 范围分片配置, 包含 type(number/time)、boundaries、zone
+    private Map<String, Object> rangeConfig;
+
+    // 目录路由配置, 包含 file(CSV 文件)、indexDir、reloadIntervalMs
+    private Map<String, Object> directoryConfig;
+
+    // 需要分表的逻辑表名, 为空时只改写 FROM / INTO / UPDATE 直接跟随的表
+    private List<String> shardingTables = new ArrayList<>();
+
+    // 广播执行线程数与等待队列长度
+    private int broadcastThreads;
+
+    private int broadcastQueueSize;
+
+    // 分片批量写入每次 flush 的记录数
+    private int batchSize;
+
+    // 跨连接事务配置, 包含 mode(local/xa)、parallelCommit、commitTimeoutMs、threads,
+    // 以及 XA 模式的 dialect(mysql/h2)、nodeId(必填)、logDir、logFileSize、retryIntervalMs
+    private Map<String, Object> txConfig;
+
+    // 数据源初始化配置, 包含 parallel、lazy、threads、warmUp、warmUpConnections
+    private Map<String, Object> initConfig;
+
+    // 主库舱壁配置, 包含 enabled、initialLimit、minLimit、maxLimit、latencyThresholdMs、failureThreshold、openMs
+    private Map<String, Object> bulkheadConfig;
+
+    // 是否记录路由、获取连接、语句执行与提交的延迟直方图
+    private boolean metricsEnabled;
+
+    // 基因 ID 配置, 包含 workerId、workerBits、blockSize、epoch
+    private Map<String, Object> idConfig;
+
+    // 热点探测配置, 包含 enabled、topK、sampleRate、windowMs、keyThreshold、shardThreshold
+    private Map<String, Object> hotSpotConfig;
+
+    // XA 模式下使用的方言, 本地事务模式为 null
+    private XaDialect xaDialect;
+
     private Map<String, Map<String, Object>> dsConfigMap = new HashMap<>();
 
     // 在自动配置类实例化后, 初始化前, 感知 spring-boot 配置文件 application.yml
@@ -48,6 +162,34 @@ public class DataSourceAutoConfig implements EnvironmentAware {
         Map map = PropertyUtil.handle(env, dataSourcePrefix, Map.class);
         dbCount = (int) map.get("dbCount");
         tbCount = (int) map.get("tbCount");
+        sqlCacheSize = PropertyUtil.getInt(map, "sqlCacheSize", 1024);
+        statementCacheSize = PropertyUtil.getInt(map, "statementCacheSize", 0);
+        routerStrategy = map.get("strategy") == null ? "hash" : map.get("strategy").toString();
+        hashFunction = map.get("hash") == null ? "jdk" : map.get("hash").toString();
+        rangeConfig = (Map<String, Object>) map.get("range");
+        directoryConfig = (Map<String, Object>) map.get("directory");
+
+        Map<String, Object> broadcastConfig = map.get("broadcast") == null ? new HashMap<>() : (Map<String, Object>) map.get("broadcast");
+        broadcastThreads = PropertyUtil.getInt(broadcastConfig, "threads", Math.max(2, Runtime.getRuntime().availableProcessors()));
+        broadcastQueueSize = PropertyUtil.getInt(broadcastConfig, "queueSize", 1024);
+
+        batchSize = PropertyUtil.getInt(map, "batchSize", 500);
+        initConfig = map.get("init") == null ? new HashMap<>() : (Map<String, Object>) map.get("init");
+        bulkheadConfig = map.get("bulkhead") == null ? new HashMap<>() : (Map<String, Object>) map.get("bulkhead");
+        Map<String, Object> metricsConfig = map.get("metrics") == null ? new HashMap<>() : (Map<String, Object>) map.get("metrics");
+        metricsEnabled = Boolean.parseBoolean(String.valueOf(metricsConfig.get("enabled")));
+        idConfig = map.get("id") == null ? new HashMap<>() : (Map<String, Object>) map.get("id");
+        hotSpotConfig = map.get("hotspot") == null ? new HashMap<>() : (Map<String, Object>) map.get("hotspot");
+        txConfig = map.get("tx") == null ? new HashMap<>() : (Map<String, Object>) map.get("tx");
+        if ("xa".equals(txConfig.get("mode"))) {
+            xaDialect = XaDialect.of(txConfig.get("dialect") == null ? "mysql" : txConfig.get("dialect").toString());
+        }
+
+        // 获取分表的逻辑表名列表 eg: user,user_order
+        String tablesStr = (String) map.get("tables");
+        if (!StringUtils.isEmpty(tablesStr)) {
+            shardingTables.addAll(Arrays.asList(tablesStr.split(",")));
+        }
 
         // 获取数据源名称列表 eg: db01,db02
         String dbListStr = (String) map.get("list");
@@ -65,19 +207,120 @@ public class DataSourceAutoConfig implements EnvironmentAware {
 
     @Bean
     public DataSource dataSource() {
-        DynamicDataSource dynamicDataSource = new DynamicDataSource();
-        Map<Object, Object> dsMap = new HashMap<>();
-        try {
-            for(String dsName: dsConfigMap.keySet()){
-                Map<String, Object> dsConfig = dsConfigMap.get(dsName);
-                DataSource ds = createDataSource(dsConfig);
-                dsMap.put(dsName, ds);
+        // 每个分库都必须配置数据源, 否则路由到该库时无法获取连接
+        for (int dbIdx = 1; dbIdx <= dbCount; dbIdx++) {
+            String dsName = String.format("db%02d", dbIdx);
+            if (!dsConfigMap.containsKey(dsName)) {
+                throw new IllegalArgumentException(String.format(
+                        "[dataSource] dbCount is %d but datasource %s is not in router.jdbc.datasource.list", dbCount, dsName));
             }
-            dynamicDataSource.setTargetDataSources(dsMap);
-            return dynamicDataSource;
+        }
+
+        // 1. 收集主库与从库的创建任务, 从库名称为 <dsName>.<replicaName>
+        // 从库: router.jdbc.datasource.<dsName>.replicas.<replicaName>.url ...
+        // 未配置的连接属性(用户名、密码、驱动、连接池等)继承主库配置
+        Map<String, Callable<DataSource>> factories = new LinkedHashMap<>();
+        Map<String, List<String>> replicaNames = new HashMap<>();
+        for (String dsName : dsConfigMap.keySet()) {
+            Map<String, Object> dsConfig = dsConfigMap.get(dsName);
+            factories.put(dsName, () -> createDataSource(dsConfig));
+            if (dsConfig.get("replicas") instanceof Map) {
+                List<String> names = new ArrayList<>();
+                Map<String, Object> replicaConfigs = (Map<String, Object>) dsConfig.get("replicas");
+                for (Map.Entry<String, Object> entry : replicaConfigs.entrySet()) {
+                    Map<String, Object> replicaConfig = new HashMap<>(dsConfig);
+                    replicaConfig.remove("replicas");
+                    replicaConfig.putAll((Map<String, Object>) entry.getValue());
+                    String replicaName = dsName + "." + entry.getKey();
+                    factories.put(replicaName, () -> createDataSource(replicaConfig));
+                    names.add(replicaName);
+                }
+                replicaNames.put(dsName, names);
+            }
+        }
+
+        // 2. 并行创建(或包装为懒加载数据源)
+        Map<String, DataSource> created;
+        try {
+            created = dataSourceInitializer().create(factories);
         } catch (ClassNotFoundException e) {
             throw new IllegalArgumentException(e + " [createDataSource] can not find datasource type-class-name");
+        } catch (Exception e) {
+            throw new IllegalStateException("[dataSource] create datasource failed", e);
+        }
+
+        DynamicDataSource dynamicDataSource = new DynamicDataSource();
+        dynamicDataSource.setXaDialect(xaDialect);
+        dynamicDataSource.setRouterMetrics(routerMetrics());
+        if (statementCacheSize > 0) {
+            dynamicDataSource.setStatementCache(new PreparedStatementCache(statementCacheSize));
+        }
+        Map<Object, Object> dsMap = new HashMap<>();
+        Map<Object, ReplicaSet> replicaSets = new HashMap<>();
+        for (String dsName : dsConfigMap.keySet()) {
+            dsMap.put(dsName, created.get(dsName));
+            if (replicaNames.containsKey(dsName)) {
+                List<Replica> replicas = new ArrayList<>();
+                for (String replicaName : replicaNames.get(dsName)) {
+                    replicas.add(new Replica(replicaName, created.get(replicaName)));
+                }
+                replicaSets.put(dsName, new ReplicaSet(dsName, replicas));
+            }
+        }
+        dynamicDataSource.setTargetDataSources(dsMap);
+        dynamicDataSource.setReplicaSets(replicaSets);
+        dynamicDataSource.setBulkheads(createBulkheads());
+        return dynamicDataSource;
+    }
+
+    // router.jdbc.datasource.bulkhead.enabled=true 时每个主库一个舱壁, 从库由 ReplicaSet 按负载选择并隔离故障从库
+    private Map<Object, ShardBulkhead> createBulkheads() {
+        if (!Boolean.parseBoolean(String.valueOf(bulkheadConfig.get("enabled")))) {
+            return Collections.emptyMap();
         }
+        int maxLimit = PropertyUtil.getInt(bulkheadConfig, "maxLimit", 100);
+        int minLimit = PropertyUtil.getInt(bulkheadConfig, "minLimit", 1);
+        int initialLimit = PropertyUtil.getInt(bulkheadConfig, "initialLimit", Math.min(20, maxLimit));
+        long latencyThreshold = TimeUnit.MILLISECONDS.toNanos(PropertyUtil.getInt(bulkheadConfig, "latencyThresholdMs", 1000));
+        int failureThreshold = PropertyUtil.getInt(bulkheadConfig, "failureThreshold", 5);
+        long open = TimeUnit.MILLISECONDS.toNanos(PropertyUtil.getInt(bulkheadConfig, "openMs", 5000));
+        Map<Object, ShardBulkhead> bulkheads = new HashMap<>();
+        for (String dsName : dsConfigMap.keySet()) {
+            bulkheads.put(dsName, new ShardBulkhead(dsName, initialLimit, minLimit, maxLimit,
+                    latencyThreshold, failureThreshold, open));
+        }
+        return bulkheads;
+    }
+
+    // 数据源初始化: router.jdbc.datasource.init.parallel(默认 true)、lazy(默认 false)、threads
+    @Bean
+    public DataSourceInitializer dataSourceInitializer() {
+        boolean parallel = initConfig.get("parallel") == null || Boolean.parseBoolean(initConfig.get("parallel").toString());
+        int threads = parallel ? PropertyUtil.getInt(initConfig, "threads", Math.max(4, Runtime.getRuntime().availableProcessors())) : 1;
+        return new DataSourceInitializer(threads, Boolean.parseBoolean(String.valueOf(initConfig.get("lazy"))));
+    }
+
+    // 启动预热: router.jdbc.datasource.init.warmUp=true 时, 在全部单例创建完成、应用就绪之前
+    // 并行地为每个主库与从库建立 warmUpConnections 个连接, 并输出各数据源的初始化耗时;
+    // lazy=true 时尚未初始化的数据源不预热, 仍在首次路由时创建
+    @Bean
+    public SmartInitializingSingleton dataSourceWarmUp(DataSource dataSource, DataSourceInitializer dataSourceInitializer) {
+        return () -> {
+            if (Boolean.parseBoolean(String.valueOf(initConfig.get("warmUp")))) {
+                DynamicDataSource dynamicDataSource = (DynamicDataSource) dataSource;
+                Map<String, DataSource> targets = new LinkedHashMap<>();
+                for (Map.Entry<Object, DataSource> entry : dynamicDataSource.getResolvedDataSources().entrySet()) {
+                    targets.put(entry.getKey().toString(), entry.getValue());
+                }
+                for (ReplicaSet replicaSet : dynamicDataSource.getReplicaSets().values()) {
+                    for (Replica replica : replicaSet.getReplicas()) {
+                        targets.put(replica.getName(), replica.getDataSource());
+                    }
+                }
+                dataSourceInitializer.warmUp(targets, PropertyUtil.getInt(initConfig, "warmUpConnections", 1));
+            }
+            logger.info("[dataSource] init timings: {}", dataSourceInitializer.getTimings());
+        };
     }
 
     private DataSource createDataSource(Map<String, Object> dsConfig) throws ClassNotFoundException {
@@ -122,9 +365,8 @@ public class DataSourceAutoConfig implements EnvironmentAware {
     // 注: 一个事务不能跨库, 因为事务中执行的 Statement 是使用同一个连接
     @Bean
     public TransactionTemplate transactionTemplate(DataSource dataSource) {
-        // 事务在 DataSource 获取的连接之上创建
-        DataSourceTransactionManager dataSourceTransactionManager = new DataSourceTransactionManager();
-        dataSourceTransactionManager.setDataSource(dataSource);
+        // 事务在 DataSource 获取的连接之上创建, 事务连接始终来自主库
+        DataSourceTransactionManager dataSourceTransactionManager = new RouterTransactionManager(dataSource);
 
         TransactionTemplate transactionTemplate = new TransactionTemplate(dataSourceTransactionManager);
         // PROPAGATION_REQUIRED: 若已经存在事务, 则加入该事务; 否则, 创建新的事务
@@ -133,23 +375,264 @@ public class DataSourceAutoConfig implements EnvironmentAware {
         return transactionTemplate;
     }
 
+    // @Transactional 使用的事务管理器, 未自定义时替代 Spring Boot 默认的 DataSourceTransactionManager,
+    // 外层 @ReadOnly 设置了读标记时事务连接仍然来自主库
     @Bean
+    @ConditionalOnMissingBean(PlatformTransactionManager.class)
+    public DataSourceTransactionManager transactionManager(DataSource dataSource) {
+        return new RouterTransactionManager(dataSource);
+    }
+
+    // 全局默认路由策略, 其余策略 Bean 通过 @DBRouter#strategy / @RouterStrategy#strategy 按类型引用
+    @Bean
+    @Primary
     public IDBRouterStrategy dbRouterStrategy(DBRouterConfig dbRouterConfig) {
-        return new DBRouterStrategyHash(dbRouterConfig);
+        switch (routerStrategy) {
+            case "hash":
+                return new DBRouterStrategyHash(dbRouterConfig, HashFunction.of(hashFunction));
+            case "consistent-hash":
+                return new DBRouterStrategyConsistentHash(dbRouterConfig, HashFunction.of(hashFunction));
+            case "range":
+                // 未配置边界时 dbRouterStrategyRange 不会注册, 先给出明确的配置错误
+                if (rangeConfig == null || rangeConfig.get("boundaries") == null) {
+                    throw new IllegalArgumentException("[dbRouterStrategy] router.jdbc.datasource.range.boundaries is required");
+                }
+                // 与 @DBRouter(strategy = DBRouterStrategyRange.class) 共用同一个 Bean
+                return dbRouterStrategyRange(dbRouterConfig);
+            case "directory":
+                // 未配置目录文件时 dbRouterStrategyDirectory 不会注册, 先给出明确的配置错误
+                if (directoryConfig == null || directoryConfig.get("file") == null) {
+                    throw new IllegalArgumentException("[dbRouterStrategy] router.jdbc.datasource.directory.file is required");
+                }
+                return dbRouterStrategyDirectory(dbRouterConfig);
+            default:
+                throw new IllegalArgumentException("[dbRouterStrategy] unknown router strategy: " + routerStrategy);
+        }
+    }
+
+    // 配置了 router.jdbc.datasource.range 时注册范围分片策略, 供 @DBRouter(strategy = DBRouterStrategyRange.class) 使用
+    @Bean
+    @Conditional(RangeStrategyCondition.class)
+    public DBRouterStrategyRange dbRouterStrategyRange(DBRouterConfig dbRouterConfig) {
+        DBRouterStrategyRange.KeyType keyType = rangeConfig.get("type") == null ? DBRouterStrategyRange.KeyType.NUMBER
+                : DBRouterStrategyRange.KeyType.valueOf(rangeConfig.get("type").toString().toUpperCase());
+        ZoneId zone = rangeConfig.get("zone") == null ? ZoneId.systemDefault() : ZoneId.of(rangeConfig.get("zone").toString());
+        return new DBRouterStrategyRange(dbRouterConfig, keyType, rangeConfig.get("boundaries").toString(), zone);
     }
 
+    static class RangeStrategyCondition implements Condition {
+        @Override
+        public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+            return context.getEnvironment().containsProperty("router.jdbc.datasource.range.boundaries");
+        }
+    }
+
+    // 配置了 router.jdbc.datasource.directory.file 时注册目录路由策略, 不在目录中的路由键按哈希路由
+    // reloadIntervalMs > 0 时定时检查 CSV 文件, 修改后重新构建目录并原子替换, 旧目录在 retireGraceMs 后解除映射
+    @Bean(destroyMethod = "shutdown")
+    @Conditional(DirectoryStrategyCondition.class)
+    public DBRouterStrategyDirectory dbRouterStrategyDirectory(DBRouterConfig dbRouterConfig) {
+        if (directoryConfig == null || directoryConfig.get("file") == null) {
+            throw new IllegalArgumentException("[dbRouterStrategyDirectory] router.jdbc.datasource.directory.file is required");
+        }
+        File source = new File(directoryConfig.get("file").toString());
+        File indexDir = directoryConfig.get("indexDir") == null ? source.getAbsoluteFile().getParentFile()
+                : new File(directoryConfig.get("indexDir").toString());
+        DBRouterStrategyDirectory strategy = new DBRouterStrategyDirectory(dbRouterConfig,
+                new DBRouterStrategyHash(dbRouterConfig, HashFunction.of(hashFunction)), source, indexDir);
+        strategy.setRetireGraceMillis(PropertyUtil.getInt(directoryConfig, "retireGraceMs", 10_000));
+        strategy.start(PropertyUtil.getInt(directoryConfig, "reloadIntervalMs", 0));
+        return strategy;
+    }
+
+    static class DirectoryStrategyCondition implements Condition {
+        @Override
+        public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+            return context.getEnvironment().containsProperty("router.jdbc.datasource.directory.file");
+        }
+    }
+
+    // 基因路由策略, 供按基因 ID 查询的方法使用: @DBRouter(key = "orderId", strategy = DBRouterStrategyGene.class)
+    // 基因由全局默认策略计算, 非数字路由键同样回退到全局默认策略
+    @Bean
+    public DBRouterStrategyGene dbRouterStrategyGene(IDBRouterStrategy dbRouterStrategy) {
+        return new DBRouterStrategyGene(dbRouterStrategy);
+    }
+
+    // 配置了 router.jdbc.datasource.id.workerId 时注册基因 ID 生成器, 集群内各节点的 workerId 必须不同
+    @Bean
+    @Conditional(GeneIdCondition.class)
+    public GeneIdGenerator geneIdGenerator(IDBRouterStrategy dbRouterStrategy) {
+        return new GeneIdGenerator(dbRouterStrategy,
+                PropertyUtil.getInt(idConfig, "workerId", 0),
+                PropertyUtil.getInt(idConfig, "workerBits", 6),
+                PropertyUtil.getInt(idConfig, "blockSize", 64),
+                idConfig.get("epoch") == null ? GeneIdGenerator.DEFAULT_EPOCH : Long.parseLong(idConfig.get("epoch").toString()));
+    }
+
+    static class GeneIdCondition implements Condition {
+        @Override
+        public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+            return context.getEnvironment().containsProperty("router.jdbc.datasource.id.workerId");
+        }
+    }
+
+    // 广播执行与分片批量写入共用的线程池: 有界队列, 饱和时由调用线程执行, 避免无限堆积任务
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService dbRouterBroadcastExecutor() {
+        return new ThreadPoolExecutor(broadcastThreads, broadcastThreads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(broadcastQueueSize), new NamedThreadFactory("db-router-broadcast"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @Bean
+    public DBRouterJoinPoint dbRouterJoinPoint(DBRouterConfig dbRouterConfig, IDBRouterStrategy dbRouterStrategy,
+                                               TransactionTemplate transactionTemplate, ObjectProvider<HotSpotDetector> hotSpotDetector) {
+        DBRouterJoinPoint joinPoint = new DBRouterJoinPoint(dbRouterConfig, dbRouterStrategy, transactionTemplate, dbRouterBroadcastExecutor());
+        joinPoint.setRouterMetrics(routerMetrics());
+        joinPoint.setHotSpotDetector(hotSpotDetector.getIfAvailable());
+        return joinPoint;
+    }
+
+    // router.jdbc.datasource.hotspot.enabled=true 时统计热点路由键与分表, 容器中的 HotSpotListener 自动注册
+    @Bean(initMethod = "start", destroyMethod = "shutdown")
+    @Conditional(HotSpotCondition.class)
+    public HotSpotDetector hotSpotDetector(DBRouterConfig dbRouterConfig, ObjectProvider<HotSpotListener> listeners) {
+        HotSpotDetector detector = new HotSpotDetector(new ShardRouteTable(dbRouterConfig),
+                PropertyUtil.getInt(hotSpotConfig, "topK", 16),
+                PropertyUtil.getInt(hotSpotConfig, "sampleRate", 1),
+                PropertyUtil.getInt(hotSpotConfig, "windowMs", 1000),
+                PropertyUtil.getInt(hotSpotConfig, "keyThreshold", 0),
+                PropertyUtil.getInt(hotSpotConfig, "shardThreshold", 0));
+        listeners.orderedStream().forEach(detector::addListener);
+        return detector;
+    }
+
+    static class HotSpotCondition implements Condition {
+        @Override
+        public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+            return Boolean.parseBoolean(context.getEnvironment().getProperty("router.jdbc.datasource.hotspot.enabled"));
+        }
+    }
+
+    // @Async 等异步任务传递路由上下文, 已存在其它 TaskDecorator 时不注册(spring-boot 只使用唯一的 TaskDecorator)
+    @Bean
+    @ConditionalOnMissingBean(TaskDecorator.class)
+    public RouteContextTaskDecorator routeContextTaskDecorator() {
+        return new RouteContextTaskDecorator();
+    }
+
+    // SqlSessionFactory 由 mybatis-spring-boot-starter 创建, 延迟到首次注入时再创建批量模板
     @Bean
-    public DBRouterJoinPoint dbRouterJoinPoint(DBRouterConfig dbRouterConfig, IDBRouterStrategy dbRouterStrategy, TransactionTemplate transactionTemplate) {
-        return new DBRouterJoinPoint(dbRouterConfig, dbRouterStrategy, transactionTemplate);
+    @Lazy
+    public ShardBatchTemplate shardBatchTemplate(SqlSessionFactory sqlSessionFactory, IDBRouterStrategy dbRouterStrategy) {
+        return new ShardBatchTemplate(sqlSessionFactory, dbRouterStrategy, dbRouterBroadcastExecutor(), batchSize);
+    }
+
+    // router.jdbc.datasource.tx.parallelCommit=true 时, 各分库连接在专用线程池上并行提交/回滚
+    // router.jdbc.datasource.tx.mode=xa 时使用两阶段提交, 创建时先恢复上次退出时未完成的分支
+    @Bean(destroyMethod = "shutdown")
+    public MultiDSTxCoordinator multiDSTxCoordinator(DataSource dataSource) {
+        ExecutorService executor = null;
+        if (Boolean.parseBoolean(String.valueOf(txConfig.get("parallelCommit")))) {
+            int threads = PropertyUtil.getInt(txConfig, "threads", Math.max(4, dbCount));
+            executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(1024), new NamedThreadFactory("db-router-tx"),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+        int timeoutMillis = PropertyUtil.getInt(txConfig, "commitTimeoutMs", 5000);
+        if (xaDialect == null) {
+            return executor == null ? new MultiDSTxCoordinator() : new MultiDSTxCoordinator(executor, timeoutMillis);
+        }
+
+        // 日志文件名与 XID 前缀都来自 nodeId, 重启后变化会导致上次的 in-doubt 分支无法恢复, 必须显式配置
+        Object nodeIdValue = txConfig.get("nodeId");
+        if (nodeIdValue == null || StringUtils.isEmpty(nodeIdValue.toString().trim())) {
+            throw new IllegalArgumentException("[multiDSTxCoordinator] router.jdbc.datasource.tx.nodeId is required when tx.mode=xa, "
+                    + "it must be unique among instances sharing the databases and stable across restarts");
+        }
+        String nodeId = nodeIdValue.toString().trim();
+        File logDir = new File(txConfig.get("logDir") == null ? "txlog" : txConfig.get("logDir").toString());
+        XaTxLog txLog;
+        try {
+            txLog = new XaTxLog(logDir, "db-router-tx-" + nodeId.replaceAll("[^A-Za-z0-9_-]", "_"), PropertyUtil.getInt(txConfig, "logFileSize", 16 << 20));
+        } catch (IOException e) {
+            throw new IllegalStateException("[multiDSTxCoordinator] open xa transaction log failed: " + logDir, e);
+        }
+        Map<Object, DataSource> dataSources = ((DynamicDataSource) dataSource).getResolvedDataSources();
+        XaRecovery recovery = new XaRecovery(xaDialect, txLog, nodeId);
+        recovery.recover(dataSources);
+        XaTxCoordinator coordinator = new XaTxCoordinator(xaDialect, txLog, nodeId, executor, timeoutMillis);
+        coordinator.startRetry(recovery, dataSources, PropertyUtil.getInt(txConfig, "retryIntervalMs", 10000));
+        return coordinator;
     }
 
     @Bean
-    public MultiDSTransactionJoinPoint multiDSTransactionJoinPoint() {
-        return new MultiDSTransactionJoinPoint();
+    public MultiDSTransactionJoinPoint multiDSTransactionJoinPoint(MultiDSTxCoordinator multiDSTxCoordinator) {
+        MultiDSTransactionJoinPoint joinPoint = new MultiDSTransactionJoinPoint(multiDSTxCoordinator);
+        joinPoint.setRouterMetrics(routerMetrics());
+        return joinPoint;
     }
 
     @Bean
     public Interceptor interceptor() {
-        return new DynamicMybatisPlugin();
+        return new DynamicMybatisPlugin(sqlCacheSize, shardingTables);
+    }
+
+    // router.jdbc.datasource.metrics.enabled=true 时记录延迟直方图, 否则各埋点不读取时钟
+    @Bean
+    public RouterMetrics routerMetrics() {
+        return metricsEnabled ? new HistogramRouterMetrics(new ShardRouteTable(dbCount, tbCount)) : RouterMetrics.NOOP;
+    }
+
+    @Bean
+    @Conditional(MetricsCondition.class)
+    public Interceptor statementMetricsPlugin() {
+        return new StatementMetricsPlugin(routerMetrics());
+    }
+
+    static class MetricsCondition implements Condition {
+        @Override
+        public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+            return Boolean.parseBoolean(context.getEnvironment().getProperty("router.jdbc.datasource.metrics.enabled"));
+        }
+    }
+
+    // classpath 中存在 Micrometer 时, MeterBinder 由 spring-boot-actuator 自动绑定到 MeterRegistry
+    @Configuration
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.binder.MeterBinder")
+    @Conditional(MetricsCondition.class)
+    static class MicrometerMetricsConfig {
+        @Bean
+        public MicrometerRouterMetricsBinder routerMetricsBinder(RouterMetrics routerMetrics) {
+            return new MicrometerRouterMetricsBinder((HistogramRouterMetrics) routerMetrics);
+        }
+    }
+
+    // 配置了从库时注册读写分离: SELECT 语句与 @ReadOnly 方法从从库读取
+    @Bean
+    @Conditional(ReplicaCondition.class)
+    public Interceptor readWriteSplittingPlugin() {
+        return new ReadWriteSplittingPlugin();
+    }
+
+    @Bean
+    @Conditional(ReplicaCondition.class)
+    public ReadOnlyJoinPoint readOnlyJoinPoint() {
+        return new ReadOnlyJoinPoint();
+    }
+
+    static class ReplicaCondition implements Condition {
+        @Override
+        public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+            Map<String, Object> map = Binder.get(context.getEnvironment())
+                    .bind("router.jdbc.datasource", Map.class).orElse(new HashMap<>());
+            for (Object value : map.values()) {
+                if (value instanceof Map && ((Map<?, ?>) value).get("replicas") instanceof Map) {
+                    return true;
+                }
+            }
+            return false;
+        }
     }
 }
@@ -1,31 +1,29 @@
 package cn.wzz.middleware.db.router.context;
 
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+
 public class DBContextHolder {
-    private static final ThreadLocal<String> dbKey = new ThreadLocal<String>();
-    private static final ThreadLocal<String> tbKey = new ThreadLocal<String>();
 
-    public static void setDBKey(String dbKeyIdx){
-        dbKey.set(dbKeyIdx);
+    public static void setRoute(ShardRoute shardRoute){
+        RouteContext.current().setRoute(shardRoute);
     }
 
-    public static String getDBKey(){
-        return dbKey.get();
+    public static ShardRoute getRoute(){
+        return RouteContext.current().getRoute();
     }
 
-    public static void setTBKey(String tbKeyIdx){
-        tbKey.set(tbKeyIdx);
+    public static String getDBKey(){
+        ShardRoute shardRoute = getRoute();
+        return shardRoute == null ? null : shardRoute.getDbKey();
     }
 
     public static String getTBKey(){
-        return tbKey.get();
-    }
-
-    public static void clearDBKey(){
-        dbKey.remove();
+        ShardRoute shardRoute = getRoute();
+        return shardRoute == null ? null : shardRoute.getTbKey();
     }
 
-    public static void clearTBKey(){
-        tbKey.remove();
+    public static void clearRoute(){
+        RouteContext.current().clearRoute();
     }
 
 }
@@ -0,0 +1,190 @@
+package cn.wzz.middleware.db.router.context;
+
+import cn.wzz.middleware.db.router.dynamic.CustomConnection;
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 线程路由上下文: 合并路由结果、跨连接事务开关与事务连接缓存, 每个线程只持有一个实例,
+ * 热点路径上取一次 ThreadLocal 即可读写全部状态。
+ * 事务结束时只清空集合而不重新创建, 同一作用域内的后续事务复用这些集合。
+ * 切面通过 enterScope / exitScope 记录嵌套深度, 最外层作用域退出时清空路由、读标记与事务状态,
+ * 实例与集合留给该线程的下一次请求复用, 不产生新的对象;
+ * 应用卸载或重新部署时由 remove() 显式移除, 线程池中的线程不再引用旧类加载器中的类。
+ * DBContextHolder、TransactionContext、ConnectionContext 均委托给该对象。
+ */
+public final class RouteContext {
+
+    private static final ThreadLocal<RouteContext> CONTEXT = ThreadLocal.withInitial(RouteContext::new);
+
+    // 路由结果, 为 null 时使用默认数据源
+    private ShardRoute route;
+
+    // 读请求标记, 有从库且不在事务中时从从库获取连接
+    private boolean read;
+
+    // 跨连接事务开关
+    private boolean txOpen;
+
+    // XA 模式下的全局事务 id, 本地事务模式为 null
+    private String xaGtrid;
+
+    // 事务中第一个加入的连接, 只有一个数据源参与事务时不使用下面的列表和 Map
+    private Object firstKey;
+
+    private CustomConnection first;
+
+    // 跨连接事务中的连接, 按加入顺序提交/回滚; 第二个数据源加入时才写入
+    // 不指定初始容量, 首次写入时才分配数组: 虚拟线程等短生命周期线程只读写路由时不分配集合内部数组
+    private final ArrayList<CustomConnection> connections = new ArrayList<>();
+
+    // 连接缓存器, 在事务内相同数据源使用同一个连接对象, 保证事务的隔离性
+    private final HashMap<Object, CustomConnection> connMap = new HashMap<>(8);
+
+    // @DBRouter、@MultiDSTransaction 等切面作用域的嵌套深度
+    private int depth;
+
+    // 最外层作用域进入时上下文是否空闲, 不空闲说明调用方在作用域外设置了状态, 退出时不清空
+    private boolean idleOnEnter;
+
+    private RouteContext() {
+    }
+
+    public static RouteContext current() {
+        return CONTEXT.get();
+    }
+
+    /**
+     * 移除当前线程的上下文, 应用卸载或重新部署时在仍会继续运行的线程上调用
+     */
+    public static void remove() {
+        CONTEXT.remove();
+    }
+
+    /**
+     * 进入切面作用域, 必须与 exitScope 成对调用
+     */
+    public void enterScope() {
+        if (depth++ == 0) {
+            idleOnEnter = route == null && !read && !txOpen && first == null;
+        }
+    }
+
+    /**
+     * 退出切面作用域: 最外层作用域退出时清空路由、读标记与事务状态, 保留实例与集合供下次复用;
+     * 调用方在作用域外手动设置的状态仍然保留
+     */
+    public void exitScope() {
+        if (--depth == 0 && idleOnEnter) {
+            route = null;
+            read = false;
+            resetTx();
+        }
+    }
+
+    public ShardRoute getRoute() {
+        return route;
+    }
+
+    public void setRoute(ShardRoute route) {
+        this.route = route;
+    }
+
+    public void clearRoute() {
+        this.route = null;
+    }
+
+    public boolean isRead() {
+        return read;
+    }
+
+    public void setRead(boolean read) {
+        this.read = read;
+    }
+
+    public boolean isTxOpen() {
+        return txOpen;
+    }
+
+    public void openTx() {
+        this.txOpen = true;
+    }
+
+    public void closeTx() {
+        this.txOpen = false;
+    }
+
+    public String getXaGtrid() {
+        return xaGtrid;
+    }
+
+    public void setXaGtrid(String xaGtrid) {
+        this.xaGtrid = xaGtrid;
+    }
+
+    /**
+     * @return 数据源在当前事务中已经持有的连接, 不存在返回 null
+     */
+    public CustomConnection getTxConnection(Object dsKey) {
+        if (first != null && (firstKey == dsKey || firstKey.equals(dsKey))) {
+            return first;
+        }
+        return connections.isEmpty() ? null : connMap.get(dsKey);
+    }
+
+    public void addTxConnection(Object dsKey, CustomConnection connection) {
+        if (first == null) {
+            first = connection;
+            firstKey = dsKey;
+            return;
+        }
+        promote();
+        connections.add(connection);
+        connMap.put(dsKey, connection);
+    }
+
+    /**
+     * @return 事务中的连接数
+     */
+    public int getTxConnectionCount() {
+        if (first == null) {
+            return 0;
+        }
+        return connections.isEmpty() ? 1 : connections.size();
+    }
+
+    /**
+     * @return 事务中第一个加入的连接, 只有一个连接时用于单分支快速提交
+     */
+    public CustomConnection getFirstTxConnection() {
+        return first;
+    }
+
+    public List<CustomConnection> getTxConnections() {
+        promote();
+        return connections;
+    }
+
+    // 把第一个连接放入列表和 Map, 之后按多连接处理
+    private void promote() {
+        if (first != null && connections.isEmpty()) {
+            connections.add(first);
+            connMap.put(firstKey, first);
+        }
+    }
+
+    /**
+     * 事务结束: 关闭事务开关并清空连接集合
+     */
+    public void resetTx() {
+        txOpen = false;
+        xaGtrid = null;
+        first = null;
+        firstKey = null;
+        connections.clear();
+        connMap.clear();
+    }
+}
@@ -0,0 +1,140 @@
+package cn.wzz.middleware.db.router.context;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 传递路由上下文的线程池包装, 任务提交时捕获 RouteSnapshot, 执行时恢复
+ * eg:
+ * ExecutorService executor = RouteContextExecutors.wrap(Executors.newFixedThreadPool(8));
+ * CompletableFuture.supplyAsync(() -> orderDao.queryUserOrder(req), executor);
+ * JDK 21 的 Executors.newVirtualThreadPerTaskExecutor() 同样可以包装
+ */
+public final class RouteContextExecutors {
+
+    private RouteContextExecutors() {
+    }
+
+    public static Executor wrap(Executor executor) {
+        if (executor instanceof ExecutorService) {
+            return wrap((ExecutorService) executor);
+        }
+        if (executor instanceof RouteContextExecutor) {
+            return executor;
+        }
+        return new RouteContextExecutor(executor);
+    }
+
+    public static ExecutorService wrap(ExecutorService executor) {
+        if (executor instanceof RouteContextExecutorService) {
+            return executor;
+        }
+        return new RouteContextExecutorService(executor);
+    }
+
+    private static <T> List<Callable<T>> bindAll(Collection<? extends Callable<T>> tasks) {
+        RouteSnapshot snapshot = RouteSnapshot.capture();
+        List<Callable<T>> bound = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            bound.add(snapshot.bind(task));
+        }
+        return bound;
+    }
+
+    private static final class RouteContextExecutor implements Executor {
+
+        private final Executor delegate;
+
+        RouteContextExecutor(Executor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            delegate.execute(RouteSnapshot.wrap(command));
+        }
+    }
+
+    private static final class RouteContextExecutorService implements ExecutorService {
+
+        private final ExecutorService delegate;
+
+        RouteContextExecutorService(ExecutorService delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            delegate.execute(RouteSnapshot.wrap(command));
+        }
+
+        @Override
+        public Future<?> submit(Runnable task) {
+            return delegate.submit(RouteSnapshot.wrap(task));
+        }
+
+        @Override
+        public <T> Future<T> submit(Runnable task, T result) {
+            return delegate.submit(RouteSnapshot.wrap(task), result);
+        }
+
+        @Override
+        public <T> Future<T> submit(Callable<T> task) {
+            return delegate.submit(RouteSnapshot.wrap(task));
+        }
+
+        @Override
+        public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
+            return delegate.invokeAll(bindAll(tasks));
+        }
+
+        @Override
+        public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.invokeAll(bindAll(tasks), timeout, unit);
+        }
+
+        @Override
+        public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
+            return delegate.invokeAny(bindAll(tasks));
+        }
+
+        @Override
+        public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            return delegate.invokeAny(bindAll(tasks), timeout, unit);
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
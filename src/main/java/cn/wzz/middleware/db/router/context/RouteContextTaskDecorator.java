@@ -0,0 +1,16 @@
+package cn.wzz.middleware.db.router.context;
+
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ * Spring TaskDecorator, 在 ThreadPoolTaskExecutor(@Async)中传递路由上下文
+ * 容器中没有其它 TaskDecorator 时自动注册, spring-boot 创建的默认 applicationTaskExecutor 会使用该 Bean;
+ * 自定义的 ThreadPoolTaskExecutor 需要调用 setTaskDecorator 设置
+ */
+public class RouteContextTaskDecorator implements TaskDecorator {
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        return RouteSnapshot.wrap(runnable);
+    }
+}
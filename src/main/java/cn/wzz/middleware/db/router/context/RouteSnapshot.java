@@ -0,0 +1,105 @@
+package cn.wzz.middleware.db.router.context;
+
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+
+import java.util.concurrent.Callable;
+
+/**
+ * 路由上下文快照, 用于把提交线程上的路由结果与读标记传递到执行任务的线程
+ * 1. 只复制 ShardRoute 引用与读标记, 不复制跨连接事务状态: 事务连接绑定在开启事务的线程上,
+ *    其它线程中的任务不会加入该事务, 按普通(自动提交)连接执行
+ * 2. 执行任务前设置快照中的路由, 结束后恢复执行线程原有的值, 因此任务由提交线程直接执行
+ *    (CallerRunsPolicy)时也不会破坏提交线程的上下文; 工作线程上的上下文在作用域退出时清空, 实例留给该线程复用
+ * 3. 提交线程没有路由且不是读请求时不包装任务, 不产生额外开销
+ * 虚拟线程同样使用 ThreadLocal, 每个虚拟线程首次访问时创建自己的 RouteContext, 快照对其同样适用
+ */
+public final class RouteSnapshot {
+
+    private static final RouteSnapshot EMPTY = new RouteSnapshot(null, false);
+
+    private final ShardRoute route;
+
+    private final boolean read;
+
+    private RouteSnapshot(ShardRoute route, boolean read) {
+        this.route = route;
+        this.read = read;
+    }
+
+    /**
+     * @return 当前线程的路由快照
+     */
+    public static RouteSnapshot capture() {
+        RouteContext ctx = RouteContext.current();
+        ShardRoute route = ctx.getRoute();
+        boolean read = ctx.isRead();
+        return route == null && !read ? EMPTY : new RouteSnapshot(route, read);
+    }
+
+    public static Runnable wrap(Runnable task) {
+        return capture().bind(task);
+    }
+
+    public static <V> Callable<V> wrap(Callable<V> task) {
+        return capture().bind(task);
+    }
+
+    public boolean isEmpty() {
+        return this == EMPTY;
+    }
+
+    public ShardRoute getRoute() {
+        return route;
+    }
+
+    public boolean isRead() {
+        return read;
+    }
+
+    public Runnable bind(Runnable task) {
+        if (isEmpty()) {
+            return task;
+        }
+        return () -> {
+            RouteContext ctx = RouteContext.current();
+            ShardRoute prevRoute = ctx.getRoute();
+            boolean prevRead = ctx.isRead();
+            ctx.enterScope();
+            ctx.setRoute(route);
+            ctx.setRead(read);
+            try {
+                task.run();
+            } finally {
+                ctx.setRoute(prevRoute);
+                ctx.setRead(prevRead);
+                ctx.exitScope();
+            }
+        };
+    }
+
+    public <V> Callable<V> bind(Callable<V> task) {
+        if (isEmpty()) {
+            return task;
+        }
+        return () -> {
+            RouteContext ctx = RouteContext.current();
+            ShardRoute prevRoute = ctx.getRoute();
+            boolean prevRead = ctx.isRead();
+            ctx.enterScope();
+            ctx.setRoute(route);
+            ctx.setRead(read);
+            try {
+                return task.call();
+            } finally {
+                ctx.setRoute(prevRoute);
+                ctx.setRead(prevRead);
+                ctx.exitScope();
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "RouteSnapshot{route=" + route + ", read=" + read + '}';
+    }
+}
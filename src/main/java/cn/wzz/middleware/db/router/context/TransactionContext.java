@@ -1,17 +1,16 @@
 package cn.wzz.middleware.db.router.context;
 
 public class TransactionContext {
-    private static final ThreadLocal<Boolean> TX_SWITCH = new ThreadLocal<>();
 
     public static void openTx() {
-        TX_SWITCH.set(true);
+        RouteContext.current().openTx();
     }
 
     public static void closeTx() {
-        TX_SWITCH.remove();
+        RouteContext.current().closeTx();
     }
 
     public static Boolean txIsOpen() {
-        return TX_SWITCH.get() != null && TX_SWITCH.get();
+        return RouteContext.current().isTxOpen();
     }
 }
@@ -0,0 +1,887 @@
+package cn.wzz.middleware.db.router.dynamic;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLType;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+
+/**
+ * PreparedStatementCache 中缓存的语句句柄: 与物理语句一一对应, 随物理语句一起放在 LRU 中重复借出,
+ * 每次 prepare 不再创建代理对象
+ * 1. 借出时绑定调用方连接, 调用方 close 时关闭未关闭的 ResultSet, 清空参数与批量,
+ *    恢复调用方修改过的 queryTimeout/fetchSize/maxRows/maxFieldSize/escapeProcessing/fetchDirection/poolable
+ *    后放回缓存; 调用过 closeOnCompletion 的语句直接关闭, 不放回缓存
+ * 2. 执行语句时通知调用方连接: 语句绕过了连接池的语句代理, 连接归还时由 CustomConnection 回滚未提交的修改
+ * 3. 归还后的句柄拒绝调用, 调用方在 close 之后继续持有旧引用属于 JDBC 未定义行为, 句柄再次借出后不再受保护
+ * 4. 返回的结果集包装为 CachedResultSet, rs.getStatement() 返回句柄, 不暴露缓存的物理语句
+ */
+final class CachedStatement implements PreparedStatement {
+
+    private final PreparedStatementCache.ConnectionCache cache;
+
+    final PreparedStatementCache.StatementKey key;
+
+    private final PreparedStatement target;
+
+    // 借出该语句的连接, 在缓存中时为 null
+    private CustomConnection owner;
+
+    // 调用方修改前的值, -1 表示未修改
+    private int queryTimeout = -1;
+
+    private int fetchSize = -1;
+
+    private int maxRows = -1;
+
+    private int maxFieldSize = -1;
+
+    private int fetchDirection = -1;
+
+    // 没有 getter, 修改后恢复为 JDBC 默认值 true
+    private boolean escapeProcessingChanged;
+
+    // null 表示未修改
+    private Boolean poolable;
+
+    // 调用过 closeOnCompletion 的语句状态无法恢复, 归还时直接关闭
+    private boolean closeOnCompletion;
+
+    private boolean batched;
+
+    // 调用方可能未关闭的结果集, 归还前关闭
+    private CachedResultSet resultSet;
+
+    private CachedResultSet generatedKeys;
+
+    CachedStatement(PreparedStatementCache.ConnectionCache cache, PreparedStatementCache.StatementKey key, PreparedStatement target) {
+        this.cache = cache;
+        this.key = key;
+        this.target = target;
+    }
+
+    void open(CustomConnection owner) {
+        this.owner = owner;
+    }
+
+    boolean isTargetClosed() throws SQLException {
+        return target.isClosed();
+    }
+
+    PreparedStatement getTarget() {
+        return target;
+    }
+
+    private void checkOpen() throws SQLException {
+        if (owner == null) {
+            throw new SQLException("Statement is closed");
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (owner == null) {
+            return;
+        }
+        CustomConnection prev = owner;
+        owner = null;
+        prev.statementClosed(this);
+        try {
+            if (resultSet != null) {
+                resultSet.close();
+            }
+            if (generatedKeys != null) {
+                generatedKeys.close();
+            }
+            if (closeOnCompletion) {
+                PreparedStatementCache.closeQuietly(target);
+                return;
+            }
+            target.clearParameters();
+            if (batched) {
+                target.clearBatch();
+            }
+            if (queryTimeout >= 0) {
+                target.setQueryTimeout(queryTimeout);
+            }
+            if (fetchSize >= 0) {
+                target.setFetchSize(fetchSize);
+            }
+            if (maxRows >= 0) {
+                target.setMaxRows(maxRows);
+            }
+            if (maxFieldSize >= 0) {
+                target.setMaxFieldSize(maxFieldSize);
+            }
+            if (fetchDirection >= 0) {
+                target.setFetchDirection(fetchDirection);
+            }
+            if (escapeProcessingChanged) {
+                target.setEscapeProcessing(true);
+            }
+            if (poolable != null) {
+                target.setPoolable(poolable);
+            }
+            target.clearWarnings();
+        } catch (SQLException e) {
+            // 语句状态无法恢复时不放回缓存
+            PreparedStatementCache.closeQuietly(target);
+            return;
+        } finally {
+            resultSet = null;
+            generatedKeys = null;
+            batched = false;
+            queryTimeout = -1;
+            fetchSize = -1;
+            maxRows = -1;
+            maxFieldSize = -1;
+            fetchDirection = -1;
+            escapeProcessingChanged = false;
+            poolable = null;
+            closeOnCompletion = false;
+        }
+        cache.giveBack(this);
+    }
+
+    /**
+     * 连接关闭时归还调用方未关闭的语句
+     */
+    void release() {
+        try {
+            close();
+        } catch (SQLException e) {
+            PreparedStatementCache.closeQuietly(target);
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return owner == null;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        checkOpen();
+        return owner;
+    }
+
+    @Override
+    public ResultSet executeQuery() throws SQLException {
+        checkOpen();
+        owner.statementExecuted();
+        return resultSet = wrap(resultSet, target.executeQuery());
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        checkOpen();
+        return resultSet = wrap(resultSet, target.getResultSet());
+    }
+
+    @Override
+    public ResultSet getGeneratedKeys() throws SQLException {
+        checkOpen();
+        return generatedKeys = wrap(generatedKeys, target.getGeneratedKeys());
+    }
+
+    // 物理结果集的 getStatement() 返回缓存的物理语句, 包装后返回句柄; 同一个结果集重复获取时返回同一个包装
+    private CachedResultSet wrap(CachedResultSet prev, ResultSet rs) {
+        if (rs == null) {
+            return null;
+        }
+        return prev != null && prev.getTarget() == rs ? prev : new CachedResultSet(this, rs);
+    }
+
+    @Override
+    public void addBatch() throws SQLException {
+        checkOpen();
+        batched = true;
+        target.addBatch();
+    }
+
+    @Override
+    public void setQueryTimeout(int seconds) throws SQLException {
+        checkOpen();
+        if (queryTimeout < 0) {
+            queryTimeout = target.getQueryTimeout();
+        }
+        target.setQueryTimeout(seconds);
+    }
+
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        checkOpen();
+        if (fetchSize < 0) {
+            fetchSize = target.getFetchSize();
+        }
+        target.setFetchSize(rows);
+    }
+
+    @Override
+    public void setMaxRows(int max) throws SQLException {
+        checkOpen();
+        if (maxRows < 0) {
+            maxRows = target.getMaxRows();
+        }
+        target.setMaxRows(max);
+    }
+
+    @Override
+    public void setLargeMaxRows(long max) throws SQLException {
+        checkOpen();
+        if (maxRows < 0) {
+            maxRows = target.getMaxRows();
+        }
+        target.setLargeMaxRows(max);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return (T) this;
+        }
+        return target.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || target.isWrapperFor(iface);
+    }
+
+    @Override
+    public String toString() {
+        return "CachedStatement[" + target + "]";
+    }
+
+    @Override
+    public int executeUpdate() throws SQLException {
+        checkOpen();
+        owner.statementExecuted();
+        return target.executeUpdate();
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType) throws SQLException {
+        checkOpen();
+        target.setNull(parameterIndex, sqlType);
+    }
+
+    @Override
+    public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+        checkOpen();
+        target.setBoolean(parameterIndex, x);
+    }
+
+    @Override
+    public void setByte(int parameterIndex, byte x) throws SQLException {
+        checkOpen();
+        target.setByte(parameterIndex, x);
+    }
+
+    @Override
+    public void setShort(int parameterIndex, short x) throws SQLException {
+        checkOpen();
+        target.setShort(parameterIndex, x);
+    }
+
+    @Override
+    public void setInt(int parameterIndex, int x) throws SQLException {
+        checkOpen();
+        target.setInt(parameterIndex, x);
+    }
+
+    @Override
+    public void setLong(int parameterIndex, long x) throws SQLException {
+        checkOpen();
+        target.setLong(parameterIndex, x);
+    }
+
+    @Override
+    public void setFloat(int parameterIndex, float x) throws SQLException {
+        checkOpen();
+        target.setFloat(parameterIndex, x);
+    }
+
+    @Override
+    public void setDouble(int parameterIndex, double x) throws SQLException {
+        checkOpen();
+        target.setDouble(parameterIndex, x);
+    }
+
+    @Override
+    public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
+        checkOpen();
+        target.setBigDecimal(parameterIndex, x);
+    }
+
+    @Override
+    public void setString(int parameterIndex, String x) throws SQLException {
+        checkOpen();
+        target.setString(parameterIndex, x);
+    }
+
+    @Override
+    public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+        checkOpen();
+        target.setBytes(parameterIndex, x);
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x) throws SQLException {
+        checkOpen();
+        target.setDate(parameterIndex, x);
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x) throws SQLException {
+        checkOpen();
+        target.setTime(parameterIndex, x);
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
+        checkOpen();
+        target.setTimestamp(parameterIndex, x);
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        checkOpen();
+        target.setAsciiStream(parameterIndex, x, length);
+    }
+
+    @Override
+    @Deprecated
+    public void setUnicodeStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        checkOpen();
+        target.setUnicodeStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        checkOpen();
+        target.setBinaryStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void clearParameters() throws SQLException {
+        checkOpen();
+        target.clearParameters();
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
+        checkOpen();
+        target.setObject(parameterIndex, x, targetSqlType);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x) throws SQLException {
+        checkOpen();
+        target.setObject(parameterIndex, x);
+    }
+
+    @Override
+    public boolean execute() throws SQLException {
+        checkOpen();
+        owner.statementExecuted();
+        return target.execute();
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader x, int length) throws SQLException {
+        checkOpen();
+        target.setCharacterStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setRef(int parameterIndex, Ref x) throws SQLException {
+        checkOpen();
+        target.setRef(parameterIndex, x);
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, Blob x) throws SQLException {
+        checkOpen();
+        target.setBlob(parameterIndex, x);
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Clob x) throws SQLException {
+        checkOpen();
+        target.setClob(parameterIndex, x);
+    }
+
+    @Override
+    public void setArray(int parameterIndex, Array x) throws SQLException {
+        checkOpen();
+        target.setArray(parameterIndex, x);
+    }
+
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        checkOpen();
+        return target.getMetaData();
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException {
+        checkOpen();
+        target.setDate(parameterIndex, x, cal);
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException {
+        checkOpen();
+        target.setTime(parameterIndex, x, cal);
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException {
+        checkOpen();
+        target.setTimestamp(parameterIndex, x, cal);
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {
+        checkOpen();
+        target.setNull(parameterIndex, sqlType, typeName);
+    }
+
+    @Override
+    public void setURL(int parameterIndex, URL x) throws SQLException {
+        checkOpen();
+        target.setURL(parameterIndex, x);
+    }
+
+    @Override
+    public ParameterMetaData getParameterMetaData() throws SQLException {
+        checkOpen();
+        return target.getParameterMetaData();
+    }
+
+    @Override
+    public void setRowId(int parameterIndex, RowId x) throws SQLException {
+        checkOpen();
+        target.setRowId(parameterIndex, x);
+    }
+
+    @Override
+    public void setNString(int parameterIndex, String x) throws SQLException {
+        checkOpen();
+        target.setNString(parameterIndex, x);
+    }
+
+    @Override
+    public void setNCharacterStream(int parameterIndex, Reader x, long length) throws SQLException {
+        checkOpen();
+        target.setNCharacterStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, NClob x) throws SQLException {
+        checkOpen();
+        target.setNClob(parameterIndex, x);
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Reader x, long length) throws SQLException {
+        checkOpen();
+        target.setClob(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, InputStream x, long length) throws SQLException {
+        checkOpen();
+        target.setBlob(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, Reader x, long length) throws SQLException {
+        checkOpen();
+        target.setNClob(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setSQLXML(int parameterIndex, SQLXML x) throws SQLException {
+        checkOpen();
+        target.setSQLXML(parameterIndex, x);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException {
+        checkOpen();
+        target.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException {
+        checkOpen();
+        target.setAsciiStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException {
+        checkOpen();
+        target.setBinaryStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader x, long length) throws SQLException {
+        checkOpen();
+        target.setCharacterStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException {
+        checkOpen();
+        target.setAsciiStream(parameterIndex, x);
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException {
+        checkOpen();
+        target.setBinaryStream(parameterIndex, x);
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader x) throws SQLException {
+        checkOpen();
+        target.setCharacterStream(parameterIndex, x);
+    }
+
+    @Override
+    public void setNCharacterStream(int parameterIndex, Reader x) throws SQLException {
+        checkOpen();
+        target.setNCharacterStream(parameterIndex, x);
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Reader x) throws SQLException {
+        checkOpen();
+        target.setClob(parameterIndex, x);
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, InputStream x) throws SQLException {
+        checkOpen();
+        target.setBlob(parameterIndex, x);
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, Reader x) throws SQLException {
+        checkOpen();
+        target.setNClob(parameterIndex, x);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, SQLType targetSqlType, int scaleOrLength) throws SQLException {
+        checkOpen();
+        target.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, SQLType targetSqlType) throws SQLException {
+        checkOpen();
+        target.setObject(parameterIndex, x, targetSqlType);
+    }
+
+    @Override
+    public long executeLargeUpdate() throws SQLException {
+        checkOpen();
+        owner.statementExecuted();
+        return target.executeLargeUpdate();
+    }
+
+    @Override
+    public ResultSet executeQuery(String sql) throws SQLException {
+        checkOpen();
+        owner.statementExecuted();
+        return resultSet = wrap(resultSet, target.executeQuery(sql));
+    }
+
+    @Override
+    public int executeUpdate(String sql) throws SQLException {
+        checkOpen();
+        owner.statementExecuted();
+        return target.executeUpdate(sql);
+    }
+
+    @Override
+    public int getMaxFieldSize() throws SQLException {
+        checkOpen();
+        return target.getMaxFieldSize();
+    }
+
+    @Override
+    public void setMaxFieldSize(int max) throws SQLException {
+        checkOpen();
+        if (maxFieldSize < 0) {
+            maxFieldSize = target.getMaxFieldSize();
+        }
+        target.setMaxFieldSize(max);
+    }
+
+    @Override
+    public int getMaxRows() throws SQLException {
+        checkOpen();
+        return target.getMaxRows();
+    }
+
+    @Override
+    public void setEscapeProcessing(boolean enable) throws SQLException {
+        checkOpen();
+        escapeProcessingChanged = true;
+        target.setEscapeProcessing(enable);
+    }
+
+    @Override
+    public int getQueryTimeout() throws SQLException {
+        checkOpen();
+        return target.getQueryTimeout();
+    }
+
+    @Override
+    public void cancel() throws SQLException {
+        checkOpen();
+        target.cancel();
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        checkOpen();
+        return target.getWarnings();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        checkOpen();
+        target.clearWarnings();
+    }
+
+    @Override
+    public void setCursorName(String name) throws SQLException {
+        checkOpen();
+        target.setCursorName(name);
+    }
+
+    @Override
+    public boolean execute(String sql) throws SQLException {
+        checkOpen();
+        owner.statementExecuted();
+        return target.execute(sql);
+    }
+
+    @Override
+    public int getUpdateCount() throws SQLException {
+        checkOpen();
+        return target.getUpdateCount();
+    }
+
+    @Override
+    public boolean getMoreResults() throws SQLException {
+        checkOpen();
+        return target.getMoreResults();
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException {
+        checkOpen();
+        if (fetchDirection < 0) {
+            fetchDirection = target.getFetchDirection();
+        }
+        target.setFetchDirection(direction);
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        checkOpen();
+        return target.getFetchDirection();
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        checkOpen();
+        return target.getFetchSize();
+    }
+
+    @Override
+    public int getResultSetConcurrency() throws SQLException {
+        checkOpen();
+        return target.getResultSetConcurrency();
+    }
+
+    @Override
+    public int getResultSetType() throws SQLException {
+        checkOpen();
+        return target.getResultSetType();
+    }
+
+    @Override
+    public void addBatch(String sql) throws SQLException {
+        checkOpen();
+        batched = true;
+        target.addBatch(sql);
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        checkOpen();
+        target.clearBatch();
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        checkOpen();
+        owner.statementExecuted();
+        return target.executeBatch();
+    }
+
+    @Override
+    public boolean getMoreResults(int current) throws SQLException {
+        checkOpen();
+        return target.getMoreResults(current);
+    }
+
+    @Override
+    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        checkOpen();
+        owner.statementExecuted();
+        return target.executeUpdate(sql, autoGeneratedKeys);
+    }
+
+    @Override
+    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        checkOpen();
+        owner.statementExecuted();
+        return target.executeUpdate(sql, columnIndexes);
+    }
+
+    @Override
+    public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+        checkOpen();
+        owner.statementExecuted();
+        return target.executeUpdate(sql, columnNames);
+    }
+
+    @Override
+    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+        checkOpen();
+        owner.statementExecuted();
+        return target.execute(sql, autoGeneratedKeys);
+    }
+
+    @Override
+    public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+        checkOpen();
+        owner.statementExecuted();
+        return target.execute(sql, columnIndexes);
+    }
+
+    @Override
+    public boolean execute(String sql, String[] columnNames) throws SQLException {
+        checkOpen();
+        owner.statementExecuted();
+        return target.execute(sql, columnNames);
+    }
+
+    @Override
+    public int getResultSetHoldability() throws SQLException {
+        checkOpen();
+        return target.getResultSetHoldability();
+    }
+
+    @Override
+    public void setPoolable(boolean poolable) throws SQLException {
+        checkOpen();
+        if (this.poolable == null) {
+            this.poolable = target.isPoolable();
+        }
+        target.setPoolable(poolable);
+    }
+
+    @Override
+    public boolean isPoolable() throws SQLException {
+        checkOpen();
+        return target.isPoolable();
+    }
+
+    @Override
+    public void closeOnCompletion() throws SQLException {
+        checkOpen();
+        closeOnCompletion = true;
+        target.closeOnCompletion();
+    }
+
+    @Override
+    public boolean isCloseOnCompletion() throws SQLException {
+        checkOpen();
+        return target.isCloseOnCompletion();
+    }
+
+    @Override
+    public long getLargeUpdateCount() throws SQLException {
+        checkOpen();
+        return target.getLargeUpdateCount();
+    }
+
+    @Override
+    public long getLargeMaxRows() throws SQLException {
+        checkOpen();
+        return target.getLargeMaxRows();
+    }
+
+    @Override
+    public long[] executeLargeBatch() throws SQLException {
+        checkOpen();
+        owner.statementExecuted();
+        return target.executeLargeBatch();
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql) throws SQLException {
+        checkOpen();
+        owner.statementExecuted();
+        return target.executeLargeUpdate(sql);
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        checkOpen();
+        owner.statementExecuted();
+        return target.executeLargeUpdate(sql, autoGeneratedKeys);
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        checkOpen();
+        owner.statementExecuted();
+        return target.executeLargeUpdate(sql, columnIndexes);
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql, String[] columnNames) throws SQLException {
+        checkOpen();
+        owner.statementExecuted();
+        return target.executeLargeUpdate(sql, columnNames);
+    }
+}
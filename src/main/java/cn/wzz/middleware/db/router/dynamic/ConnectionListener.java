@@ -0,0 +1,13 @@
+package cn.wzz.middleware.db.router.dynamic;
+
+/**
+ * 连接归还监听器: CustomConnection 关闭物理连接(归还连接池)时回调, 每个连接只回调一次
+ */
+@FunctionalInterface
+public interface ConnectionListener {
+
+    /**
+     * @param heldNanos 从获取连接到归还的耗时
+     */
+    void onClose(CustomConnection connection, long heldNanos);
+}
@@ -3,6 +3,8 @@ package cn.wzz.middleware.db.router.dynamic;
 import cn.wzz.middleware.db.router.context.TransactionContext;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Executor;
@@ -21,8 +23,120 @@ public class CustomConnection implements Connection {
     // 装饰器模式: 重写部分方法用于支持跨连接事务
     private Connection conn;
 
+    // 连接所属的数据源名称(eg: db01), 用于跨连接事务按分库报告提交结果
+    private final Object dsKey;
+
     public CustomConnection(Connection conn) {
+        this(conn, null);
+    }
+
+    public CustomConnection(Connection conn, Object dsKey) {
         this.conn = conn;
+        this.dsKey = dsKey;
+    }
+
+    // 连接归还监听器, 用于统计连接占用耗时
+    private ConnectionListener listener;
+
+    private long acquiredAt;
+
+    private boolean released;
+
+    // 语句缓存, 为 null 时直接使用驱动的 prepareStatement
+    private PreparedStatementCache statementCache;
+
+    // 从缓存借出且调用方尚未关闭的语句, 连接关闭时归还
+    private List<CachedStatement> borrowed;
+
+    // 提交/回滚之后是否执行过缓存语句, 缓存语句绕过了连接池的语句代理, 连接池不会在归还时回滚
+    private boolean cachedExecuted;
+
+    public Object getDsKey() {
+        return dsKey;
+    }
+
+    /**
+     * 设置连接归还监听器, 从调用时开始计时
+     */
+    public void setListener(ConnectionListener listener) {
+        setListener(listener, System.nanoTime());
+    }
+
+    /**
+     * 设置连接归还监听器, 从 acquiredAt(System.nanoTime) 开始计时, 用于把等待连接池的耗时计入占用耗时
+     */
+    public void setListener(ConnectionListener listener, long acquiredAt) {
+        this.listener = listener;
+        this.acquiredAt = acquiredAt;
+    }
+
+    public void setStatementCache(PreparedStatementCache statementCache) {
+        this.statementCache = statementCache;
+    }
+
+    private PreparedStatement prepareCached(String sql, int resultSetType, int resultSetConcurrency,
+                                            int resultSetHoldability, int autoGeneratedKeys) throws SQLException {
+        return statementCache.prepare(this, conn, sql, resultSetType, resultSetConcurrency,
+                resultSetHoldability, autoGeneratedKeys);
+    }
+
+    void statementBorrowed(CachedStatement statement) {
+        if (borrowed == null) {
+            borrowed = new ArrayList<>(4);
+        }
+        borrowed.add(statement);
+    }
+
+    void statementExecuted() {
+        cachedExecuted = true;
+    }
+
+    void statementClosed(CachedStatement statement) {
+        if (borrowed != null) {
+            borrowed.remove(statement);
+        }
+    }
+
+    // 归还调用方未关闭的缓存语句
+    private void releaseStatements() {
+        if (borrowed == null || borrowed.isEmpty()) {
+            return;
+        }
+        for (CachedStatement statement : new ArrayList<>(borrowed)) {
+            statement.release();
+        }
+        borrowed.clear();
+    }
+
+    // 与连接池归还连接时的行为一致: 手动提交模式下有未提交的修改时回滚, 避免修改与行锁泄漏给下一个借用者
+    private void rollbackCachedWork() throws SQLException {
+        if (cachedExecuted) {
+            cachedExecuted = false;
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+            }
+        }
+    }
+
+    // 归还缓存语句, 回滚缓存语句未提交的修改, 然后关闭(归还)被包装的连接
+    private void closeTarget() throws SQLException {
+        try {
+            releaseStatements();
+            rollbackCachedWork();
+        } finally {
+            try {
+                conn.close();
+            } finally {
+                fireClosed();
+            }
+        }
+    }
+
+    private void fireClosed() {
+        if (listener != null && !released) {
+            released = true;
+            listener.onClose(this, System.nanoTime() - acquiredAt);
+        }
     }
 
 
@@ -38,22 +152,25 @@ public class CustomConnection implements Connection {
 
     // 多连接事务关闭时调用
     public void closeMultiTx() throws SQLException {
-        conn.close();
+        closeTarget();
     }
 
     // 多连接事务提交时调用
     public void commitMultiTx() throws SQLException {
         conn.commit();
+        cachedExecuted = false;
     }
 
     public void rollbackMultiTx() throws SQLException {
         conn.rollback();
+        cachedExecuted = false;
     }
     @Override
     public void commit() throws SQLException {
         // 未开启多连接事务, 不拦截提交操作
         if(!TransactionContext.txIsOpen()){
             conn.commit();
+            cachedExecuted = false;
         }
     }
 
@@ -61,13 +178,14 @@ public class CustomConnection implements Connection {
     public void rollback() throws SQLException {
         if(!TransactionContext.txIsOpen()) {
             conn.rollback();
+            cachedExecuted = false;
         }
     }
 
     @Override
     public void close() throws SQLException {
         if(!TransactionContext.txIsOpen()) {
-            conn.close();
+            closeTarget();
         }
     }
 
@@ -88,6 +206,9 @@ public class CustomConnection implements Connection {
 
     @Override
     public PreparedStatement prepareStatement(String sql) throws SQLException {
+        if (statementCache != null) {
+            return prepareCached(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, 0, PreparedStatementCache.NO_GENERATED_KEYS);
+        }
         return conn.prepareStatement(sql);
     }
 
@@ -143,11 +264,14 @@ public class CustomConnection implements Connection {
 
     @Override
     public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
-        return conn.createStatement();
+        return conn.createStatement(resultSetType, resultSetConcurrency);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        if (statementCache != null) {
+            return prepareCached(sql, resultSetType, resultSetConcurrency, 0, PreparedStatementCache.NO_GENERATED_KEYS);
+        }
         return conn.prepareStatement(sql, resultSetType, resultSetConcurrency);
     }
 
@@ -163,156 +287,166 @@ public class CustomConnection implements Connection {
 
     @Override
     public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
-
+        conn.setTypeMap(map);
     }
 
     @Override
     public void setHoldability(int holdability) throws SQLException {
-
+        conn.setHoldability(holdability);
     }
 
     @Override
     public int getHoldability() throws SQLException {
-        return 0;
+        return conn.getHoldability();
     }
 
     @Override
     public Savepoint setSavepoint() throws SQLException {
-        return null;
+        return conn.setSavepoint();
     }
 
     @Override
     public Savepoint setSavepoint(String name) throws SQLException {
-        return null;
+        return conn.setSavepoint(name);
     }
 
     @Override
     public void rollback(Savepoint savepoint) throws SQLException {
-
+        conn.rollback(savepoint);
     }
 
     @Override
     public void releaseSavepoint(Savepoint savepoint) throws SQLException {
-
+        conn.releaseSavepoint(savepoint);
     }
 
     @Override
     public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
-        return null;
+        return conn.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
-        return null;
+        if (statementCache != null) {
+            return prepareCached(sql, resultSetType, resultSetConcurrency, resultSetHoldability, PreparedStatementCache.NO_GENERATED_KEYS);
+        }
+        return conn.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
     }
 
     @Override
     public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
-        return null;
+        return conn.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
-        return null;
+        if (statementCache != null) {
+            return prepareCached(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, 0, autoGeneratedKeys);
+        }
+        return conn.prepareStatement(sql, autoGeneratedKeys);
     }
 
+    // 指定列名/列下标返回生成键的语句较少见, 不进入缓存
     @Override
     public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
-        return null;
+        return conn.prepareStatement(sql, columnIndexes);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
-        return null;
+        return conn.prepareStatement(sql, columnNames);
     }
 
     @Override
     public Clob createClob() throws SQLException {
-        return null;
+        return conn.createClob();
     }
 
     @Override
     public Blob createBlob() throws SQLException {
-        return null;
+        return conn.createBlob();
     }
 
     @Override
     public NClob createNClob() throws SQLException {
-        return null;
+        return conn.createNClob();
     }
 
     @Override
     public SQLXML createSQLXML() throws SQLException {
-        return null;
+        return conn.createSQLXML();
     }
 
     @Override
     public boolean isValid(int timeout) throws SQLException {
-        return false;
+        return conn.isValid(timeout);
     }
 
     @Override
     public void setClientInfo(String name, String value) throws SQLClientInfoException {
-
+        conn.setClientInfo(name, value);
     }
 
     @Override
     public void setClientInfo(Properties properties) throws SQLClientInfoException {
-
+        conn.setClientInfo(properties);
     }
 
     @Override
     public String getClientInfo(String name) throws SQLException {
-        return null;
+        return conn.getClientInfo(name);
     }
 
     @Override
     public Properties getClientInfo() throws SQLException {
-        return null;
+        return conn.getClientInfo();
     }
 
     @Override
     public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
-        return null;
+        return conn.createArrayOf(typeName, elements);
     }
 
     @Override
     public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
-        return null;
+        return conn.createStruct(typeName, attributes);
     }
 
     @Override
     public void setSchema(String schema) throws SQLException {
-
+        conn.setSchema(schema);
     }
 
     @Override
     public String getSchema() throws SQLException {
-        return null;
+        return conn.getSchema();
     }
 
     @Override
     public void abort(Executor executor) throws SQLException {
-
+        conn.abort(executor);
     }
 
     @Override
     public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
-
+        conn.setNetworkTimeout(executor, milliseconds);
     }
 
     @Override
     public int getNetworkTimeout() throws SQLException {
-        return 0;
+        return conn.getNetworkTimeout();
     }
 
     @Override
     public <T> T unwrap(Class<T> iface) throws SQLException {
-        return null;
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return conn.unwrap(iface);
     }
 
     @Override
     public boolean isWrapperFor(Class<?> iface) throws SQLException {
-        return false;
+        return iface.isInstance(this) || conn.isWrapperFor(iface);
     }
 }
@@ -0,0 +1,178 @@
+package cn.wzz.middleware.db.router.dynamic;
+
+import cn.wzz.middleware.db.router.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 数据源初始化: 并行创建、懒加载与启动预热, 并记录每个数据源的初始化耗时
+ * 1. create: 非懒加载时在临时线程池上并行创建全部连接池, 任一创建失败时关闭已创建的连接池后抛出;
+ *    懒加载时只包装为 LazyDataSource
+ * 2. warmUp: 并行地为每个数据源建立若干连接后归还, 使连接池在应用就绪前完成启动;
+ *    尚未初始化的 LazyDataSource 跳过, 不因预热提前创建懒加载的连接池
+ * 线程池只在启动阶段使用, 每个阶段结束后关闭
+ */
+public class DataSourceInitializer {
+
+    private static final Logger logger = LoggerFactory.getLogger(DataSourceInitializer.class);
+
+    private final int threads;
+
+    private final boolean lazy;
+
+    private final Map<String, ShardInitTiming> timings = new LinkedHashMap<>();
+
+    public DataSourceInitializer(int threads, boolean lazy) {
+        this.threads = Math.max(1, threads);
+        this.lazy = lazy;
+    }
+
+    /**
+     * @param factories 数据源名称 -> 创建数据源
+     * @return 数据源名称 -> 数据源, 顺序与 factories 一致
+     */
+    public Map<String, DataSource> create(Map<String, Callable<DataSource>> factories) throws Exception {
+        Map<String, DataSource> dataSources = new LinkedHashMap<>();
+        if (lazy) {
+            for (Map.Entry<String, Callable<DataSource>> entry : factories.entrySet()) {
+                dataSources.put(entry.getKey(), new LazyDataSource(entry.getValue(), timing(entry.getKey())));
+            }
+            return dataSources;
+        }
+
+        List<String> names = new ArrayList<>(factories.keySet());
+        List<Callable<DataSource>> tasks = new ArrayList<>(names.size());
+        // 已创建成功的数据源, 任一创建失败时全部关闭, 避免连接池线程与连接泄漏
+        List<DataSource> opened = Collections.synchronizedList(new ArrayList<>());
+        for (String name : names) {
+            Callable<DataSource> factory = factories.get(name);
+            ShardInitTiming timing = timing(name);
+            tasks.add(() -> {
+                long start = System.nanoTime();
+                DataSource ds = factory.call();
+                opened.add(ds);
+                timing.created(System.nanoTime() - start);
+                return ds;
+            });
+        }
+        List<DataSource> created;
+        try {
+            created = invokeAll(tasks);
+        } catch (Exception e) {
+            synchronized (opened) {
+                for (DataSource ds : opened) {
+                    close(ds, e);
+                }
+            }
+            throw e;
+        }
+        for (int i = 0; i < names.size(); i++) {
+            dataSources.put(names.get(i), created.get(i));
+        }
+        return dataSources;
+    }
+
+    /**
+     * 预热: 每个数据源同时持有 connections 个连接后再归还, 单个数据源失败只记录错误, 不影响启动
+     */
+    public void warmUp(Map<String, DataSource> dataSources, int connections) {
+        List<Callable<Object>> tasks = new ArrayList<>(dataSources.size());
+        for (Map.Entry<String, DataSource> entry : dataSources.entrySet()) {
+            DataSource ds = entry.getValue();
+            if (ds instanceof LazyDataSource && !((LazyDataSource) ds).isInitialized()) {
+                logger.debug("[DataSourceInitializer] skip warm up of lazy datasource {}", entry.getKey());
+                continue;
+            }
+            ShardInitTiming timing = timing(entry.getKey());
+            tasks.add(() -> {
+                long start = System.nanoTime();
+                List<Connection> opened = new ArrayList<>(connections);
+                try {
+                    for (int i = 0; i < connections; i++) {
+                        opened.add(ds.getConnection());
+                    }
+                    timing.warmedUp(System.nanoTime() - start, opened.size());
+                } catch (Exception e) {
+                    timing.failed(e);
+                    logger.warn("[DataSourceInitializer] warm up {} failed", timing.getName(), e);
+                } finally {
+                    for (Connection conn : opened) {
+                        conn.close();
+                    }
+                }
+                return null;
+            });
+        }
+        try {
+            invokeAll(tasks);
+        } catch (Exception e) {
+            logger.warn("[DataSourceInitializer] warm up failed", e);
+        }
+    }
+
+    private static void close(DataSource ds, Exception cause) {
+        if (!(ds instanceof AutoCloseable)) {
+            return;
+        }
+        try {
+            ((AutoCloseable) ds).close();
+        } catch (Exception e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) throws Exception {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (threads == 1 || tasks.size() <= 1) {
+            for (Callable<T> task : tasks) {
+                results.add(task.call());
+            }
+            return results;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, tasks.size()),
+                new NamedThreadFactory("db-router-init"));
+        try {
+            for (Future<T> future : executor.invokeAll(tasks)) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private synchronized ShardInitTiming timing(String name) {
+        ShardInitTiming timing = timings.get(name);
+        if (timing == null) {
+            timing = new ShardInitTiming(name);
+            timings.put(name, timing);
+        }
+        return timing;
+    }
+
+    public synchronized Collection<ShardInitTiming> getTimings() {
+        return new ArrayList<>(timings.values());
+    }
+
+    public boolean isLazy() {
+        return lazy;
+    }
+}
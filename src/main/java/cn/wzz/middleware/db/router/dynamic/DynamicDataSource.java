@@ -1,14 +1,20 @@
 package cn.wzz.middleware.db.router.dynamic;
 
-import cn.wzz.middleware.db.router.context.ConnectionContext;
-import cn.wzz.middleware.db.router.context.DBContextHolder;
-import cn.wzz.middleware.db.router.context.TransactionContext;
-import cn.wzz.middleware.db.router.util.StringUtils;
+import cn.wzz.middleware.db.router.bulkhead.ShardBulkhead;
+import cn.wzz.middleware.db.router.context.RouteContext;
+import cn.wzz.middleware.db.router.metrics.RouterMetrics;
+import cn.wzz.middleware.db.router.replica.ReplicaSet;
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+import cn.wzz.middleware.db.router.tx.BranchXid;
+import cn.wzz.middleware.db.router.tx.XaDialect;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.Map;
 
 /**
@@ -22,73 +28,193 @@ public class DynamicDataSource extends AbstractRoutingDataSource {
     @Value("${router.jdbc.datasource.default}")
     private String defaultDataSource;
 
+    // XA 模式下连接加入全局事务时使用, 本地事务模式为 null
+    private XaDialect xaDialect;
+
+    // 数据源名称 -> 从库集合, 只包含配置了从库的分库
+    private Map<Object, ReplicaSet> replicaSets = Collections.emptyMap();
+
+    // 数据源名称 -> 主库舱壁, 为空时不限制并发
+    private Map<Object, ShardBulkhead> bulkheads = Collections.emptyMap();
+
+    // 按物理连接缓存 PreparedStatement, 为 null 时不缓存
+    private PreparedStatementCache statementCache;
+
+    // 获取连接耗时度量, 默认不记录
+    private RouterMetrics routerMetrics = RouterMetrics.NOOP;
+
     /**
      * 重写 getConnection:
      * 1. 父类 getConnection 获取的连接, 使用装饰器包装连接对象
      * 2. 若开启了多连接事务, 设置自动提交关闭, 并添加连接到集合中
+     * 3. 读请求且不在事务中时, 从该分库的从库获取连接, 从库不可用时回退到主库;
+     *    Spring 事务同步范围内会绑定并复用连接, 即使设置了读标记也使用主库
+     * 4. 主库配置了舱壁时, 先申请许可再进入连接池, 分库过载或熔断时快速失败
+     * 路由结果与事务状态均从同一个 RouteContext 中读取, 整个过程只访问一次 ThreadLocal
      */
     @Override
     public Connection getConnection() throws SQLException {
-        CustomConnection conn = null;
-        if(TransactionContext.txIsOpen()) {
-            // 查询指定数据源是否已经存在连接, 若存在, 返回缓存的连接对象
-            // 若不存在, 生成新的连接对象, 并缓存到 map 中
-            Object dsKey = determineCurrentLookupKey();
-            Map<Object, Connection> connMap = ConnectionContext.getConnMap();
-            if (connMap.containsKey(dsKey)) {
-                return connMap.get(dsKey);
-            }
+        return getConnection(RouteContext.current(), null, null);
+    }
 
-            conn = new CustomConnection(super.getConnection());
-            // 设置自动提交关闭, 并且将添加到 连接集合中
-            conn.setAutoCommit(false);
-            ConnectionContext.addConnection(conn);
-            // 缓存到 Map
-            connMap.put(dsKey, conn);
-        } else {
-            conn = new CustomConnection(super.getConnection());
+    /**
+     * 指定用户名密码时与 getConnection() 走相同的从库路由、舱壁与度量, 只是向连接池传递用户名密码
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getConnection(RouteContext.current(), username, password);
+    }
+
+    // username 为 null 时使用连接池配置的账号
+    private Connection getConnection(RouteContext ctx, String username, String password) throws SQLException {
+        Object dsKey = lookupKey(ctx);
+        if (!ctx.isTxOpen()) {
+            if (ctx.isRead() && !replicaSets.isEmpty() && !inSpringTransaction()) {
+                ReplicaSet replicaSet = replicaSets.get(dsKey);
+                CustomConnection conn = replicaSet == null ? null : replicaSet.getConnection(dsKey, username, password);
+                if (conn != null) {
+                    conn.setStatementCache(statementCache);
+                    return conn;
+                }
+            }
+            return open(dsKey, username, password);
         }
 
+        // 查询指定数据源是否已经存在连接, 若存在, 返回缓存的连接对象
+        // 若不存在, 生成新的连接对象, 并缓存到 map 中
+        CustomConnection conn = ctx.getTxConnection(dsKey);
+        if (conn != null) {
+            return conn;
+        }
+        conn = open(dsKey, username, password);
+        // 设置自动提交关闭(XA 模式下开启分支), 并且将添加到 连接集合中
+        enlist(ctx, dsKey, conn);
         return conn;
     }
 
-    @Override
-    public Connection getConnection(String username, String password) throws SQLException {
-        CustomConnection conn = null;
-        if(TransactionContext.txIsOpen()) {
-            // 查询指定数据源是否已经存在连接, 若存在, 返回缓存的连接对象
-            // 若不存在, 生成新的连接对象, 并缓存到 map 中
-            Object dsKey = determineCurrentLookupKey();
-            Map<Object, Connection> connMap = ConnectionContext.getConnMap();
-            if (connMap.containsKey(dsKey)) {
-                return connMap.get(dsKey);
-            }
+    private static boolean inSpringTransaction() {
+        return TransactionSynchronizationManager.isSynchronizationActive()
+                || TransactionSynchronizationManager.isActualTransactionActive();
+    }
 
-            conn = new CustomConnection(super.getConnection(username, password));
-            // 设置自动提交关闭, 并且将添加到 连接集合中
-            conn.setAutoCommit(false);
-            ConnectionContext.addConnection(conn);
-            // 缓存到 Map 中
-            connMap.put(dsKey, conn);
-        } else {
-            conn = new CustomConnection(super.getConnection(username, password));
+    // 获取主库连接, 配置了舱壁时连接关闭才释放许可
+    private CustomConnection open(Object dsKey, String username, String password) throws SQLException {
+        ShardBulkhead bulkhead = bulkheads.isEmpty() ? null : bulkheads.get(dsKey);
+        if (bulkhead == null) {
+            return wrap(acquire(dsKey, username, password), dsKey);
+        }
+        long acquiredAt = bulkhead.acquire();
+        Connection target;
+        try {
+            target = acquire(dsKey, username, password);
+        } catch (SQLException | RuntimeException e) {
+            bulkhead.onAcquireFailed(acquiredAt);
+            throw e;
         }
+        CustomConnection conn = wrap(target, dsKey);
+        bulkhead.onAcquired(conn, acquiredAt);
+        return conn;
+    }
 
+    private CustomConnection wrap(Connection target, Object dsKey) {
+        CustomConnection conn = new CustomConnection(target, dsKey);
+        conn.setStatementCache(statementCache);
         return conn;
     }
 
+    // 从目标数据源的连接池获取连接, 开启度量时记录耗时
+    private Connection acquire(Object dsKey, String username, String password) throws SQLException {
+        DataSource dataSource = determineTargetDataSource(dsKey);
+        if (!routerMetrics.isEnabled()) {
+            return username == null ? dataSource.getConnection() : dataSource.getConnection(username, password);
+        }
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            Connection conn = username == null ? dataSource.getConnection() : dataSource.getConnection(username, password);
+            success = true;
+            return conn;
+        } finally {
+            routerMetrics.recordConnectionAcquire(dsKey, System.nanoTime() - start, success);
+        }
+    }
+
+    private void enlist(RouteContext ctx, Object dsKey, CustomConnection conn) throws SQLException {
+        try {
+            if (ctx.getXaGtrid() != null && xaDialect != null) {
+                xaDialect.start(conn, new BranchXid(ctx.getXaGtrid(), dsKey.toString()));
+            } else {
+                conn.setAutoCommit(false);
+            }
+        } catch (SQLException e) {
+            conn.closeMultiTx();
+            throw e;
+        }
+        ctx.addTxConnection(dsKey, conn);
+    }
+
+    public void setXaDialect(XaDialect xaDialect) {
+        this.xaDialect = xaDialect;
+    }
+
+    public void setReplicaSets(Map<Object, ReplicaSet> replicaSets) {
+        this.replicaSets = replicaSets;
+    }
+
+    public void setBulkheads(Map<Object, ShardBulkhead> bulkheads) {
+        this.bulkheads = bulkheads;
+    }
+
+    public Map<Object, ShardBulkhead> getBulkheads() {
+        return bulkheads;
+    }
+
+    public void setStatementCache(PreparedStatementCache statementCache) {
+        this.statementCache = statementCache;
+    }
+
+    public PreparedStatementCache getStatementCache() {
+        return statementCache;
+    }
+
+    public void setRouterMetrics(RouterMetrics routerMetrics) {
+        this.routerMetrics = routerMetrics;
+    }
+
+    public Map<Object, ReplicaSet> getReplicaSets() {
+        return replicaSets;
+    }
+
     /*
     * AbstractRoutingDataSource#getConnection
     * 1. 通过 determineTargetDataSource 决定目标数据源, 会使用 determineCurrentLookupKey
     *   方法的返回值作为key, 获取数据源对象。
-    * 2. determineCurrentLookupKey 从 ThreadLocal 中获取 dbKey, 与逻辑库名("db")拼接为目标数据库
+    * 2. determineCurrentLookupKey 从 ThreadLocal 中获取路由结果, 使用其预先拼接好的数据源名称(eg: db01)
     * */
     @Override
     protected Object determineCurrentLookupKey() {
-        String dbKey = DBContextHolder.getDBKey();
-        if (StringUtils.isEmpty(dbKey)) {
+        return lookupKey(RouteContext.current());
+    }
+
+    private Object lookupKey(RouteContext ctx) {
+        ShardRoute route = ctx.getRoute();
+        if (route == null) {
             return defaultDataSource;
         }
-        return  "db" + dbKey;
+        return route.getDataSourceKey();
+    }
+
+    /**
+     * 与 AbstractRoutingDataSource#determineTargetDataSource 逻辑一致, 但使用已经计算好的 lookupKey
+     */
+    protected DataSource determineTargetDataSource(Object lookupKey) {
+        DataSource dataSource = getResolvedDataSources().get(lookupKey);
+        if (dataSource == null) {
+            dataSource = getResolvedDefaultDataSource();
+        }
+        if (dataSource == null) {
+            throw new IllegalStateException("Cannot determine target DataSource for lookup key [" + lookupKey + "]");
+        }
+        return dataSource;
     }
 }
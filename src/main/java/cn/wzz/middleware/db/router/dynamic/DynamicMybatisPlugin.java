@@ -2,7 +2,8 @@ package cn.wzz.middleware.db.router.dynamic;
 
 import cn.wzz.middleware.db.router.annotation.RouterStrategy;
 import cn.wzz.middleware.db.router.context.DBContextHolder;
-import cn.wzz.middleware.db.router.util.StringUtils;
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+import org.apache.ibatis.executor.statement.BaseStatementHandler;
 import org.apache.ibatis.executor.statement.RoutingStatementHandler;
 import org.apache.ibatis.executor.statement.StatementHandler;
 import org.apache.ibatis.mapping.BoundSql;
@@ -11,76 +12,143 @@ import org.apache.ibatis.plugin.Interceptor;
 import org.apache.ibatis.plugin.Intercepts;
 import org.apache.ibatis.plugin.Invocation;
 import org.apache.ibatis.plugin.Signature;
-import org.apache.ibatis.reflection.MetaObject;
-import org.apache.ibatis.reflection.SystemMetaObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Field;
 import java.sql.Connection;
+import java.util.Collection;
 import java.util.Properties;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Mybatis拦截器, 通过对 SQL 语句改写, 完成分表操作
+ * Mybatis拦截器, 通过对 SQL 语句改写, 完成分表操作(改写规则见 SqlTableRewriter)
  * StatementHandler#prepare方法使用 BoundSql + MappedStatement配置信息 在连接上创建 Statement 对象
  */
 @Intercepts({@Signature(type = StatementHandler.class, method = "prepare", args = {Connection.class, Integer.class})})
 public class DynamicMybatisPlugin implements Interceptor {
-    // \s匹配空白字符; \w匹配‘[A-Za-z0-9_], 字母、数字、下划线
-    private Pattern pattern = Pattern.compile("(from|into|update)[\\s]{1,}`?(\\w{1,})`?", Pattern.CASE_INSENSITIVE);
-
     private Logger logger = LoggerFactory.getLogger(DynamicMybatisPlugin.class);
 
+    private static final int DEFAULT_SQL_CACHE_SIZE = 1024;
+
+    private static final Field SQL_FIELD;
+
+    // RoutingStatementHandler#delegate 与 BaseStatementHandler#mappedStatement
+    private static final Field DELEGATE_FIELD;
+
+    private static final Field MAPPED_STATEMENT_FIELD;
+
+    static {
+        try {
+            SQL_FIELD = BoundSql.class.getDeclaredField("sql");
+            SQL_FIELD.setAccessible(true);
+            DELEGATE_FIELD = RoutingStatementHandler.class.getDeclaredField("delegate");
+            DELEGATE_FIELD.setAccessible(true);
+            MAPPED_STATEMENT_FIELD = BaseStatementHandler.class.getDeclaredField("mappedStatement");
+            MAPPED_STATEMENT_FIELD.setAccessible(true);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // MappedStatement id -> 是否需要分表
+    private final ConcurrentHashMap<String, Boolean> splitTableCache = new ConcurrentHashMap<>();
+
+    // 改写后的 SQL 缓存
+    private final SqlRewriteCache sqlRewriteCache;
+
+    private final SqlTableRewriter sqlTableRewriter;
+
+    public DynamicMybatisPlugin() {
+        this(DEFAULT_SQL_CACHE_SIZE, null);
+    }
+
+    /**
+     * @param sqlCacheSize   改写结果缓存容量
+     * @param shardingTables 需要分表的逻辑表名, 为空时只改写 FROM / INTO / UPDATE 直接跟随的表
+     */
+    public DynamicMybatisPlugin(int sqlCacheSize, Collection<String> shardingTables) {
+        this.sqlRewriteCache = new SqlRewriteCache(sqlCacheSize);
+        this.sqlTableRewriter = new SqlTableRewriter(shardingTables);
+    }
+
     @Override
     public Object intercept(Invocation invocation) throws Throwable {
-        if (StringUtils.isEmpty(DBContextHolder.getTBKey())) {
+        ShardRoute route = DBContextHolder.getRoute();
+        if (route == null) {
             // 不需要执行分表操作
             return invocation.proceed();
         }
 
         RoutingStatementHandler statementHandler = (RoutingStatementHandler) invocation.getTarget();
-        MetaObject handlerMeta = SystemMetaObject.forObject(statementHandler);
 
-        // 先判断 DAO 接口操作的数据表是否需要进行路由
-        MappedStatement ms = (MappedStatement) handlerMeta.getValue("delegate.mappedStatement");
-        String id = ms.getId();  // <namespace>.<statement_id>
-        String namespace = id.substring(0, id.lastIndexOf('.'));
-        Class<?> clazz = Class.forName(namespace);
-        RouterStrategy routerStrategy = clazz.getAnnotation(RouterStrategy.class);
-        if (routerStrategy != null && !routerStrategy.splitTable()) {
-            // 默认分库+分表, 只分库不分表需要显示指定
-            logger.info("[DynamicMybatisPlugin.intercept] don't need to split table");
+        // 先判断 DAO 接口操作的数据表是否需要进行路由, 判断结果按 MappedStatement 缓存
+        MappedStatement ms = (MappedStatement) MAPPED_STATEMENT_FIELD.get(DELEGATE_FIELD.get(statementHandler));
+        if (!needSplitTable(ms)) {
             // 不进行分表操作
             return invocation.proceed();
         }
 
-        // 获取BoundSql对象, 进行正则匹配, 修改逻辑表名为实际表名, 随后反射修改 sql
-        BoundSql boundSql = (BoundSql) handlerMeta.getValue("delegate.boundSql");
+        // 获取BoundSql对象, 优先从缓存获取改写后的 SQL, 未命中时由 SqlTableRewriter 扫描 SQL, 修改逻辑表名为实际表名
+        BoundSql boundSql = statementHandler.getBoundSql();
         String sql = boundSql.getSql();
-        Matcher matcher = pattern.matcher(sql);
+        String tbKey = route.getTbKey();
+        String rewritten = sqlRewriteCache.get(sql, tbKey);
+        if (rewritten == null) {
+            rewritten = rewriteSql(sql, tbKey);
+            sqlRewriteCache.put(sql, tbKey, rewritten);
+        }
 
-        boolean find = matcher.find();
-        logger.info("[DynamicMybatisPlugin.intercept] original sql: {}, matcher.find()={}, tbKey: {}",
-                sql, find, DBContextHolder.getTBKey());
+        // 没有需要改写的表时 SqlTableRewriter 返回原 SQL 对象; 缓存命中时可能是内容相同的另一个对象, 重复设置不影响结果
+        if (rewritten != sql) {
+            // 反射修改
+            SQL_FIELD.set(boundSql, rewritten);
+        }
 
-        if (find) {
-            String group1 = matcher.group(1);
-            String tbName = matcher.group(2);
-            tbName = tbName + "_" + DBContextHolder.getTBKey();
-            sql = matcher.replaceAll(group1 + " " + tbName);
+        return invocation.proceed();
+    }
 
-            logger.info("[DynamicMybatisPlugin.intercept] table name: {}, sql: {}", tbName, sql);
+    /**
+     * 判断 MappedStatement 操作的数据表是否需要分表, 首次解析 namespace 对应的 @RouterStrategy 后缓存结果,
+     * 之后只是一次无锁的 Map 查找, 不再调用 Class.forName
+     */
+    private boolean needSplitTable(MappedStatement ms) {
+        String id = ms.getId();  // <namespace>.<statement_id>
+        Boolean splitTable = splitTableCache.get(id);
+        if (splitTable == null) {
+            splitTable = resolveSplitTable(id);
+            splitTableCache.put(id, splitTable);
+        }
+        return splitTable;
+    }
 
-            // 反射修改
-            Field field = boundSql.getClass().getDeclaredField("sql");
-            field.setAccessible(true);
-            field.set(boundSql, sql);
-            field.setAccessible(false);
+    private Boolean resolveSplitTable(String id) {
+        String namespace = id.substring(0, id.lastIndexOf('.'));
+        Class<?> clazz;
+        try {
+            clazz = Class.forName(namespace);
+        } catch (ClassNotFoundException e) {
+            // namespace 不是 Mapper 接口(如纯 XML 映射), 按默认策略分表
+            logger.warn("[DynamicMybatisPlugin] mapper class {} not found, split table by default", namespace);
+            return Boolean.TRUE;
+        }
+        RouterStrategy routerStrategy = clazz.getAnnotation(RouterStrategy.class);
+        if (routerStrategy != null && !routerStrategy.splitTable()) {
+            // 默认分库+分表, 只分库不分表需要显示指定
+            logger.info("[DynamicMybatisPlugin] {} don't need to split table", namespace);
+            return Boolean.FALSE;
         }
+        return Boolean.TRUE;
+    }
 
-        return invocation.proceed();
+    private String rewriteSql(String sql, String tbKey) {
+        String rewritten = sqlTableRewriter.rewrite(sql, tbKey);
+        logger.info("[DynamicMybatisPlugin.intercept] original sql: {}, tbKey: {}, sql: {}", sql, tbKey, rewritten);
+        return rewritten;
+    }
+
+    public SqlRewriteCache getSqlRewriteCache() {
+        return sqlRewriteCache;
     }
 
     @Override
@@ -0,0 +1,79 @@
+package cn.wzz.middleware.db.router.dynamic;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+
+/**
+ * 懒加载数据源: 首次获取连接(即首次路由到该分库)时才创建连接池
+ * 创建失败时不缓存结果, 下次获取连接时重试
+ */
+public class LazyDataSource extends AbstractDataSource {
+
+    private final Callable<DataSource> factory;
+
+    private final ShardInitTiming timing;
+
+    private volatile DataSource target;
+
+    public LazyDataSource(Callable<DataSource> factory, ShardInitTiming timing) {
+        this.factory = factory;
+        this.timing = timing;
+    }
+
+    public DataSource getTarget() throws SQLException {
+        DataSource ds = target;
+        if (ds != null) {
+            return ds;
+        }
+        synchronized (this) {
+            if (target == null) {
+                long start = System.nanoTime();
+                try {
+                    target = factory.call();
+                } catch (Exception e) {
+                    timing.failed(e);
+                    throw new SQLException("[LazyDataSource] create datasource " + timing.getName() + " failed", e);
+                }
+                timing.created(System.nanoTime() - start);
+            }
+            return target;
+        }
+    }
+
+    public boolean isInitialized() {
+        return target != null;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return getTarget().getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getTarget().getConnection(username, password);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return (T) this;
+        }
+        return getTarget().unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || getTarget().isWrapperFor(iface);
+    }
+
+    @Override
+    public String toString() {
+        return "LazyDataSource{" + timing.getName() + (isInitialized() ? ", initialized" : "") + '}';
+    }
+}
@@ -0,0 +1,254 @@
+package cn.wzz.middleware.db.router.dynamic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按物理连接缓存 PreparedStatement: 改写后的物理 SQL 随分表后缀变化, 分表较多时驱动自身的语句缓存容易被挤满,
+ * 缓存后重复执行的路由语句不再重新 prepare(MySQL useServerPrepStmts=true 时省去一次服务端预编译)。
+ * 1. 缓存挂在物理连接上(通过 unwrap 取得连接池内部的连接), 连接归还连接池后再次借出时仍然可以命中;
+ *    连接池的连接代理在归还时会关闭其创建的全部语句, 因此语句只能直接在物理连接上创建,
+ *    连接池关闭物理连接时由驱动关闭这些语句
+ * 2. 语句不经过连接池的语句代理, 连接池感知不到语句执行, 也就不会在归还手动提交模式的连接时回滚;
+ *    由 CustomConnection 在关闭时代为回滚(执行过缓存语句且 autoCommit=false)
+ * 3. 每个物理连接一个 LRU, key 为 (SQL, resultSetType, resultSetConcurrency, resultSetHoldability, autoGeneratedKeys),
+ *    超出容量时关闭最久未使用的语句
+ * 4. 借出时从 LRU 中移除, 同一条 SQL 同时被使用两次时第二次新建语句; 调用方 close 时重置语句状态并放回 LRU
+ * 5. 返回给调用方的是与物理语句一一对应的 CachedStatement 句柄, 命中时不分配新对象
+ * 6. 连接池关闭的物理连接在发现新物理连接时清理, 连接池稳定不再创建连接时, 每隔 purgeInterval 在 prepare 中清理一次,
+ *    避免已关闭连接的语句与 LRU 一直被引用
+ */
+public class PreparedStatementCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(PreparedStatementCache.class);
+
+    // 未指定 autoGeneratedKeys 时 key 中使用的值
+    static final int NO_GENERATED_KEYS = -1;
+
+    private static final long DEFAULT_PURGE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final int maximumSize;
+
+    private final long purgeIntervalNanos;
+
+    // 物理连接 -> 语句 LRU, 物理连接关闭后在发现新连接时或每隔 purgeInterval 清理
+    private final ConcurrentHashMap<Connection, ConnectionCache> caches = new ConcurrentHashMap<>();
+
+    // 上次清理的时间(System.nanoTime), 只有 CAS 成功的线程执行定期清理
+    private final AtomicLong lastPurgeAt = new AtomicLong(System.nanoTime());
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * @param maximumSize 每个物理连接缓存的语句数
+     */
+    public PreparedStatementCache(int maximumSize) {
+        this(maximumSize, DEFAULT_PURGE_INTERVAL_NANOS);
+    }
+
+    /**
+     * @param maximumSize 每个物理连接缓存的语句数
+     * @param purgeIntervalNanos 清理已关闭物理连接的最长间隔
+     */
+    public PreparedStatementCache(int maximumSize, long purgeIntervalNanos) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        }
+        if (purgeIntervalNanos <= 0) {
+            throw new IllegalArgumentException("purgeIntervalNanos must be positive: " + purgeIntervalNanos);
+        }
+        this.maximumSize = maximumSize;
+        this.purgeIntervalNanos = purgeIntervalNanos;
+    }
+
+    /**
+     * 从缓存借出语句, 未命中时在物理连接上创建
+     * @param owner 返回给调用方的连接, 作为代理语句的 getConnection() 结果
+     */
+    PreparedStatement prepare(CustomConnection owner, Connection conn, String sql, int resultSetType,
+                              int resultSetConcurrency, int resultSetHoldability, int autoGeneratedKeys) throws SQLException {
+        Connection physical = conn.isWrapperFor(Connection.class) ? conn.unwrap(Connection.class) : conn;
+        ConnectionCache cache = caches.get(physical);
+        if (cache == null) {
+            lastPurgeAt.set(System.nanoTime());
+            purgeClosed();
+            cache = new ConnectionCache();
+            ConnectionCache prev = caches.putIfAbsent(physical, cache);
+            if (prev != null) {
+                cache = prev;
+            }
+        } else {
+            long last = lastPurgeAt.get();
+            long now = System.nanoTime();
+            if (now - last >= purgeIntervalNanos && lastPurgeAt.compareAndSet(last, now)) {
+                purgeClosed();
+            }
+        }
+
+        StatementKey key = new StatementKey(sql, resultSetType, resultSetConcurrency, resultSetHoldability, autoGeneratedKeys);
+        CachedStatement stmt = cache.borrow(key);
+        if (stmt == null || stmt.isTargetClosed()) {
+            missCount.increment();
+            stmt = new CachedStatement(cache, key, create(physical, key));
+        } else {
+            hitCount.increment();
+        }
+        stmt.open(owner);
+        owner.statementBorrowed(stmt);
+        return stmt;
+    }
+
+    private static PreparedStatement create(Connection physical, StatementKey key) throws SQLException {
+        if (key.autoGeneratedKeys != NO_GENERATED_KEYS) {
+            return physical.prepareStatement(key.sql, key.autoGeneratedKeys);
+        }
+        if (key.resultSetHoldability != 0) {
+            return physical.prepareStatement(key.sql, key.resultSetType, key.resultSetConcurrency, key.resultSetHoldability);
+        }
+        return physical.prepareStatement(key.sql, key.resultSetType, key.resultSetConcurrency);
+    }
+
+    // 移除已经被连接池关闭的物理连接, 语句已由驱动关闭
+    private void purgeClosed() {
+        for (Iterator<Map.Entry<Connection, ConnectionCache>> it = caches.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Connection, ConnectionCache> entry = it.next();
+            try {
+                if (entry.getKey().isClosed()) {
+                    it.remove();
+                }
+            } catch (SQLException e) {
+                it.remove();
+            }
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    public double getHitRate() {
+        long hit = hitCount.sum();
+        long total = hit + missCount.sum();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    /**
+     * @return 缓存的物理连接数
+     */
+    public int getConnectionCount() {
+        return caches.size();
+    }
+
+    @Override
+    public String toString() {
+        return "PreparedStatementCache{connections=" + caches.size() + ", hit=" + getHitCount() + ", miss=" + getMissCount()
+                + ", eviction=" + getEvictionCount() + ", hitRate=" + String.format("%.4f", getHitRate()) + '}';
+    }
+
+    /**
+     * 单个物理连接的语句 LRU, 物理连接同一时间只被一个线程使用, 锁不会产生竞争
+     */
+    final class ConnectionCache {
+
+        private final LinkedHashMap<StatementKey, CachedStatement> lru = new LinkedHashMap<>(16, 0.75f, true);
+
+        synchronized CachedStatement borrow(StatementKey key) {
+            return lru.remove(key);
+        }
+
+        void giveBack(CachedStatement stmt) {
+            CachedStatement evicted = null;
+            CachedStatement duplicate;
+            synchronized (this) {
+                duplicate = lru.put(stmt.key, stmt);
+                if (lru.size() > maximumSize) {
+                    Iterator<CachedStatement> it = lru.values().iterator();
+                    evicted = it.next();
+                    it.remove();
+                }
+            }
+            if (duplicate != null) {
+                closeQuietly(duplicate.getTarget());
+            }
+            if (evicted != null) {
+                evictionCount.increment();
+                closeQuietly(evicted.getTarget());
+            }
+        }
+    }
+
+    static void closeQuietly(PreparedStatement stmt) {
+        if (stmt == null) {
+            return;
+        }
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            logger.debug("close cached statement failed", e);
+        }
+    }
+
+    static final class StatementKey {
+        final String sql;
+        final int resultSetType;
+        final int resultSetConcurrency;
+        final int resultSetHoldability;
+        final int autoGeneratedKeys;
+        final int hash;
+
+        StatementKey(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability, int autoGeneratedKeys) {
+            this.sql = sql;
+            this.resultSetType = resultSetType;
+            this.resultSetConcurrency = resultSetConcurrency;
+            this.resultSetHoldability = resultSetHoldability;
+            this.autoGeneratedKeys = autoGeneratedKeys;
+            int h = sql.hashCode();
+            h = 31 * h + resultSetType;
+            h = 31 * h + resultSetConcurrency;
+            h = 31 * h + resultSetHoldability;
+            this.hash = 31 * h + autoGeneratedKeys;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof StatementKey)) {
+                return false;
+            }
+            StatementKey that = (StatementKey) o;
+            return resultSetType == that.resultSetType && resultSetConcurrency == that.resultSetConcurrency
+                    && resultSetHoldability == that.resultSetHoldability && autoGeneratedKeys == that.autoGeneratedKeys
+                    && sql.equals(that.sql);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
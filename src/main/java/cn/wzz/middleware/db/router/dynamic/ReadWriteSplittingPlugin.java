@@ -0,0 +1,58 @@
+package cn.wzz.middleware.db.router.dynamic;
+
+import cn.wzz.middleware.db.router.context.RouteContext;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Mybatis拦截器, 标记读请求: SELECT 语句执行期间在线程上下文中设置读标记, DynamicDataSource 据此从从库获取连接
+ * 拦截 Executor#query 而不是 StatementHandler#prepare, 因为 prepare 时连接已经获取。
+ * 跨连接事务或 Spring 事务同步范围内不设置读标记: DataSourceUtils 会把连接绑定到当前线程并复用,
+ * 读到从库连接会导致后续写入也发往从库。PROPAGATION_SUPPORTS 等没有实际事务的范围同样会绑定连接,
+ * 因此判断事务同步是否开启, 而不只是判断是否存在实际事务;
+ * 同时 SELECT ... FOR UPDATE 只在事务中有意义, 因此也会留在主库。
+ */
+@Intercepts({
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class}),
+        @Signature(type = Executor.class, method = "queryCursor", args = {MappedStatement.class, Object.class, RowBounds.class})
+})
+public class ReadWriteSplittingPlugin implements Interceptor {
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        MappedStatement ms = (MappedStatement) invocation.getArgs()[0];
+        if (ms.getSqlCommandType() != SqlCommandType.SELECT) {
+            return invocation.proceed();
+        }
+        RouteContext ctx = RouteContext.current();
+        if (ctx.isRead() || ctx.isTxOpen() || TransactionSynchronizationManager.isSynchronizationActive()
+                || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return invocation.proceed();
+        }
+        ctx.setRead(true);
+        try {
+            return invocation.proceed();
+        } finally {
+            ctx.setRead(false);
+        }
+    }
+
+    @Override
+    public Object plugin(Object target) {
+        if (target instanceof Executor) {
+            return Interceptor.super.plugin(target);
+        }
+        return target;
+    }
+}
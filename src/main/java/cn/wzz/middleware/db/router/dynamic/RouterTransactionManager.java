@@ -0,0 +1,37 @@
+package cn.wzz.middleware.db.router.dynamic;
+
+import cn.wzz.middleware.db.router.context.RouteContext;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+import javax.sql.DataSource;
+
+/**
+ * 开启事务时始终从主库获取连接的 DataSourceTransactionManager
+ * doBegin 获取事务连接时事务同步尚未开启, DynamicDataSource 无法据此判断是否处于事务中,
+ * 若外层 @ReadOnly 设置了读标记, 事务连接会取自从库, 事务内的写入也随之发往从库。
+ * 因此 doBegin 期间临时清除读标记, 结束后恢复, 事务之外的读请求仍可使用从库
+ */
+public class RouterTransactionManager extends DataSourceTransactionManager {
+
+    private static final long serialVersionUID = 1L;
+
+    public RouterTransactionManager(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        RouteContext ctx = RouteContext.current();
+        if (!ctx.isRead()) {
+            super.doBegin(transaction, definition);
+            return;
+        }
+        ctx.setRead(false);
+        try {
+            super.doBegin(transaction, definition);
+        } finally {
+            ctx.setRead(true);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package cn.wzz.middleware.db.router.dynamic;
+
+/**
+ * 单个数据源的初始化耗时: 创建连接池对象的耗时与预热(建立连接)的耗时
+ */
+public class ShardInitTiming {
+
+    private final String name;
+
+    private volatile long createNanos = -1;
+
+    private volatile long warmUpNanos = -1;
+
+    private volatile int warmUpConnections;
+
+    private volatile Throwable error;
+
+    public ShardInitTiming(String name) {
+        this.name = name;
+    }
+
+    void created(long nanos) {
+        this.createNanos = nanos;
+    }
+
+    void warmedUp(long nanos, int connections) {
+        this.warmUpNanos = nanos;
+        this.warmUpConnections = connections;
+    }
+
+    void failed(Throwable error) {
+        this.error = error;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return 创建耗时, 懒加载且尚未创建时为 -1
+     */
+    public long getCreateNanos() {
+        return createNanos;
+    }
+
+    /**
+     * @return 预热耗时, 未预热时为 -1
+     */
+    public long getWarmUpNanos() {
+        return warmUpNanos;
+    }
+
+    public int getWarmUpConnections() {
+        return warmUpConnections;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return name + "{create=" + format(createNanos) + ", warmUp=" + format(warmUpNanos)
+                + (warmUpNanos < 0 ? "" : "/" + warmUpConnections + " conn") + (error == null ? "" : ", error=" + error) + '}';
+    }
+
+    private static String format(long nanos) {
+        return nanos < 0 ? "-" : nanos / 1_000_000 + "ms";
+    }
+}
@@ -0,0 +1,148 @@
+package cn.wzz.middleware.db.router.dynamic;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 分表 SQL 改写结果缓存: (原始 SQL, tbKey) -> 改写后的 SQL
+ * 每条逻辑 SQL 最多对应 tbCount 条物理 SQL, 稳态下命中缓存即可, 不再执行正则匹配和字符串拼接。
+ * 改写结果只取决于原始 SQL 与 tbKey, 因此不需要把 MappedStatement id 放进 key,
+ * 两级 Map 的查找过程也不需要创建任何 key 对象。
+ * 容量按原始 SQL 条数限制, 使用 CLOCK 淘汰: 原始 SQL 按写入顺序占用环形数组中的槽位,
+ * 命中时设置访问标记, 淘汰时指针沿环形数组移动, 清除遇到的访问标记, 淘汰第一条没有访问标记的条目。
+ * 命中路径只读写条目自身的标记, 只有写入新的原始 SQL(未命中)时才加锁。
+ */
+public class SqlRewriteCache {
+
+    private final int maximumSize;
+
+    private final ConcurrentHashMap<String, Entry> cache;
+
+    // CLOCK 环形数组, 槽位中为原始 SQL, 由 this 锁保护
+    private final String[] ring;
+
+    // 已占用的槽位数, 由 this 锁保护
+    private int occupied;
+
+    // CLOCK 指针, 由 this 锁保护
+    private int hand;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    public SqlRewriteCache(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        this.cache = new ConcurrentHashMap<>(Math.min(maximumSize, 1024));
+        this.ring = new String[maximumSize];
+    }
+
+    /**
+     * @return 缓存的改写结果, 未命中返回 null
+     */
+    public String get(String sql, String tbKey) {
+        Entry entry = cache.get(sql);
+        if (entry != null) {
+            String rewritten = entry.rewritten.get(tbKey);
+            if (rewritten != null) {
+                entry.touch();
+                hitCount.increment();
+                return rewritten;
+            }
+        }
+        missCount.increment();
+        return null;
+    }
+
+    public void put(String sql, String tbKey, String rewritten) {
+        Entry entry = cache.get(sql);
+        if (entry == null) {
+            Entry created = new Entry();
+            created.rewritten.put(tbKey, rewritten);
+            entry = cache.putIfAbsent(sql, created);
+            if (entry == null) {
+                admit(sql);
+                return;
+            }
+        }
+        entry.touch();
+        entry.rewritten.put(tbKey, rewritten);
+    }
+
+    // 为新写入的原始 SQL 分配槽位, 容量已满时按 CLOCK 淘汰一条
+    private synchronized void admit(String sql) {
+        if (occupied < maximumSize) {
+            ring[occupied++] = sql;
+            return;
+        }
+        while (true) {
+            String candidate = ring[hand];
+            Entry entry = candidate == null ? null : cache.get(candidate);
+            if (entry != null && entry.referenced) {
+                entry.referenced = false;
+                hand = (hand + 1) % maximumSize;
+                continue;
+            }
+            if (entry != null && cache.remove(candidate, entry)) {
+                evictionCount.increment();
+            }
+            ring[hand] = sql;
+            hand = (hand + 1) % maximumSize;
+            return;
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    public double getHitRate() {
+        long hits = hitCount.sum();
+        long total = hits + missCount.sum();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public synchronized void clear() {
+        cache.clear();
+        Arrays.fill(ring, null);
+        occupied = 0;
+        hand = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "SqlRewriteCache{size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + '}';
+    }
+
+    private static final class Entry {
+        final ConcurrentHashMap<String, String> rewritten = new ConcurrentHashMap<>(4);
+
+        // CLOCK 访问标记, 只在未设置时写入, 避免热点条目上的写竞争
+        volatile boolean referenced;
+
+        void touch() {
+            if (!referenced) {
+                referenced = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,445 @@
+package cn.wzz.middleware.db.router.dynamic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 分表 SQL 改写器: 单次线性扫描 SQL, 找出表引用并追加表后缀 "_" + tbKey
+ * 1. 识别 FROM / JOIN / INTO / UPDATE / DELETE ... USING 之后的表, 以及 FROM、UPDATE 中逗号分隔的多张表
+ * 2. 跳过字符串字面量、反引号以外的引号内容、-- / # / 块注释
+ * 3. 只在语句本身和子查询中识别表子句, 函数调用括号内的 FROM(如 EXTRACT(YEAR FROM col))不会被当作表
+ * 4. 配置了分表逻辑表名时, 只改写这些表, 同时改写 "表名.列名" 形式的列限定符;
+ *    未配置时与旧版正则 (from|into|update) 表名 的行为一致, 只改写 FROM / INTO / UPDATE / DELETE 直接跟随的表,
+ *    JOIN、USING 与逗号分隔的后续表可能是不分表的维表, 不做改写; 多表 DELETE 的目标列表可能是别名, 同样不改写;
+ *    列限定符只在与本条语句中被改写的表同名时改写, WITH 子句声明的 CTE 名称不是物理表, 不做改写
+ * 扫描过程不创建子串, 先记录改写位置, 只有确实需要改写时才创建一个 StringBuilder。
+ */
+public class SqlTableRewriter {
+
+    // 关键字编码
+    private static final int KW_NONE = 0;
+    private static final int KW_FROM = 1;
+    private static final int KW_JOIN = 2;
+    private static final int KW_INTO = 3;
+    private static final int KW_UPDATE = 4;
+    private static final int KW_USING = 5;
+    private static final int KW_DELETE = 6;
+    private static final int KW_SELECT = 7;
+    private static final int KW_KEY = 8;
+    private static final int KW_FOR = 9;
+    private static final int KW_WITH = 10;
+    // 结束表列表的关键字
+    private static final int KW_END_LIST = 11;
+    // UPDATE LOW_PRIORITY t 等表名之前的修饰词
+    private static final int KW_MODIFIER = 12;
+    // 其余不影响表识别的关键字(AS、LEFT、DUAL 等)
+    private static final int KW_OTHER = 13;
+
+    private static final String[] KEYWORDS = {
+            "FROM", "JOIN", "STRAIGHT_JOIN", "INTO", "UPDATE", "USING", "DELETE", "SELECT", "WITH", "KEY", "FOR",
+            "WHERE", "SET", "GROUP", "ORDER", "LIMIT", "HAVING", "UNION", "VALUES", "VALUE", "WINDOW", "LOCK",
+            "LOW_PRIORITY", "HIGH_PRIORITY", "DELAYED", "IGNORE", "QUICK",
+            "ON", "AS", "LEFT", "RIGHT", "INNER", "OUTER", "CROSS", "NATURAL", "DUAL", "LATERAL"
+    };
+
+    private static final int[] KEYWORD_CODES = {
+            KW_FROM, KW_JOIN, KW_JOIN, KW_INTO, KW_UPDATE, KW_USING, KW_DELETE, KW_SELECT, KW_WITH, KW_KEY, KW_FOR,
+            KW_END_LIST, KW_END_LIST, KW_END_LIST, KW_END_LIST, KW_END_LIST, KW_END_LIST, KW_END_LIST, KW_END_LIST,
+            KW_END_LIST, KW_END_LIST, KW_END_LIST,
+            KW_MODIFIER, KW_MODIFIER, KW_MODIFIER, KW_MODIFIER, KW_MODIFIER,
+            KW_OTHER, KW_OTHER, KW_OTHER, KW_OTHER, KW_OTHER, KW_OTHER, KW_OTHER, KW_OTHER, KW_OTHER, KW_OTHER
+    };
+
+    // 括号嵌套超过该深度后不再识别表子句
+    private static final int MAX_DEPTH = 63;
+
+    // 需要分表的逻辑表名, 为空表示只改写 FROM / INTO / UPDATE / DELETE 直接跟随的表
+    private final String[] tables;
+
+    public SqlTableRewriter() {
+        this(null);
+    }
+
+    public SqlTableRewriter(Collection<String> shardingTables) {
+        List<String> names = new ArrayList<>();
+        if (shardingTables != null) {
+            for (String table : shardingTables) {
+                if (table != null && !table.trim().isEmpty()) {
+                    names.add(table.trim().toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        this.tables = names.toArray(new String[0]);
+    }
+
+    /**
+     * @return 改写后的 SQL, 没有需要改写的表时返回原 SQL 对象
+     */
+    public String rewrite(String sql, String tbKey) {
+        final int len = sql.length();
+        final boolean rewriteAll = tables.length == 0;
+
+        // 改写位置, 每两个元素为一个名称的 [start, end), 待确认的列限定符 start 取反
+        int[] edits = null;
+        int editCount = 0;
+        // WITH 子句声明的 CTE 名称, 每两个元素为一个名称的 [start, end)
+        int[] ctes = null;
+        int cteCount = 0;
+        // WITH 子句所在的括号层, -1 表示不在 WITH 子句中
+        int withDepth = -1;
+        boolean expectCte = false;
+
+        int depth = 0;
+        // 第 d 位: 第 d 层括号内是否识别表子句(第 0 层为语句本身)
+        long activeBits = 1L;
+        // 第 d 位: 进入第 d+1 层括号前, 第 d 层是否处于表列表中
+        long listBits = 0L;
+
+        boolean expectTable = false;
+        // 期望的表是否紧跟在 FROM / INTO / UPDATE / DELETE 之后, 而不是 JOIN、USING 或逗号之后
+        boolean leadingTable = false;
+        boolean inTableList = false;
+        boolean deleteTargets = false;
+        boolean parenFresh = false;
+        int prevKeyword = KW_NONE;
+
+        int i = 0;
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (c <= ' ') {
+                i++;
+                continue;
+            }
+            if (c == '-' && i + 1 < len && sql.charAt(i + 1) == '-') {
+                i = skipLine(sql, i + 2);
+                continue;
+            }
+            if (c == '#') {
+                i = skipLine(sql, i + 1);
+                continue;
+            }
+            if (c == '/' && i + 1 < len && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? len : end + 2;
+                continue;
+            }
+            if (c == '\'' || c == '"') {
+                i = skipQuoted(sql, i, c);
+                parenFresh = false;
+                prevKeyword = KW_NONE;
+                continue;
+            }
+
+            int nameStart;
+            int nameEnd;
+            int next;
+            int keyword;
+            if (c == '`') {
+                nameStart = i + 1;
+                int end = sql.indexOf('`', nameStart);
+                nameEnd = end < 0 ? len : end;
+                next = end < 0 ? len : end + 1;
+                keyword = KW_NONE;
+            } else if (isIdentifierStart(c)) {
+                nameStart = i;
+                next = i + 1;
+                while (next < len && isIdentifierPart(sql.charAt(next))) {
+                    next++;
+                }
+                nameEnd = next;
+                keyword = keyword(sql, nameStart, nameEnd);
+            } else if (c >= '0' && c <= '9') {
+                // 数字字面量
+                i++;
+                while (i < len && (isIdentifierPart(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                parenFresh = false;
+                prevKeyword = KW_NONE;
+                continue;
+            } else {
+                if (c == '(') {
+                    boolean active = depth <= MAX_DEPTH && (activeBits >>> depth & 1L) != 0;
+                    if (depth < MAX_DEPTH) {
+                        listBits = inTableList ? listBits | (1L << depth) : listBits & ~(1L << depth);
+                        // FROM ( 之后是子查询或括号包裹的表, 其余括号等确认首个 token 为 SELECT 后再生效
+                        boolean tableParen = active && expectTable;
+                        activeBits = tableParen ? activeBits | (1L << (depth + 1)) : activeBits & ~(1L << (depth + 1));
+                        inTableList = tableParen && inTableList;
+                    }
+                    depth++;
+                    parenFresh = true;
+                } else if (c == ')') {
+                    if (depth > 0) {
+                        depth--;
+                        if (depth < MAX_DEPTH) {
+                            inTableList = (listBits >>> depth & 1L) != 0;
+                        }
+                    }
+                    if (depth < withDepth) {
+                        withDepth = -1;
+                        expectCte = false;
+                    }
+                    expectTable = false;
+                    parenFresh = false;
+                } else if (c == ',') {
+                    if (inTableList && !expectTable && depth <= MAX_DEPTH && (activeBits >>> depth & 1L) != 0) {
+                        expectTable = true;
+                        leadingTable = false;
+                    }
+                    if (depth == withDepth) {
+                        // WITH x AS (...), y AS (...) 逗号之后是下一个 CTE 名称
+                        expectCte = true;
+                    }
+                    parenFresh = false;
+                } else if (c == ';') {
+                    expectTable = false;
+                    inTableList = false;
+                    deleteTargets = false;
+                    withDepth = -1;
+                    expectCte = false;
+                    parenFresh = false;
+                } else if (c != '.') {
+                    parenFresh = false;
+                }
+                if (c != '.') {
+                    prevKeyword = KW_NONE;
+                }
+                i++;
+                continue;
+            }
+            i = next;
+
+            if (parenFresh) {
+                parenFresh = false;
+                if ((keyword == KW_SELECT || keyword == KW_WITH) && depth <= MAX_DEPTH) {
+                    activeBits |= 1L << depth;
+                }
+            }
+
+            // 列限定符 "表名.列名": 显式配置分表时直接改写, 否则记为待确认, 扫描结束后只改写与被改写表同名的限定符
+            boolean qualifier = next < len && sql.charAt(next) == '.' && keyword == KW_NONE;
+            boolean active = depth <= MAX_DEPTH && (activeBits >>> depth & 1L) != 0;
+            // 期望表名时 "名称." 是 schema.table 中的库名, 不是列限定符
+            if (qualifier && !(active && expectTable) && (rewriteAll || isShardingTable(sql, nameStart, nameEnd))) {
+                edits = addRange(edits, editCount, rewriteAll ? ~nameStart : nameStart, nameEnd);
+                editCount += 2;
+            }
+            if (!active) {
+                prevKeyword = keyword;
+                continue;
+            }
+
+            if (expectCte) {
+                if (keyword == KW_NONE && !qualifier) {
+                    if (!matches(sql, nameStart, nameEnd, "RECURSIVE")) {
+                        ctes = addRange(ctes, cteCount, nameStart, nameEnd);
+                        cteCount += 2;
+                        expectCte = false;
+                    }
+                    prevKeyword = KW_NONE;
+                    continue;
+                }
+                expectCte = false;
+            }
+            if (depth == withDepth && (keyword == KW_SELECT || keyword == KW_UPDATE || keyword == KW_DELETE)) {
+                withDepth = -1;
+            }
+
+            if (expectTable) {
+                if (keyword == KW_MODIFIER) {
+                    prevKeyword = keyword;
+                    continue;
+                }
+                if (keyword == KW_NONE) {
+                    int j = skipSpaces(sql, next);
+                    if (j < len && sql.charAt(j) == '.') {
+                        // schema.table, 表名在 '.' 之后
+                        continue;
+                    }
+                    boolean rewrite = rewriteAll
+                            ? leadingTable && !deleteTargets && !containsName(sql, ctes, cteCount, nameStart, nameEnd)
+                            : isShardingTable(sql, nameStart, nameEnd);
+                    if (rewrite) {
+                        edits = addRange(edits, editCount, nameStart, nameEnd);
+                        editCount += 2;
+                    }
+                    expectTable = false;
+                    prevKeyword = KW_NONE;
+                    continue;
+                }
+                expectTable = false;
+            }
+
+            switch (keyword) {
+                case KW_WITH:
+                    inTableList = false;
+                    withDepth = depth;
+                    expectCte = true;
+                    break;
+                case KW_FROM:
+                    expectTable = true;
+                    leadingTable = true;
+                    inTableList = true;
+                    deleteTargets = false;
+                    break;
+                case KW_JOIN:
+                    expectTable = true;
+                    leadingTable = false;
+                    inTableList = true;
+                    break;
+                case KW_INTO:
+                    expectTable = true;
+                    leadingTable = true;
+                    inTableList = false;
+                    break;
+                case KW_UPDATE:
+                    // ON DUPLICATE KEY UPDATE / FOR UPDATE 之后不是表名
+                    if (prevKeyword != KW_KEY && prevKeyword != KW_FOR) {
+                        expectTable = true;
+                        leadingTable = true;
+                        inTableList = true;
+                    }
+                    break;
+                case KW_USING:
+                    // JOIN ... USING (col) 为连接条件, DELETE ... USING t1, t2 为表列表
+                    int j = skipSpaces(sql, next);
+                    if (j >= len || sql.charAt(j) != '(') {
+                        expectTable = true;
+                        leadingTable = false;
+                        inTableList = true;
+                    }
+                    break;
+                case KW_DELETE:
+                    expectTable = true;
+                    leadingTable = true;
+                    inTableList = true;
+                    deleteTargets = true;
+                    break;
+                case KW_SELECT:
+                case KW_END_LIST:
+                case KW_FOR:
+                    inTableList = false;
+                    break;
+                default:
+                    break;
+            }
+            prevKeyword = keyword;
+        }
+
+        if (editCount == 0) {
+            return sql;
+        }
+        StringBuilder out = null;
+        int copied = 0;
+        for (int e = 0; e < editCount; e += 2) {
+            int start = edits[e];
+            int end = edits[e + 1];
+            if (start < 0 && !containsName(sql, edits, editCount, ~start, end)) {
+                continue;
+            }
+            if (out == null) {
+                out = new StringBuilder(len + 16);
+            }
+            out.append(sql, copied, end).append('_').append(tbKey);
+            copied = end;
+        }
+        if (out == null) {
+            return sql;
+        }
+        return out.append(sql, copied, len).toString();
+    }
+
+    // 追加一个 [start, end) 区间, 数组按需扩容
+    private static int[] addRange(int[] ranges, int count, int start, int end) {
+        if (ranges == null) {
+            ranges = new int[8];
+        } else if (count == ranges.length) {
+            ranges = Arrays.copyOf(ranges, count * 2);
+        }
+        ranges[count] = start;
+        ranges[count + 1] = end;
+        return ranges;
+    }
+
+    // ranges 中是否有与 [start, end) 同名(忽略大小写)的区间, start 取反的待确认区间不参与比较
+    private static boolean containsName(String sql, int[] ranges, int count, int start, int end) {
+        int length = end - start;
+        for (int r = 0; r < count; r += 2) {
+            int s = ranges[r];
+            if (s >= 0 && ranges[r + 1] - s == length && sql.regionMatches(true, s, sql, start, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(String sql, int start, int end, String word) {
+        return word.length() == end - start && sql.regionMatches(true, start, word, 0, word.length());
+    }
+
+    private boolean isShardingTable(String sql, int start, int end) {
+        int length = end - start;
+        for (String table : tables) {
+            if (table.length() == length && sql.regionMatches(true, start, table, 0, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int keyword(String sql, int start, int end) {
+        int length = end - start;
+        for (int k = 0; k < KEYWORDS.length; k++) {
+            String kw = KEYWORDS[k];
+            if (kw.length() == length && sql.regionMatches(true, start, kw, 0, length)) {
+                return KEYWORD_CODES[k];
+            }
+        }
+        return KW_NONE;
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '$' || c > 0x7f;
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || (c >= '0' && c <= '9');
+    }
+
+    private static int skipLine(String sql, int i) {
+        int end = sql.indexOf('\n', i);
+        return end < 0 ? sql.length() : end + 1;
+    }
+
+    private static int skipSpaces(String sql, int i) {
+        while (i < sql.length() && sql.charAt(i) <= ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    // 跳过字符串字面量, 支持 '' 与 \' 两种转义
+    private static int skipQuoted(String sql, int i, char quote) {
+        int len = sql.length();
+        i++;
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == quote) {
+                if (i + 1 < len && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        return len;
+    }
+}
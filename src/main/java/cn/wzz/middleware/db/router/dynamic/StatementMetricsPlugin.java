@@ -0,0 +1,52 @@
+package cn.wzz.middleware.db.router.dynamic;
+
+import cn.wzz.middleware.db.router.context.RouteContext;
+import cn.wzz.middleware.db.router.metrics.RouterMetrics;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.sql.Statement;
+
+/**
+ * Mybatis拦截器, 按分库分表记录语句执行耗时(不含获取连接和 prepare)
+ * 拦截 StatementHandler 的执行方法, 此时路由结果仍在线程上下文中, 直接使用 ShardRoute#slot 定位直方图
+ */
+@Intercepts({
+        @Signature(type = StatementHandler.class, method = "query", args = {Statement.class, ResultHandler.class}),
+        @Signature(type = StatementHandler.class, method = "queryCursor", args = {Statement.class}),
+        @Signature(type = StatementHandler.class, method = "update", args = {Statement.class}),
+        @Signature(type = StatementHandler.class, method = "batch", args = {Statement.class})
+})
+public class StatementMetricsPlugin implements Interceptor {
+
+    private final RouterMetrics routerMetrics;
+
+    public StatementMetricsPlugin(RouterMetrics routerMetrics) {
+        this.routerMetrics = routerMetrics;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            Object result = invocation.proceed();
+            success = true;
+            return result;
+        } finally {
+            routerMetrics.recordStatement(RouteContext.current().getRoute(), System.nanoTime() - start, success);
+        }
+    }
+
+    @Override
+    public Object plugin(Object target) {
+        if (target instanceof StatementHandler) {
+            return Interceptor.super.plugin(target);
+        }
+        return target;
+    }
+}
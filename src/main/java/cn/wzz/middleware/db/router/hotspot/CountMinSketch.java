@@ -0,0 +1,83 @@
+package cn.wzz.middleware.db.router.hotspot;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-Min Sketch: depth 行 x width 列计数器, 每行使用不同的哈希位置, 估计值为各行计数的最小值
+ * 估计值只会偏大不会偏小, 偏差上界约为 总次数 * e / width(概率 1 - e^-depth)
+ * 计数器存放在一个 AtomicLongArray 中, 累加与估计均无锁, 内存固定为 depth * width * 8 字节
+ */
+final class CountMinSketch {
+
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+
+    private final int depth;
+
+    private final int width;
+
+    private final int mask;
+
+    private final AtomicLongArray cells;
+
+    /**
+     * @param width 每行计数器个数, 向上取整为 2 的幂
+     */
+    CountMinSketch(int depth, int width) {
+        if (depth < 1 || width < 1) {
+            throw new IllegalArgumentException("[CountMinSketch] depth and width must be positive");
+        }
+        this.depth = depth;
+        this.width = width == 1 ? 1 : Integer.highestOneBit(width - 1) << 1;
+        this.mask = this.width - 1;
+        this.cells = new AtomicLongArray(depth * this.width);
+    }
+
+    /**
+     * 累加一次
+     * @return 累加后的估计值
+     */
+    long add(long hash) {
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, cells.incrementAndGet(index(hash, row)));
+        }
+        return min;
+    }
+
+    long estimate(long hash) {
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, cells.get(index(hash, row)));
+        }
+        return min;
+    }
+
+    /**
+     * 清零, 与并发的累加交错时少量计数可能计入下一个窗口
+     */
+    void clear() {
+        for (int i = 0; i < cells.length(); i++) {
+            cells.set(i, 0);
+        }
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    private int index(long hash, int row) {
+        return row * width + (int) (mix(hash + row * SEED) & mask);
+    }
+
+    /**
+     * MurmurHash3 fmix64
+     */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
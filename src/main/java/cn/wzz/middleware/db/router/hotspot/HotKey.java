@@ -0,0 +1,41 @@
+package cn.wzz.middleware.db.router.hotspot;
+
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+
+/**
+ * 热点路由键: 一个统计窗口内的估计访问次数与最近一次路由到的分表
+ */
+public final class HotKey {
+
+    private final String key;
+
+    private final long count;
+
+    private final ShardRoute route;
+
+    public HotKey(String key, long count, ShardRoute route) {
+        this.key = key;
+        this.count = count;
+        this.route = route;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return 估计访问次数(已按采样率放大), 可能略大于实际值
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public ShardRoute getRoute() {
+        return route;
+    }
+
+    @Override
+    public String toString() {
+        return key + "@" + route + "=" + count;
+    }
+}
@@ -0,0 +1,34 @@
+package cn.wzz.middleware.db.router.hotspot;
+
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+
+/**
+ * 分表在一个统计窗口内的请求次数
+ */
+public final class HotShard {
+
+    private final ShardRoute route;
+
+    private final long count;
+
+    public HotShard(ShardRoute route, long count) {
+        this.route = route;
+        this.count = count;
+    }
+
+    public ShardRoute getRoute() {
+        return route;
+    }
+
+    /**
+     * @return 请求次数(已按采样率放大)
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return route + "=" + count;
+    }
+}
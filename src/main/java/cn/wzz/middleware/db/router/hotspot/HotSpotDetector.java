@@ -0,0 +1,265 @@
+package cn.wzz.middleware.db.router.hotspot;
+
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+import cn.wzz.middleware.db.router.strategy.ShardRouteTable;
+import cn.wzz.middleware.db.router.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * 路由热点探测: 按固定窗口统计路由键 Top-K 与各分表的请求次数
+ * 1. 路由键计数使用 Count-Min Sketch, Top-K 候选保存在长度为 K 的 AtomicReferenceArray 中,
+ *    估计值超过候选集合的最小值时 CAS 替换该候选(近似 Space-Saving), 内存与路由键数量无关
+ * 2. 分表计数按 ShardRoute#slot 存放在 AtomicLongArray 中
+ * 3. 记录路径上只有原子自增与 CAS, 没有锁; 可以按 1/sampleRate 采样进一步降低开销, 快照中的次数已按采样率放大
+ * 4. 窗口由后台守护线程滚动: 生成快照、清零计数、触发阈值回调, 不占用业务线程
+ */
+public class HotSpotDetector {
+
+    private static final Logger logger = LoggerFactory.getLogger(HotSpotDetector.class);
+
+    private final ShardRouteTable routeTable;
+
+    private final int sampleRate;
+
+    private final long windowMillis;
+
+    private final long keyThreshold;
+
+    private final long shardThreshold;
+
+    private final CountMinSketch sketch;
+
+    private final AtomicReferenceArray<Candidate> candidates;
+
+    private final AtomicLongArray shardCounts;
+
+    private final CopyOnWriteArrayList<HotSpotListener> listeners = new CopyOnWriteArrayList<>();
+
+    // 进入 Top-K 需要超过的估计值, 候选集合未满时为 0; 允许并发写入时短暂不准确
+    private volatile long admission;
+
+    private volatile HotSpotSnapshot snapshot = HotSpotSnapshot.EMPTY;
+
+    // 上一个窗口中达到阈值的路由键
+    private volatile Set<String> hotKeys = Collections.emptySet();
+
+    private volatile long windowStartMillis = System.currentTimeMillis();
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param topK           跟踪的热点键个数
+     * @param sampleRate     每 sampleRate 次路由采样一次, 1 表示全部记录
+     * @param windowMillis   统计窗口
+     * @param keyThreshold   窗口内路由键访问次数阈值, 0 表示不回调
+     * @param shardThreshold 窗口内分表请求次数阈值, 0 表示不回调
+     */
+    public HotSpotDetector(ShardRouteTable routeTable, int topK, int sampleRate, long windowMillis,
+                           long keyThreshold, long shardThreshold) {
+        if (topK < 1 || sampleRate < 1 || windowMillis < 1) {
+            throw new IllegalArgumentException("[HotSpotDetector] topK, sampleRate and windowMillis must be positive");
+        }
+        this.routeTable = routeTable;
+        this.sampleRate = sampleRate;
+        this.windowMillis = windowMillis;
+        this.keyThreshold = keyThreshold;
+        this.shardThreshold = shardThreshold;
+        // 宽度取 Top-K 的 64 倍(至少 1024), 使第 K 个热点键的估计偏差相对较小
+        this.sketch = new CountMinSketch(4, Math.max(1024, topK * 64));
+        this.candidates = new AtomicReferenceArray<>(topK);
+        this.shardCounts = new AtomicLongArray(routeTable.size());
+    }
+
+    public void addListener(HotSpotListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 启动窗口滚动线程
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        windowStartMillis = System.currentTimeMillis();
+        scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("db-router-hotspot"));
+        scheduler.scheduleAtFixedRate(this::rollSafely, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * 记录一次路由
+     * @param route 路由结果, 为 null 时只统计路由键
+     */
+    public void record(String key, ShardRoute route) {
+        if (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            return;
+        }
+        if (route != null) {
+            shardCounts.incrementAndGet(route.getSlot());
+        }
+        long hash = CountMinSketch.mix(key.hashCode());
+        long estimate = sketch.add(hash);
+        if (estimate > admission) {
+            offer(key, hash, estimate, route);
+        }
+    }
+
+    private void offer(String key, long hash, long estimate, ShardRoute route) {
+        // 已经是候选键时直接返回, 热点键的绝大多数记录在这里结束
+        int emptyIdx = -1;
+        for (int i = 0; i < candidates.length(); i++) {
+            Candidate c = candidates.get(i);
+            if (c == null) {
+                if (emptyIdx < 0) {
+                    emptyIdx = i;
+                }
+            } else if (c.hash == hash && c.key.equals(key)) {
+                return;
+            }
+        }
+        if (emptyIdx >= 0) {
+            candidates.compareAndSet(emptyIdx, null, new Candidate(key, hash, route));
+            return;
+        }
+
+        // 候选集合已满, 替换估计值最小的候选
+        int minIdx = -1;
+        long minEstimate = Long.MAX_VALUE;
+        Candidate min = null;
+        for (int i = 0; i < candidates.length(); i++) {
+            Candidate c = candidates.get(i);
+            long e = sketch.estimate(c.hash);
+            if (e < minEstimate) {
+                minEstimate = e;
+                minIdx = i;
+                min = c;
+            }
+        }
+        if (estimate > minEstimate && candidates.compareAndSet(minIdx, min, new Candidate(key, hash, route))) {
+            return;
+        }
+        admission = minEstimate;
+    }
+
+    private void rollSafely() {
+        try {
+            roll();
+        } catch (Throwable e) {
+            logger.error("[HotSpotDetector] roll window failed", e);
+        }
+    }
+
+    /**
+     * 结束当前窗口: 生成快照、清零计数并触发回调
+     */
+    public HotSpotSnapshot roll() {
+        long start = windowStartMillis;
+        long now = System.currentTimeMillis();
+        windowStartMillis = now;
+
+        // 读取后立即清零, 清零期间的并发计数计入下一个窗口
+        List<HotShard> shards = new ArrayList<>();
+        for (int slot = 0; slot < shardCounts.length(); slot++) {
+            long count = shardCounts.getAndSet(slot, 0);
+            if (count > 0) {
+                shards.add(new HotShard(routeTable.get(slot), count * sampleRate));
+            }
+        }
+        shards.sort((a, b) -> Long.compare(b.getCount(), a.getCount()));
+
+        Map<String, HotKey> topKeys = new HashMap<>();
+        for (int i = 0; i < candidates.length(); i++) {
+            Candidate c = candidates.get(i);
+            if (c != null && !topKeys.containsKey(c.key)) {
+                long count = sketch.estimate(c.hash) * sampleRate;
+                if (count > 0) {
+                    topKeys.put(c.key, new HotKey(c.key, count, c.route));
+                }
+            }
+        }
+        sketch.clear();
+        // 保留候选键, 下一个窗口中访问次数更多的键会替换估计值为 0 的旧候选
+        admission = 0;
+
+        List<HotKey> keys = new ArrayList<>(topKeys.values());
+        keys.sort((a, b) -> Long.compare(b.getCount(), a.getCount()));
+        HotSpotSnapshot current = new HotSpotSnapshot(start, now - start, keys, shards);
+        snapshot = current;
+
+        Set<String> hot = new HashSet<>();
+        for (HotKey hotKey : keys) {
+            if (keyThreshold > 0 && hotKey.getCount() >= keyThreshold) {
+                hot.add(hotKey.getKey());
+                fire(l -> l.onHotKey(hotKey));
+            }
+        }
+        hotKeys = hot.isEmpty() ? Collections.emptySet() : hot;
+        for (HotShard hotShard : shards) {
+            if (shardThreshold > 0 && hotShard.getCount() >= shardThreshold) {
+                fire(l -> l.onHotShard(hotShard));
+            }
+        }
+        fire(l -> l.onWindow(current));
+        return current;
+    }
+
+    private void fire(Consumer<HotSpotListener> event) {
+        for (HotSpotListener listener : listeners) {
+            try {
+                event.accept(listener);
+            } catch (RuntimeException e) {
+                logger.error("[HotSpotDetector] listener {} failed", listener, e);
+            }
+        }
+    }
+
+    /**
+     * @return 最近一个完整窗口的快照
+     */
+    public HotSpotSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return 路由键在最近一个完整窗口中是否达到 keyThreshold, 可用于业务侧限流
+     */
+    public boolean isHotKey(String key) {
+        return hotKeys.contains(key);
+    }
+
+    private static final class Candidate {
+        final String key;
+        final long hash;
+        final ShardRoute route;
+
+        Candidate(String key, long hash, ShardRoute route) {
+            this.key = key;
+            this.hash = hash;
+            this.route = route;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package cn.wzz.middleware.db.router.hotspot;
+
+/**
+ * 热点回调, 每个统计窗口结束时在统计线程上调用, 实现中不应执行耗时操作
+ * 可以据此对热点键限流, 或通过 @DBRouter#strategy 把热点键路由到专用分表
+ */
+public interface HotSpotListener {
+
+    /**
+     * 路由键在窗口内的访问次数达到 router.jdbc.datasource.hotspot.keyThreshold
+     */
+    default void onHotKey(HotKey hotKey) {
+    }
+
+    /**
+     * 分表在窗口内的请求次数达到 router.jdbc.datasource.hotspot.shardThreshold
+     */
+    default void onHotShard(HotShard hotShard) {
+    }
+
+    /**
+     * 每个窗口结束时调用一次
+     */
+    default void onWindow(HotSpotSnapshot snapshot) {
+    }
+}
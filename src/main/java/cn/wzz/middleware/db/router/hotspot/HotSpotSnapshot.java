@@ -0,0 +1,55 @@
+package cn.wzz.middleware.db.router.hotspot;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 最近一个完整统计窗口的热点快照, 不可变
+ */
+public final class HotSpotSnapshot {
+
+    static final HotSpotSnapshot EMPTY = new HotSpotSnapshot(0, 0, Collections.emptyList(), Collections.emptyList());
+
+    private final long windowStartMillis;
+
+    private final long windowMillis;
+
+    private final List<HotKey> topKeys;
+
+    private final List<HotShard> shards;
+
+    HotSpotSnapshot(long windowStartMillis, long windowMillis, List<HotKey> topKeys, List<HotShard> shards) {
+        this.windowStartMillis = windowStartMillis;
+        this.windowMillis = windowMillis;
+        this.topKeys = Collections.unmodifiableList(topKeys);
+        this.shards = Collections.unmodifiableList(shards);
+    }
+
+    public long getWindowStartMillis() {
+        return windowStartMillis;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * @return 访问次数最多的路由键, 按次数降序
+     */
+    public List<HotKey> getTopKeys() {
+        return topKeys;
+    }
+
+    /**
+     * @return 有请求的分表, 按请求次数降序
+     */
+    public List<HotShard> getShards() {
+        return shards;
+    }
+
+    @Override
+    public String toString() {
+        return "HotSpotSnapshot{windowStart=" + windowStartMillis + ", windowMillis=" + windowMillis
+                + ", topKeys=" + topKeys + ", shards=" + shards + '}';
+    }
+}
@@ -0,0 +1,169 @@
+package cn.wzz.middleware.db.router.id;
+
+import cn.wzz.middleware.db.router.strategy.IDBRouterStrategy;
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+import cn.wzz.middleware.db.router.strategy.ShardRouteTable;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基因 ID 生成器: 类雪花算法, 在 ID 的低位嵌入分表基因(ShardRoute#slot)
+ * 订单等按 userId 分片的数据, 用 userId 的路由结果生成 orderId 后, 按 orderId 查询时可以直接从低位取出分表,
+ * 不再需要 orderId -> userId 的索引表(见 DBRouterStrategyGene)。
+ * ID 结构(63 位): | 毫秒时间戳 41 位 | 序列号 | 机器号 workerBits 位 | 基因 geneBits 位 |
+ *   geneBits 由分表总数决定(eg: 2 库 4 表为 3 位), 序列号占剩余的 22 - workerBits - geneBits 位, 至少 8 位
+ * 1. 时间戳与序列号合并为一个 long 保存在 AtomicLong 中, 线程每次 CAS 预占 blockSize 个序列号(号段),
+ *    号段在线程本地发放, 生成 ID 的热点路径上没有锁, 也没有共享变量写入
+ * 2. 当前毫秒的序列号用完时借用下一毫秒, 时钟回拨时继续使用已发放的最大时间戳, ID 始终唯一且趋势递增;
+ *    借用的时间超过当前时间 maxBorrowMillis 时让出 CPU 等待时钟追上
+ * 3. 同一号段中的 ID 时间戳相同, 线程长时间不生成 ID 时, 号段剩余 ID 的时间戳会早于实际生成时间
+ * 4. 不依赖网络, 但同一集群内各节点的 workerId 必须不同
+ */
+public class GeneIdGenerator {
+
+    private static final int TIMESTAMP_BITS = 41;
+
+    private static final int MIN_SEQUENCE_BITS = 8;
+
+    // 2024-01-01T00:00:00Z
+    public static final long DEFAULT_EPOCH = 1704067200000L;
+
+    private final IDBRouterStrategy strategy;
+
+    private final ShardRouteTable routeTable;
+
+    private final long epoch;
+
+    private final int geneBits;
+
+    private final int sequenceBits;
+
+    // 机器号与基因所占的低位
+    private final int lowBits;
+
+    private final long workerPart;
+
+    private final long geneMask;
+
+    private final int blockSize;
+
+    private final long maxBorrowMillis;
+
+    // 已发放的最大 (时间戳 << sequenceBits | 序列号)
+    private final AtomicLong cursor = new AtomicLong();
+
+    private final ThreadLocal<Segment> segments = ThreadLocal.withInitial(Segment::new);
+
+    public GeneIdGenerator(IDBRouterStrategy strategy, int workerId) {
+        this(strategy, workerId, 6, 64, DEFAULT_EPOCH);
+    }
+
+    /**
+     * @param strategy   计算基因使用的路由策略, 与按原路由键(eg: userId)查询时使用的策略一致
+     * @param workerId   机器号, 范围 [0, 2^workerBits)
+     * @param workerBits 机器号位数
+     * @param blockSize  线程每次预占的序列号个数
+     * @param epoch      时间戳起点(毫秒)
+     */
+    public GeneIdGenerator(IDBRouterStrategy strategy, int workerId, int workerBits, int blockSize, long epoch) {
+        this.strategy = strategy;
+        this.routeTable = strategy.getRouteTable();
+        this.geneBits = geneBits(routeTable);
+        this.sequenceBits = 63 - TIMESTAMP_BITS - workerBits - geneBits;
+        if (workerBits < 0 || sequenceBits < MIN_SEQUENCE_BITS) {
+            throw new IllegalArgumentException(String.format(
+                    "[GeneIdGenerator] %d gene bits + %d worker bits leave %d sequence bits, at least %d required",
+                    geneBits, workerBits, sequenceBits, MIN_SEQUENCE_BITS));
+        }
+        if (workerId < 0 || workerId >= 1 << workerBits) {
+            throw new IllegalArgumentException("[GeneIdGenerator] workerId must be in [0, " + (1 << workerBits) + "): " + workerId);
+        }
+        if (blockSize < 1 || blockSize > 1 << sequenceBits) {
+            throw new IllegalArgumentException("[GeneIdGenerator] blockSize must be in [1, " + (1 << sequenceBits) + "]: " + blockSize);
+        }
+        this.epoch = epoch;
+        this.lowBits = workerBits + geneBits;
+        this.workerPart = (long) workerId << geneBits;
+        this.geneMask = (1L << geneBits) - 1;
+        this.blockSize = blockSize;
+        this.maxBorrowMillis = 1000;
+    }
+
+    /**
+     * 基因位数, 能表示 [0, 分表总数) 的最少位数
+     */
+    public static int geneBits(ShardRouteTable routeTable) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(routeTable.size() - 1));
+    }
+
+    /**
+     * 按路由键(eg: userId)的路由结果生成 ID
+     */
+    public long nextId(String routingKey) {
+        return nextId(strategy.route(routingKey));
+    }
+
+    public long nextId(ShardRoute route) {
+        Segment segment = segments.get();
+        if (segment.next == segment.end) {
+            reserve(segment);
+        }
+        long value = segment.next++;
+        return value << lowBits | workerPart | route.getSlot();
+    }
+
+    // 预占一个号段
+    private void reserve(Segment segment) {
+        int sequenceLimit = 1 << sequenceBits;
+        while (true) {
+            long cur = cursor.get();
+            long curMillis = cur >>> sequenceBits;
+            long now = System.currentTimeMillis() - epoch;
+            long start;
+            if (now > curMillis) {
+                start = now << sequenceBits;
+            } else if ((cur & (sequenceLimit - 1)) + blockSize <= sequenceLimit && cur != 0) {
+                start = cur;
+            } else {
+                // 当前毫秒的序列号已用完(或时钟回拨), 借用下一毫秒
+                if (curMillis + 1 - now > maxBorrowMillis) {
+                    Thread.yield();
+                    continue;
+                }
+                start = (curMillis + 1) << sequenceBits;
+            }
+            if (cursor.compareAndSet(cur, start + blockSize)) {
+                segment.next = start;
+                segment.end = start + blockSize;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return ID 中的基因, 即分表的 slot
+     */
+    public int geneOf(long id) {
+        return (int) (id & geneMask);
+    }
+
+    public ShardRoute routeOf(long id) {
+        return routeTable.get(geneOf(id));
+    }
+
+    /**
+     * @return ID 的生成时间(毫秒时间戳)
+     */
+    public long timestampOf(long id) {
+        return (id >>> (lowBits + sequenceBits)) + epoch;
+    }
+
+    public int getGeneBits() {
+        return geneBits;
+    }
+
+    private static final class Segment {
+        long next;
+        long end;
+    }
+}
@@ -0,0 +1,168 @@
+package cn.wzz.middleware.db.router.metrics;
+
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+import cn.wzz.middleware.db.router.strategy.ShardRouteTable;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 基于 LatencyHistogram 的默认度量实现
+ * 1. 语句耗时按 ShardRoute#slot 存放在数组中, 记录时不需要 Map 查找, 直方图在分表首次执行语句时创建
+ * 2. 获取连接耗时按数据源名称存放
+ * 3. 跨连接事务提交耗时按单连接/多连接分别统计
+ * 新建直方图时通知监听器, 用于向 Micrometer 等注册表注册指标
+ */
+public class HistogramRouterMetrics implements RouterMetrics {
+
+    // 未路由语句的标签值
+    static final String DEFAULT_TAG = "default";
+
+    private final ShardRouteTable routeTable;
+
+    private final LatencyHistogram route = new LatencyHistogram();
+
+    private final ConcurrentHashMap<Object, LatencyHistogram> acquire = new ConcurrentHashMap<>();
+
+    private final AtomicReferenceArray<LatencyHistogram> statements;
+
+    // 未路由(默认数据源)的语句
+    private final LatencyHistogram defaultStatements = new LatencyHistogram();
+
+    private final LatencyHistogram singleCommit = new LatencyHistogram();
+
+    private final LatencyHistogram multiCommit = new LatencyHistogram();
+
+    private final CopyOnWriteArrayList<HistogramListener> listeners = new CopyOnWriteArrayList<>();
+
+    public HistogramRouterMetrics(ShardRouteTable routeTable) {
+        this.routeTable = routeTable;
+        this.statements = new AtomicReferenceArray<>(routeTable.size());
+    }
+
+    @Override
+    public void recordRoute(long nanos) {
+        route.record(nanos);
+    }
+
+    @Override
+    public void recordConnectionAcquire(Object dsKey, long nanos, boolean success) {
+        LatencyHistogram histogram = acquire.get(dsKey);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = acquire.putIfAbsent(dsKey, created);
+            if (histogram == null) {
+                histogram = created;
+                fireCreated("db.router.connection.acquire", Collections.singletonMap("db", String.valueOf(dsKey)), created);
+            }
+        }
+        histogram.record(nanos, success);
+    }
+
+    @Override
+    public void recordStatement(ShardRoute route, long nanos, boolean success) {
+        if (route == null) {
+            defaultStatements.record(nanos, success);
+            return;
+        }
+        int slot = route.getSlot();
+        LatencyHistogram histogram = statements.get(slot);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            if (statements.compareAndSet(slot, null, created)) {
+                histogram = created;
+                fireCreated("db.router.statement", statementTags(route.getDataSourceKey(), route.getTbKey()), created);
+            } else {
+                histogram = statements.get(slot);
+            }
+        }
+        histogram.record(nanos, success);
+    }
+
+    @Override
+    public void recordCommit(int participants, long nanos, boolean success) {
+        (participants <= 1 ? singleCommit : multiCommit).record(nanos, success);
+    }
+
+    /**
+     * 注册监听器, 已经存在的直方图会立即回调一次
+     */
+    public void addListener(HistogramListener listener) {
+        listeners.add(listener);
+        listener.onCreated("db.router.route", Collections.emptyMap(), route);
+        listener.onCreated("db.router.statement", statementTags(DEFAULT_TAG, DEFAULT_TAG), defaultStatements);
+        listener.onCreated("db.router.commit", Collections.singletonMap("participants", "single"), singleCommit);
+        listener.onCreated("db.router.commit", Collections.singletonMap("participants", "multi"), multiCommit);
+        for (Map.Entry<Object, LatencyHistogram> entry : acquire.entrySet()) {
+            listener.onCreated("db.router.connection.acquire", Collections.singletonMap("db", String.valueOf(entry.getKey())), entry.getValue());
+        }
+        for (int slot = 0; slot < statements.length(); slot++) {
+            LatencyHistogram histogram = statements.get(slot);
+            if (histogram != null) {
+                ShardRoute shard = routeTable.get(slot);
+                listener.onCreated("db.router.statement", statementTags(shard.getDataSourceKey(), shard.getTbKey()), histogram);
+            }
+        }
+    }
+
+    // 同名指标的标签 key 必须一致(Prometheus 拒绝标签 key 不同的同名指标), 未路由的语句使用 db=default, table=default
+    private static Map<String, String> statementTags(String db, String table) {
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("db", db);
+        tags.put("table", table);
+        return tags;
+    }
+
+    private void fireCreated(String name, Map<String, String> tags, LatencyHistogram histogram) {
+        for (HistogramListener listener : listeners) {
+            listener.onCreated(name, tags, histogram);
+        }
+    }
+
+    public LatencyHistogram getRouteLatency() {
+        return route;
+    }
+
+    public LatencyHistogram getAcquireLatency(Object dsKey) {
+        return acquire.get(dsKey);
+    }
+
+    /**
+     * @return 分表的语句耗时, 该分表还没有执行过语句时返回 null
+     */
+    public LatencyHistogram getStatementLatency(ShardRoute shard) {
+        return shard == null ? defaultStatements : statements.get(shard.getSlot());
+    }
+
+    public LatencyHistogram getCommitLatency(boolean multi) {
+        return multi ? multiCommit : singleCommit;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("HistogramRouterMetrics{route=").append(route);
+        sb.append(", acquire=").append(acquire);
+        sb.append(", statements={");
+        for (int slot = 0; slot < statements.length(); slot++) {
+            LatencyHistogram histogram = statements.get(slot);
+            if (histogram != null) {
+                sb.append(routeTable.get(slot)).append('=').append(histogram).append(", ");
+            }
+        }
+        sb.append("default=").append(defaultStatements).append('}');
+        sb.append(", commit={single=").append(singleCommit).append(", multi=").append(multiCommit).append("}}");
+        return sb.toString();
+    }
+
+    /**
+     * 直方图创建监听器
+     */
+    @FunctionalInterface
+    public interface HistogramListener {
+        void onCreated(String name, Map<String, String> tags, LatencyHistogram histogram);
+    }
+}
@@ -0,0 +1,44 @@
+package cn.wzz.middleware.db.router.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把 HistogramRouterMetrics 中的直方图注册到 Micrometer, 只在 classpath 中存在 Micrometer 时使用
+ * 每个直方图注册 count、errors 两个计数器和 p50、p99、max 三个以毫秒为单位的 Gauge, 指标值在采集时计算
+ */
+public class MicrometerRouterMetricsBinder implements MeterBinder {
+
+    private final HistogramRouterMetrics metrics;
+
+    public MicrometerRouterMetricsBinder(HistogramRouterMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        metrics.addListener((name, tags, histogram) -> register(registry, name, tags, histogram));
+    }
+
+    private static void register(MeterRegistry registry, String name, Map<String, String> tagMap, LatencyHistogram histogram) {
+        Tags tags = Tags.empty();
+        for (Map.Entry<String, String> entry : tagMap.entrySet()) {
+            tags = tags.and(entry.getKey(), entry.getValue());
+        }
+        FunctionCounter.builder(name + ".count", histogram, LatencyHistogram::getCount).tags(tags).register(registry);
+        FunctionCounter.builder(name + ".errors", histogram, LatencyHistogram::getErrors).tags(tags).register(registry);
+        Gauge.builder(name + ".p50", histogram, h -> millis(h.percentile(0.5))).tags(tags).baseUnit("milliseconds").register(registry);
+        Gauge.builder(name + ".p99", histogram, h -> millis(h.percentile(0.99))).tags(tags).baseUnit("milliseconds").register(registry);
+        Gauge.builder(name + ".max", histogram, h -> millis(h.getMax())).tags(tags).baseUnit("milliseconds").register(registry);
+    }
+
+    private static double millis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
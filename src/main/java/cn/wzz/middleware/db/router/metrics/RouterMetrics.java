@@ -0,0 +1,48 @@
+package cn.wzz.middleware.db.router.metrics;
+
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+
+/**
+ * 路由组件的度量接口, 可以替换为其它实现(eg: 直接写入公司内部的监控系统)
+ * 调用方在 isEnabled() 为 false 时不会读取时钟, 默认实现 NOOP 不产生任何开销
+ */
+public interface RouterMetrics {
+
+    RouterMetrics NOOP = new RouterMetrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+    };
+
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * 一次路由计算(提取路由键 + 计算 ShardRoute)
+     */
+    default void recordRoute(long nanos) {
+    }
+
+    /**
+     * 从连接池获取连接
+     * @param dsKey 数据源名称
+     */
+    default void recordConnectionAcquire(Object dsKey, long nanos, boolean success) {
+    }
+
+    /**
+     * 执行一条语句
+     * @param route 路由结果, 未路由(默认数据源)时为 null
+     */
+    default void recordStatement(ShardRoute route, long nanos, boolean success) {
+    }
+
+    /**
+     * 跨连接事务提交
+     * @param participants 参与事务的连接数
+     */
+    default void recordCommit(int participants, long nanos, boolean success) {
+    }
+}
@@ -0,0 +1,90 @@
+package cn.wzz.middleware.db.router.replica;
+
+import cn.wzz.middleware.db.router.dynamic.ConnectionListener;
+import cn.wzz.middleware.db.router.dynamic.CustomConnection;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 从库及其负载统计, 全部字段无锁更新
+ * 1. ewmaNanos: 连接占用耗时的指数加权移动平均, 权重 1/8
+ * 2. inflight: 当前借出的连接数
+ * 3. penaltyUntil: 获取连接失败后的隔离截止时间, 隔离期内不参与选择
+ * 从库连接归还时回调 onClose, 用连接占用耗时更新 EWMA
+ */
+public class Replica implements ConnectionListener {
+
+    // EWMA 权重 1/2^EWMA_SHIFT
+    private static final int EWMA_SHIFT = 3;
+
+    private final String name;
+
+    private final DataSource dataSource;
+
+    private final AtomicLong ewmaNanos = new AtomicLong();
+
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    private volatile long penaltyUntil;
+
+    public Replica(String name, DataSource dataSource) {
+        this.name = name;
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * 负载代价: 平均耗时 * (借出连接数 + 1), 隔离期内为 Long.MAX_VALUE
+     */
+    long cost(long now) {
+        if (penaltyUntil - now > 0) {
+            return Long.MAX_VALUE;
+        }
+        return (ewmaNanos.get() + 1) * (inflight.get() + 1);
+    }
+
+    void acquired() {
+        inflight.incrementAndGet();
+    }
+
+    @Override
+    public void onClose(CustomConnection connection, long heldNanos) {
+        released(heldNanos);
+    }
+
+    void released(long heldNanos) {
+        inflight.decrementAndGet();
+        long prev;
+        long next;
+        do {
+            prev = ewmaNanos.get();
+            next = prev == 0 ? heldNanos : prev + ((heldNanos - prev) >> EWMA_SHIFT);
+        } while (!ewmaNanos.compareAndSet(prev, next));
+    }
+
+    void penalize(long untilNanos) {
+        penaltyUntil = untilNanos;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public long getEwmaNanos() {
+        return ewmaNanos.get();
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    @Override
+    public String toString() {
+        return name + "{ewma=" + ewmaNanos.get() / 1000 + "us, inflight=" + inflight.get() + '}';
+    }
+}
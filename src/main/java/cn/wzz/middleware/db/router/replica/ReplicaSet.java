@@ -0,0 +1,91 @@
+package cn.wzz.middleware.db.router.replica;
+
+import cn.wzz.middleware.db.router.dynamic.CustomConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个分库的从库集合, 读请求按 power-of-two-choices 选择从库:
+ * 随机取两个从库, 使用负载代价(EWMA 耗时 * 借出连接数)较小的一个, 不需要加锁也不需要全局排序。
+ * 从库获取连接失败时隔离一段时间, 本次读请求由调用方回退到主库。
+ */
+public class ReplicaSet {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaSet.class);
+
+    private static final long PENALTY_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final String shard;
+
+    private final Replica[] replicas;
+
+    public ReplicaSet(String shard, List<Replica> replicas) {
+        if (replicas.isEmpty()) {
+            throw new IllegalArgumentException("[ReplicaSet] no replica configured for " + shard);
+        }
+        this.shard = shard;
+        this.replicas = replicas.toArray(new Replica[0]);
+    }
+
+    /**
+     * @return 从库连接, 选中的从库获取连接失败时返回 null
+     */
+    public CustomConnection getConnection(Object dsKey) {
+        return getConnection(dsKey, null, null);
+    }
+
+    /**
+     * @param username 为 null 时使用从库配置的账号
+     * @return 从库连接, 选中的从库获取连接失败时返回 null
+     */
+    public CustomConnection getConnection(Object dsKey, String username, String password) {
+        Replica replica = choose();
+        try {
+            DataSource dataSource = replica.getDataSource();
+            CustomConnection conn = new CustomConnection(username == null ? dataSource.getConnection()
+                    : dataSource.getConnection(username, password), dsKey);
+            replica.acquired();
+            conn.setListener(replica);
+            return conn;
+        } catch (SQLException e) {
+            replica.penalize(System.nanoTime() + PENALTY_NANOS);
+            logger.warn("[ReplicaSet] {} replica {} unavailable, fallback to primary", shard, replica.getName(), e);
+            return null;
+        }
+    }
+
+    Replica choose() {
+        int n = replicas.length;
+        if (n == 1) {
+            return replicas[0];
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int a = random.nextInt(n);
+        int b = random.nextInt(n - 1);
+        if (b >= a) {
+            b++;
+        }
+        long now = System.nanoTime();
+        return replicas[a].cost(now) <= replicas[b].cost(now) ? replicas[a] : replicas[b];
+    }
+
+    public String getShard() {
+        return shard;
+    }
+
+    public List<Replica> getReplicas() {
+        return Arrays.asList(replicas);
+    }
+
+    @Override
+    public String toString() {
+        return shard + Arrays.toString(replicas);
+    }
+}
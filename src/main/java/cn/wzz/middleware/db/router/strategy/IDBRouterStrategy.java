@@ -1,7 +1,27 @@
 package cn.wzz.middleware.db.router.strategy;
 
+import cn.wzz.middleware.db.router.context.DBContextHolder;
+
 public interface IDBRouterStrategy {
-    void dbRouter(String routingKey);
 
-    void clear();
+    /**
+     * 根据路由键计算目标数据源与数据表, 不修改线程上下文
+     */
+    ShardRoute route(String routingKey);
+
+    /**
+     * 全部分库分表, 用于广播执行、批量分组等场景
+     */
+    ShardRouteTable getRouteTable();
+
+    /**
+     * 计算路由并保存到线程上下文中
+     */
+    default void dbRouter(String routingKey) {
+        DBContextHolder.setRoute(route(routingKey));
+    }
+
+    default void clear() {
+        DBContextHolder.clearRoute();
+    }
 }
@@ -0,0 +1,81 @@
+package cn.wzz.middleware.db.router.strategy;
+
+/**
+ * 路由结果: 目标数据源与数据表
+ * 不可变对象, 由 ShardRouteTable 在启动时为每个 (db, table) 预先创建, 路由时直接复用
+ */
+public final class ShardRoute {
+
+    // 全局分表下标: (dbIdx - 1) * tbCount + tbIdx
+    private final int slot;
+
+    // 数据源下标, 从 1 开始
+    private final int dbIdx;
+
+    // 数据表下标, 从 0 开始
+    private final int tbIdx;
+
+    // eg: 01
+    private final String dbKey;
+
+    // eg: 003
+    private final String tbKey;
+
+    // 目标数据源名称, eg: db01
+    private final String dataSourceKey;
+
+    ShardRoute(int slot, int dbIdx, int tbIdx) {
+        this.slot = slot;
+        this.dbIdx = dbIdx;
+        this.tbIdx = tbIdx;
+        this.dbKey = String.format("%02d", dbIdx).intern();
+        this.tbKey = String.format("%03d", tbIdx).intern();
+        this.dataSourceKey = ("db" + dbKey).intern();
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public int getDbIdx() {
+        return dbIdx;
+    }
+
+    public int getTbIdx() {
+        return tbIdx;
+    }
+
+    public String getDbKey() {
+        return dbKey;
+    }
+
+    public String getTbKey() {
+        return tbKey;
+    }
+
+    public String getDataSourceKey() {
+        return dataSourceKey;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ShardRoute)) {
+            return false;
+        }
+        ShardRoute that = (ShardRoute) o;
+        return dbIdx == that.dbIdx && tbIdx == that.tbIdx;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * dbIdx + tbIdx;
+    }
+
+    @Override
+    public String toString() {
+        return dataSourceKey + "." + tbKey;
+    }
+}
@@ -0,0 +1,96 @@
+package cn.wzz.middleware.db.router.strategy;
+
+import cn.wzz.middleware.db.router.DBRouterConfig;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 预先创建全部 dbCount * tbCount 个路由结果, 路由计算只需一次数组下标访问
+ * 以 DbCount = 2, TbCount = 4 为例
+ * slot:  0        1        2        3        4        5        6        7
+ *        db01.000 db01.001 db01.002 db01.003 db02.000 db02.001 db02.002 db02.003
+ */
+public class ShardRouteTable {
+
+    private final int dbCount;
+
+    private final int tbCount;
+
+    private final ShardRoute[] routes;
+
+    public ShardRouteTable(DBRouterConfig dbRouterConfig) {
+        this(dbRouterConfig.getDbCount(), dbRouterConfig.getTbCount());
+    }
+
+    public ShardRouteTable(int dbCount, int tbCount) {
+        // dbKey 为两位数字(01~99), tbKey 为三位数字(000~999)
+        if (dbCount < 1 || dbCount > 99) {
+            throw new IllegalArgumentException("[ShardRouteTable] dbCount must be in [1, 99]: " + dbCount);
+        }
+        if (tbCount < 1 || tbCount > 1000) {
+            throw new IllegalArgumentException("[ShardRouteTable] tbCount must be in [1, 1000]: " + tbCount);
+        }
+        this.dbCount = dbCount;
+        this.tbCount = tbCount;
+        this.routes = new ShardRoute[dbCount * tbCount];
+        for (int slot = 0; slot < routes.length; slot++) {
+            routes[slot] = new ShardRoute(slot, slot / tbCount + 1, slot % tbCount);
+        }
+    }
+
+    /**
+     * @param slot 全局分表下标, 范围 [0, dbCount * tbCount)
+     */
+    public ShardRoute get(int slot) {
+        return routes[slot];
+    }
+
+    /**
+     * @param dbIdx 数据源下标, 从 1 开始
+     * @param tbIdx 数据表下标, 从 0 开始
+     */
+    public ShardRoute get(int dbIdx, int tbIdx) {
+        return routes[(dbIdx - 1) * tbCount + tbIdx];
+    }
+
+    /**
+     * 解析分表名称
+     * @param route eg: db01.000
+     */
+    public ShardRoute parse(String route) {
+        int dot = route.indexOf('.');
+        if (!route.startsWith("db") || dot < 0) {
+            throw new IllegalArgumentException("[ShardRouteTable] illegal route: " + route);
+        }
+        int dbIdx;
+        int tbIdx;
+        try {
+            dbIdx = Integer.parseInt(route.substring(2, dot));
+            tbIdx = Integer.parseInt(route.substring(dot + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("[ShardRouteTable] illegal route: " + route);
+        }
+        if (dbIdx < 1 || dbIdx > dbCount || tbIdx < 0 || tbIdx >= tbCount) {
+            throw new IllegalArgumentException("[ShardRouteTable] route out of range: " + route);
+        }
+        return get(dbIdx, tbIdx);
+    }
+
+    public List<ShardRoute> all() {
+        return Collections.unmodifiableList(Arrays.asList(routes));
+    }
+
+    public int size() {
+        return routes.length;
+    }
+
+    public int getDbCount() {
+        return dbCount;
+    }
+
+    public int getTbCount() {
+        return tbCount;
+    }
+}
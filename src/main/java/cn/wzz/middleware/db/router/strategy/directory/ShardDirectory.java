@@ -0,0 +1,238 @@
+package cn.wzz.middleware.db.router.strategy.directory;
+
+import cn.wzz.middleware.db.router.strategy.ShardRouteTable;
+import cn.wzz.middleware.db.router.util.BufferCleaner;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * 路由目录: 路由键 -> 分表的只读映射, 存放在内存映射文件中, 不占用堆内存, 千万级条目也不增加 GC 压力
+ * 文件格式: 32 字节文件头(magic、version、dbCount、tbCount、capacity、size) + capacity 个 12 字节条目,
+ * 条目为 (路由键 64 位哈希, slot + 1), slot + 1 为 0 表示空位。
+ * 1. 开放寻址 + 线性探测, 容量为 2 的幂且不小于条目数的 2 倍(负载因子不超过 0.5), 未命中时平均探测次数约 2.5 次
+ * 2. 只保存路由键的 64 位哈希而不保存原文, 千万级条目时哈希冲突的概率约为 1e-5 量级, 冲突时后写入的条目生效
+ * 3. 单个 MappedByteBuffer 最大 2GB, 按 2^26 个条目分段映射
+ * 4. 查找只读取映射区域的绝对位置, 不分配对象, 可以多线程并发读取
+ * 5. 构建时的读写映射在刷盘后立即释放; 只读映射由 close() 释放, 未关闭时要等 GC 回收 MappedByteBuffer
+ */
+public final class ShardDirectory implements AutoCloseable {
+
+    private static final int MAGIC = 0x52444952;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 32;
+
+    private static final int ENTRY_SIZE = 12;
+
+    private static final int SEGMENT_BITS = 26;
+
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+    private final File file;
+
+    private final MappedByteBuffer[] segments;
+
+    private final long mask;
+
+    private final long size;
+
+    private ShardDirectory(File file, MappedByteBuffer[] segments, long capacity, long size) {
+        this.file = file;
+        this.segments = segments;
+        this.mask = capacity - 1;
+        this.size = size;
+    }
+
+    /**
+     * @return 路由键对应的 slot, 不在目录中时返回 -1
+     */
+    public int lookup(String key) {
+        if (size == 0) {
+            return -1;
+        }
+        long hash = hash(key);
+        for (long idx = hash & mask; ; idx = (idx + 1) & mask) {
+            MappedByteBuffer segment = segments[(int) (idx >>> SEGMENT_BITS)];
+            int offset = (int) (idx & SEGMENT_MASK) * ENTRY_SIZE;
+            int slot = segment.getInt(offset + 8);
+            if (slot == 0) {
+                return -1;
+            }
+            if (segment.getLong(offset) == hash) {
+                return slot - 1;
+            }
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * 从 CSV 文件构建目录文件, 每行格式: 路由键,分表, eg: merchant-1,db02.003
+     * 空行与 '#' 开头的行被忽略, 重复的路由键以最后一行为准
+     */
+    public static ShardDirectory build(File csv, File index, ShardRouteTable routeTable) throws IOException {
+        long count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(csv.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (isEntry(line)) {
+                    count++;
+                }
+            }
+        }
+
+        long capacity = Math.max(16, Long.highestOneBit(Math.max(1, count * 2 - 1)) << 1);
+        long entries = 0;
+        MappedByteBuffer[] segments = null;
+        try (RandomAccessFile raf = new RandomAccessFile(index, "rw");
+             BufferedReader reader = Files.newBufferedReader(csv.toPath(), StandardCharsets.UTF_8)) {
+            raf.setLength(HEADER_SIZE + capacity * ENTRY_SIZE);
+            FileChannel channel = raf.getChannel();
+            segments = map(channel, FileChannel.MapMode.READ_WRITE, capacity);
+            long mask = capacity - 1;
+            String line;
+            int lineNo = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                if (!isEntry(line)) {
+                    continue;
+                }
+                int comma = line.lastIndexOf(',');
+                if (comma <= 0) {
+                    throw new IllegalArgumentException("[ShardDirectory] illegal line " + lineNo + " in " + csv + ": " + line);
+                }
+                String key = line.substring(0, comma).trim();
+                int slot = routeTable.parse(line.substring(comma + 1).trim()).getSlot();
+                if (put(segments, mask, hash(key), slot + 1)) {
+                    entries++;
+                }
+            }
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(routeTable.getDbCount()).putInt(routeTable.getTbCount())
+                    .putLong(capacity).putLong(entries);
+            // JDK 9+ 的 ByteBuffer 以协变返回类型覆盖了 flip(), 在高版本 JDK 上编译后于 Java 8 运行会抛出
+            // NoSuchMethodError, 通过 Buffer 调用保持 Java 8 兼容
+            ((Buffer) header).flip();
+            channel.write(header, 0);
+            channel.force(true);
+        } finally {
+            // 读写映射只在构建时使用, 不等 GC 回收, 否则每次构建后同一文件会同时存在读写与只读两份映射
+            unmap(segments);
+        }
+        return open(index, routeTable);
+    }
+
+    /**
+     * 以只读方式映射已经构建好的目录文件, 分库分表数与构建时不一致时抛出异常
+     */
+    public static ShardDirectory open(File index, ShardRouteTable routeTable) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(index, "r")) {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            ((Buffer) header).flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("[ShardDirectory] not a directory file: " + index);
+            }
+            int dbCount = header.getInt();
+            int tbCount = header.getInt();
+            if (dbCount != routeTable.getDbCount() || tbCount != routeTable.getTbCount()) {
+                throw new IOException(String.format("[ShardDirectory] %s is built for %d dbs x %d tables, current config is %d x %d",
+                        index, dbCount, tbCount, routeTable.getDbCount(), routeTable.getTbCount()));
+            }
+            long capacity = header.getLong();
+            long size = header.getLong();
+            if (Long.bitCount(capacity) != 1 || channel.size() < HEADER_SIZE + capacity * ENTRY_SIZE) {
+                throw new IOException("[ShardDirectory] corrupted directory file: " + index);
+            }
+            // 关闭文件后映射区域仍然有效, 由 close() 解除映射
+            return new ShardDirectory(index, map(channel, FileChannel.MapMode.READ_ONLY, capacity), capacity, size);
+        }
+    }
+
+    /**
+     * 释放只读映射, 之后再调用 lookup 会导致 JVM 崩溃, 调用方必须保证已经没有线程在使用该目录
+     */
+    @Override
+    public void close() {
+        unmap(segments);
+    }
+
+    private static void unmap(MappedByteBuffer[] segments) {
+        if (segments == null) {
+            return;
+        }
+        for (MappedByteBuffer segment : segments) {
+            BufferCleaner.unmap(segment);
+        }
+    }
+
+    private static MappedByteBuffer[] map(FileChannel channel, FileChannel.MapMode mode, long capacity) throws IOException {
+        int count = (int) ((capacity + SEGMENT_MASK) >>> SEGMENT_BITS);
+        MappedByteBuffer[] segments = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long first = (long) i << SEGMENT_BITS;
+            long entries = Math.min(capacity - first, 1L << SEGMENT_BITS);
+            segments[i] = channel.map(mode, HEADER_SIZE + first * ENTRY_SIZE, entries * ENTRY_SIZE);
+        }
+        return segments;
+    }
+
+    /**
+     * @return 是否新增了条目(false 表示覆盖已有条目)
+     */
+    private static boolean put(MappedByteBuffer[] segments, long mask, long hash, int value) {
+        for (long idx = hash & mask; ; idx = (idx + 1) & mask) {
+            MappedByteBuffer segment = segments[(int) (idx >>> SEGMENT_BITS)];
+            int offset = (int) (idx & SEGMENT_MASK) * ENTRY_SIZE;
+            int slot = segment.getInt(offset + 8);
+            if (slot == 0 || segment.getLong(offset) == hash) {
+                segment.putLong(offset, hash);
+                segment.putInt(offset + 8, value);
+                return slot == 0;
+            }
+        }
+    }
+
+    private static boolean isEntry(String line) {
+        String trimmed = line.trim();
+        return !trimmed.isEmpty() && trimmed.charAt(0) != '#';
+    }
+
+    /**
+     * 路由键的 64 位哈希: 按字符做 FNV-1a, 再用 MurmurHash3 fmix64 扰动, 不需要把字符串编码为字节数组
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
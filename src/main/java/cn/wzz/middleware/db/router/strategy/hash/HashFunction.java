@@ -0,0 +1,26 @@
+package cn.wzz.middleware.db.router.strategy.hash;
+
+/**
+ * 路由键哈希函数, 实现类需要保证无状态、线程安全, 并且不创建中间对象
+ */
+public interface HashFunction {
+
+    int hash(String key);
+
+    /**
+     * 根据名称获取内置哈希函数: jdk(默认) / murmur3 / xxhash
+     */
+    static HashFunction of(String name) {
+        if (name == null || "jdk".equals(name)) {
+            return JdkHashFunction.INSTANCE;
+        }
+        switch (name) {
+            case "murmur3":
+                return Murmur3HashFunction.INSTANCE;
+            case "xxhash":
+                return XxHash32Function.INSTANCE;
+            default:
+                throw new IllegalArgumentException("unknown hash function: " + name);
+        }
+    }
+}
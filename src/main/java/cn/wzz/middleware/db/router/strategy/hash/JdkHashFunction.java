@@ -0,0 +1,16 @@
+package cn.wzz.middleware.db.router.strategy.hash;
+
+/**
+ * String#hashCode 高 16 位与低 16 位异或(与 HashMap 的扰动方式相同), 默认哈希函数, 保持已有数据的分布不变。
+ * 对连续的数字型路由键, 低位分布不均匀, 存在明显的分片倾斜, 新业务建议使用 murmur3 / xxhash
+ */
+public class JdkHashFunction implements HashFunction {
+
+    public static final JdkHashFunction INSTANCE = new JdkHashFunction();
+
+    @Override
+    public int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,60 @@
+package cn.wzz.middleware.db.router.strategy.hash;
+
+/**
+ * MurmurHash3 x86_32, 直接按 UTF-16 字符读取, 每两个字符组成一个 32 位块, 不需要先编码为 byte[]
+ */
+public class Murmur3HashFunction implements HashFunction {
+
+    public static final Murmur3HashFunction INSTANCE = new Murmur3HashFunction(0);
+
+    private static final int C1 = 0xcc9e2d51;
+    private static final int C2 = 0x1b873593;
+
+    private final int seed;
+
+    public Murmur3HashFunction(int seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public int hash(String key) {
+        int h1 = seed;
+        int len = key.length();
+
+        int i = 1;
+        for (; i < len; i += 2) {
+            int k1 = key.charAt(i - 1) | (key.charAt(i) << 16);
+            h1 = mixH1(h1, mixK1(k1));
+        }
+
+        if ((len & 1) == 1) {
+            h1 ^= mixK1(key.charAt(len - 1));
+        }
+
+        return fmix(h1, 2 * len);
+    }
+
+    private static int mixK1(int k1) {
+        k1 *= C1;
+        k1 = Integer.rotateLeft(k1, 15);
+        k1 *= C2;
+        return k1;
+    }
+
+    private static int mixH1(int h1, int k1) {
+        h1 ^= k1;
+        h1 = Integer.rotateLeft(h1, 13);
+        h1 = h1 * 5 + 0xe6546b64;
+        return h1;
+    }
+
+    private static int fmix(int h1, int length) {
+        h1 ^= length;
+        h1 ^= h1 >>> 16;
+        h1 *= 0x85ebca6b;
+        h1 ^= h1 >>> 13;
+        h1 *= 0xc2b2ae35;
+        h1 ^= h1 >>> 16;
+        return h1;
+    }
+}
@@ -0,0 +1,81 @@
+package cn.wzz.middleware.db.router.strategy.hash;
+
+/**
+ * xxHash32, 直接按 UTF-16 字符读取(每个字符视为 2 字节小端序), 不需要先编码为 byte[]
+ */
+public class XxHash32Function implements HashFunction {
+
+    public static final XxHash32Function INSTANCE = new XxHash32Function(0);
+
+    private static final int PRIME1 = 0x9E3779B1;
+    private static final int PRIME2 = 0x85EBCA77;
+    private static final int PRIME3 = 0xC2B2AE3D;
+    private static final int PRIME4 = 0x27D4EB2F;
+    private static final int PRIME5 = 0x165667B1;
+
+    private final int seed;
+
+    public XxHash32Function(int seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public int hash(String key) {
+        int len = key.length();
+        int i = 0;
+        int h;
+
+        // 每 16 字节(8 个字符)为一个条带, 4 路并行累加
+        if (len >= 8) {
+            int v1 = seed + PRIME1 + PRIME2;
+            int v2 = seed + PRIME2;
+            int v3 = seed;
+            int v4 = seed - PRIME1;
+            int limit = len - 8;
+            do {
+                v1 = round(v1, lane(key, i));
+                v2 = round(v2, lane(key, i + 2));
+                v3 = round(v3, lane(key, i + 4));
+                v4 = round(v4, lane(key, i + 6));
+                i += 8;
+            } while (i <= limit);
+            h = Integer.rotateLeft(v1, 1) + Integer.rotateLeft(v2, 7)
+                    + Integer.rotateLeft(v3, 12) + Integer.rotateLeft(v4, 18);
+        } else {
+            h = seed + PRIME5;
+        }
+
+        h += len * 2;
+
+        for (; i + 1 < len; i += 2) {
+            h += lane(key, i) * PRIME3;
+            h = Integer.rotateLeft(h, 17) * PRIME4;
+        }
+        if (i < len) {
+            // 剩余的一个字符按 2 个字节处理
+            char c = key.charAt(i);
+            h += (c & 0xFF) * PRIME5;
+            h = Integer.rotateLeft(h, 11) * PRIME1;
+            h += (c >>> 8) * PRIME5;
+            h = Integer.rotateLeft(h, 11) * PRIME1;
+        }
+
+        h ^= h >>> 15;
+        h *= PRIME2;
+        h ^= h >>> 13;
+        h *= PRIME3;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int lane(String key, int i) {
+        return key.charAt(i) | (key.charAt(i + 1) << 16);
+    }
+
+    private static int round(int acc, int input) {
+        acc += input * PRIME2;
+        acc = Integer.rotateLeft(acc, 13);
+        acc *= PRIME1;
+        return acc;
+    }
+}
@@ -0,0 +1,82 @@
+package cn.wzz.middleware.db.router.strategy.impl;
+
+import cn.wzz.middleware.db.router.DBRouterConfig;
+import cn.wzz.middleware.db.router.strategy.IDBRouterStrategy;
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+import cn.wzz.middleware.db.router.strategy.ShardRouteTable;
+import cn.wzz.middleware.db.router.strategy.hash.HashFunction;
+import cn.wzz.middleware.db.router.strategy.hash.JdkHashFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 一致性哈希路由策略, 基于 Jump Consistent Hash(Lamping & Veach, 2014)
+ * 先在 dbCount 个数据源中选库, 再用另一个独立的哈希值在 tbCount 张表中选表:
+ * 1. 数据源由 N 个扩容到 M 个时, 只有 (M - N) / M 的数据迁移到新增的数据源, 其余数据位置不变
+ * 2. 单库分表数扩容时, 数据只在库内迁移到新增的表, 不会跨库移动
+ * 查找为 O(ln n) 次乘法, 不分配对象, 也不需要维护哈希环。
+ * 注意: 与 DBRouterStrategyHash 的数据分布不同, 已有数据切换策略前需要先迁移, 可用 ReshardingAnalyzer 评估
+ */
+public class DBRouterStrategyConsistentHash implements IDBRouterStrategy {
+
+    private Logger logger = LoggerFactory.getLogger(DBRouterStrategyConsistentHash.class);
+
+    // 选表时与路由键哈希混合的常量, 使选库与选表相互独立
+    private static final long TABLE_SEED = 0x9E3779B97F4A7C15L;
+
+    private final ShardRouteTable routeTable;
+
+    private final HashFunction hashFunction;
+
+    public DBRouterStrategyConsistentHash(DBRouterConfig dbRouterConfig) {
+        this(dbRouterConfig, JdkHashFunction.INSTANCE);
+    }
+
+    public DBRouterStrategyConsistentHash(DBRouterConfig dbRouterConfig, HashFunction hashFunction) {
+        this.routeTable = new ShardRouteTable(dbRouterConfig);
+        this.hashFunction = hashFunction;
+    }
+
+    @Override
+    public ShardRoute route(String routingKey) {
+        long hash = mix64(hashFunction.hash(routingKey));
+        int dbIdx = jumpConsistentHash(hash, routeTable.getDbCount()) + 1;
+        int tbIdx = jumpConsistentHash(mix64(hash ^ TABLE_SEED), routeTable.getTbCount());
+
+        ShardRoute route = routeTable.get(dbIdx, tbIdx);
+        if (logger.isDebugEnabled()) {
+            logger.debug("数据库路由 dbIdx: {}, tbIdx: {}", dbIdx, tbIdx);
+        }
+        return route;
+    }
+
+    @Override
+    public ShardRouteTable getRouteTable() {
+        return routeTable;
+    }
+
+    /**
+     * Jump Consistent Hash
+     * @return [0, buckets) 范围内的桶下标
+     */
+    public static int jumpConsistentHash(long key, int buckets) {
+        long b = -1;
+        long j = 0;
+        while (j < buckets) {
+            b = j;
+            key = key * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+
+    // MurmurHash3 fmix64, 将哈希值的每一位扩散到 64 位
+    static long mix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
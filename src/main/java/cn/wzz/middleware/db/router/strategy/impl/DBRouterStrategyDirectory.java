@@ -0,0 +1,193 @@
+package cn.wzz.middleware.db.router.strategy.impl;
+
+import cn.wzz.middleware.db.router.DBRouterConfig;
+import cn.wzz.middleware.db.router.strategy.IDBRouterStrategy;
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+import cn.wzz.middleware.db.router.strategy.ShardRouteTable;
+import cn.wzz.middleware.db.router.strategy.directory.ShardDirectory;
+import cn.wzz.middleware.db.router.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 目录路由策略: 先在路由目录中查找路由键指定的分表(eg: 大商户独占的分表), 不在目录中时使用回退策略(默认哈希)
+ * 1. 目录从本地 CSV 文件构建为内存映射文件(见 ShardDirectory), 查找不分配对象
+ * 2. reload 时构建新的目录文件, 完成后通过 volatile 引用原子替换, 正在进行的查找继续使用旧目录
+ * 3. 目录文件命名为 <CSV 文件名>.<构建时间>-<构建次数>.idx, 替换后删除旧文件(已映射的区域在解除映射前仍然可读)
+ * 4. 被替换的旧目录放入退役列表, 超过宽限期(retireGraceMillis, 默认 10s)后才解除映射, 此时不会再有查找在使用它;
+ *    释放在 reload / reloadIfModified 中进行, 解除映射后磁盘空间与地址空间才真正归还
+ */
+public class DBRouterStrategyDirectory implements IDBRouterStrategy {
+
+    private Logger logger = LoggerFactory.getLogger(DBRouterStrategyDirectory.class);
+
+    private final ShardRouteTable routeTable;
+
+    private final IDBRouterStrategy fallback;
+
+    private final File source;
+
+    private final File indexDir;
+
+    private volatile ShardDirectory directory;
+
+    // 当前目录对应的 CSV 文件修改时间
+    private long sourceModified;
+
+    // 构建次数, 保证同一毫秒内多次构建的文件名也不重复
+    private int generation;
+
+    private ScheduledExecutorService scheduler;
+
+    // 已被替换、等待宽限期结束后解除映射的旧目录, 按替换时间排序
+    private final ArrayDeque<RetiredDirectory> retired = new ArrayDeque<>();
+
+    private long retireGraceMillis = 10_000;
+
+    public DBRouterStrategyDirectory(DBRouterConfig dbRouterConfig, IDBRouterStrategy fallback, File source) {
+        this(dbRouterConfig, fallback, source, source.getAbsoluteFile().getParentFile());
+    }
+
+    /**
+     * @param fallback 不在目录中的路由键使用的策略
+     * @param source   CSV 目录文件, 每行格式: 路由键,分表(eg: merchant-1,db02.003)
+     * @param indexDir 目录文件(.idx)的存放目录
+     */
+    public DBRouterStrategyDirectory(DBRouterConfig dbRouterConfig, IDBRouterStrategy fallback, File source, File indexDir) {
+        this.routeTable = new ShardRouteTable(dbRouterConfig);
+        this.fallback = fallback;
+        this.source = source;
+        this.indexDir = indexDir;
+        if (!indexDir.isDirectory() && !indexDir.mkdirs()) {
+            throw new IllegalArgumentException("[DBRouterStrategyDirectory] can not create index dir: " + indexDir);
+        }
+        // 清理上次运行遗留的目录文件
+        File[] stale = indexDir.listFiles((dir, name) -> name.startsWith(source.getName() + ".") && name.endsWith(".idx"));
+        if (stale != null) {
+            for (File file : stale) {
+                file.delete();
+            }
+        }
+        try {
+            reload();
+        } catch (IOException e) {
+            throw new IllegalStateException("[DBRouterStrategyDirectory] load directory failed: " + source, e);
+        }
+    }
+
+    @Override
+    public ShardRoute route(String routingKey) {
+        int slot = directory.lookup(routingKey);
+        return slot >= 0 ? routeTable.get(slot) : fallback.route(routingKey);
+    }
+
+    /**
+     * 重新构建并替换目录
+     */
+    public synchronized void reload() throws IOException {
+        long modified = source.lastModified();
+        long start = System.currentTimeMillis();
+        File index = new File(indexDir, source.getName() + "." + start + "-" + (++generation) + ".idx");
+        ShardDirectory loaded;
+        try {
+            loaded = ShardDirectory.build(source, index, routeTable);
+        } catch (IOException | RuntimeException e) {
+            index.delete();
+            throw e;
+        }
+        ShardDirectory prev = directory;
+        directory = loaded;
+        sourceModified = modified;
+        logger.info("[DBRouterStrategyDirectory] loaded {} entries from {} in {}ms", loaded.size(), source, System.currentTimeMillis() - start);
+        if (prev != null) {
+            // 映射中的文件在 Windows 上无法删除, 解除映射后再次尝试
+            prev.getFile().delete();
+            retired.add(new RetiredDirectory(prev, System.nanoTime()));
+        }
+        releaseRetired();
+    }
+
+    /**
+     * 解除宽限期已过的旧目录的映射, 并删除仍未删除的旧文件
+     */
+    private void releaseRetired() {
+        long now = System.nanoTime();
+        RetiredDirectory head;
+        while ((head = retired.peek()) != null && now - head.retiredAt >= TimeUnit.MILLISECONDS.toNanos(retireGraceMillis)) {
+            retired.poll();
+            head.directory.close();
+            File file = head.directory.getFile();
+            if (file.exists() && !file.delete()) {
+                logger.warn("[DBRouterStrategyDirectory] can not delete old directory file {}", file);
+            }
+        }
+    }
+
+    /**
+     * CSV 文件修改后重新加载, 加载失败时继续使用旧目录
+     */
+    public synchronized void reloadIfModified() {
+        releaseRetired();
+        if (source.lastModified() == sourceModified) {
+            return;
+        }
+        try {
+            reload();
+        } catch (IOException | RuntimeException e) {
+            logger.error("[DBRouterStrategyDirectory] reload directory failed, keep using the old one: {}", source, e);
+        }
+    }
+
+    /**
+     * 定时检查 CSV 文件是否修改
+     */
+    public synchronized void start(long intervalMillis) {
+        if (scheduler != null || intervalMillis <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("db-router-directory"));
+        scheduler.scheduleWithFixedDelay(this::reloadIfModified, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * @param retireGraceMillis 旧目录被替换后到解除映射的等待时间, 需要大于单次查找可能被挂起的时间
+     */
+    public synchronized void setRetireGraceMillis(long retireGraceMillis) {
+        this.retireGraceMillis = retireGraceMillis;
+    }
+
+    public ShardDirectory getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public ShardRouteTable getRouteTable() {
+        return routeTable;
+    }
+
+    private static final class RetiredDirectory {
+
+        private final ShardDirectory directory;
+
+        private final long retiredAt;
+
+        private RetiredDirectory(ShardDirectory directory, long retiredAt) {
+            this.directory = directory;
+            this.retiredAt = retiredAt;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package cn.wzz.middleware.db.router.strategy.impl;
+
+import cn.wzz.middleware.db.router.DBRouterConfig;
+import cn.wzz.middleware.db.router.id.GeneIdGenerator;
+import cn.wzz.middleware.db.router.strategy.IDBRouterStrategy;
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+import cn.wzz.middleware.db.router.strategy.ShardRouteTable;
+
+/**
+ * 基因路由策略: 路由键是 GeneIdGenerator 生成的 ID 时, 直接取低位的基因作为分表 slot
+ * eg: 订单按 userId 分片, orderId 由 GeneIdGenerator#nextId(userId) 生成,
+ *     按 orderId 查询的方法标记 @DBRouter(key = "orderId", strategy = DBRouterStrategyGene.class) 即可路由到同一分表
+ * 只能用于基因 ID 类型的路由键: 普通数字路由键(eg: userId)同样会被当作基因 ID 解析, 应使用原策略路由;
+ * 非数字路由键使用回退策略。
+ */
+public class DBRouterStrategyGene implements IDBRouterStrategy {
+
+    private final ShardRouteTable routeTable;
+
+    private final IDBRouterStrategy fallback;
+
+    private final long geneMask;
+
+    public DBRouterStrategyGene(DBRouterConfig dbRouterConfig) {
+        this(new DBRouterStrategyHash(dbRouterConfig));
+    }
+
+    /**
+     * @param fallback 生成 ID 时计算基因的策略, 路由键不是数字时使用该策略路由
+     */
+    public DBRouterStrategyGene(IDBRouterStrategy fallback) {
+        this.routeTable = fallback.getRouteTable();
+        this.fallback = fallback;
+        this.geneMask = (1L << GeneIdGenerator.geneBits(routeTable)) - 1;
+    }
+
+    @Override
+    public ShardRoute route(String routingKey) {
+        long id = parseId(routingKey);
+        if (id < 0) {
+            return fallback.route(routingKey);
+        }
+        int gene = (int) (id & geneMask);
+        if (gene >= routeTable.size()) {
+            throw new IllegalArgumentException("[DBRouterStrategyGene] gene " + gene + " of id " + routingKey + " is out of range");
+        }
+        return routeTable.get(gene);
+    }
+
+    /**
+     * 解析非负整数, 不是数字或超出 long 范围时返回 -1, 不抛出异常
+     */
+    static long parseId(String key) {
+        int len = key.length();
+        if (len == 0 || len > 19) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < len; i++) {
+            char c = key.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+            if (value < 0) {
+                return -1;
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public ShardRouteTable getRouteTable() {
+        return routeTable;
+    }
+}
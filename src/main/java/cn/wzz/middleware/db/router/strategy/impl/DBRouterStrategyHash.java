@@ -1,8 +1,11 @@
 package cn.wzz.middleware.db.router.strategy.impl;
 
-import cn.wzz.middleware.db.router.context.DBContextHolder;
 import cn.wzz.middleware.db.router.DBRouterConfig;
 import cn.wzz.middleware.db.router.strategy.IDBRouterStrategy;
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+import cn.wzz.middleware.db.router.strategy.ShardRouteTable;
+import cn.wzz.middleware.db.router.strategy.hash.HashFunction;
+import cn.wzz.middleware.db.router.strategy.hash.JdkHashFunction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -12,16 +15,30 @@ public class DBRouterStrategyHash implements IDBRouterStrategy {
 
     private DBRouterConfig dbRouterConfig;
 
+    private final ShardRouteTable routeTable;
+
+    private final HashFunction hashFunction;
+
+    // 总分表数 dbCount * tbCount
+    private final int slotCount;
+
+    private final boolean powerOfTwo;
+
     public DBRouterStrategyHash(DBRouterConfig dbRouterConfig) {
+        this(dbRouterConfig, JdkHashFunction.INSTANCE);
+    }
+
+    public DBRouterStrategyHash(DBRouterConfig dbRouterConfig, HashFunction hashFunction) {
         this.dbRouterConfig = dbRouterConfig;
+        this.routeTable = new ShardRouteTable(dbRouterConfig);
+        this.hashFunction = hashFunction;
+        this.slotCount = routeTable.size();
+        this.powerOfTwo = (slotCount & (slotCount - 1)) == 0;
     }
 
     @Override
-    public void dbRouter(String routingKey) {
-        // tbCount 为分表的总数目, 需要保证 tbCount 为 2 的幂次
-        int tbCount = dbRouterConfig.getDbCount() * dbRouterConfig.getTbCount();
-
-        int idx = (routingKey.hashCode() ^ (routingKey.hashCode() >>> 16)) & (tbCount - 1);
+    public ShardRoute route(String routingKey) {
+        int idx = slotIndex(hashFunction.hash(routingKey));
 
         // 以 DbCount = 2, TbCount = 4 为例
         // db01          db02
@@ -30,17 +47,41 @@ public class DBRouterStrategyHash implements IDBRouterStrategy {
         //  |--tb_002     |--tb_002
         //  |--tb_003     |--tb_003
         // 若 idx = 5, 则路由至 db_02 数据源中的 tb_001 表
-        int dbIdx = idx / dbRouterConfig.getTbCount() + 1;
-        int tbIdx = idx % dbRouterConfig.getTbCount();
+        ShardRoute route = routeTable.get(idx);
+        if (logger.isDebugEnabled()) {
+            logger.debug("数据库路由 dbIdx: {}, tbIdx: {}", route.getDbIdx(), route.getTbIdx());
+        }
+        return route;
+    }
+
+    /**
+     * 哈希值映射到 [0, slotCount):
+     * 1. 总分表数为 2 的幂次时取低位(与旧版本一致, 保持已有数据的分布)
+     * 2. 否则先扰动再使用乘法-移位(Lemire)做区间映射, 没有取模运算, 也没有取模带来的分布偏差
+     */
+    int slotIndex(int hash) {
+        if (powerOfTwo) {
+            return hash & (slotCount - 1);
+        }
+        return (int) (((mix32(hash) & 0xFFFFFFFFL) * slotCount) >>> 32);
+    }
+
+    // MurmurHash3 fmix32, 乘法-移位只使用哈希值的高位, 需要保证高位充分扰动
+    private static int mix32(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
 
-        DBContextHolder.setDBKey(String.format("%02d", dbIdx));
-        DBContextHolder.setTBKey(String.format("%03d", tbIdx));
-        logger.info("数据库路由 dbIdx: {}, tbIdx: {}", dbIdx, tbIdx);
+    public HashFunction getHashFunction() {
+        return hashFunction;
     }
 
     @Override
-    public void clear() {
-        DBContextHolder.clearDBKey();
-        DBContextHolder.clearTBKey();
+    public ShardRouteTable getRouteTable() {
+        return routeTable;
     }
 }
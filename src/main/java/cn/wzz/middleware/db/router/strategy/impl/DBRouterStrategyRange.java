@@ -0,0 +1,232 @@
+package cn.wzz.middleware.db.router.strategy.impl;
+
+import cn.wzz.middleware.db.router.DBRouterConfig;
+import cn.wzz.middleware.db.router.strategy.IDBRouterStrategy;
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+import cn.wzz.middleware.db.router.strategy.ShardRouteTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 范围 / 时间分片路由策略, 适用于按时间写入、按时间窗口查询的流水表、日志表
+ * 分片边界表按下界升序排列, 路由时二分查找不大于路由键的最大下界, 该下界对应的分表即为目标分表。
+ * 边界配置格式: 下界=目标分表, 多个边界以 ',' 隔开
+ *   NUMBER: 0=db01.000,10000000=db01.001,20000000=db02.000
+ *   TIME:   2024-01-01=db01.000,2024-04-01=db01.001,2024-07-01 12:00:00=db02.000
+ * TIME 类型的路由键支持 yyyy-MM-dd、yyyy-MM-dd HH:mm[:ss[.SSS]]、ISO 格式(以 'T' 分隔)及毫秒时间戳,
+ * 文本时间按 zone 对应的本地时间比较, 毫秒时间戳先换算为该时区的本地时间。
+ * 范围查询可以通过 routes(low, high) 裁剪到实际存放数据的少数分表, 广播方法配置 @DBRouter#rangeFrom / rangeTo 时
+ * 由 DBRouterJoinPoint 按入参中的区间调用该方法, 只在裁剪后的分表上执行。
+ */
+public class DBRouterStrategyRange implements IDBRouterStrategy {
+
+    private Logger logger = LoggerFactory.getLogger(DBRouterStrategyRange.class);
+
+    public enum KeyType {
+        // 数字型路由键, eg: 自增 ID
+        NUMBER,
+        // 时间型路由键
+        TIME
+    }
+
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    private final KeyType keyType;
+
+    private final ZoneId zone;
+
+    private final ShardRouteTable routeTable;
+
+    // 各分片的下界(含), 升序
+    private final long[] lowerBounds;
+
+    // 与 lowerBounds 一一对应的目标分表
+    private final ShardRoute[] routes;
+
+    public DBRouterStrategyRange(DBRouterConfig dbRouterConfig, KeyType keyType, String boundaries) {
+        this(dbRouterConfig, keyType, boundaries, ZoneId.systemDefault());
+    }
+
+    public DBRouterStrategyRange(DBRouterConfig dbRouterConfig, KeyType keyType, String boundaries, ZoneId zone) {
+        this.keyType = keyType;
+        this.zone = zone;
+
+        this.routeTable = new ShardRouteTable(dbRouterConfig);
+        TreeMap<Long, ShardRoute> sorted = new TreeMap<>();
+        for (String boundary : boundaries.split(",")) {
+            String item = boundary.trim();
+            if (item.isEmpty()) {
+                continue;
+            }
+            int eq = item.lastIndexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("[DBRouterStrategyRange] illegal boundary: " + item);
+            }
+            long lower = toRangeKey(item.substring(0, eq).trim());
+            ShardRoute route = routeTable.parse(item.substring(eq + 1).trim());
+            if (sorted.put(lower, route) != null) {
+                throw new IllegalArgumentException("[DBRouterStrategyRange] duplicate boundary: " + item);
+            }
+        }
+        if (sorted.isEmpty()) {
+            throw new IllegalArgumentException("[DBRouterStrategyRange] boundaries can't be empty");
+        }
+
+        this.lowerBounds = new long[sorted.size()];
+        this.routes = new ShardRoute[sorted.size()];
+        int i = 0;
+        for (Map.Entry<Long, ShardRoute> entry : sorted.entrySet()) {
+            lowerBounds[i] = entry.getKey();
+            routes[i] = entry.getValue();
+            i++;
+        }
+    }
+
+    @Override
+    public ShardRoute route(String routingKey) {
+        ShardRoute route = routes[indexOf(toRangeKey(routingKey), routingKey)];
+        if (logger.isDebugEnabled()) {
+            logger.debug("数据库路由 dbIdx: {}, tbIdx: {}", route.getDbIdx(), route.getTbIdx());
+        }
+        return route;
+    }
+
+    /**
+     * 范围查询裁剪: 返回可能存放 [lowKey, highKey] 区间数据的分表, 按边界顺序去重
+     */
+    public List<ShardRoute> routes(String lowKey, String highKey) {
+        long low = toRangeKey(lowKey);
+        long high = toRangeKey(highKey);
+        if (low > high) {
+            return new ArrayList<>();
+        }
+        int from = low < lowerBounds[0] ? 0 : indexOf(low, lowKey);
+        int to = high < lowerBounds[0] ? -1 : indexOf(high, highKey);
+        Set<ShardRoute> result = new LinkedHashSet<>();
+        for (int i = from; i <= to; i++) {
+            result.add(routes[i]);
+        }
+        return new ArrayList<>(result);
+    }
+
+    @Override
+    public ShardRouteTable getRouteTable() {
+        return routeTable;
+    }
+
+    public KeyType getKeyType() {
+        return keyType;
+    }
+
+    private int indexOf(long key, String routingKey) {
+        int idx = Arrays.binarySearch(lowerBounds, key);
+        if (idx < 0) {
+            idx = -idx - 2;
+        }
+        if (idx < 0) {
+            throw new IllegalArgumentException(
+                    String.format("[DBRouterStrategyRange] routing key %s is below the first boundary", routingKey));
+        }
+        return idx;
+    }
+
+    /**
+     * 将路由键转换为可比较的 long 值
+     */
+    long toRangeKey(String key) {
+        if (isInteger(key)) {
+            long value = Long.parseLong(key);
+            if (keyType == KeyType.TIME) {
+                // 毫秒时间戳换算为本地时间
+                return value + zone.getRules().getOffset(Instant.ofEpochMilli(value)).getTotalSeconds() * 1000L;
+            }
+            return value;
+        }
+        if (keyType == KeyType.TIME) {
+            return parseLocalMillis(key);
+        }
+        throw new IllegalArgumentException("[DBRouterStrategyRange] routing key is not a number: " + key);
+    }
+
+    private static boolean isInteger(String key) {
+        int len = key.length();
+        if (len == 0) {
+            return false;
+        }
+        int i = key.charAt(0) == '-' ? 1 : 0;
+        if (i == len) {
+            return false;
+        }
+        for (; i < len; i++) {
+            char c = key.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 解析 yyyy-MM-dd[( |T)HH:mm[:ss[.SSS]]] 为本地时间毫秒数, 不创建中间对象
+    private static long parseLocalMillis(String text) {
+        int len = text.length();
+        if (len < 10 || text.charAt(4) != '-' || text.charAt(7) != '-') {
+            throw new IllegalArgumentException("[DBRouterStrategyRange] illegal time: " + text);
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 7);
+        int day = digits(text, 8, 10);
+        long millis = epochDay(year, month, day) * MILLIS_PER_DAY;
+        if (len > 10) {
+            char sep = text.charAt(10);
+            if ((sep != ' ' && sep != 'T') || len < 16 || text.charAt(13) != ':') {
+                throw new IllegalArgumentException("[DBRouterStrategyRange] illegal time: " + text);
+            }
+            millis += digits(text, 11, 13) * 3600000L + digits(text, 14, 16) * 60000L;
+            if (len >= 19 && text.charAt(16) == ':') {
+                millis += digits(text, 17, 19) * 1000L;
+                if (len > 20 && text.charAt(19) == '.') {
+                    // 毫秒, 忽略超出 3 位的精度
+                    int end = Math.min(len, 23);
+                    int fraction = digits(text, 20, end);
+                    for (int i = end - 20; i < 3; i++) {
+                        fraction *= 10;
+                    }
+                    millis += fraction;
+                }
+            }
+        }
+        return millis;
+    }
+
+    private static int digits(String text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("[DBRouterStrategyRange] illegal time: " + text);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    // 公历日期 -> 距 1970-01-01 的天数(Howard Hinnant, days_from_civil)
+    private static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yoe = y - era * 400;
+        long doy = (153L * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+}
@@ -0,0 +1,189 @@
+package cn.wzz.middleware.db.router.tool;
+
+import cn.wzz.middleware.db.router.DBRouterConfig;
+import cn.wzz.middleware.db.router.strategy.IDBRouterStrategy;
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+import cn.wzz.middleware.db.router.strategy.impl.DBRouterStrategyConsistentHash;
+import cn.wzz.middleware.db.router.strategy.impl.DBRouterStrategyHash;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * 扩容评估工具: 对比扩容前后两个路由策略, 给出需要迁移的路由键
+ * 1. analyze: 统计一批路由键的迁移比例, 以及 (原分表 -> 新分表) 的迁移矩阵
+ * 2. movedRanges: 对数字型路由键区间逐个计算, 把连续且迁移方向相同的键合并为一个区间输出
+ *
+ * 命令行用法:
+ * java cn.wzz.middleware.db.router.tool.ReshardingAnalyzer &lt;hash|consistent-hash&gt;
+ *      &lt;oldDbCount&gt; &lt;oldTbCount&gt; &lt;newDbCount&gt; &lt;newTbCount&gt; &lt;startKey&gt; &lt;endKey&gt; [--ranges]
+ */
+public class ReshardingAnalyzer {
+
+    private final IDBRouterStrategy before;
+
+    private final IDBRouterStrategy after;
+
+    public ReshardingAnalyzer(IDBRouterStrategy before, IDBRouterStrategy after) {
+        this.before = before;
+        this.after = after;
+    }
+
+    public Report analyze(Iterable<String> keys) {
+        Report report = new Report();
+        for (String key : keys) {
+            report.add(before.route(key), after.route(key));
+        }
+        return report;
+    }
+
+    /**
+     * 逐个计算 [startKey, endKey] 中的数字路由键, 只输出发生迁移的区间
+     * @return 区间内全部路由键的统计结果
+     */
+    public Report movedRanges(long startKey, long endKey, Consumer<MovedRange> consumer) {
+        Report report = new Report();
+        MovedRange current = null;
+        for (long key = startKey; key <= endKey; key++) {
+            String routingKey = String.valueOf(key);
+            ShardRoute from = before.route(routingKey);
+            ShardRoute to = after.route(routingKey);
+            report.add(from, to);
+
+            boolean moved = !from.equals(to);
+            if (current != null && (!moved || !current.from.equals(from) || !current.to.equals(to))) {
+                consumer.accept(current);
+                current = null;
+            }
+            if (moved) {
+                if (current == null) {
+                    current = new MovedRange(key, key, from, to);
+                } else {
+                    current.endKey = key;
+                }
+            }
+            if (key == Long.MAX_VALUE) {
+                break;
+            }
+        }
+        if (current != null) {
+            consumer.accept(current);
+        }
+        return report;
+    }
+
+    public static class Report {
+
+        private long total;
+
+        private long moved;
+
+        // "db01.000 -> db03.000" -> 迁移的键数量
+        private final Map<String, Long> movements = new TreeMap<>();
+
+        void add(ShardRoute from, ShardRoute to) {
+            total++;
+            if (!from.equals(to)) {
+                moved++;
+                movements.merge(from + " -> " + to, 1L, Long::sum);
+            }
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public long getMoved() {
+            return moved;
+        }
+
+        public double getMovedRatio() {
+            return total == 0 ? 0.0 : (double) moved / total;
+        }
+
+        public Map<String, Long> getMovements() {
+            return movements;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("total keys: %d, moved keys: %d (%.2f%%)%n", total, moved, getMovedRatio() * 100));
+            for (Map.Entry<String, Long> entry : movements.entrySet()) {
+                sb.append(String.format("  %s : %d%n", entry.getKey(), entry.getValue()));
+            }
+            return sb.toString();
+        }
+    }
+
+    public static class MovedRange {
+
+        private final long startKey;
+
+        private long endKey;
+
+        private final ShardRoute from;
+
+        private final ShardRoute to;
+
+        MovedRange(long startKey, long endKey, ShardRoute from, ShardRoute to) {
+            this.startKey = startKey;
+            this.endKey = endKey;
+            this.from = from;
+            this.to = to;
+        }
+
+        public long getStartKey() {
+            return startKey;
+        }
+
+        public long getEndKey() {
+            return endKey;
+        }
+
+        public ShardRoute getFrom() {
+            return from;
+        }
+
+        public ShardRoute getTo() {
+            return to;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + startKey + ", " + endKey + "] " + from + " -> " + to;
+        }
+    }
+
+    static IDBRouterStrategy createStrategy(String name, int dbCount, int tbCount) {
+        DBRouterConfig config = new DBRouterConfig(dbCount, tbCount);
+        if ("consistent-hash".equals(name)) {
+            return new DBRouterStrategyConsistentHash(config);
+        }
+        if ("hash".equals(name)) {
+            return new DBRouterStrategyHash(config);
+        }
+        throw new IllegalArgumentException("unknown router strategy: " + name);
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 7) {
+            System.err.println("usage: ReshardingAnalyzer <hash|consistent-hash> <oldDbCount> <oldTbCount> "
+                    + "<newDbCount> <newTbCount> <startKey> <endKey> [--ranges]");
+            System.exit(1);
+        }
+        IDBRouterStrategy before = createStrategy(args[0], Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+        IDBRouterStrategy after = createStrategy(args[0], Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+        boolean printRanges = args.length > 7 && "--ranges".equals(args[7]);
+
+        Report report = new ReshardingAnalyzer(before, after).movedRanges(
+                Long.parseLong(args[5]), Long.parseLong(args[6]),
+                range -> {
+                    if (printRanges) {
+                        System.out.println(range);
+                    }
+                });
+        System.out.print(report);
+    }
+}
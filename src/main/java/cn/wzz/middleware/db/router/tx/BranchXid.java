@@ -0,0 +1,46 @@
+package cn.wzz.middleware.db.router.tx;
+
+/**
+ * XA 分支标识: gtrid 为全局事务 id, 由节点 id 与序号组成; bqual 为分支 id, 使用数据源名称(eg: db01)
+ */
+public final class BranchXid {
+
+    private final String gtrid;
+
+    private final String bqual;
+
+    public BranchXid(String gtrid, String bqual) {
+        this.gtrid = gtrid;
+        this.bqual = bqual;
+    }
+
+    public String getGtrid() {
+        return gtrid;
+    }
+
+    public String getBqual() {
+        return bqual;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BranchXid)) {
+            return false;
+        }
+        BranchXid that = (BranchXid) o;
+        return gtrid.equals(that.gtrid) && bqual.equals(that.bqual);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * gtrid.hashCode() + bqual.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return gtrid + "/" + bqual;
+    }
+}
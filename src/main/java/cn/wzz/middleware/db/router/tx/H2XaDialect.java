@@ -0,0 +1,76 @@
+package cn.wzz.middleware.db.router.tx;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * H2: 用于测试环境的替代实现
+ * 分支以普通本地事务执行, prepare 使用 PREPARE COMMIT 持久化为 in-doubt 事务,
+ * 恢复时从 INFORMATION_SCHEMA.IN_DOUBT 读取, 事务名为 gtrid 与 bqual 以 '.' 拼接
+ */
+public class H2XaDialect implements XaDialect {
+
+    @Override
+    public void start(Connection conn, BranchXid xid) throws SQLException {
+        conn.setAutoCommit(false);
+    }
+
+    @Override
+    public void end(Connection conn, BranchXid xid) {
+    }
+
+    @Override
+    public void prepare(Connection conn, BranchXid xid) throws SQLException {
+        MySqlXaDialect.execute(conn, "PREPARE COMMIT " + name(xid));
+    }
+
+    // 使用 SQL 语句提交/回滚, Connection#commit 在跨连接事务中会被 CustomConnection 拦截
+    @Override
+    public void commit(Connection conn, BranchXid xid) throws SQLException {
+        MySqlXaDialect.execute(conn, "COMMIT");
+    }
+
+    @Override
+    public void commitOnePhase(Connection conn, BranchXid xid) throws SQLException {
+        MySqlXaDialect.execute(conn, "COMMIT");
+    }
+
+    @Override
+    public void rollback(Connection conn, BranchXid xid) throws SQLException {
+        MySqlXaDialect.execute(conn, "ROLLBACK");
+    }
+
+    @Override
+    public List<BranchXid> recover(Connection conn) throws SQLException {
+        List<BranchXid> xids = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT TRANSACTION FROM INFORMATION_SCHEMA.IN_DOUBT")) {
+            while (rs.next()) {
+                String name = rs.getString(1);
+                int dot = name.lastIndexOf('.');
+                if (dot > 0) {
+                    xids.add(new BranchXid(name.substring(0, dot), name.substring(dot + 1)));
+                }
+            }
+        }
+        return xids;
+    }
+
+    @Override
+    public void commitRecovered(Connection conn, BranchXid xid) throws SQLException {
+        MySqlXaDialect.execute(conn, "COMMIT TRANSACTION " + name(xid));
+    }
+
+    @Override
+    public void rollbackRecovered(Connection conn, BranchXid xid) throws SQLException {
+        MySqlXaDialect.execute(conn, "ROLLBACK TRANSACTION " + name(xid));
+    }
+
+    private static String name(BranchXid xid) {
+        return '"' + xid.getGtrid() + '.' + xid.getBqual() + '"';
+    }
+}
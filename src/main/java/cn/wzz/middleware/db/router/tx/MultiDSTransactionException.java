@@ -0,0 +1,61 @@
+package cn.wzz.middleware.db.router.tx;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 跨连接事务提交阶段失败, 各分库的结果见 getOutcomes
+ * isPartiallyCommitted 为 true 时部分分库已经提交且无法回滚, 事务处于部分提交状态, 需要由业务补偿;
+ * 并行提交时一个分库失败不影响其它分库提交, 比串行提交更容易出现部分提交(见 MultiDSTxCoordinator)。
+ * XA 模式下提交决策已经落盘的事务, 未完成的分支由恢复流程继续提交, 最终全部提交
+ */
+public class MultiDSTransactionException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<ShardTxOutcome> outcomes;
+
+    // 已经提交的分库
+    private final List<Object> committed;
+
+    public MultiDSTransactionException(String message, List<ShardTxOutcome> outcomes) {
+        this(message, outcomes, committedDsKeys(outcomes));
+    }
+
+    private MultiDSTransactionException(String message, List<ShardTxOutcome> outcomes, List<Object> committed) {
+        super(message + (committed.isEmpty() ? " " : " 部分提交, 已提交的分库: " + committed + " ") + outcomes);
+        this.outcomes = outcomes;
+        this.committed = committed;
+        for (ShardTxOutcome outcome : outcomes) {
+            if (outcome.getError() != null) {
+                addSuppressed(outcome.getError());
+            }
+        }
+    }
+
+    private static List<Object> committedDsKeys(List<ShardTxOutcome> outcomes) {
+        List<Object> committed = new ArrayList<>();
+        for (ShardTxOutcome outcome : outcomes) {
+            if (outcome.getStatus() == ShardTxOutcome.Status.COMMITTED) {
+                committed.add(outcome.getDsKey());
+            }
+        }
+        return Collections.unmodifiableList(committed);
+    }
+
+    public List<ShardTxOutcome> getOutcomes() {
+        return outcomes;
+    }
+
+    /**
+     * @return 是否有分库已经提交, 为 true 时其余分库的修改已回滚或结果未知
+     */
+    public boolean isPartiallyCommitted() {
+        return !committed.isEmpty();
+    }
+
+    public List<Object> getCommittedDsKeys() {
+        return committed;
+    }
+}
@@ -0,0 +1,197 @@
+package cn.wzz.middleware.db.router.tx;
+
+import cn.wzz.middleware.db.router.context.RouteContext;
+import cn.wzz.middleware.db.router.dynamic.CustomConnection;
+import cn.wzz.middleware.db.router.tx.ShardTxOutcome.Status;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * 跨连接事务的提交/回滚阶段
+ * 1. 串行模式(默认): 按连接加入顺序逐个提交, 任一连接提交失败后, 其余未提交的连接全部回滚,
+ *    只有失败之前已提交的分库保留修改
+ * 2. 并行模式: 各连接在专用线程池上同时提交/回滚, 调用线程执行其中一个, 耗时约等于最慢的分库;
+ *    调用线程最多等待到截止时间, 超时的分库记为 TIMED_OUT。
+ *    各分库的提交相互独立, 一个分库提交失败时其它分库仍然提交, 因此比串行模式更容易部分提交
+ * 两种模式都不是原子提交, 部分提交时 MultiDSTransactionException#isPartiallyCommitted 为 true;
+ * 需要原子提交时使用 XA 模式(XaTxCoordinator)
+ * 每个连接在自身提交/回滚结束后立即关闭归还连接池, 不等待其它分库
+ */
+public class MultiDSTxCoordinator {
+
+    private final ExecutorService executor;
+
+    private final long timeoutNanos;
+
+    /**
+     * 串行提交
+     */
+    public MultiDSTxCoordinator() {
+        this(null, 0);
+    }
+
+    /**
+     * @param executor 并行提交线程池, 为 null 时串行提交
+     * @param timeoutMillis 并行提交等待的截止时间
+     */
+    public MultiDSTxCoordinator(ExecutorService executor, long timeoutMillis) {
+        if (executor != null && timeoutMillis <= 0) {
+            throw new IllegalArgumentException("timeoutMillis must be positive: " + timeoutMillis);
+        }
+        this.executor = executor;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    /**
+     * 事务开始时调用, 此时还没有任何连接加入事务
+     */
+    public void begin(RouteContext ctx) {
+    }
+
+    /**
+     * 只有一个连接参与事务时直接提交, 不经过分支执行器, 也不创建结果对象; 失败时回滚并抛出异常
+     */
+    public void commitSingle(CustomConnection conn) throws SQLException {
+        commitLocal(conn);
+    }
+
+    public void rollbackSingle(CustomConnection conn) throws SQLException {
+        rollbackLocal(conn);
+    }
+
+    public List<ShardTxOutcome> commit(List<CustomConnection> connections) {
+        if (executor == null || connections.size() <= 1) {
+            List<ShardTxOutcome> outcomes = new ArrayList<>(connections.size());
+            boolean failed = false;
+            for (CustomConnection conn : connections) {
+                ShardTxOutcome outcome = failed ? run(conn, MultiDSTxCoordinator::rollbackLocal) : run(conn, MultiDSTxCoordinator::commitLocal);
+                failed |= outcome.isFailed();
+                outcomes.add(outcome);
+            }
+            return outcomes;
+        }
+        return runAll(connections, MultiDSTxCoordinator::commitLocal, null);
+    }
+
+    public List<ShardTxOutcome> rollback(List<CustomConnection> connections) {
+        return runAll(connections, MultiDSTxCoordinator::rollbackLocal, null);
+    }
+
+    private static Status commitLocal(CustomConnection conn) throws SQLException {
+        try {
+            conn.commitMultiTx();
+            return Status.COMMITTED;
+        } catch (SQLException e) {
+            // 提交失败时尝试回滚
+            try {
+                conn.rollbackMultiTx();
+            } catch (SQLException rollbackError) {
+                e.addSuppressed(rollbackError);
+            }
+            throw e;
+        } finally {
+            close(conn);
+        }
+    }
+
+    private static Status rollbackLocal(CustomConnection conn) throws SQLException {
+        try {
+            conn.rollbackMultiTx();
+            return Status.ROLLED_BACK;
+        } finally {
+            close(conn);
+        }
+    }
+
+    /**
+     * 对每个连接执行一次 action, 有线程池且连接数大于 1 时并行执行
+     * @param lateAction 超过截止时间的分支在 action 结束后执行的补偿操作, 可以为 null
+     */
+    protected final List<ShardTxOutcome> runAll(List<CustomConnection> connections, BranchAction action,
+                                                Consumer<CustomConnection> lateAction) {
+        int size = connections.size();
+        List<ShardTxOutcome> outcomes = new ArrayList<>(size);
+        if (executor == null || size <= 1) {
+            for (CustomConnection conn : connections) {
+                outcomes.add(run(conn, action));
+            }
+            return outcomes;
+        }
+
+        List<CompletableFuture<ShardTxOutcome>> futures = new ArrayList<>(size - 1);
+        for (int i = 1; i < size; i++) {
+            CustomConnection conn = connections.get(i);
+            futures.add(CompletableFuture.supplyAsync(() -> run(conn, action), executor));
+        }
+        long deadline = System.nanoTime() + timeoutNanos;
+
+        outcomes.add(run(connections.get(0), action));
+        boolean interrupted = false;
+        for (int i = 0; i < futures.size(); i++) {
+            CustomConnection conn = connections.get(i + 1);
+            CompletableFuture<ShardTxOutcome> future = futures.get(i);
+            long start = System.nanoTime();
+            try {
+                outcomes.add(future.get(Math.max(0, deadline - start), TimeUnit.NANOSECONDS));
+                continue;
+            } catch (TimeoutException e) {
+                outcomes.add(new ShardTxOutcome(conn.getDsKey(), Status.TIMED_OUT, e, timeoutNanos));
+            } catch (InterruptedException e) {
+                interrupted = true;
+                outcomes.add(new ShardTxOutcome(conn.getDsKey(), Status.TIMED_OUT, e, System.nanoTime() - start));
+            } catch (ExecutionException e) {
+                outcomes.add(new ShardTxOutcome(conn.getDsKey(), Status.FAILED, e.getCause(), System.nanoTime() - start));
+            }
+            if (lateAction != null) {
+                future.whenComplete((outcome, error) -> lateAction.accept(conn));
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return outcomes;
+    }
+
+    protected static ShardTxOutcome run(CustomConnection conn, BranchAction action) {
+        long start = System.nanoTime();
+        try {
+            return new ShardTxOutcome(conn.getDsKey(), action.apply(conn), null, System.nanoTime() - start);
+        } catch (Throwable e) {
+            return new ShardTxOutcome(conn.getDsKey(), Status.FAILED, e, System.nanoTime() - start);
+        }
+    }
+
+    protected static void close(CustomConnection conn) {
+        try {
+            conn.closeMultiTx();
+        } catch (Exception ignore) {
+            // 连接已经完成提交/回滚, 关闭失败不影响事务结果
+        }
+    }
+
+    public boolean isConcurrent() {
+        return executor != null;
+    }
+
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 对单个分支执行的操作
+     */
+    @FunctionalInterface
+    protected interface BranchAction {
+        Status apply(CustomConnection conn) throws Exception;
+    }
+}
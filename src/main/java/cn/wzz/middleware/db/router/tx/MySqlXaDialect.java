@@ -0,0 +1,83 @@
+package cn.wzz.middleware.db.router.tx;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * MySQL: XA START / END / PREPARE / COMMIT [ONE PHASE] / ROLLBACK / RECOVER
+ * gtrid、bqual 只包含字母、数字、'-'、'_', 以字符串常量形式拼接
+ */
+public class MySqlXaDialect implements XaDialect {
+
+    @Override
+    public void start(Connection conn, BranchXid xid) throws SQLException {
+        execute(conn, "XA START " + literal(xid));
+    }
+
+    @Override
+    public void end(Connection conn, BranchXid xid) throws SQLException {
+        execute(conn, "XA END " + literal(xid));
+    }
+
+    @Override
+    public void prepare(Connection conn, BranchXid xid) throws SQLException {
+        execute(conn, "XA PREPARE " + literal(xid));
+    }
+
+    @Override
+    public void commit(Connection conn, BranchXid xid) throws SQLException {
+        execute(conn, "XA COMMIT " + literal(xid));
+    }
+
+    @Override
+    public void commitOnePhase(Connection conn, BranchXid xid) throws SQLException {
+        execute(conn, "XA COMMIT " + literal(xid) + " ONE PHASE");
+    }
+
+    @Override
+    public void rollback(Connection conn, BranchXid xid) throws SQLException {
+        execute(conn, "XA ROLLBACK " + literal(xid));
+    }
+
+    /**
+     * XA RECOVER 返回 formatID, gtrid_length, bqual_length, data, 其中 data 为 gtrid 与 bqual 拼接
+     */
+    @Override
+    public List<BranchXid> recover(Connection conn) throws SQLException {
+        List<BranchXid> xids = new ArrayList<>();
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("XA RECOVER")) {
+            while (rs.next()) {
+                int gtridLength = rs.getInt("gtrid_length");
+                byte[] data = rs.getBytes("data");
+                xids.add(new BranchXid(new String(data, 0, gtridLength, StandardCharsets.UTF_8),
+                        new String(data, gtridLength, data.length - gtridLength, StandardCharsets.UTF_8)));
+            }
+        }
+        return xids;
+    }
+
+    @Override
+    public void commitRecovered(Connection conn, BranchXid xid) throws SQLException {
+        commit(conn, xid);
+    }
+
+    @Override
+    public void rollbackRecovered(Connection conn, BranchXid xid) throws SQLException {
+        rollback(conn, xid);
+    }
+
+    private static String literal(BranchXid xid) {
+        return "'" + xid.getGtrid() + "','" + xid.getBqual() + "'";
+    }
+
+    static void execute(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package cn.wzz.middleware.db.router.tx;
+
+/**
+ * 跨连接事务中单个分库连接的提交/回滚结果
+ */
+public class ShardTxOutcome {
+
+    public enum Status {
+        // XA 分支 prepare 成功, 只在第一阶段出现
+        PREPARED,
+        // 提交成功
+        COMMITTED,
+        // 回滚成功
+        ROLLED_BACK,
+        // 提交或回滚失败, 提交失败时已尝试回滚
+        FAILED,
+        // 超过截止时间仍未完成, 结果未知, 连接会在操作结束后关闭
+        TIMED_OUT
+    }
+
+    private final Object dsKey;
+
+    private final Status status;
+
+    private final Throwable error;
+
+    // 提交/回滚耗时, TIMED_OUT 时为等待时长
+    private final long elapsedNanos;
+
+    public ShardTxOutcome(Object dsKey, Status status, Throwable error, long elapsedNanos) {
+        this.dsKey = dsKey;
+        this.status = status;
+        this.error = error;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public Object getDsKey() {
+        return dsKey;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public boolean isFailed() {
+        return status == Status.FAILED || status == Status.TIMED_OUT;
+    }
+
+    @Override
+    public String toString() {
+        return dsKey + ":" + status + "(" + elapsedNanos / 1000 + "us" + (error == null ? "" : ", " + error) + ")";
+    }
+}
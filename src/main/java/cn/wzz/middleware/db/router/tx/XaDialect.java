@@ -0,0 +1,56 @@
+package cn.wzz.middleware.db.router.tx;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * 不同数据库的 XA 事务语句
+ * 连接池返回的连接大多不支持 javax.sql.XAConnection, 因此直接在普通连接上执行 XA SQL
+ */
+public interface XaDialect {
+
+    /**
+     * 连接加入全局事务时调用, 之后该连接上执行的语句都属于此分支
+     */
+    void start(Connection conn, BranchXid xid) throws SQLException;
+
+    void end(Connection conn, BranchXid xid) throws SQLException;
+
+    void prepare(Connection conn, BranchXid xid) throws SQLException;
+
+    void commit(Connection conn, BranchXid xid) throws SQLException;
+
+    /**
+     * 只有一个分支时跳过 prepare 直接提交
+     */
+    void commitOnePhase(Connection conn, BranchXid xid) throws SQLException;
+
+    /**
+     * 回滚未 prepare 或已 prepare 的分支
+     */
+    void rollback(Connection conn, BranchXid xid) throws SQLException;
+
+    /**
+     * @return 数据库中处于 prepared 状态的分支
+     */
+    List<BranchXid> recover(Connection conn) throws SQLException;
+
+    /**
+     * 提交/回滚恢复阶段找到的分支, 执行时连接不属于任何全局事务
+     */
+    void commitRecovered(Connection conn, BranchXid xid) throws SQLException;
+
+    void rollbackRecovered(Connection conn, BranchXid xid) throws SQLException;
+
+    static XaDialect of(String name) {
+        switch (name) {
+            case "mysql":
+                return new MySqlXaDialect();
+            case "h2":
+                return new H2XaDialect();
+            default:
+                throw new IllegalArgumentException("[XaDialect] unknown xa dialect: " + name);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package cn.wzz.middleware.db.router.tx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 启动时的 XA 恢复: 扫描每个分库中处于 prepared 状态的分支
+ * 1. 只处理本节点(gtrid 前缀为 nodeId.)的分支, 其它节点的分支由其自身恢复
+ * 2. XaTxLog 中记录了提交决策的事务提交, 其余按 presumed abort 回滚
+ * 3. 全部分库处理成功后, 把日志中的提交决策标记为完成
+ * 运行期第二阶段失败的事务由 XaTxCoordinator 定时调用 retry 继续提交
+ */
+public class XaRecovery {
+
+    private static final Logger logger = LoggerFactory.getLogger(XaRecovery.class);
+
+    private final XaDialect dialect;
+
+    private final XaTxLog txLog;
+
+    private final String nodePrefix;
+
+    public XaRecovery(XaDialect dialect, XaTxLog txLog, String nodeId) {
+        this.dialect = dialect;
+        this.txLog = txLog;
+        this.nodePrefix = XaTxCoordinator.gtridPrefix(nodeId);
+    }
+
+    /**
+     * @param dataSources 数据源名称 -> 分库数据源
+     * @return 处理的 in-doubt 分支数
+     */
+    public int recover(Map<Object, DataSource> dataSources) {
+        Set<String> committing = txLog.getCommitting();
+        int resolved = 0;
+        boolean complete = true;
+        for (Map.Entry<Object, DataSource> entry : dataSources.entrySet()) {
+            try (Connection conn = entry.getValue().getConnection()) {
+                resolved += resolve(entry.getKey(), conn, committing, true);
+            } catch (Exception e) {
+                complete = false;
+                logger.error("[XaRecovery] recover datasource {} failed", entry.getKey(), e);
+            }
+        }
+        if (complete) {
+            for (String gtrid : committing) {
+                txLog.logDone(gtrid);
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * 运行期重试: 只提交 gtrids 中仍处于 prepared 状态的分支, 不回滚其它分支(可能属于进行中的事务),
+     * 全部分库处理成功后把这些事务标记为完成
+     * @return 全部分库处理成功时返回 true
+     */
+    public boolean retry(Map<Object, DataSource> dataSources, Set<String> gtrids) {
+        boolean complete = true;
+        for (Map.Entry<Object, DataSource> entry : dataSources.entrySet()) {
+            try (Connection conn = entry.getValue().getConnection()) {
+                resolve(entry.getKey(), conn, gtrids, false);
+            } catch (Exception e) {
+                complete = false;
+                logger.warn("[XaRecovery] retry commit on datasource {} failed", entry.getKey(), e);
+            }
+        }
+        if (complete) {
+            for (String gtrid : gtrids) {
+                txLog.logDone(gtrid);
+            }
+        }
+        return complete;
+    }
+
+    private int resolve(Object dsKey, Connection conn, Set<String> committing, boolean rollbackOthers) throws SQLException {
+        int resolved = 0;
+        for (BranchXid xid : dialect.recover(conn)) {
+            if (!xid.getGtrid().startsWith(nodePrefix)) {
+                continue;
+            }
+            if (committing.contains(xid.getGtrid())) {
+                dialect.commitRecovered(conn, xid);
+                logger.info("[XaRecovery] committed in-doubt branch {} on {}", xid, dsKey);
+            } else if (rollbackOthers) {
+                dialect.rollbackRecovered(conn, xid);
+                logger.info("[XaRecovery] rolled back in-doubt branch {} on {}", xid, dsKey);
+            } else {
+                continue;
+            }
+            resolved++;
+        }
+        return resolved;
+    }
+}
@@ -0,0 +1,299 @@
+package cn.wzz.middleware.db.router.tx;
+
+import cn.wzz.middleware.db.router.context.RouteContext;
+import cn.wzz.middleware.db.router.dynamic.CustomConnection;
+import cn.wzz.middleware.db.router.tx.ShardTxOutcome.Status;
+import cn.wzz.middleware.db.router.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * XA 两阶段提交
+ * 1. 事务开始时分配全局事务 id, 连接在 DynamicDataSource 中加入事务时执行 XA START
+ * 2. 第一阶段: 各分支 XA END + XA PREPARE, 任一分支失败则全部回滚
+ * 3. 全部 prepare 成功后, 提交决策写入 XaTxLog 并刷盘, 此后事务一定会提交
+ * 4. 第二阶段: 各分支 XA COMMIT, 失败或超时的事务由后台线程定时重试提交(startRetry),
+ *    进程在此之前退出时由下次启动时的 XaRecovery 继续提交
+ * 全局事务 id 格式: nodeId.启动时间.序号, 恢复时只处理本节点的事务
+ */
+public class XaTxCoordinator extends MultiDSTxCoordinator {
+
+    private static final Logger logger = LoggerFactory.getLogger(XaTxCoordinator.class);
+
+    private final XaDialect dialect;
+
+    private final XaTxLog txLog;
+
+    private final String gtridPrefix;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    // 第二阶段有分支失败或超时、等待重试提交的事务
+    private final Set<String> unfinished = ConcurrentHashMap.newKeySet();
+
+    private XaRecovery recovery;
+
+    private Map<Object, DataSource> dataSources;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param nodeId 节点 id, 在共享同一组数据库的应用实例之间唯一且重启后不变
+     */
+    public XaTxCoordinator(XaDialect dialect, XaTxLog txLog, String nodeId, ExecutorService executor, long timeoutMillis) {
+        super(executor, timeoutMillis);
+        this.dialect = dialect;
+        this.txLog = txLog;
+        this.gtridPrefix = gtridPrefix(nodeId) + Long.toString(System.currentTimeMillis(), 36) + ".";
+    }
+
+    /**
+     * 节点 id 只保留字母、数字、'-'、'_', 以 '.' 结尾, 保证不同节点的前缀互不包含
+     */
+    static String gtridPrefix(String nodeId) {
+        return nodeId.replaceAll("[^A-Za-z0-9_-]", "_") + ".";
+    }
+
+    @Override
+    public void begin(RouteContext ctx) {
+        ctx.setXaGtrid(gtridPrefix + sequence.incrementAndGet());
+    }
+
+    /**
+     * 只有一个分支时不需要 prepare 和提交决策日志, 直接 XA COMMIT ONE PHASE
+     */
+    @Override
+    public void commitSingle(CustomConnection conn) throws SQLException {
+        String gtrid = RouteContext.current().getXaGtrid();
+        BranchXid xid = xid(conn, gtrid);
+        try {
+            dialect.end(conn, xid);
+            dialect.commitOnePhase(conn, xid);
+        } catch (SQLException e) {
+            try {
+                dialect.rollback(conn, xid);
+            } catch (SQLException rollbackError) {
+                e.addSuppressed(rollbackError);
+            }
+            throw e;
+        } finally {
+            close(conn);
+        }
+    }
+
+    @Override
+    public void rollbackSingle(CustomConnection conn) throws SQLException {
+        rollback(conn, RouteContext.current().getXaGtrid());
+    }
+
+    @Override
+    public List<ShardTxOutcome> commit(List<CustomConnection> connections) {
+        if (connections.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String gtrid = RouteContext.current().getXaGtrid();
+
+        // 1. 第一阶段, 超时的分支在 prepare 结束后回滚, 未写入提交决策的事务恢复时也会回滚
+        List<ShardTxOutcome> prepared = runAll(connections, conn -> prepare(conn, gtrid), conn -> rollbackQuietly(conn, gtrid));
+        if (anyFailed(prepared)) {
+            return abort(connections, prepared, gtrid);
+        }
+
+        // 2. 持久化提交决策
+        try {
+            txLog.logCommit(gtrid);
+        } catch (RuntimeException e) {
+            try {
+                txLog.logAborted(gtrid);
+            } catch (RuntimeException abortError) {
+                e.addSuppressed(abortError);
+            }
+            List<ShardTxOutcome> outcomes = abort(connections, prepared, gtrid);
+            throw new MultiDSTransactionException("XA 提交决策写入失败, 事务已回滚! " + gtrid + " " + e, outcomes);
+        }
+
+        // 3. 第二阶段
+        List<ShardTxOutcome> outcomes = runAll(connections, conn -> commit(conn, gtrid), null);
+        if (anyFailed(outcomes)) {
+            unfinished.add(gtrid);
+            logger.warn("[XaTxCoordinator] {} committed with unfinished branches, will be retried: {}", gtrid, outcomes);
+        } else {
+            logDone(gtrid);
+        }
+        return outcomes;
+    }
+
+    // 全部分支已提交, DONE 记录写入失败(eg: 关闭过程中日志已关闭)时恢复阶段会再次提交, 不影响本次结果
+    private void logDone(String gtrid) {
+        try {
+            txLog.logDone(gtrid);
+        } catch (RuntimeException e) {
+            logger.warn("[XaTxCoordinator] {} committed but DONE record not written: {}", gtrid, e.getMessage());
+        }
+    }
+
+    @Override
+    public List<ShardTxOutcome> rollback(List<CustomConnection> connections) {
+        String gtrid = RouteContext.current().getXaGtrid();
+        return runAll(connections, conn -> rollback(conn, gtrid), null);
+    }
+
+    /**
+     * 回滚 prepare 成功或失败的分支, prepare 超时的分支由 prepare 结束后的补偿操作回滚
+     */
+    private List<ShardTxOutcome> abort(List<CustomConnection> connections, List<ShardTxOutcome> prepared, String gtrid) {
+        List<CustomConnection> toRollback = new ArrayList<>(connections.size());
+        for (int i = 0; i < connections.size(); i++) {
+            if (prepared.get(i).getStatus() != Status.TIMED_OUT) {
+                toRollback.add(connections.get(i));
+            }
+        }
+        List<ShardTxOutcome> rolledBack = runAll(toRollback, conn -> rollback(conn, gtrid), null);
+
+        List<ShardTxOutcome> outcomes = new ArrayList<>(connections.size());
+        for (int i = 0, j = 0; i < connections.size(); i++) {
+            ShardTxOutcome outcome = prepared.get(i);
+            if (outcome.getStatus() != Status.TIMED_OUT) {
+                ShardTxOutcome rollbackOutcome = rolledBack.get(j++);
+                // prepare 失败的分支保留失败原因
+                outcome = outcome.isFailed() ? outcome : rollbackOutcome;
+            }
+            outcomes.add(outcome);
+        }
+        return outcomes;
+    }
+
+    private Status prepare(CustomConnection conn, String gtrid) throws SQLException {
+        BranchXid xid = xid(conn, gtrid);
+        dialect.end(conn, xid);
+        dialect.prepare(conn, xid);
+        return Status.PREPARED;
+    }
+
+    private Status commit(CustomConnection conn, String gtrid) throws SQLException {
+        try {
+            dialect.commit(conn, xid(conn, gtrid));
+            return Status.COMMITTED;
+        } finally {
+            close(conn);
+        }
+    }
+
+    private Status rollback(CustomConnection conn, String gtrid) throws SQLException {
+        BranchXid xid = xid(conn, gtrid);
+        try {
+            try {
+                dialect.end(conn, xid);
+            } catch (SQLException ignore) {
+                // 分支已经 END 或 PREPARE
+            }
+            dialect.rollback(conn, xid);
+            return Status.ROLLED_BACK;
+        } finally {
+            close(conn);
+        }
+    }
+
+    private void rollbackQuietly(CustomConnection conn, String gtrid) {
+        try {
+            rollback(conn, gtrid);
+        } catch (SQLException e) {
+            logger.warn("[XaTxCoordinator] rollback timed out branch {} failed, will be resolved by recovery", xid(conn, gtrid), e);
+        }
+    }
+
+    private static BranchXid xid(CustomConnection conn, String gtrid) {
+        return new BranchXid(gtrid, String.valueOf(conn.getDsKey()));
+    }
+
+    private static boolean anyFailed(List<ShardTxOutcome> outcomes) {
+        for (ShardTxOutcome outcome : outcomes) {
+            if (outcome.isFailed()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 定时重试提交第二阶段未完成的事务, 避免 prepared 分支一直持有行锁直到下次重启
+     * intervalMillis <= 0 时不启动线程, 只能手动调用 retryUnfinished
+     */
+    public synchronized void startRetry(XaRecovery recovery, Map<Object, DataSource> dataSources, long intervalMillis) {
+        this.recovery = recovery;
+        this.dataSources = dataSources;
+        if (scheduler != null || intervalMillis <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("db-router-xa-retry"));
+        scheduler.scheduleWithFixedDelay(this::retryUnfinished, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 重试提交一次未完成的事务
+     * @return 仍未完成的事务数
+     */
+    public int retryUnfinished() {
+        if (unfinished.isEmpty() || recovery == null) {
+            return unfinished.size();
+        }
+        Set<String> gtrids = new HashSet<>(unfinished);
+        try {
+            if (recovery.retry(dataSources, gtrids)) {
+                unfinished.removeAll(gtrids);
+                logger.info("[XaTxCoordinator] unfinished transactions completed: {}", gtrids);
+            }
+        } catch (RuntimeException e) {
+            logger.error("[XaTxCoordinator] retry unfinished transactions failed: {}", gtrids, e);
+        }
+        return unfinished.size();
+    }
+
+    public Set<String> getUnfinished() {
+        return Collections.unmodifiableSet(new HashSet<>(unfinished));
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
+        super.shutdown();
+        try {
+            txLog.close();
+        } catch (IOException e) {
+            logger.warn("[XaTxCoordinator] close transaction log failed", e);
+        }
+    }
+
+    public String getGtridPrefix() {
+        return gtridPrefix;
+    }
+
+    public XaDialect getDialect() {
+        return dialect;
+    }
+
+    public XaTxLog getTxLog() {
+        return txLog;
+    }
+}
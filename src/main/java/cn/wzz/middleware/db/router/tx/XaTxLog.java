@@ -0,0 +1,377 @@
+package cn.wzz.middleware.db.router.tx;
+
+import cn.wzz.middleware.db.router.util.BufferCleaner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * XA 事务决策日志: 只追加、内存映射的本地文件
+ * 1. 全部分支 prepare 成功后写入 COMMIT 记录并刷盘, 之后才进入第二阶段; 未记录 COMMIT 的事务一律按回滚处理(presumed abort)
+ * 2. 第二阶段全部完成后写入 DONE 记录, 不需要刷盘, 丢失时恢复阶段会再次提交, 对已提交的分支不产生影响;
+ *    COMMIT 刷盘失败、事务改为回滚时写入 DONE 记录并刷盘, 使该决策失效且不再被复制到下一代文件
+ * 3. 组提交: 多个线程追加的记录由一次 force() 一起刷盘, 等待锁的线程发现自己的记录已被覆盖时直接返回
+ * 记录格式: [type 1B][length 2B][gtrid][crc32 4B], 文件剩余部分为 0, 读到 type 为 0 或校验失败时结束
+ * 文件写满时切换到下一代文件, 只把仍未完成的 COMMIT 记录复制过去, 然后删除旧文件;
+ * 旧文件的映射由下一次持有 forceLock 的刷盘释放, 此时不会有其它线程仍在对它执行 force()
+ * 关闭时刷盘全部已追加的记录, 之后的追加与刷盘抛出 IllegalStateException, 不会访问已释放的映射
+ */
+public class XaTxLog implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(XaTxLog.class);
+
+    private static final byte COMMIT = 'C';
+
+    private static final byte DONE = 'D';
+
+    private static final int HEADER_SIZE = 3;
+
+    private static final int CRC_SIZE = 4;
+
+    private final File dir;
+
+    private final String name;
+
+    private final int fileSize;
+
+    // 已写入 COMMIT 但尚未写入 DONE 的事务
+    private final Set<String> committing = ConcurrentHashMap.newKeySet();
+
+    private long generation;
+
+    private RandomAccessFile file;
+
+    private MappedByteBuffer buffer;
+
+    // 已追加的位置, 在 this 锁内读写
+    private long appendPosition;
+
+    // 是否已关闭, 在 this 锁内读写
+    private boolean closed;
+
+    // 已刷盘的位置, 在 forceLock 内修改; 包含代数, 切换文件后旧位置自然失效
+    private volatile long forcedPosition;
+
+    private final Object forceLock = new Object();
+
+    // 已切换掉、尚未释放映射的旧文件缓冲区, 在 this 锁内读写, 在 forceLock 内释放
+    private final List<MappedByteBuffer> retired = new ArrayList<>();
+
+    /**
+     * @param dir 日志目录
+     * @param name 日志文件名前缀, 通常包含节点 id
+     * @param fileSize 单个日志文件大小
+     */
+    public XaTxLog(File dir, String name, int fileSize) throws IOException {
+        if (fileSize < 4096) {
+            throw new IllegalArgumentException("fileSize must be at least 4096: " + fileSize);
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("[XaTxLog] can not create log dir " + dir);
+        }
+        this.dir = dir;
+        this.name = name;
+        this.fileSize = fileSize;
+
+        // 按代数顺序读取已有文件, 还原未完成的 COMMIT 记录
+        File[] existing = listFiles();
+        for (File f : existing) {
+            replay(f);
+            generation = Math.max(generation, generationOf(f));
+        }
+        roll(existing);
+        if (!committing.isEmpty()) {
+            logger.info("[XaTxLog] {} committing transactions found in {}", committing.size(), dir);
+        }
+    }
+
+    /**
+     * 记录提交决策并等待刷盘, 返回后即可进入第二阶段
+     */
+    public void logCommit(String gtrid) {
+        sync(append(COMMIT, gtrid));
+    }
+
+    /**
+     * 提交决策刷盘失败、事务改为回滚时调用, 在回滚分支之前撤销该决策并等待刷盘,
+     * 避免 COMMIT 记录已落盘时恢复阶段把回滚了一半的事务继续提交
+     */
+    public void logAborted(String gtrid) {
+        if (committing.remove(gtrid)) {
+            sync(append(DONE, gtrid));
+        }
+    }
+
+    /**
+     * 记录事务第二阶段已全部完成
+     */
+    public void logDone(String gtrid) {
+        if (committing.remove(gtrid)) {
+            append(DONE, gtrid);
+        }
+    }
+
+    public boolean isCommitting(String gtrid) {
+        return committing.contains(gtrid);
+    }
+
+    /**
+     * @return 已决定提交但尚未全部完成的事务, 用于启动恢复
+     */
+    public Set<String> getCommitting() {
+        return Collections.unmodifiableSet(new HashSet<>(committing));
+    }
+
+    private synchronized long append(byte type, String gtrid) {
+        if (closed) {
+            throw new IllegalStateException("[XaTxLog] log closed, can not append " + gtrid);
+        }
+        byte[] bytes = gtrid.getBytes(StandardCharsets.UTF_8);
+        int size = HEADER_SIZE + bytes.length + CRC_SIZE;
+        if (size > fileSize / 2) {
+            throw new IllegalArgumentException("[XaTxLog] gtrid too long: " + gtrid);
+        }
+        if (buffer.remaining() < size) {
+            try {
+                roll(new File[]{currentFile()});
+            } catch (IOException e) {
+                throw new IllegalStateException("[XaTxLog] roll log failed", e);
+            }
+            if (buffer.remaining() < size) {
+                // 未完成的 COMMIT 记录占满了新文件, 等待第二阶段完成腾出空间
+                throw new IllegalStateException("[XaTxLog] log file too small for " + committing.size()
+                        + " committing transactions, can not append " + gtrid);
+            }
+        }
+        writeRecord(buffer, type, bytes);
+        // 与写入记录在同一把锁内加入集合, 之后的 roll() 一定会把它复制到下一代文件
+        if (type == COMMIT) {
+            committing.add(gtrid);
+        }
+        long end = position(generation, buffer.position());
+        appendPosition = end;
+        return end;
+    }
+
+    private static void writeRecord(MappedByteBuffer buffer, byte type, byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(bytes, 0, bytes.length);
+        buffer.put(type);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    private void sync(long end) {
+        if (forcedPosition >= end) {
+            return;
+        }
+        synchronized (forceLock) {
+            if (forcedPosition >= end) {
+                return;
+            }
+            // 读取当前追加位置后再刷盘, 这之前追加的记录都由本次 force() 覆盖;
+            // 之后若切换了文件, 旧文件在切换时已经刷盘
+            long target;
+            MappedByteBuffer current;
+            synchronized (this) {
+                if (closed) {
+                    // 关闭时已刷盘全部追加的记录并更新 forcedPosition, 走到这里说明记录不在已刷盘范围内
+                    throw new IllegalStateException("[XaTxLog] log closed before position " + end + " was forced");
+                }
+                target = appendPosition;
+                current = buffer;
+            }
+            current.force();
+            forcedPosition = Math.max(forcedPosition, target);
+            unmapRetired();
+        }
+    }
+
+    // 只在持有 forceLock 时调用: 旧缓冲区只可能被持有 forceLock 的刷盘线程使用
+    private void unmapRetired() {
+        List<MappedByteBuffer> buffers;
+        synchronized (this) {
+            if (retired.isEmpty()) {
+                return;
+            }
+            buffers = new ArrayList<>(retired);
+            retired.clear();
+        }
+        for (MappedByteBuffer b : buffers) {
+            BufferCleaner.unmap(b);
+        }
+    }
+
+    /**
+     * 切换到下一代文件: 写入未完成的 COMMIT 记录并刷盘, 然后删除旧文件
+     * 新文件准备好之前不修改任何字段, 失败时关闭并删除新文件, 日志仍停留在当前文件上
+     */
+    private void roll(File[] oldFiles) throws IOException {
+        long nextGeneration = generation + 1;
+        File next = fileOf(nextGeneration);
+        RandomAccessFile raf = new RandomAccessFile(next, "rw");
+        MappedByteBuffer mapped = null;
+        try {
+            raf.setLength(fileSize);
+            mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            for (String gtrid : committing) {
+                byte[] bytes = gtrid.getBytes(StandardCharsets.UTF_8);
+                if (mapped.remaining() < HEADER_SIZE + bytes.length + CRC_SIZE) {
+                    throw new IOException("[XaTxLog] log file too small for " + committing.size() + " committing transactions");
+                }
+                writeRecord(mapped, COMMIT, bytes);
+            }
+            mapped.force();
+            if (buffer != null) {
+                buffer.force();
+            }
+        } catch (IOException | RuntimeException e) {
+            // 新映射还没有发布给其它线程, 可以直接释放
+            BufferCleaner.unmap(mapped);
+            try {
+                raf.close();
+            } catch (IOException closeFailure) {
+                e.addSuppressed(closeFailure);
+            }
+            if (!next.delete()) {
+                logger.warn("[XaTxLog] can not delete unfinished log file {}", next);
+            }
+            throw e;
+        }
+
+        MappedByteBuffer prev = buffer;
+        RandomAccessFile prevFile = file;
+        generation = nextGeneration;
+        buffer = mapped;
+        file = raf;
+        appendPosition = position(generation, buffer.position());
+        forcedPosition = appendPosition;
+
+        if (prev != null) {
+            try {
+                prevFile.close();
+            } catch (IOException e) {
+                logger.warn("[XaTxLog] close old log file failed", e);
+            }
+            // 其它线程可能正在 sync() 中刷盘旧缓冲区, 不能在这里释放映射
+            retired.add(prev);
+        }
+        for (File f : oldFiles) {
+            if (!f.delete()) {
+                logger.warn("[XaTxLog] can not delete old log file {}", f);
+            }
+        }
+    }
+
+    private void replay(File f) throws IOException {
+        MappedByteBuffer mapped = null;
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+            mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            CRC32 crc = new CRC32();
+            while (mapped.remaining() >= HEADER_SIZE + CRC_SIZE) {
+                byte type = mapped.get();
+                if (type != COMMIT && type != DONE) {
+                    break;
+                }
+                int length = mapped.getShort() & 0xFFFF;
+                if (mapped.remaining() < length + CRC_SIZE) {
+                    break;
+                }
+                byte[] bytes = new byte[length];
+                mapped.get(bytes);
+                crc.reset();
+                crc.update(type);
+                crc.update(bytes, 0, length);
+                if (mapped.getInt() != (int) crc.getValue()) {
+                    // 写入过程中断的记录
+                    break;
+                }
+                String gtrid = new String(bytes, StandardCharsets.UTF_8);
+                if (type == COMMIT) {
+                    committing.add(gtrid);
+                } else {
+                    committing.remove(gtrid);
+                }
+            }
+        } finally {
+            // 回放完成后旧文件会被删除, 释放映射后才能在 Windows 上删除
+            BufferCleaner.unmap(mapped);
+        }
+    }
+
+    private File[] listFiles() {
+        File[] files = dir.listFiles((d, n) -> n.startsWith(name + ".") && n.endsWith(".log") && generationOf(n) >= 0);
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(generationOf(a), generationOf(b)));
+        return files;
+    }
+
+    private File currentFile() {
+        return fileOf(generation);
+    }
+
+    private File fileOf(long gen) {
+        return new File(dir, name + "." + gen + ".log");
+    }
+
+    private long generationOf(File f) {
+        return generationOf(f.getName());
+    }
+
+    // 文件名不是 name.<代数>.log 时返回 -1
+    private long generationOf(String fileName) {
+        int start = name.length() + 1;
+        int end = fileName.length() - ".log".length();
+        if (end <= start || !fileName.startsWith(name + ".") || !fileName.endsWith(".log")) {
+            return -1;
+        }
+        String gen = fileName.substring(start, end);
+        try {
+            return Long.parseLong(gen);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // 位置编码: 高 32 位为代数, 低 32 位为文件内偏移
+    private static long position(long gen, int offset) {
+        return gen << 32 | offset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (forceLock) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                buffer.force();
+                // 关闭前追加的记录已经落盘, 仍在等待刷盘的线程直接返回
+                forcedPosition = appendPosition;
+                file.close();
+                retired.add(buffer);
+                buffer = null;
+            }
+            unmapRetired();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package cn.wzz.middleware.db.router.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * 立即释放 MappedByteBuffer 的内存映射, 否则映射要等到缓冲区被 GC 回收才释放, 期间一直占用虚拟内存,
+ * 并且在 Windows 上映射中的文件无法删除
+ * Java 9+ 使用 Unsafe#invokeCleaner, Java 8 使用 DirectBuffer#cleaner().clean(), 都不可用时等待 GC 回收。
+ * 释放后再访问该缓冲区会导致 JVM 崩溃, 调用方必须保证没有其它线程仍在使用它
+ */
+public final class BufferCleaner {
+
+    private static final Logger logger = LoggerFactory.getLogger(BufferCleaner.class);
+
+    private static final Cleaner CLEANER = createCleaner();
+
+    private BufferCleaner() {
+    }
+
+    public static void unmap(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || CLEANER == null) {
+            return;
+        }
+        try {
+            CLEANER.clean(buffer);
+        } catch (Exception e) {
+            logger.debug("[BufferCleaner] unmap buffer failed", e);
+        }
+    }
+
+    private interface Cleaner {
+        void clean(ByteBuffer buffer) throws Exception;
+    }
+
+    private static Cleaner createCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            return buffer -> invokeCleaner.invoke(unsafe, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Java 8 没有 invokeCleaner
+        }
+        try {
+            Method cleanerMethod = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            return buffer -> {
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    clean.invoke(cleaner);
+                }
+            };
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.info("[BufferCleaner] unmapping is not supported, mapped buffers are released by GC");
+            return null;
+        }
+    }
+}
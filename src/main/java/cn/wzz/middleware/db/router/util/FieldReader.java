@@ -0,0 +1,88 @@
+package cn.wzz.middleware.db.router.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按字段名读取对象属性, 按对象类型缓存字段的 MethodHandle getter,
+ * 首次解析后每次读取只是一次直接调用, 不再遍历类继承体系, 也不再依赖异常做流程控制。
+ * readMapKey 为 true 时 Map 类型的对象按 key 读取(广播合并 resultType=map 的行);
+ * 路由键提取不读取 Map, 与按字段反射读取时的行为一致: Map 入参没有路由字段, 继续查找其它入参与 @RouterKey。
+ */
+public class FieldReader {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    // 对象类型中不存在该字段时使用的占位 getter, 始终返回 null
+    private static final MethodHandle ABSENT = MethodHandles.dropArguments(
+            MethodHandles.constant(Object.class, null), 0, Object.class);
+
+    private final String fieldName;
+
+    private final boolean readMapKey;
+
+    // 对象类型 -> 字段 getter
+    private final ConcurrentHashMap<Class<?>, MethodHandle> getterCache = new ConcurrentHashMap<>();
+
+    public FieldReader(String fieldName) {
+        this(fieldName, false);
+    }
+
+    public FieldReader(String fieldName, boolean readMapKey) {
+        this.fieldName = fieldName;
+        this.readMapKey = readMapKey;
+    }
+
+    /**
+     * @return 字段值, 字段不存在时返回 null
+     */
+    public Object read(Object target) throws Throwable {
+        if (readMapKey && target instanceof Map) {
+            return ((Map<?, ?>) target).get(fieldName);
+        }
+        return (Object) getter(target.getClass()).invokeExact(target);
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    private MethodHandle getter(Class<?> clazz) {
+        MethodHandle getter = getterCache.get(clazz);
+        if (getter == null) {
+            getter = resolveGetter(clazz, fieldName);
+            MethodHandle prev = getterCache.putIfAbsent(clazz, getter);
+            if (prev != null) {
+                getter = prev;
+            }
+        }
+        return getter;
+    }
+
+    private static MethodHandle resolveGetter(Class<?> clazz, String fieldName) {
+        for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!field.getName().equals(fieldName)) {
+                    continue;
+                }
+                try {
+                    field.setAccessible(true);
+                    MethodHandle getter = MethodHandles.lookup().unreflectGetter(field);
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        getter = MethodHandles.dropArguments(getter, 0, Object.class);
+                    }
+                    return getter.asType(GETTER_TYPE);
+                } catch (IllegalAccessException | RuntimeException e) {
+                    // 字段不可访问(如 JDK 内部类型), 与字段不存在同等处理
+                    return ABSENT;
+                }
+            }
+        }
+        return ABSENT;
+    }
+}
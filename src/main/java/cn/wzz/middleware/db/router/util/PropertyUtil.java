@@ -14,4 +14,18 @@ public class PropertyUtil {
         return bindResult.get();
     }
 
+    /**
+     * 读取整型配置项, 兼容 yml(Integer) 与 properties(String) 两种取值
+     */
+    public static int getInt(final Map<?, ?> map, final String key, final int defaultValue) {
+        Object value = map.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        return Integer.parseInt(value.toString().trim());
+    }
+
 }
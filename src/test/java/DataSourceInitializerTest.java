@@ -0,0 +1,99 @@
+import cn.wzz.middleware.db.router.dynamic.DataSourceInitializer;
+import cn.wzz.middleware.db.router.dynamic.LazyDataSource;
+import cn.wzz.middleware.db.router.dynamic.ShardInitTiming;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DataSourceInitializerTest {
+
+    @Test
+    public void test_createFailureClosesCreated() throws Exception {
+        for (int threads : new int[]{1, 4}) {
+            DataSource db01 = closeableDataSource();
+            DataSource db03 = closeableDataSource();
+            Map<String, Callable<DataSource>> factories = new LinkedHashMap<>();
+            factories.put("db01", () -> db01);
+            factories.put("db02", () -> {
+                throw new IllegalStateException("db02 unreachable");
+            });
+            factories.put("db03", () -> db03);
+            try {
+                new DataSourceInitializer(threads, false).create(factories);
+                Assert.fail("expect create failure");
+            } catch (IllegalStateException expected) {
+                Assert.assertEquals("db02 unreachable", expected.getMessage());
+            }
+            Mockito.verify((AutoCloseable) db01).close();
+            if (threads > 1) {
+                // 并行创建时其余任务都已完成, 同样需要关闭
+                Mockito.verify((AutoCloseable) db03).close();
+            }
+        }
+    }
+
+    @Test
+    public void test_lazyCreateAndWarmUp() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        DataSource target = closeableDataSource();
+        Map<String, Callable<DataSource>> factories = new LinkedHashMap<>();
+        factories.put("db01", () -> {
+            calls.incrementAndGet();
+            return target;
+        });
+        factories.put("db02", () -> {
+            calls.incrementAndGet();
+            return target;
+        });
+        DataSourceInitializer initializer = new DataSourceInitializer(4, true);
+        Map<String, DataSource> created = initializer.create(factories);
+        Assert.assertEquals(0, calls.get());
+        Assert.assertTrue(created.get("db01") instanceof LazyDataSource);
+
+        // 已路由过的分库参与预热, 未初始化的懒加载分库跳过
+        created.get("db01").getConnection().close();
+        initializer.warmUp(created, 2);
+        Assert.assertEquals(1, calls.get());
+        Assert.assertFalse(((LazyDataSource) created.get("db02")).isInitialized());
+        for (ShardInitTiming timing : initializer.getTimings()) {
+            Assert.assertEquals("db01".equals(timing.getName()) ? 2 : 0, timing.getWarmUpConnections());
+        }
+        Mockito.verify(target, Mockito.times(3)).getConnection();
+    }
+
+    @Test
+    public void test_lazyRetryAfterFailure() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        DataSource target = closeableDataSource();
+        LazyDataSource lazy = new LazyDataSource(() -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new IllegalStateException("first attempt fails");
+            }
+            return target;
+        }, new ShardInitTiming("db01"));
+        try {
+            lazy.getConnection();
+            Assert.fail("expect create failure");
+        } catch (SQLException expected) {
+            Assert.assertFalse(lazy.isInitialized());
+        }
+        Assert.assertNotNull(lazy.getConnection());
+        Assert.assertNotNull(lazy.getConnection());
+        Assert.assertEquals(2, calls.get());
+        Assert.assertSame(target, lazy.getTarget());
+    }
+
+    private static DataSource closeableDataSource() throws SQLException {
+        DataSource dataSource = Mockito.mock(DataSource.class, Mockito.withSettings().extraInterfaces(AutoCloseable.class));
+        Mockito.when(dataSource.getConnection()).thenAnswer(invocation -> Mockito.mock(Connection.class));
+        return dataSource;
+    }
+}
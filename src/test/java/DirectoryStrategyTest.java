@@ -0,0 +1,109 @@
+import cn.wzz.middleware.db.router.DBRouterConfig;
+import cn.wzz.middleware.db.router.strategy.impl.DBRouterStrategyDirectory;
+import cn.wzz.middleware.db.router.strategy.impl.DBRouterStrategyHash;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class DirectoryStrategyTest {
+
+    private final DBRouterConfig config = new DBRouterConfig(2, 4);
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("directory").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void test_lookupAndReload() throws Exception {
+        File csv = new File(dir, "tenants.csv");
+        StringBuilder sb = new StringBuilder("# 大商户独占分表\nmerchant-1,db02.003\n\nmerchant-2, db01.001\n");
+        for (int i = 0; i < 10000; i++) {
+            sb.append("tenant-").append(i).append(",db0").append(i % 2 + 1).append(".00").append(i % 4).append('\n');
+        }
+        Files.write(csv.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+
+        DBRouterStrategyHash hash = new DBRouterStrategyHash(config);
+        DBRouterStrategyDirectory strategy = new DBRouterStrategyDirectory(config, hash, csv);
+        Assert.assertEquals(10002, strategy.getDirectory().size());
+        Assert.assertEquals("db02.003", strategy.route("merchant-1").toString());
+        Assert.assertEquals("db01.001", strategy.route("merchant-2").toString());
+        Assert.assertEquals("db02.003", strategy.route("tenant-9999").toString());
+        Assert.assertEquals(hash.route("user-1"), strategy.route("user-1"));
+
+        // 重新加载后原子替换, 旧目录文件被删除
+        File old = strategy.getDirectory().getFile();
+        Files.write(csv.toPath(), Collections.singletonList("merchant-1,db01.000"), StandardCharsets.UTF_8);
+        csv.setLastModified(csv.lastModified() + 1000);
+        strategy.reloadIfModified();
+        Assert.assertEquals("db01.000", strategy.route("merchant-1").toString());
+        Assert.assertEquals(hash.route("merchant-2"), strategy.route("merchant-2"));
+        Assert.assertFalse(old.exists());
+        Assert.assertEquals(2, dir.list().length);
+    }
+
+    @Test
+    public void test_reloadReleasesOldDirectories() throws Exception {
+        File maps = new File("/proc/self/maps");
+        Assume.assumeTrue(maps.canRead());
+        String indexDir = dir.getCanonicalPath() + File.separator;
+        File csv = new File(dir, "tenants.csv");
+        Files.write(csv.toPath(), Collections.singletonList("merchant-1,db02.003"), StandardCharsets.UTF_8);
+        DBRouterStrategyDirectory strategy = new DBRouterStrategyDirectory(config, new DBRouterStrategyHash(config), csv);
+        strategy.setRetireGraceMillis(0);
+
+        // 构建时的读写映射已释放, 每次重新加载后只剩当前目录的一个只读映射, 旧目录文件被删除
+        for (int i = 0; i < 5; i++) {
+            Files.write(csv.toPath(), Collections.singletonList("merchant-1,db01.00" + i % 4), StandardCharsets.UTF_8);
+            csv.setLastModified(csv.lastModified() + 1000);
+            strategy.reloadIfModified();
+            Assert.assertEquals("db01.00" + i % 4, strategy.route("merchant-1").toString());
+            Assert.assertEquals(1, mappingCount(maps, indexDir));
+            Assert.assertEquals(2, dir.list().length);
+        }
+
+        // 宽限期内旧目录仍然映射, 宽限期结束后的下一次检查解除映射
+        strategy.setRetireGraceMillis(60_000);
+        csv.setLastModified(csv.lastModified() + 1000);
+        strategy.reloadIfModified();
+        Assert.assertEquals(2, mappingCount(maps, indexDir));
+        strategy.setRetireGraceMillis(0);
+        strategy.reloadIfModified();
+        Assert.assertEquals(1, mappingCount(maps, indexDir));
+        Assert.assertEquals(strategy.getDirectory().getFile().getName(), dir.list((d, name) -> name.endsWith(".idx"))[0]);
+    }
+
+    private static long mappingCount(File maps, String indexDir) throws Exception {
+        List<String> lines = Files.readAllLines(maps.toPath(), StandardCharsets.UTF_8);
+        return lines.stream().filter(line -> line.contains(indexDir)).count();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_routeOutOfRange() throws Exception {
+        File csv = new File(dir, "bad.csv");
+        Files.write(csv.toPath(), Arrays.asList("merchant-1,db03.000"), StandardCharsets.UTF_8);
+        new DBRouterStrategyDirectory(config, new DBRouterStrategyHash(config), csv);
+    }
+}
@@ -0,0 +1,110 @@
+import cn.wzz.middleware.db.router.annotation.RouterStrategy;
+import cn.wzz.middleware.db.router.context.DBContextHolder;
+import cn.wzz.middleware.db.router.dynamic.DynamicMybatisPlugin;
+import cn.wzz.middleware.db.router.strategy.ShardRouteTable;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Map;
+
+public class DynamicMybatisPluginTest {
+
+    private final DynamicMybatisPlugin plugin = new DynamicMybatisPlugin();
+
+    private SqlSessionFactory sqlSessionFactory;
+
+    @Before
+    public void setUp() throws Exception {
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:mybatis_plugin;DB_CLOSE_DELAY=-1");
+        try (Connection conn = ds.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS t_order (id BIGINT PRIMARY KEY)");
+            stmt.execute("CREATE TABLE IF NOT EXISTS t_order_001 (id BIGINT PRIMARY KEY)");
+            stmt.execute("MERGE INTO t_order KEY (id) VALUES (1)");
+            stmt.execute("MERGE INTO t_order_001 KEY (id) VALUES (1), (2)");
+        }
+        Configuration configuration = new Configuration(new Environment("test", new JdbcTransactionFactory(), ds));
+        configuration.addMapper(SplitMapper.class);
+        configuration.addMapper(DbOnlyMapper.class);
+        // namespace 不是 Mapper 接口的语句(纯 XML 映射)
+        configuration.addMappedStatement(new MappedStatement.Builder(configuration, "xml.orders.count",
+                new StaticSqlSource(configuration, "select count(*) from t_order"), SqlCommandType.SELECT)
+                .resultMaps(Collections.singletonList(new ResultMap.Builder(configuration, "xml.orders.count-result",
+                        Integer.class, Collections.emptyList()).build()))
+                .build());
+        configuration.addInterceptor(plugin);
+        sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+    }
+
+    @After
+    public void tearDown() {
+        DBContextHolder.clearRoute();
+    }
+
+    @Test
+    public void test_splitTableResolvedPerStatement() {
+        DBContextHolder.setRoute(new ShardRouteTable(2, 4).get(1, 1));
+        for (int i = 0; i < 3; i++) {
+            try (SqlSession session = sqlSessionFactory.openSession()) {
+                Assert.assertEquals(2, session.getMapper(SplitMapper.class).count());
+                // @RouterStrategy(splitTable = false) 只分库, 不改写表名
+                Assert.assertEquals(1, session.getMapper(DbOnlyMapper.class).count());
+                Assert.assertEquals(2, (int) session.<Integer>selectOne("xml.orders.count"));
+            }
+        }
+
+        // 每个 MappedStatement 只解析一次, 之后直接查缓存
+        Map<String, Boolean> splitTableCache = splitTableCache();
+        Assert.assertEquals(3, splitTableCache.size());
+        Assert.assertEquals(Boolean.TRUE, splitTableCache.get(SplitMapper.class.getName() + ".count"));
+        Assert.assertEquals(Boolean.FALSE, splitTableCache.get(DbOnlyMapper.class.getName() + ".count"));
+        Assert.assertEquals(Boolean.TRUE, splitTableCache.get("xml.orders.count"));
+
+        // 改写结果按 (SQL, tbKey) 缓存, 两个需要分表的语句 SQL 相同, 只改写一次
+        Assert.assertEquals(1, plugin.getSqlRewriteCache().getMissCount());
+        Assert.assertEquals(5, plugin.getSqlRewriteCache().getHitCount());
+    }
+
+    @Test
+    public void test_noRouteNotResolved() {
+        try (SqlSession session = sqlSessionFactory.openSession()) {
+            Assert.assertEquals(1, session.getMapper(SplitMapper.class).count());
+        }
+        Assert.assertTrue(splitTableCache().isEmpty());
+        Assert.assertEquals(0, plugin.getSqlRewriteCache().getMissCount());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Boolean> splitTableCache() {
+        return (Map<String, Boolean>) ReflectionTestUtils.getField(plugin, "splitTableCache");
+    }
+
+    public interface SplitMapper {
+        @Select("select count(*) from t_order")
+        int count();
+    }
+
+    @RouterStrategy(splitTable = false)
+    public interface DbOnlyMapper {
+        @Select("select count(*) from t_order")
+        int count();
+    }
+}
@@ -0,0 +1,57 @@
+import cn.wzz.middleware.db.router.DBRouterConfig;
+import cn.wzz.middleware.db.router.id.GeneIdGenerator;
+import cn.wzz.middleware.db.router.strategy.impl.DBRouterStrategyGene;
+import cn.wzz.middleware.db.router.strategy.impl.DBRouterStrategyHash;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class GeneIdGeneratorTest {
+
+    private final DBRouterStrategyHash hash = new DBRouterStrategyHash(new DBRouterConfig(2, 4));
+
+    @Test
+    public void test_geneRouting() {
+        GeneIdGenerator generator = new GeneIdGenerator(hash, 5);
+        DBRouterStrategyGene gene = new DBRouterStrategyGene(hash);
+        Assert.assertEquals(3, generator.getGeneBits());
+        for (int i = 0; i < 1000; i++) {
+            String userId = String.valueOf(100000000L + i * 7919L);
+            long orderId = generator.nextId(userId);
+            Assert.assertTrue(orderId > 0);
+            // 按 orderId 与按 userId 路由到同一分表
+            Assert.assertSame(hash.route(userId), gene.route(String.valueOf(orderId)));
+            Assert.assertSame(hash.route(userId), generator.routeOf(orderId));
+            Assert.assertTrue(Math.abs(generator.timestampOf(orderId) - System.currentTimeMillis()) < 5000);
+        }
+        // 非数字路由键回退到哈希
+        Assert.assertSame(hash.route("abc"), gene.route("abc"));
+    }
+
+    @Test
+    public void test_uniqueAcrossThreads() throws Exception {
+        GeneIdGenerator generator = new GeneIdGenerator(hash, 1, 6, 16, GeneIdGenerator.DEFAULT_EPOCH);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 50000; i++) {
+                    ids.add(generator.nextId(hash.getRouteTable().get(i & 7)));
+                }
+            });
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        Assert.assertEquals(200000, ids.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_tooManyBits() {
+        new GeneIdGenerator(new DBRouterStrategyHash(new DBRouterConfig(99, 1000)), 0, 6, 64, GeneIdGenerator.DEFAULT_EPOCH);
+    }
+}
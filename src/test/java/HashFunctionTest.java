@@ -0,0 +1,59 @@
+import cn.wzz.middleware.db.router.strategy.hash.HashFunction;
+import cn.wzz.middleware.db.router.strategy.hash.Murmur3HashFunction;
+import cn.wzz.middleware.db.router.strategy.hash.XxHash32Function;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 哈希值决定了数据所在的分片, 实现改动后必须与参考实现的结果逐位一致
+ */
+public class HashFunctionTest {
+
+    // 覆盖空串、奇数长度(剩余单个字符)、xxHash 的 16 字节条带边界、中文与代理对
+    private static final String[] KEYS = {
+            "", "a", "ab", "abc", "10086", "1234567", "12345678", "123456789", "user_0000000001",
+            "order-20260101-000042", "中文路由键", "😀key"
+    };
+
+    private static final int SEED = 0x9747b28c;
+
+    // Guava Hashing.murmur3_32(seed).hashUnencodedChars(key).asInt()
+    private static final int[] MURMUR3 = {
+            0x00000000, 0x6f49d11a, 0x165860ca, 0x42b016c3, 0x3a20e5f7, 0xb0b8bb47, 0x32985d05, 0xae54d2f2, 0xcf48fbdf,
+            0xdd8528ed, 0x22c32ca3, 0xbf9b3e55
+    };
+
+    private static final int[] MURMUR3_SEEDED = {
+            0xebb6c228, 0xaaa95179, 0x15eb70bc, 0x9dc7633e, 0x6ed7ac18, 0x2951ca7a, 0x84ebccdc, 0x53cb474d, 0xfd9882bb,
+            0x26aade09, 0x20092f45, 0xad381c37
+    };
+
+    // xxHash32(key.getBytes(UTF_16LE), seed), 由 lz4-java 的纯 Java 实现计算
+    private static final int[] XXHASH32 = {
+            0x02cc5d05, 0x19832f52, 0xc6233682, 0xb9b5787e, 0x57b45b09, 0xd4c88961, 0x261a1d2d, 0x1eaa43d6, 0x8242b4fa,
+            0xa754067d, 0x601bfcab, 0x16e707e7
+    };
+
+    private static final int[] XXHASH32_SEEDED = {
+            0x8d3b42d8, 0xda44ebfb, 0x4d76ab0a, 0x5f545948, 0x0c6f29b0, 0x5231d601, 0xeda7ae5e, 0x70a7e8f5, 0xeae5edb6,
+            0xe315dea2, 0x4c61d60a, 0x6344112d
+    };
+
+    @Test
+    public void test_murmur3ReferenceValues() {
+        assertHashes(Murmur3HashFunction.INSTANCE, MURMUR3);
+        assertHashes(new Murmur3HashFunction(SEED), MURMUR3_SEEDED);
+    }
+
+    @Test
+    public void test_xxHash32ReferenceValues() {
+        assertHashes(XxHash32Function.INSTANCE, XXHASH32);
+        assertHashes(new XxHash32Function(SEED), XXHASH32_SEEDED);
+    }
+
+    private static void assertHashes(HashFunction hashFunction, int[] expected) {
+        for (int i = 0; i < KEYS.length; i++) {
+            Assert.assertEquals("key: " + KEYS[i], expected[i], hashFunction.hash(KEYS[i]));
+        }
+    }
+}
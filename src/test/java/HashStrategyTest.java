@@ -0,0 +1,99 @@
+import cn.wzz.middleware.db.router.DBRouterConfig;
+import cn.wzz.middleware.db.router.config.DataSourceAutoConfig;
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+import cn.wzz.middleware.db.router.strategy.ShardRouteTable;
+import cn.wzz.middleware.db.router.strategy.hash.HashFunction;
+import cn.wzz.middleware.db.router.strategy.impl.DBRouterStrategyHash;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class HashStrategyTest {
+
+    // 路由键即哈希值, 便于覆盖任意哈希值
+    private static final HashFunction IDENTITY = Integer::parseInt;
+
+    private static final int[] EXTREMES = {0, 1, -1, Integer.MAX_VALUE, Integer.MIN_VALUE, 0x7FFF_FFFE, 0x8000_0001};
+
+    @Test
+    public void test_nonPowerOfTwoLayouts() {
+        assertLayout(3, 4);
+        assertLayout(6, 5);
+        assertLayout(3, 1);
+        assertLayout(1, 7);
+    }
+
+    // 结果始终在 [0, dbCount * tbCount) 内, 每个分表都可达, 且分布没有明显偏差
+    private static void assertLayout(int dbCount, int tbCount) {
+        DBRouterStrategyHash strategy = new DBRouterStrategyHash(new DBRouterConfig(dbCount, tbCount), IDENTITY);
+        int slots = dbCount * tbCount;
+        int samples = slots * 10_000;
+        int[] counts = new int[slots];
+        for (int hash = -samples / 2; hash < samples / 2; hash++) {
+            counts[assertRoute(strategy, hash, dbCount, tbCount)]++;
+        }
+        for (int hash : EXTREMES) {
+            assertRoute(strategy, hash, dbCount, tbCount);
+        }
+        for (int slot = 0; slot < slots; slot++) {
+            Assert.assertTrue(dbCount + "x" + tbCount + " slot " + slot + " count " + counts[slot],
+                    Math.abs(counts[slot] - 10_000) < 500);
+        }
+    }
+
+    private static int assertRoute(DBRouterStrategyHash strategy, int hash, int dbCount, int tbCount) {
+        ShardRoute route = strategy.route(String.valueOf(hash));
+        Assert.assertTrue(route.getSlot() >= 0 && route.getSlot() < dbCount * tbCount);
+        Assert.assertTrue(route.getDbIdx() >= 1 && route.getDbIdx() <= dbCount);
+        Assert.assertTrue(route.getTbIdx() >= 0 && route.getTbIdx() < tbCount);
+        Assert.assertEquals(route.getSlot(), (route.getDbIdx() - 1) * tbCount + route.getTbIdx());
+        return route.getSlot();
+    }
+
+    @Test
+    public void test_powerOfTwoKeepsLowBits() {
+        // 总分表数为 2 的幂次时与旧版本一致, 取哈希值低位, 已有数据不迁移
+        DBRouterStrategyHash strategy = new DBRouterStrategyHash(new DBRouterConfig(2, 4), IDENTITY);
+        for (int hash = -1000; hash < 1000; hash++) {
+            Assert.assertEquals(hash & 7, strategy.route(String.valueOf(hash)).getSlot());
+        }
+        for (int hash : EXTREMES) {
+            Assert.assertEquals(hash & 7, strategy.route(String.valueOf(hash)).getSlot());
+        }
+    }
+
+    @Test
+    public void test_invalidCountsRejected() {
+        int[][] invalid = {{0, 4}, {100, 4}, {-1, 4}, {2, 0}, {2, 1001}, {2, -1}};
+        for (int[] counts : invalid) {
+            try {
+                new DBRouterStrategyHash(new DBRouterConfig(counts[0], counts[1]));
+                Assert.fail("expect rejected: " + counts[0] + "x" + counts[1]);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        Assert.assertEquals(99 * 1000, new ShardRouteTable(99, 1000).size());
+    }
+
+    @Test
+    public void test_missingDataSourceRejected() {
+        // dbCount 为 3 时 db01~db03 都必须配置数据源
+        DataSourceAutoConfig config = new DataSourceAutoConfig();
+        ReflectionTestUtils.setField(config, "dbCount", 3);
+        ReflectionTestUtils.setField(config, "tbCount", 4);
+        Map<String, Map<String, Object>> dsConfigMap = new HashMap<>();
+        dsConfigMap.put("db01", Collections.emptyMap());
+        dsConfigMap.put("db02", Collections.emptyMap());
+        ReflectionTestUtils.setField(config, "dsConfigMap", dsConfigMap);
+        try {
+            config.dataSource();
+            Assert.fail("db03 not configured, expect rejected");
+        } catch (IllegalArgumentException expected) {
+            Assert.assertTrue(expected.getMessage().contains("db03"));
+        }
+    }
+}
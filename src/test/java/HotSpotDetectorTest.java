@@ -0,0 +1,59 @@
+import cn.wzz.middleware.db.router.hotspot.HotKey;
+import cn.wzz.middleware.db.router.hotspot.HotShard;
+import cn.wzz.middleware.db.router.hotspot.HotSpotDetector;
+import cn.wzz.middleware.db.router.hotspot.HotSpotListener;
+import cn.wzz.middleware.db.router.hotspot.HotSpotSnapshot;
+import cn.wzz.middleware.db.router.strategy.ShardRouteTable;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class HotSpotDetectorTest {
+
+    @Test
+    public void test_topKeysAndShards() {
+        ShardRouteTable table = new ShardRouteTable(2, 4);
+        HotSpotDetector detector = new HotSpotDetector(table, 4, 1, 1000, 1000, 5000);
+        List<String> hotKeys = new ArrayList<>();
+        List<HotShard> hotShards = new ArrayList<>();
+        detector.addListener(new HotSpotListener() {
+            @Override
+            public void onHotKey(HotKey hotKey) {
+                hotKeys.add(hotKey.getKey());
+            }
+
+            @Override
+            public void onHotShard(HotShard hotShard) {
+                hotShards.add(hotShard);
+            }
+        });
+
+        // 一个大商户占据大部分流量, 其余为长尾键
+        for (int i = 0; i < 10000; i++) {
+            detector.record("merchant-1", table.get(1, 2));
+            if (i % 5 == 0) {
+                detector.record("merchant-2", table.get(2, 0));
+            }
+            detector.record("user-" + i, table.get(i % 8));
+        }
+        HotSpotSnapshot snapshot = detector.roll();
+
+        HotKey top = snapshot.getTopKeys().get(0);
+        Assert.assertEquals("merchant-1", top.getKey());
+        Assert.assertTrue(top.getCount() >= 10000);
+        Assert.assertEquals("merchant-2", snapshot.getTopKeys().get(1).getKey());
+        Assert.assertEquals(table.get(1, 2), snapshot.getShards().get(0).getRoute());
+        Assert.assertEquals(11250, snapshot.getShards().get(0).getCount());
+
+        Assert.assertEquals(2, hotKeys.size());
+        Assert.assertTrue(detector.isHotKey("merchant-1"));
+        Assert.assertFalse(detector.isHotKey("user-1"));
+        Assert.assertEquals(1, hotShards.size());
+
+        // 新窗口重新计数
+        Assert.assertTrue(detector.roll().getShards().isEmpty());
+        Assert.assertFalse(detector.isHotKey("merchant-1"));
+    }
+}
@@ -0,0 +1,74 @@
+import cn.wzz.middleware.db.router.metrics.HistogramRouterMetrics;
+import cn.wzz.middleware.db.router.metrics.LatencyHistogram;
+import cn.wzz.middleware.db.router.metrics.MicrometerRouterMetricsBinder;
+import cn.wzz.middleware.db.router.strategy.ShardRouteTable;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void test_percentile() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000, micros % 100 != 0);
+        }
+        Assert.assertEquals(1000, histogram.getCount());
+        Assert.assertEquals(10, histogram.getErrors());
+        Assert.assertEquals(1_000_000, histogram.getMax());
+        // 相对误差不超过 1/8
+        assertWithin(500_000, histogram.percentile(0.5));
+        assertWithin(990_000, histogram.percentile(0.99));
+        Assert.assertEquals(1_000_000, histogram.percentile(1));
+        Assert.assertEquals(0, new LatencyHistogram().percentile(0.99));
+    }
+
+    @Test
+    public void test_statementBySlot() {
+        ShardRouteTable table = new ShardRouteTable(2, 4);
+        HistogramRouterMetrics metrics = new HistogramRouterMetrics(table);
+        metrics.recordStatement(table.get(2, 3), 1000, true);
+        metrics.recordStatement(table.get(2, 3), 3000, false);
+        metrics.recordStatement(null, 1000, true);
+
+        Assert.assertEquals(2, metrics.getStatementLatency(table.get(2, 3)).getCount());
+        Assert.assertEquals(1, metrics.getStatementLatency(table.get(2, 3)).getErrors());
+        Assert.assertNull(metrics.getStatementLatency(table.get(1, 3)));
+        Assert.assertEquals(1, metrics.getStatementLatency(null).getCount());
+    }
+
+    @Test
+    public void test_statementTagKeysConsistent() {
+        ShardRouteTable table = new ShardRouteTable(2, 4);
+        HistogramRouterMetrics metrics = new HistogramRouterMetrics(table);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        new MicrometerRouterMetricsBinder(metrics).bindTo(registry);
+        metrics.recordStatement(table.get(1, 2), 1000, true);
+        metrics.recordStatement(null, 1000, true);
+
+        // Prometheus 要求同名指标的标签 key 一致, 未路由语句同样带 db、table 两个标签
+        Collection<Meter> meters = registry.find("db.router.statement.count").meters();
+        Assert.assertEquals(2, meters.size());
+        for (Meter meter : meters) {
+            Set<String> keys = new HashSet<>();
+            for (Tag tag : meter.getId().getTags()) {
+                keys.add(tag.getKey());
+            }
+            Assert.assertEquals(new HashSet<>(Arrays.asList("db", "table")), keys);
+        }
+        Assert.assertEquals(1.0, registry.get("db.router.statement.count").tags("db", "default", "table", "default")
+                .functionCounter().count(), 0);
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        Assert.assertTrue(actual + " !~ " + expected, Math.abs(actual - expected) <= expected / 8);
+    }
+}
@@ -0,0 +1,144 @@
+import cn.wzz.middleware.db.router.annotation.MultiDSTransaction;
+import cn.wzz.middleware.db.router.aop.MultiDSTransactionJoinPoint;
+import cn.wzz.middleware.db.router.context.RouteContext;
+import cn.wzz.middleware.db.router.dynamic.DynamicDataSource;
+import cn.wzz.middleware.db.router.strategy.ShardRouteTable;
+import cn.wzz.middleware.db.router.tx.MultiDSTxCoordinator;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+public class MultiDSTransactionTest {
+
+    private static final ShardRouteTable TABLE = new ShardRouteTable(2, 1);
+
+    private final Map<String, DataSource> shards = new HashMap<>();
+
+    private final MultiDSTxCoordinator coordinator = Mockito.spy(new MultiDSTxCoordinator());
+
+    private TransferService service;
+
+    @Before
+    public void setUp() throws SQLException {
+        Map<Object, Object> targets = new HashMap<>();
+        for (String db : new String[]{"db01", "db02"}) {
+            JdbcDataSource ds = new JdbcDataSource();
+            ds.setURL("jdbc:h2:mem:multi_tx_" + db + ";DB_CLOSE_DELAY=-1");
+            try (Connection conn = ds.getConnection(); Statement stmt = conn.createStatement()) {
+                stmt.execute("DROP TABLE IF EXISTS account");
+                stmt.execute("CREATE TABLE account (id BIGINT PRIMARY KEY)");
+            }
+            shards.put(db, ds);
+            targets.put(db, ds);
+        }
+        DynamicDataSource dataSource = new DynamicDataSource();
+        ReflectionTestUtils.setField(dataSource, "defaultDataSource", "db01");
+        dataSource.setTargetDataSources(targets);
+        dataSource.afterPropertiesSet();
+
+        AspectJProxyFactory factory = new AspectJProxyFactory(new TransferService(dataSource));
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new MultiDSTransactionJoinPoint(coordinator));
+        service = factory.getProxy();
+    }
+
+    @After
+    public void tearDown() {
+        RouteContext.current().setRoute(null);
+    }
+
+    @Test
+    public void test_singleShardCommitsLocally() throws Exception {
+        // 同一数据源的多次获取连接复用同一个事务连接, 按本地事务直接提交
+        Assert.assertEquals(1, service.insert(false, 1, 1));
+        Assert.assertEquals(2, count("db01"));
+        Mockito.verify(coordinator).commitSingle(ArgumentMatchers.any());
+        Mockito.verify(coordinator, Mockito.never()).commit(ArgumentMatchers.anyList());
+        Assert.assertFalse(RouteContext.current().isTxOpen());
+    }
+
+    @Test
+    public void test_twoShardsCommitTogether() throws Exception {
+        Assert.assertEquals(2, service.insert(false, 1, 2, 1));
+        Assert.assertEquals(2, count("db01"));
+        Assert.assertEquals(1, count("db02"));
+        Mockito.verify(coordinator).commit(ArgumentMatchers.anyList());
+        Mockito.verify(coordinator, Mockito.never()).commitSingle(ArgumentMatchers.any());
+    }
+
+    @Test
+    public void test_rollbackOnFailure() throws Exception {
+        try {
+            service.insert(true, 1, 1);
+            Assert.fail("expect exception");
+        } catch (IllegalStateException expected) {
+        }
+        Assert.assertEquals(0, count("db01"));
+        Mockito.verify(coordinator).rollbackSingle(ArgumentMatchers.any());
+
+        try {
+            service.insert(true, 1, 2);
+            Assert.fail("expect exception");
+        } catch (IllegalStateException expected) {
+        }
+        Assert.assertEquals(0, count("db01"));
+        Assert.assertEquals(0, count("db02"));
+        Mockito.verify(coordinator).rollback(ArgumentMatchers.anyList());
+        Mockito.verify(coordinator, Mockito.never()).commitSingle(ArgumentMatchers.any());
+        Mockito.verify(coordinator, Mockito.never()).commit(ArgumentMatchers.anyList());
+    }
+
+    private int count(String db) throws SQLException {
+        try (Connection conn = shards.get(db).getConnection(); Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("select count(*) from account")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    public static class TransferService {
+
+        private final DataSource dataSource;
+
+        public TransferService(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        /**
+         * 依次在 dbIdxes 指定的分库上插入一条记录
+         * @return 事务中的连接数
+         */
+        @MultiDSTransaction
+        public int insert(boolean fail, int... dbIdxes) throws SQLException {
+            RouteContext ctx = RouteContext.current();
+            long id = 0;
+            for (int dbIdx : dbIdxes) {
+                ctx.setRoute(TABLE.get(dbIdx, 0));
+                Connection conn = dataSource.getConnection();
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.executeUpdate("insert into account (id) values (" + (++id) + ")");
+                }
+                conn.close();
+            }
+            ctx.setRoute(null);
+            if (fail) {
+                throw new IllegalStateException("business failure");
+            }
+            return ctx.getTxConnectionCount();
+        }
+    }
+}
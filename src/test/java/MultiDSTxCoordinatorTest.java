@@ -0,0 +1,76 @@
+import cn.wzz.middleware.db.router.dynamic.CustomConnection;
+import cn.wzz.middleware.db.router.tx.MultiDSTransactionException;
+import cn.wzz.middleware.db.router.tx.MultiDSTxCoordinator;
+import cn.wzz.middleware.db.router.tx.ShardTxOutcome;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class MultiDSTxCoordinatorTest {
+
+    @Test
+    public void test_serialCommitRollsBackRemainingAfterFailure() {
+        StringBuilder log = new StringBuilder();
+        List<ShardTxOutcome> outcomes = new MultiDSTxCoordinator().commit(Arrays.asList(
+                connection("db01", false, log), connection("db02", true, log), connection("db03", false, log)));
+
+        Assert.assertEquals(ShardTxOutcome.Status.COMMITTED, outcomes.get(0).getStatus());
+        Assert.assertEquals(ShardTxOutcome.Status.FAILED, outcomes.get(1).getStatus());
+        Assert.assertEquals(ShardTxOutcome.Status.ROLLED_BACK, outcomes.get(2).getStatus());
+        Assert.assertEquals("db01.commit db01.close db02.commit db02.rollback db02.close db03.rollback db03.close ", log.toString());
+
+        // 串行提交只有失败之前的分库已提交
+        MultiDSTransactionException e = new MultiDSTransactionException("commit failed", outcomes);
+        Assert.assertTrue(e.isPartiallyCommitted());
+        Assert.assertEquals(Collections.singletonList("db01"), e.getCommittedDsKeys());
+
+        List<ShardTxOutcome> firstFailed = new MultiDSTxCoordinator().commit(Arrays.asList(
+                connection("db01", true, log), connection("db02", false, log)));
+        Assert.assertFalse(new MultiDSTransactionException("commit failed", firstFailed).isPartiallyCommitted());
+    }
+
+    @Test
+    public void test_concurrentCommit() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            StringBuffer log = new StringBuffer();
+            List<ShardTxOutcome> outcomes = new MultiDSTxCoordinator(executor, 1000).commit(Arrays.asList(
+                    connection("db01", false, log), connection("db02", true, log), connection("db03", false, log)));
+
+            Assert.assertEquals("db01", outcomes.get(0).getDsKey());
+            Assert.assertEquals(ShardTxOutcome.Status.COMMITTED, outcomes.get(0).getStatus());
+            Assert.assertEquals(ShardTxOutcome.Status.FAILED, outcomes.get(1).getStatus());
+            Assert.assertEquals(ShardTxOutcome.Status.COMMITTED, outcomes.get(2).getStatus());
+            Assert.assertTrue(log.indexOf("db03.close") >= 0);
+
+            // 并行提交时失败的分库不影响其它分库提交, 异常标记为部分提交
+            MultiDSTransactionException e = new MultiDSTransactionException("commit failed", outcomes);
+            Assert.assertTrue(e.isPartiallyCommitted());
+            Assert.assertEquals(Arrays.asList("db01", "db03"), e.getCommittedDsKeys());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static CustomConnection connection(String dsKey, boolean failCommit, Appendable log) {
+        Connection conn = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class[]{Connection.class},
+                (proxy, method, args) -> {
+                    synchronized (log) {
+                        log.append(dsKey).append('.').append(method.getName()).append(' ');
+                    }
+                    if (failCommit && method.getName().equals("commit")) {
+                        throw new SQLException("commit failed: " + dsKey);
+                    }
+                    return null;
+                });
+        return new CustomConnection(conn, dsKey);
+    }
+}
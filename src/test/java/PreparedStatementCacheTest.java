@@ -0,0 +1,204 @@
+import cn.wzz.middleware.db.router.dynamic.CustomConnection;
+import cn.wzz.middleware.db.router.dynamic.PreparedStatementCache;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class PreparedStatementCacheTest {
+
+    private HikariDataSource pool;
+
+    private final PreparedStatementCache cache = new PreparedStatementCache(2);
+
+    @Before
+    public void setUp() throws Exception {
+        pool = new HikariDataSource();
+        pool.setJdbcUrl("jdbc:h2:mem:stmt_cache;DB_CLOSE_DELAY=-1");
+        pool.setMaximumPoolSize(1);
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS user_001 (id BIGINT PRIMARY KEY)");
+            stmt.execute("MERGE INTO user_001 KEY (id) VALUES (1), (2)");
+        }
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    public void test_reuseAcrossCheckouts() throws Exception {
+        String sql = "select count(*) from user_001 where id <= ?";
+        for (int i = 1; i <= 3; i++) {
+            try (Connection conn = connection()) {
+                PreparedStatement ps = conn.prepareStatement(sql);
+                Assert.assertSame(conn, ps.getConnection());
+                ps.setLong(1, 2);
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    Assert.assertEquals(2, rs.getInt(1));
+                }
+                ps.close();
+                Assert.assertTrue(ps.isClosed());
+            }
+        }
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(2, cache.getHitCount());
+
+        // 同一条 SQL 同时使用两次, 第二次新建语句; 连接关闭时归还未关闭的语句, 超出容量的被淘汰
+        try (Connection conn = connection()) {
+            conn.prepareStatement(sql);
+            conn.prepareStatement(sql);
+            conn.prepareStatement("select 1");
+            conn.prepareStatement("select 2");
+        }
+        Assert.assertEquals(3, cache.getHitCount());
+        Assert.assertEquals(4, cache.getMissCount());
+        Assert.assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void test_handleReusedAndResultSetClosed() throws Exception {
+        try (Connection conn = connection()) {
+            PreparedStatement ps = conn.prepareStatement("select id from user_001");
+            ResultSet rs = ps.executeQuery();
+            ps.close();
+            // 调用方未关闭的结果集在语句放回缓存前关闭
+            Assert.assertTrue(rs.isClosed());
+            Assert.assertSame(ps, conn.prepareStatement("select id from user_001"));
+            Assert.assertFalse(ps.isClosed());
+        }
+    }
+
+    @Test
+    public void test_resultSetReturnsHandle() throws Exception {
+        try (Connection conn = connection()) {
+            PreparedStatement ps = conn.prepareStatement("select id from user_001");
+            ResultSet rs = ps.executeQuery();
+            Assert.assertSame(ps, rs.getStatement());
+            Assert.assertSame(rs, ps.getResultSet());
+            // 通过结果集关闭语句时走句柄的归还流程, 物理语句放回缓存而不是被关闭
+            rs.getStatement().close();
+            Assert.assertTrue(rs.isClosed());
+            Assert.assertSame(ps, conn.prepareStatement("select id from user_001"));
+        }
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void test_rollbackUncommittedOnClose() throws Exception {
+        try (Connection conn = connection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement("insert into user_001 (id) values (?)")) {
+                ps.setLong(1, 3);
+                ps.executeUpdate();
+            }
+        }
+        // 语句绕过了连接池的语句代理, 未提交的插入由 CustomConnection 在归还前回滚
+        try (Connection conn = connection();
+             PreparedStatement ps = conn.prepareStatement("select count(*) from user_001 where id = 3");
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            Assert.assertEquals(0, rs.getInt(1));
+        }
+    }
+
+    @Test
+    public void test_purgeClosedConnection() throws Exception {
+        try (Connection conn = connection()) {
+            conn.prepareStatement("select 1").close();
+        }
+        pool.getHikariPoolMXBean().softEvictConnections();
+        Thread.sleep(100);
+        try (Connection conn = connection()) {
+            conn.prepareStatement("select 1").close();
+        }
+        Assert.assertEquals(2, cache.getMissCount());
+        Assert.assertEquals(1, cache.getConnectionCount());
+    }
+
+    @Test
+    public void test_purgeClosedConnectionOnSchedule() throws Exception {
+        PreparedStatementCache scheduled = new PreparedStatementCache(2, TimeUnit.MILLISECONDS.toNanos(50));
+        Connection stable = pool.getConnection();
+        Connection closed = Mockito.mock(Connection.class);
+        Mockito.when(closed.prepareStatement(Mockito.anyString(), Mockito.anyInt(), Mockito.anyInt()))
+                .thenAnswer(invocation -> Mockito.mock(PreparedStatement.class));
+        try {
+            prepare(scheduled, stable);
+            prepare(scheduled, closed);
+            Mockito.when(closed.isClosed()).thenReturn(true);
+            Assert.assertEquals(2, scheduled.getConnectionCount());
+            // 连接池不再创建新连接时, 已关闭连接的 LRU 在清理间隔到期后的 prepare 中移除
+            Thread.sleep(60);
+            prepare(scheduled, stable);
+            Assert.assertEquals(1, scheduled.getConnectionCount());
+        } finally {
+            stable.close();
+        }
+    }
+
+    private static void prepare(PreparedStatementCache cache, Connection physical) throws Exception {
+        CustomConnection conn = new CustomConnection(physical, "db01");
+        conn.setStatementCache(cache);
+        conn.prepareStatement("select 1").close();
+    }
+
+    @Test
+    public void test_settingsRestoredOnClose() throws Exception {
+        List<PreparedStatement> targets = new ArrayList<>();
+        Connection physical = Mockito.mock(Connection.class);
+        Mockito.when(physical.prepareStatement(Mockito.anyString(), Mockito.anyInt(), Mockito.anyInt()))
+                .thenAnswer(invocation -> {
+                    PreparedStatement target = Mockito.mock(PreparedStatement.class);
+                    Mockito.when(target.getMaxFieldSize()).thenReturn(0);
+                    Mockito.when(target.getFetchDirection()).thenReturn(ResultSet.FETCH_FORWARD);
+                    Mockito.when(target.isPoolable()).thenReturn(true);
+                    targets.add(target);
+                    return target;
+                });
+        CustomConnection conn = new CustomConnection(physical, "db01");
+        conn.setStatementCache(cache);
+
+        PreparedStatement ps = conn.prepareStatement("select id from user_001");
+        PreparedStatement target = targets.get(0);
+        ps.setMaxFieldSize(64);
+        ps.setEscapeProcessing(false);
+        ps.setFetchDirection(ResultSet.FETCH_REVERSE);
+        ps.setPoolable(false);
+        ps.close();
+        // 归还前恢复调用方修改过的设置, 下次借出的是同一个语句
+        Mockito.verify(target).setMaxFieldSize(0);
+        Mockito.verify(target).setEscapeProcessing(true);
+        Mockito.verify(target).setFetchDirection(ResultSet.FETCH_FORWARD);
+        Mockito.verify(target).setPoolable(true);
+        Mockito.verify(target, Mockito.never()).close();
+        Assert.assertSame(ps, conn.prepareStatement("select id from user_001"));
+
+        // 调用过 closeOnCompletion 的语句直接关闭, 不放回缓存
+        ps.closeOnCompletion();
+        ps.close();
+        Mockito.verify(target).close();
+        Assert.assertNotSame(ps, conn.prepareStatement("select id from user_001"));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+    }
+
+    private Connection connection() throws Exception {
+        CustomConnection conn = new CustomConnection(pool.getConnection(), "db01");
+        conn.setStatementCache(cache);
+        return conn;
+    }
+}
@@ -0,0 +1,177 @@
+import cn.wzz.middleware.db.router.DBRouterConfig;
+import cn.wzz.middleware.db.router.annotation.DBRouter;
+import cn.wzz.middleware.db.router.aop.DBRouterJoinPoint;
+import cn.wzz.middleware.db.router.context.RouteContext;
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+import cn.wzz.middleware.db.router.strategy.impl.DBRouterStrategyRange;
+import cn.wzz.middleware.db.router.strategy.impl.DBRouterStrategyRange.KeyType;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class RangeStrategyTest {
+
+    private final DBRouterConfig config = new DBRouterConfig(2, 2);
+
+    @Test
+    public void test_numberBoundarySearch() {
+        // 配置顺序无关, 按下界排序
+        DBRouterStrategyRange strategy = new DBRouterStrategyRange(config, KeyType.NUMBER,
+                "200=db02.000, 0=db01.000, 100=db01.001");
+        Assert.assertEquals("db01.000", strategy.route("0").toString());
+        Assert.assertEquals("db01.000", strategy.route("99").toString());
+        Assert.assertEquals("db01.001", strategy.route("100").toString());
+        Assert.assertEquals("db01.001", strategy.route("199").toString());
+        Assert.assertEquals("db02.000", strategy.route("200").toString());
+        Assert.assertEquals("db02.000", strategy.route(String.valueOf(Long.MAX_VALUE)).toString());
+
+        Assert.assertEquals(Arrays.asList("db01.000", "db01.001"), names(strategy.routes("50", "150")));
+        Assert.assertEquals(Collections.singletonList("db01.000"), names(strategy.routes("-10", "50")));
+        Assert.assertEquals(Collections.emptyList(), names(strategy.routes("-10", "-1")));
+        Assert.assertEquals(Collections.emptyList(), names(strategy.routes("150", "50")));
+    }
+
+    @Test
+    public void test_belowFirstBoundary() {
+        DBRouterStrategyRange strategy = new DBRouterStrategyRange(config, KeyType.NUMBER, "0=db01.000,100=db01.001");
+        try {
+            strategy.route("-1");
+            Assert.fail("expect below first boundary");
+        } catch (IllegalArgumentException expected) {
+            Assert.assertTrue(expected.getMessage().contains("below the first boundary"));
+        }
+        try {
+            new DBRouterStrategyRange(config, KeyType.NUMBER, "0=db01.000,0=db01.001");
+            Assert.fail("expect duplicate boundary");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            strategy.route("abc");
+            Assert.fail("expect not a number");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void test_timeParsingAndZone() {
+        ZoneId zone = ZoneId.of("Asia/Shanghai");
+        DBRouterStrategyRange strategy = new DBRouterStrategyRange(config, KeyType.TIME,
+                "2024-01-01=db01.000,2024-04-01=db01.001,2024-07-01 12:00:00=db02.000", zone);
+        Assert.assertEquals("db01.000", strategy.route("2024-03-31 23:59:59.999").toString());
+        Assert.assertEquals("db01.000", strategy.route("2024-03-31 23:59:59.9999").toString());
+        Assert.assertEquals("db01.001", strategy.route("2024-04-01").toString());
+        Assert.assertEquals("db01.001", strategy.route("2024-07-01T11:59").toString());
+        Assert.assertEquals("db02.000", strategy.route("2024-07-01T12:00:00.000").toString());
+
+        // 毫秒时间戳按 zone 换算为本地时间后比较
+        long april = LocalDate.of(2024, 4, 1).atStartOfDay(zone).toInstant().toEpochMilli();
+        Assert.assertEquals("db01.001", strategy.route(String.valueOf(april)).toString());
+        Assert.assertEquals("db01.000", strategy.route(String.valueOf(april - 1)).toString());
+        DBRouterStrategyRange utc = new DBRouterStrategyRange(config, KeyType.TIME,
+                "2024-01-01=db01.000,2024-04-01=db01.001", ZoneId.of("UTC"));
+        Assert.assertEquals("db01.000", utc.route(String.valueOf(april)).toString());
+
+        for (String illegal : new String[]{"2024/04/01", "2024-04-01 1200", "2024-04-0x", "2024-4-1"}) {
+            try {
+                strategy.route(illegal);
+                Assert.fail("expect illegal time: " + illegal);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void test_civilDaysMatchJavaTime() {
+        // 文本时间走手写的 days_from_civil, 毫秒时间戳走 java.time 时区换算, 两者路由结果应一致,
+        // 边界覆盖 1970 年之前、闰日与夏令时切换的时区
+        ZoneId zone = ZoneId.of("America/New_York");
+        String[] bounds = {"1969-12-31", "2000-02-29", "2024-03-10 02:30:00", "2100-03-01"};
+        DBRouterStrategyRange strategy = new DBRouterStrategyRange(config, KeyType.TIME, "1900-01-01=db02.001,"
+                + bounds[0] + "=db01.000," + bounds[1] + "=db01.001," + bounds[2] + "=db02.000," + bounds[3] + "=db02.001", zone);
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+        LocalDateTime[] centers = {LocalDateTime.of(1969, 12, 31, 0, 0), LocalDateTime.of(2000, 2, 29, 0, 0),
+                LocalDateTime.of(2024, 3, 10, 3, 30), LocalDateTime.of(2100, 3, 1, 0, 0)};
+        Random random = new Random(7);
+        for (LocalDateTime center : centers) {
+            for (int i = 0; i < 2000; i++) {
+                LocalDateTime time = center.plusSeconds(random.nextInt(4 * 86400) - 2 * 86400)
+                        .plusNanos(random.nextInt(1000) * 1_000_000L);
+                long millis = time.atZone(zone).toInstant().toEpochMilli();
+                if (!time.atZone(zone).toLocalDateTime().equals(time)) {
+                    // 夏令时跳过的本地时间不存在, 没有对应的时间戳
+                    continue;
+                }
+                Assert.assertEquals(time.toString(), strategy.route(String.valueOf(millis)), strategy.route(time.format(formatter)));
+            }
+        }
+    }
+
+    @Test
+    public void test_broadcastPruned() {
+        DBRouterStrategyRange strategy = new DBRouterStrategyRange(config, KeyType.NUMBER,
+                "0=db01.000,100=db01.001,200=db02.000,300=db02.001");
+        AspectJProxyFactory factory = new AspectJProxyFactory(new LedgerService());
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new DBRouterJoinPoint(config, strategy, null));
+        LedgerService service = factory.getProxy();
+
+        Assert.assertEquals(Arrays.asList("db01.001", "db02.000"), service.query(new Window(150L, 250L)));
+        Assert.assertEquals(Collections.singletonList("db02.001"), service.query(new Window(350L, 999L)));
+        // 区间不完整时在全部分表上执行
+        Assert.assertEquals(4, service.query(new Window(150L, null)).size());
+        Assert.assertNull(RouteContext.current().getRoute());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_rangeRequiresRangeStrategy() {
+        DBRouterStrategyRange strategy = new DBRouterStrategyRange(config, KeyType.NUMBER, "0=db01.000");
+        AspectJProxyFactory factory = new AspectJProxyFactory(new LedgerService());
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new DBRouterJoinPoint(config, strategy, null));
+        LedgerService service = factory.getProxy();
+        service.missingTo(new Window(1L, 2L));
+    }
+
+    public static class Window {
+
+        private final Long from;
+
+        private final Long to;
+
+        public Window(Long from, Long to) {
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    public static class LedgerService {
+
+        @DBRouter(broadcast = true, rangeFrom = "from", rangeTo = "to")
+        public List<String> query(Window window) {
+            return Collections.singletonList(RouteContext.current().getRoute().toString());
+        }
+
+        @DBRouter(broadcast = true, rangeFrom = "from")
+        public List<String> missingTo(Window window) {
+            return Collections.emptyList();
+        }
+    }
+
+    private static List<String> names(List<ShardRoute> routes) {
+        List<String> names = new ArrayList<>();
+        for (ShardRoute route : routes) {
+            names.add(route.toString());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,270 @@
+import cn.wzz.middleware.db.router.DBRouterConfig;
+import cn.wzz.middleware.db.router.annotation.DBRouter;
+import cn.wzz.middleware.db.router.annotation.ReadOnly;
+import cn.wzz.middleware.db.router.aop.DBRouterJoinPoint;
+import cn.wzz.middleware.db.router.aop.ReadOnlyJoinPoint;
+import cn.wzz.middleware.db.router.context.RouteContext;
+import cn.wzz.middleware.db.router.dynamic.CustomConnection;
+import cn.wzz.middleware.db.router.dynamic.DynamicDataSource;
+import cn.wzz.middleware.db.router.dynamic.ReadWriteSplittingPlugin;
+import cn.wzz.middleware.db.router.dynamic.RouterTransactionManager;
+import cn.wzz.middleware.db.router.replica.Replica;
+import cn.wzz.middleware.db.router.replica.ReplicaSet;
+import cn.wzz.middleware.db.router.strategy.impl.DBRouterStrategyHash;
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.session.Configuration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ReadWriteSplittingTest {
+
+    @After
+    public void tearDown() {
+        RouteContext.current().setRead(false);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void test_pluginMarksReadOutsideSynchronization() throws Throwable {
+        ReadWriteSplittingPlugin plugin = new ReadWriteSplittingPlugin();
+        Assert.assertEquals(true, plugin.intercept(probe(SqlCommandType.SELECT)));
+        Assert.assertFalse(RouteContext.current().isRead());
+        Assert.assertEquals(false, plugin.intercept(probe(SqlCommandType.UPDATE)));
+
+        // PROPAGATION_SUPPORTS 等只开启事务同步、没有实际事务的范围, 连接会被绑定复用, 读请求也留在主库
+        TransactionSynchronizationManager.initSynchronization();
+        Assert.assertFalse(TransactionSynchronizationManager.isActualTransactionActive());
+        Assert.assertEquals(false, plugin.intercept(probe(SqlCommandType.SELECT)));
+    }
+
+    @Test
+    public void test_replicaChosenByLoadAndPenalized() throws SQLException {
+        Replica r1 = new Replica("db01.r1", dataSource("r1"));
+        Replica r2 = new Replica("db01.r2", dataSource("r2"));
+        ReplicaSet replicaSet = new ReplicaSet("db01", Arrays.asList(r1, r2));
+
+        // 两个从库时 P2C 总是比较两者, 借出连接多的从库代价更高, 下一次选择另一个
+        CustomConnection c1 = replicaSet.getConnection("db01");
+        CustomConnection c2 = replicaSet.getConnection("db01");
+        Assert.assertNotEquals(c1.getCatalog(), c2.getCatalog());
+        Assert.assertEquals(1, r1.getInflight());
+        Assert.assertEquals(1, r2.getInflight());
+        c1.close();
+        c2.close();
+        Assert.assertEquals(0, r1.getInflight() + r2.getInflight());
+        Assert.assertTrue(r1.getEwmaNanos() > 0 && r2.getEwmaNanos() > 0);
+
+        // 获取连接失败的从库被隔离, 隔离期内只选择另一个
+        Replica broken = new Replica("db01.r3", failingDataSource());
+        ReplicaSet withBroken = new ReplicaSet("db01", Arrays.asList(r1, broken));
+        int failures = 0;
+        for (int i = 0; i < 20; i++) {
+            CustomConnection conn = withBroken.getConnection("db01");
+            if (conn == null) {
+                failures++;
+            } else {
+                Assert.assertEquals("r1", conn.getCatalog());
+                conn.close();
+            }
+        }
+        Assert.assertTrue(failures <= 1);
+    }
+
+    @Test
+    public void test_readFallsBackToPrimary() throws SQLException {
+        DynamicDataSource dynamicDataSource = new DynamicDataSource();
+        ReflectionTestUtils.setField(dynamicDataSource, "defaultDataSource", "db01");
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put("db01", dataSource("primary"));
+        dynamicDataSource.setTargetDataSources(targets);
+        Map<Object, ReplicaSet> replicaSets = new HashMap<>();
+        replicaSets.put("db01", new ReplicaSet("db01", Collections.singletonList(new Replica("db01.r1", failingDataSource()))));
+        dynamicDataSource.setReplicaSets(replicaSets);
+        dynamicDataSource.afterPropertiesSet();
+
+        RouteContext.current().setRead(true);
+        try (Connection conn = dynamicDataSource.getConnection()) {
+            Assert.assertEquals("primary", conn.getCatalog());
+        }
+    }
+
+    @Test
+    public void test_readOnlyAspect() {
+        AspectJProxyFactory factory = new AspectJProxyFactory(new ReportService());
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new ReadOnlyJoinPoint());
+        ReportService service = factory.getProxy();
+
+        Assert.assertTrue(service.readOnly());
+        Assert.assertFalse(RouteContext.current().isRead());
+        Assert.assertFalse(service.readWrite());
+
+        // 嵌套调用结束后恢复外层的标记
+        RouteContext.current().setRead(true);
+        Assert.assertTrue(service.readOnly());
+        Assert.assertTrue(RouteContext.current().isRead());
+    }
+
+    @Test
+    public void test_parallelBroadcastKeepsReadFlag() {
+        DBRouterConfig config = new DBRouterConfig(2, 2);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            AspectJProxyFactory factory = new AspectJProxyFactory(new ReportService());
+            factory.setProxyTargetClass(true);
+            factory.addAspect(new DBRouterJoinPoint(config, new DBRouterStrategyHash(config), null, executor));
+            ReportService service = factory.getProxy();
+
+            // 工作线程上与串行执行时一样带有读标记, 执行完后工作线程与调用线程的标记都被恢复
+            Assert.assertEquals(Arrays.asList(false, false, false, false), service.broadcastReads());
+            RouteContext.current().setRead(true);
+            Assert.assertEquals(Arrays.asList(true, true, true, true), service.broadcastReads());
+            Assert.assertTrue(RouteContext.current().isRead());
+            Assert.assertNull(RouteContext.current().getRoute());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test_transactionInsideReadOnlyUsesPrimary() throws SQLException {
+        DynamicDataSource dynamicDataSource = new DynamicDataSource();
+        ReflectionTestUtils.setField(dynamicDataSource, "defaultDataSource", "db01");
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put("db01", dataSource("primary"));
+        dynamicDataSource.setTargetDataSources(targets);
+        Map<Object, ReplicaSet> replicaSets = new HashMap<>();
+        replicaSets.put("db01", new ReplicaSet("db01", Collections.singletonList(new Replica("db01.r1", dataSource("r1")))));
+        dynamicDataSource.setReplicaSets(replicaSets);
+        dynamicDataSource.afterPropertiesSet();
+
+        ProxyFactory txFactory = new ProxyFactory(new OrderWriter(dynamicDataSource));
+        txFactory.setProxyTargetClass(true);
+        txFactory.addAdvice(new TransactionInterceptor(new RouterTransactionManager(dynamicDataSource),
+                new AnnotationTransactionAttributeSource()));
+        AspectJProxyFactory readOnlyFactory = new AspectJProxyFactory(new ReportFacade(dynamicDataSource, (OrderWriter) txFactory.getProxy()));
+        readOnlyFactory.setProxyTargetClass(true);
+        readOnlyFactory.addAspect(new ReadOnlyJoinPoint());
+        ReportFacade facade = readOnlyFactory.getProxy();
+
+        // @ReadOnly 中的普通读请求使用从库, 内层 @Transactional 的事务连接与写入都在主库
+        Assert.assertEquals(Arrays.asList("r1", "primary", "primary"), facade.readThenWrite());
+        Assert.assertFalse(RouteContext.current().isRead());
+    }
+
+    public static class ReportFacade {
+
+        private final DataSource dataSource;
+
+        private final OrderWriter writer;
+
+        public ReportFacade(DataSource dataSource, OrderWriter writer) {
+            this.dataSource = dataSource;
+            this.writer = writer;
+        }
+
+        @ReadOnly
+        public List<String> readThenWrite() throws SQLException {
+            List<String> catalogs = new ArrayList<>();
+            try (Connection conn = dataSource.getConnection()) {
+                catalogs.add(conn.getCatalog());
+            }
+            catalogs.addAll(writer.write());
+            return catalogs;
+        }
+    }
+
+    public static class OrderWriter {
+
+        private final DataSource dataSource;
+
+        public OrderWriter(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        // 依次返回事务绑定的连接与事务中直接获取的连接所属的数据源
+        @Transactional
+        public List<String> write() throws SQLException {
+            List<String> catalogs = new ArrayList<>();
+            catalogs.add(DataSourceUtils.getConnection(dataSource).getCatalog());
+            try (Connection conn = dataSource.getConnection()) {
+                catalogs.add(conn.getCatalog());
+            }
+            return catalogs;
+        }
+    }
+
+    public static class ReportService {
+
+        @ReadOnly
+        public boolean readOnly() {
+            return RouteContext.current().isRead();
+        }
+
+        public boolean readWrite() {
+            return RouteContext.current().isRead();
+        }
+
+        @DBRouter(broadcast = true)
+        public List<Boolean> broadcastReads() {
+            return Collections.singletonList(RouteContext.current().isRead());
+        }
+    }
+
+    public static class Probe {
+        public Object query(MappedStatement ms) {
+            return RouteContext.current().isRead();
+        }
+    }
+
+    private static Invocation probe(SqlCommandType type) throws NoSuchMethodException {
+        Configuration configuration = new Configuration();
+        MappedStatement ms = new MappedStatement.Builder(configuration, "probe." + type,
+                new StaticSqlSource(configuration, "select 1"), type).build();
+        return new Invocation(new Probe(), Probe.class.getMethod("query", MappedStatement.class), new Object[]{ms});
+    }
+
+    // 用 catalog 区分连接来自哪个数据源
+    private static DataSource dataSource(String name) throws SQLException {
+        DataSource dataSource = Mockito.mock(DataSource.class);
+        Mockito.when(dataSource.getConnection()).thenAnswer(invocation -> {
+            Connection conn = Mockito.mock(Connection.class);
+            Mockito.when(conn.getCatalog()).thenReturn(name);
+            return conn;
+        });
+        return dataSource;
+    }
+
+    private static DataSource failingDataSource() throws SQLException {
+        DataSource dataSource = Mockito.mock(DataSource.class);
+        Mockito.when(dataSource.getConnection()).thenThrow(new SQLException("replica down"));
+        return dataSource;
+    }
+}
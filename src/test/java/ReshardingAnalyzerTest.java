@@ -0,0 +1,122 @@
+import cn.wzz.middleware.db.router.DBRouterConfig;
+import cn.wzz.middleware.db.router.strategy.IDBRouterStrategy;
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+import cn.wzz.middleware.db.router.strategy.impl.DBRouterStrategyConsistentHash;
+import cn.wzz.middleware.db.router.strategy.impl.DBRouterStrategyHash;
+import cn.wzz.middleware.db.router.tool.ReshardingAnalyzer;
+import cn.wzz.middleware.db.router.tool.ReshardingAnalyzer.MovedRange;
+import cn.wzz.middleware.db.router.tool.ReshardingAnalyzer.Report;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ReshardingAnalyzerTest {
+
+    private static final List<String> CORPUS = new ArrayList<>();
+
+    static {
+        for (int i = 0; i < 100000; i++) {
+            CORPUS.add("user-" + i);
+        }
+    }
+
+    @Test
+    public void test_addDbMovesOnlyToNewDb() {
+        IDBRouterStrategy before = consistentHash(2, 4);
+        IDBRouterStrategy after = consistentHash(3, 4);
+        Report report = new ReshardingAnalyzer(before, after).analyze(CORPUS);
+        Assert.assertEquals(CORPUS.size(), report.getTotal());
+        // 理论迁移比例 (3 - 2) / 3
+        Assert.assertTrue(report.toString(), report.getMovedRatio() > 0.31 && report.getMovedRatio() < 0.36);
+
+        for (String key : CORPUS) {
+            ShardRoute from = before.route(key);
+            ShardRoute to = after.route(key);
+            if (!from.equals(to)) {
+                // 只迁移到新增的数据源, 且表下标不变
+                Assert.assertEquals(3, to.getDbIdx());
+                Assert.assertEquals(from.getTbIdx(), to.getTbIdx());
+            }
+        }
+        for (String movement : report.getMovements().keySet()) {
+            Assert.assertTrue(movement, movement.endsWith(" -> db03." + movement.substring(5, 8)));
+        }
+    }
+
+    @Test
+    public void test_addTableMovesWithinDb() {
+        IDBRouterStrategy before = consistentHash(2, 4);
+        IDBRouterStrategy after = consistentHash(2, 6);
+        Report report = new ReshardingAnalyzer(before, after).analyze(CORPUS);
+        Assert.assertTrue(report.toString(), report.getMovedRatio() > 0.31 && report.getMovedRatio() < 0.36);
+        for (String key : CORPUS) {
+            ShardRoute from = before.route(key);
+            ShardRoute to = after.route(key);
+            if (!from.equals(to)) {
+                Assert.assertEquals(from.getDbIdx(), to.getDbIdx());
+                Assert.assertTrue(to.getTbIdx() >= 4);
+            }
+        }
+    }
+
+    @Test
+    public void test_distributionAndModuloComparison() {
+        IDBRouterStrategy strategy = consistentHash(3, 4);
+        Map<ShardRoute, Integer> counts = new HashMap<>();
+        for (String key : CORPUS) {
+            counts.merge(strategy.route(key), 1, Integer::sum);
+        }
+        Assert.assertEquals(12, counts.size());
+        double expected = CORPUS.size() / 12.0;
+        for (int count : counts.values()) {
+            Assert.assertTrue(String.valueOf(count), Math.abs(count - expected) < expected * 0.1);
+        }
+
+        // 取模路由扩容时大部分数据都要迁移
+        Report modulo = new ReshardingAnalyzer(new DBRouterStrategyHash(new DBRouterConfig(2, 4)),
+                new DBRouterStrategyHash(new DBRouterConfig(3, 4))).analyze(CORPUS);
+        Assert.assertTrue(modulo.toString(), modulo.getMovedRatio() > 0.6);
+    }
+
+    @Test
+    public void test_movedRangesCoverMovedKeys() {
+        IDBRouterStrategy before = consistentHash(2, 4);
+        IDBRouterStrategy after = consistentHash(3, 4);
+        List<MovedRange> ranges = new ArrayList<>();
+        Report report = new ReshardingAnalyzer(before, after).movedRanges(0, 9999, ranges::add);
+        Assert.assertEquals(10000, report.getTotal());
+
+        long moved = 0;
+        long lastEnd = -1;
+        for (MovedRange range : ranges) {
+            Assert.assertTrue(range.getStartKey() > lastEnd && range.getEndKey() >= range.getStartKey());
+            for (long key = range.getStartKey(); key <= range.getEndKey(); key++) {
+                Assert.assertEquals(range.getFrom(), before.route(String.valueOf(key)));
+                Assert.assertEquals(range.getTo(), after.route(String.valueOf(key)));
+            }
+            moved += range.getEndKey() - range.getStartKey() + 1;
+            lastEnd = range.getEndKey();
+        }
+        Assert.assertEquals(report.getMoved(), moved);
+    }
+
+    @Test
+    public void test_jumpConsistentHash() {
+        for (long key = -1000; key < 1000; key++) {
+            Assert.assertEquals(0, DBRouterStrategyConsistentHash.jumpConsistentHash(key, 1));
+            int bucket = DBRouterStrategyConsistentHash.jumpConsistentHash(key, 10);
+            Assert.assertTrue(bucket >= 0 && bucket < 10);
+            // 桶数增加时要么不变, 要么移动到新增的桶
+            int grown = DBRouterStrategyConsistentHash.jumpConsistentHash(key, 11);
+            Assert.assertTrue(grown == bucket || grown == 10);
+        }
+    }
+
+    private static IDBRouterStrategy consistentHash(int dbCount, int tbCount) {
+        return new DBRouterStrategyConsistentHash(new DBRouterConfig(dbCount, tbCount));
+    }
+}
@@ -0,0 +1,51 @@
+import cn.wzz.middleware.db.router.context.RouteContext;
+import cn.wzz.middleware.db.router.context.RouteContextExecutors;
+import cn.wzz.middleware.db.router.context.RouteSnapshot;
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+import cn.wzz.middleware.db.router.strategy.ShardRouteTable;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class RouteContextExecutorsTest {
+
+    private final ShardRouteTable table = new ShardRouteTable(2, 4);
+
+    @After
+    public void tearDown() {
+        RouteContext.current().setRoute(null);
+        RouteContext.current().setRead(false);
+    }
+
+    @Test
+    public void test_propagateRoute() throws Exception {
+        ExecutorService executor = RouteContextExecutors.wrap(Executors.newSingleThreadExecutor());
+        try {
+            ShardRoute route = table.get(2, 3);
+            RouteContext.current().setRoute(route);
+            RouteContext.current().setRead(true);
+            Assert.assertSame(route, executor.submit(() -> RouteContext.current().getRoute()).get());
+            Assert.assertTrue(CompletableFuture.supplyAsync(() -> RouteContext.current().isRead(), executor).get());
+
+            // 任务结束后工作线程恢复原有的上下文
+            RouteContext.current().setRoute(null);
+            RouteContext.current().setRead(false);
+            Assert.assertNull(executor.submit(() -> RouteContext.current().getRoute()).get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void test_restoreOnCallerThread() {
+        RouteContext.current().setRoute(table.get(1, 1));
+        RouteSnapshot snapshot = RouteSnapshot.capture();
+        RouteContext.current().setRoute(table.get(2, 2));
+        snapshot.bind(() -> Assert.assertEquals(table.get(1, 1), RouteContext.current().getRoute())).run();
+        Assert.assertEquals(table.get(2, 2), RouteContext.current().getRoute());
+    }
+}
@@ -0,0 +1,203 @@
+import cn.wzz.middleware.db.router.DBRouterConfig;
+import cn.wzz.middleware.db.router.annotation.DBRouter;
+import cn.wzz.middleware.db.router.annotation.MultiDSTransaction;
+import cn.wzz.middleware.db.router.aop.DBRouterJoinPoint;
+import cn.wzz.middleware.db.router.aop.MultiDSTransactionJoinPoint;
+import cn.wzz.middleware.db.router.context.RouteContext;
+import cn.wzz.middleware.db.router.dynamic.CustomConnection;
+import cn.wzz.middleware.db.router.strategy.impl.DBRouterStrategyHash;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.sql.Connection;
+import java.util.Arrays;
+
+public class RouteContextTest {
+
+    private final DBRouterConfig config = new DBRouterConfig(2, 4);
+
+    @After
+    public void tearDown() {
+        RouteContext.current().setRead(false);
+        RouteContext.current().resetTx();
+    }
+
+    @Test
+    public void test_reusedAfterOutermostExit() {
+        OrderService service = proxy();
+        RouteContext outer = service.outer(new Order("user-1"));
+        // 嵌套调用共用同一个上下文, 最外层退出后清空状态, 实例留给下次请求复用
+        Assert.assertSame(outer, RouteContext.current());
+        Assert.assertNull(RouteContext.current().getRoute());
+
+        try {
+            service.fail(new Order("user-1"));
+            Assert.fail("expect exception");
+        } catch (IllegalStateException expected) {
+        }
+        Assert.assertSame(outer, RouteContext.current());
+        Assert.assertNull(RouteContext.current().getRoute());
+
+        try {
+            service.inner(new Order(null));
+            Assert.fail("expect missing router key");
+        } catch (RuntimeException expected) {
+        }
+        Assert.assertSame(outer, RouteContext.current());
+    }
+
+    @Test
+    public void test_clearedOnOutermostExit() {
+        // 作用域内残留的路由、读标记与事务状态在最外层退出时清空
+        RouteContext ctx = RouteContext.current();
+        ctx.enterScope();
+        ctx.enterScope();
+        ctx.setRoute(new DBRouterStrategyHash(config).route("user-1"));
+        ctx.setRead(true);
+        ctx.openTx();
+        ctx.setXaGtrid("node.1.1");
+        ctx.addTxConnection("db01", new CustomConnection(Mockito.mock(Connection.class), "db01"));
+        ctx.exitScope();
+        Assert.assertNotNull(ctx.getRoute());
+        Assert.assertTrue(ctx.isTxOpen());
+
+        ctx.exitScope();
+        Assert.assertSame(ctx, RouteContext.current());
+        Assert.assertNull(ctx.getRoute());
+        Assert.assertFalse(ctx.isRead());
+        Assert.assertFalse(ctx.isTxOpen());
+        Assert.assertNull(ctx.getXaGtrid());
+        Assert.assertEquals(0, ctx.getTxConnectionCount());
+        Assert.assertTrue(ctx.getTxConnections().isEmpty());
+    }
+
+    @Test
+    public void test_removeHook() {
+        RouteContext ctx = RouteContext.current();
+        Assert.assertSame(ctx, RouteContext.current());
+        // 只有显式调用 remove 时才丢弃线程上的实例
+        RouteContext.remove();
+        Assert.assertNotSame(ctx, RouteContext.current());
+    }
+
+    @Test
+    public void test_keptWhenStateRemains() {
+        // 作用域外设置的读标记仍然有效, 上下文不移除
+        RouteContext ctx = RouteContext.current();
+        ctx.setRead(true);
+        proxy().inner(new Order("user-1"));
+        Assert.assertSame(ctx, RouteContext.current());
+        Assert.assertTrue(RouteContext.current().isRead());
+    }
+
+    @Test
+    public void test_multiTxScope() {
+        AspectJProxyFactory factory = new AspectJProxyFactory(new OrderService());
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new MultiDSTransactionJoinPoint());
+        OrderService service = factory.getProxy();
+
+        RouteContext inTx = service.transfer(false);
+        Assert.assertSame(inTx, RouteContext.current());
+        Assert.assertFalse(RouteContext.current().isTxOpen());
+
+        try {
+            service.transfer(true);
+            Assert.fail("expect exception");
+        } catch (IllegalStateException expected) {
+        }
+        Assert.assertSame(inTx, RouteContext.current());
+        Assert.assertFalse(RouteContext.current().isTxOpen());
+    }
+
+    @Test
+    public void test_txConnectionBookkeeping() {
+        RouteContext ctx = RouteContext.current();
+        ctx.enterScope();
+        ctx.openTx();
+        Assert.assertEquals(0, ctx.getTxConnectionCount());
+        Assert.assertNull(ctx.getTxConnection("db01"));
+
+        // 第一个连接单独保存, 不写入列表与 Map
+        CustomConnection c1 = new CustomConnection(Mockito.mock(Connection.class), "db01");
+        ctx.addTxConnection("db01", c1);
+        Assert.assertEquals(1, ctx.getTxConnectionCount());
+        Assert.assertSame(c1, ctx.getFirstTxConnection());
+        Assert.assertSame(c1, ctx.getTxConnection("db01"));
+        Assert.assertNull(ctx.getTxConnection("db02"));
+
+        // 第二个连接加入时按加入顺序提交
+        CustomConnection c2 = new CustomConnection(Mockito.mock(Connection.class), "db02");
+        ctx.addTxConnection("db02", c2);
+        Assert.assertEquals(2, ctx.getTxConnectionCount());
+        Assert.assertSame(c1, ctx.getTxConnection("db01"));
+        Assert.assertSame(c2, ctx.getTxConnection("db02"));
+        Assert.assertEquals(Arrays.asList(c1, c2), ctx.getTxConnections());
+
+        ctx.resetTx();
+        Assert.assertFalse(ctx.isTxOpen());
+        Assert.assertEquals(0, ctx.getTxConnectionCount());
+        Assert.assertNull(ctx.getFirstTxConnection());
+        Assert.assertNull(ctx.getTxConnection("db02"));
+        Assert.assertTrue(ctx.getTxConnections().isEmpty());
+        Assert.assertSame(ctx, RouteContext.current());
+
+        ctx.exitScope();
+        Assert.assertSame(ctx, RouteContext.current());
+    }
+
+    private OrderService proxy() {
+        OrderService target = new OrderService();
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new DBRouterJoinPoint(config, new DBRouterStrategyHash(config), null));
+        OrderService proxy = factory.getProxy();
+        target.self = proxy;
+        return proxy;
+    }
+
+    public static class Order {
+
+        private final String userId;
+
+        public Order(String userId) {
+            this.userId = userId;
+        }
+    }
+
+    public static class OrderService {
+
+        OrderService self;
+
+        @DBRouter(key = "userId")
+        public RouteContext outer(Order order) {
+            RouteContext ctx = RouteContext.current();
+            Assert.assertNotNull(ctx.getRoute());
+            Assert.assertSame(ctx, self.inner(order));
+            Assert.assertSame(ctx, RouteContext.current());
+            return ctx;
+        }
+
+        @DBRouter(key = "userId")
+        public RouteContext inner(Order order) {
+            return RouteContext.current();
+        }
+
+        @DBRouter(key = "userId")
+        public void fail(Order order) {
+            throw new IllegalStateException("business failure");
+        }
+
+        @MultiDSTransaction
+        public RouteContext transfer(boolean fail) {
+            Assert.assertTrue(RouteContext.current().isTxOpen());
+            if (fail) {
+                throw new IllegalStateException("business failure");
+            }
+            return RouteContext.current();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+import cn.wzz.middleware.db.router.annotation.RouterKey;
+import cn.wzz.middleware.db.router.aop.RouterKeyExtractor;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+public class RouterKeyExtractorTest {
+
+    @Test
+    public void test_mapArgNotReadByKey() throws Throwable {
+        RouterKeyExtractor extractor = new RouterKeyExtractor(
+                Mapper.class.getMethod("queryByMap", Map.class, String.class), "userId");
+        Map<String, Object> params = Collections.singletonMap("userId", "from-map");
+        Assert.assertEquals("from-key", extractor.extract(new Object[]{params, "from-key"}));
+        Assert.assertNull(extractor.extract(new Object[]{params, null}));
+    }
+
+    @Test
+    public void test_fieldBeforeRouterKey() throws Throwable {
+        RouterKeyExtractor extractor = new RouterKeyExtractor(
+                Mapper.class.getMethod("update", String.class, User.class), "userId");
+        // 入参对象中的路由字段优先于 @RouterKey 入参
+        Assert.assertEquals("from-field", extractor.extract(new Object[]{"from-key", new User("from-field")}));
+        // 字段值为 null 或入参为 null 时使用 @RouterKey 入参
+        Assert.assertEquals("from-key", extractor.extract(new Object[]{"from-key", new User(null)}));
+        Assert.assertEquals("from-key", extractor.extract(new Object[]{"from-key", null}));
+        Assert.assertNull(extractor.extract(new Object[]{null, null}));
+    }
+
+    @Test
+    public void test_superclassField() throws Throwable {
+        RouterKeyExtractor extractor = new RouterKeyExtractor(
+                Mapper.class.getMethod("insert", User.class), "userId");
+        Assert.assertEquals("vip-1", extractor.extract(new Object[]{new VipUser("vip-1")}));
+        // 同一个方法的不同入参类型分别解析 getter
+        Assert.assertEquals("user-1", extractor.extract(new Object[]{new User("user-1")}));
+        Assert.assertEquals("vip-2", extractor.extract(new Object[]{new VipUser("vip-2")}));
+    }
+
+    @Test
+    public void test_routerKeyOnly() throws Throwable {
+        // 未指定路由字段时只使用 @RouterKey 入参, 多个时取第一个非 null 的值
+        RouterKeyExtractor extractor = new RouterKeyExtractor(
+                Mapper.class.getMethod("queryByKeys", String.class, String.class, String.class), "");
+        Assert.assertEquals("b", extractor.extract(new Object[]{"ignored", null, "b"}));
+        Assert.assertEquals("a", extractor.extract(new Object[]{"ignored", "a", "b"}));
+
+        // 入参类型中不存在路由字段时同样回退到 @RouterKey
+        extractor = new RouterKeyExtractor(
+                Mapper.class.getMethod("queryByKeys", String.class, String.class, String.class), "userId");
+        Assert.assertEquals("a", extractor.extract(new Object[]{"ignored", "a", null}));
+    }
+
+    public interface Mapper {
+        Object queryByMap(Map<String, Object> params, @RouterKey String userId);
+
+        Object update(@RouterKey String userId, User user);
+
+        Object insert(User user);
+
+        Object queryByKeys(String name, @RouterKey String first, @RouterKey String second);
+    }
+
+    public static class User {
+
+        private final String userId;
+
+        public User(String userId) {
+            this.userId = userId;
+        }
+    }
+
+    public static class VipUser extends User {
+
+        public VipUser(String userId) {
+            super(userId);
+        }
+    }
+}
@@ -0,0 +1,380 @@
+import cn.wzz.middleware.db.router.DBRouterConfig;
+import cn.wzz.middleware.db.router.batch.ShardBatchReport;
+import cn.wzz.middleware.db.router.batch.ShardBatchReport.ShardOutcome;
+import cn.wzz.middleware.db.router.batch.ShardBatchTemplate;
+import cn.wzz.middleware.db.router.context.RouteContext;
+import cn.wzz.middleware.db.router.dynamic.CustomConnection;
+import cn.wzz.middleware.db.router.dynamic.DynamicDataSource;
+import cn.wzz.middleware.db.router.dynamic.DynamicMybatisPlugin;
+import cn.wzz.middleware.db.router.dynamic.RouterTransactionManager;
+import cn.wzz.middleware.db.router.strategy.IDBRouterStrategy;
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+import cn.wzz.middleware.db.router.strategy.impl.DBRouterStrategyHash;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.session.TransactionIsolationLevel;
+import org.apache.ibatis.transaction.Transaction;
+import org.apache.ibatis.transaction.TransactionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransaction;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mybatis.spring.transaction.SpringManagedTransactionFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ShardBatchTemplateTest {
+
+    private final IDBRouterStrategy strategy = new DBRouterStrategyHash(new DBRouterConfig(2, 2));
+
+    private final Map<String, DataSource> shards = new HashMap<>();
+
+    // 分片 -> 每次 flush 的记录数
+    private final Map<ShardRoute, List<Integer>> flushes = new ConcurrentHashMap<>();
+
+    private DynamicDataSource dynamicDataSource;
+
+    private ExecutorService executor;
+
+    private ShardBatchTemplate template;
+
+    @Before
+    public void setUp() throws SQLException {
+        Map<Object, Object> targets = new HashMap<>();
+        for (String db : new String[]{"db01", "db02"}) {
+            JdbcDataSource ds = new JdbcDataSource();
+            ds.setURL("jdbc:h2:mem:batch_" + db + ";DB_CLOSE_DELAY=-1");
+            try (Connection conn = ds.getConnection(); Statement stmt = conn.createStatement()) {
+                for (String tb : new String[]{"000", "001"}) {
+                    stmt.execute("DROP TABLE IF EXISTS t_order_" + tb);
+                    stmt.execute("CREATE TABLE t_order_" + tb + " (id BIGINT PRIMARY KEY, name VARCHAR(32))");
+                }
+            }
+            shards.put(db, ds);
+            targets.put(db, ds);
+        }
+        dynamicDataSource = new DynamicDataSource();
+        ReflectionTestUtils.setField(dynamicDataSource, "defaultDataSource", "db01");
+        dynamicDataSource.setTargetDataSources(targets);
+        dynamicDataSource.afterPropertiesSet();
+        executor = Executors.newFixedThreadPool(2);
+        template = newTemplate(new MultiTxAwareTransactionFactory());
+    }
+
+    private ShardBatchTemplate newTemplate(TransactionFactory transactionFactory) {
+        Configuration configuration = new Configuration(new Environment("test", transactionFactory, dynamicDataSource));
+        configuration.addMapper(OrderMapper.class);
+        configuration.addInterceptor(new DynamicMybatisPlugin());
+        configuration.addInterceptor(new FlushRecorder());
+        SqlSessionFactory sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+        return new ShardBatchTemplate(sqlSessionFactory, strategy, executor, 3);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        RouteContext.current().resetTx();
+    }
+
+    @Test
+    public void test_groupAndFlushEveryBatchSize() throws SQLException {
+        ShardBatchReport report = template.execute(OrderMapper.class.getName() + ".insert", orders(40), Order::getId);
+        Assert.assertTrue(report.isSuccess());
+        Assert.assertEquals(40, report.getAffectedRows());
+        Assert.assertEquals(4, report.getOutcomes().size());
+
+        int total = 0;
+        for (ShardOutcome outcome : report.getOutcomes()) {
+            Assert.assertTrue(outcome.isCommitted());
+            Assert.assertEquals(outcome.getRows(), outcome.getFlushedRows());
+            Assert.assertEquals(outcome.getRows(), count(outcome.getRoute()));
+            // 每 batchSize 条 flush 一次, 最后一次 flush 剩余的记录
+            List<Integer> sizes = flushes.get(outcome.getRoute());
+            for (int i = 0; i < sizes.size(); i++) {
+                Assert.assertEquals(i < sizes.size() - 1 ? 3 : (outcome.getRows() - 1) % 3 + 1, (int) sizes.get(i));
+            }
+            Assert.assertEquals((outcome.getRows() + 2) / 3, sizes.size());
+            total += outcome.getRows();
+        }
+        Assert.assertEquals(40, total);
+
+        // 每条记录都写入了路由策略计算出的分片
+        for (Order order : orders(40)) {
+            ShardRoute route = strategy.route(String.valueOf(order.getId()));
+            Assert.assertEquals(1, count(route, "id = " + order.getId()));
+        }
+    }
+
+    @Test
+    public void test_failedShardRolledBack() throws SQLException {
+        assertFailedShardRolledBack(template);
+    }
+
+    @Test
+    public void test_failedShardRolledBackWithAutoCommitTransaction() throws SQLException {
+        // 事务实现不修改 autoCommit 时, 模板在连接上显式开启事务, 失败分片同样整体回滚
+        assertFailedShardRolledBack(newTemplate(new AutoCommitTransactionFactory()));
+        List<Order> more = new ArrayList<>();
+        for (int i = 101; i <= 105; i++) {
+            more.add(new Order(i, "order-" + i));
+        }
+        ShardBatchReport report = newTemplate(new AutoCommitTransactionFactory())
+                .execute(OrderMapper.class.getName() + ".insert", more, Order::getId);
+        Assert.assertTrue(report.isSuccess());
+        Assert.assertEquals(5, report.getAffectedRows());
+        try (Connection conn = dynamicDataSource.getConnection()) {
+            // 归还连接池前恢复了自动提交
+            Assert.assertTrue(conn.getAutoCommit());
+        }
+    }
+
+    private void assertFailedShardRolledBack(ShardBatchTemplate template) throws SQLException {
+        List<Order> orders = orders(20);
+        orders.add(new Order(1, "duplicate"));
+        ShardRoute failed = strategy.route("1");
+
+        ShardBatchReport report = template.execute(OrderMapper.class.getName() + ".insert", orders, Order::getId);
+        Assert.assertFalse(report.isSuccess());
+        Assert.assertEquals(1, report.getFailures().size());
+        ShardOutcome failure = report.getFailures().get(0);
+        Assert.assertEquals(failed, failure.getRoute());
+        Assert.assertNotNull(failure.getError());
+        Assert.assertFalse(failure.isCommitted());
+        // 失败分片整体回滚, 不报告已回滚的记录
+        Assert.assertEquals(0, failure.getFlushedRows());
+        Assert.assertEquals(0, failure.getAffectedRows());
+        Assert.assertEquals(0, count(failed));
+
+        for (ShardOutcome outcome : report.getOutcomes()) {
+            if (outcome.isSuccess()) {
+                Assert.assertTrue(outcome.isCommitted());
+                Assert.assertEquals(outcome.getRows(), count(outcome.getRoute()));
+            }
+        }
+        Assert.assertEquals(20 - failure.getRows() + 1, report.getAffectedRows());
+    }
+
+    @Test
+    public void test_joinedTransactionNotCommitted() throws SQLException {
+        RouteContext ctx = RouteContext.current();
+        ctx.openTx();
+        ShardBatchReport report;
+        try {
+            report = template.execute(OrderMapper.class.getName() + ".insert", orders(20), Order::getId);
+        } finally {
+            for (CustomConnection conn : ctx.getTxConnections()) {
+                conn.rollbackMultiTx();
+                conn.closeMultiTx();
+            }
+            ctx.resetTx();
+        }
+        Assert.assertTrue(report.isSuccess());
+        for (ShardOutcome outcome : report.getOutcomes()) {
+            // 加入外层事务时分片不单独提交, 外层事务回滚后数据不存在
+            Assert.assertFalse(outcome.isCommitted());
+            Assert.assertEquals(0, count(outcome.getRoute()));
+        }
+    }
+
+    @Test
+    public void test_springTransactionRejectsCrossDatabaseBatch() throws SQLException {
+        // mybatis-spring 的 session 使用 Spring 事务绑定的唯一连接(默认库 db01)
+        ShardBatchTemplate springTemplate = newTemplate(new SpringManagedTransactionFactory());
+        TransactionTemplate tx = new TransactionTemplate(new RouterTransactionManager(dynamicDataSource));
+        List<Order> db01 = new ArrayList<>();
+        List<Order> db02 = new ArrayList<>();
+        for (Order order : orders(40)) {
+            (strategy.route(String.valueOf(order.getId())).getDataSourceKey().equals("db01") ? db01 : db02).add(order);
+        }
+
+        for (List<Order> rejected : Arrays.asList(orders(40), db02)) {
+            try {
+                tx.execute(status -> springTemplate.execute(OrderMapper.class.getName() + ".insert", rejected, Order::getId));
+                Assert.fail("batch outside the bound database, expect rejected");
+            } catch (IllegalStateException expected) {
+            }
+        }
+        for (ShardRoute route : strategy.getRouteTable().all()) {
+            Assert.assertEquals(0, count(route));
+        }
+
+        // 全部落在事务绑定库的批次加入 Spring 事务, 随事务提交, 每条记录写入路由策略计算出的分表
+        ShardBatchReport report = tx.execute(status ->
+                springTemplate.execute(OrderMapper.class.getName() + ".insert", db01, Order::getId));
+        Assert.assertTrue(report.isSuccess());
+        Assert.assertEquals(db01.size(), report.getAffectedRows());
+        for (ShardOutcome outcome : report.getOutcomes()) {
+            Assert.assertFalse(outcome.isCommitted());
+        }
+        for (Order order : db01) {
+            Assert.assertEquals(1, count(strategy.route(String.valueOf(order.getId())), "id = " + order.getId()));
+        }
+        for (ShardRoute route : strategy.getRouteTable().all()) {
+            if (route.getDataSourceKey().equals("db02")) {
+                Assert.assertEquals(0, count(route));
+            }
+        }
+    }
+
+    private int count(ShardRoute route) throws SQLException {
+        return count(route, "1 = 1");
+    }
+
+    private int count(ShardRoute route, String where) throws SQLException {
+        try (Connection conn = shards.get(route.getDataSourceKey()).getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("select count(*) from t_order_" + route.getTbKey() + " where " + where)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static List<Order> orders(int n) {
+        List<Order> orders = new ArrayList<>(n);
+        for (int i = 1; i <= n; i++) {
+            orders.add(new Order(i, "order-" + i));
+        }
+        return orders;
+    }
+
+    public interface OrderMapper {
+        @Insert("insert into t_order(id, name) values (#{id}, #{name})")
+        int insert(Order order);
+    }
+
+    public static class Order {
+
+        private final long id;
+
+        private final String name;
+
+        public Order(long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    @Intercepts(@Signature(type = Executor.class, method = "flushStatements", args = {}))
+    public class FlushRecorder implements Interceptor {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object intercept(Invocation invocation) throws Throwable {
+            List<BatchResult> results = (List<BatchResult>) invocation.proceed();
+            for (BatchResult result : results) {
+                flushes.computeIfAbsent(RouteContext.current().getRoute(), k -> new ArrayList<>())
+                        .add(result.getParameterObjects().size());
+            }
+            return results;
+        }
+    }
+
+    // 与 mybatis-spring 的 SpringManagedTransaction 一致, 不修改连接的 autoCommit,
+    // 获取连接时处于自动提交状态则 commit/rollback 不生效
+    private static class AutoCommitTransactionFactory extends JdbcTransactionFactory {
+
+        @Override
+        public Transaction newTransaction(DataSource ds, TransactionIsolationLevel level, boolean autoCommit) {
+            return new AutoCommitTransaction(ds);
+        }
+    }
+
+    private static class AutoCommitTransaction implements Transaction {
+
+        private final DataSource dataSource;
+
+        private Connection connection;
+
+        private boolean autoCommit;
+
+        AutoCommitTransaction(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (connection == null) {
+                connection = dataSource.getConnection();
+                autoCommit = connection.getAutoCommit();
+            }
+            return connection;
+        }
+
+        @Override
+        public void commit() throws SQLException {
+            if (connection != null && !autoCommit) {
+                connection.commit();
+            }
+        }
+
+        @Override
+        public void rollback() throws SQLException {
+            if (connection != null && !autoCommit) {
+                connection.rollback();
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (connection != null) {
+                connection.close();
+            }
+        }
+
+        @Override
+        public Integer getTimeout() {
+            return null;
+        }
+    }
+
+    // 与 mybatis-spring 的 SpringManagedTransaction 一致, 跨连接事务中关闭 session 时不恢复 autoCommit,
+    // 避免 H2 在 setAutoCommit(true) 时提交外层事务的数据
+    private static class MultiTxAwareTransactionFactory extends JdbcTransactionFactory {
+
+        @Override
+        public Transaction newTransaction(DataSource ds, TransactionIsolationLevel level, boolean autoCommit) {
+            return new JdbcTransaction(ds, level, autoCommit) {
+                @Override
+                protected void resetAutoCommit() {
+                    if (!RouteContext.current().isTxOpen()) {
+                        super.resetAutoCommit();
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,138 @@
+import cn.wzz.middleware.db.router.bulkhead.ShardBulkhead;
+import cn.wzz.middleware.db.router.dynamic.CustomConnection;
+import cn.wzz.middleware.db.router.dynamic.DynamicDataSource;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+public class ShardBulkheadTest {
+
+    private static final long THRESHOLD = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private CustomConnection open(ShardBulkhead bulkhead) throws SQLException {
+        // mock 先于申请许可创建, 避免 mock 耗时计入连接占用时间
+        CustomConnection conn = new CustomConnection(Mockito.mock(Connection.class), bulkhead.getName());
+        bulkhead.onAcquired(conn, bulkhead.acquire());
+        return conn;
+    }
+
+    @Test
+    public void test_limit_fail_fast_and_release() throws SQLException {
+        ShardBulkhead bulkhead = new ShardBulkhead("db01", 2, 1, 10, THRESHOLD, 5, TimeUnit.SECONDS.toNanos(5));
+        CustomConnection c1 = open(bulkhead);
+        CustomConnection c2 = open(bulkhead);
+        try {
+            open(bulkhead);
+            Assert.fail("limit reached, expect fail fast");
+        } catch (SQLTransientConnectionException expected) {
+            Assert.assertEquals(1, bulkhead.getRejectedCount());
+        }
+        c1.close();
+        c1.close();
+        Assert.assertEquals(1, bulkhead.getInflight());
+        open(bulkhead).close();
+        c2.close();
+        Assert.assertEquals(0, bulkhead.getInflight());
+    }
+
+    @Test
+    public void test_aimd_limit() throws Exception {
+        long threshold = TimeUnit.MILLISECONDS.toNanos(5);
+        ShardBulkhead bulkhead = new ShardBulkhead("db01", 4, 1, 5, threshold, 5, TimeUnit.SECONDS.toNanos(5));
+        // 并发打满时快速归还, 上限加性增长
+        for (int i = 0; i < 100; i++) {
+            CustomConnection[] conns = new CustomConnection[bulkhead.getLimit()];
+            for (int j = 0; j < conns.length; j++) {
+                conns[j] = open(bulkhead);
+            }
+            for (CustomConnection conn : conns) {
+                conn.close();
+            }
+        }
+        Assert.assertEquals(5, bulkhead.getLimit());
+
+        // 慢归还, 上限乘性减小(一个 RTT 内最多一次), 不低于 minLimit
+        CustomConnection[] slow = new CustomConnection[3];
+        for (int i = 0; i < 20; i++) {
+            for (int j = 0; j < slow.length && j < bulkhead.getLimit(); j++) {
+                long acquiredAt = bulkhead.acquire();
+                slow[j] = new CustomConnection(Mockito.mock(Connection.class), "db01");
+                bulkhead.onAcquired(slow[j], acquiredAt - threshold * 2);
+            }
+            Thread.sleep(11);
+            for (int j = 0; j < slow.length; j++) {
+                if (slow[j] != null) {
+                    slow[j].close();
+                    slow[j] = null;
+                }
+            }
+        }
+        Assert.assertEquals(1, bulkhead.getLimit());
+        Assert.assertEquals(0, bulkhead.getInflight());
+    }
+
+    @Test
+    public void test_circuit_breaker() throws Exception {
+        ShardBulkhead bulkhead = new ShardBulkhead("db01", 10, 1, 10, THRESHOLD, 3, TimeUnit.MILLISECONDS.toNanos(50));
+        for (int i = 0; i < 3; i++) {
+            bulkhead.onAcquireFailed(bulkhead.acquire());
+        }
+        Assert.assertTrue(bulkhead.isOpen());
+        Assert.assertEquals(1, bulkhead.getTripCount());
+        try {
+            bulkhead.acquire();
+            Assert.fail("circuit open, expect fail fast");
+        } catch (SQLTransientConnectionException expected) {
+        }
+
+        // 到期后放行一个探测请求, 探测失败重新打开
+        Thread.sleep(60);
+        bulkhead.onAcquireFailed(bulkhead.acquire());
+        Assert.assertEquals(2, bulkhead.getTripCount());
+
+        // 探测成功关闭熔断
+        Thread.sleep(60);
+        long acquiredAt = bulkhead.acquire();
+        try {
+            bulkhead.acquire();
+            Assert.fail("half open allows a single probe");
+        } catch (SQLTransientConnectionException expected) {
+        }
+        CustomConnection conn = new CustomConnection(Mockito.mock(Connection.class), "db01");
+        bulkhead.onAcquired(conn, acquiredAt);
+        Assert.assertFalse(bulkhead.isOpen());
+        conn.close();
+        open(bulkhead).close();
+        Assert.assertEquals(0, bulkhead.getInflight());
+    }
+
+    @Test
+    public void test_credentialsPathUsesBulkhead() throws SQLException {
+        DataSource pool = Mockito.mock(DataSource.class);
+        Mockito.when(pool.getConnection("app", "secret")).thenAnswer(invocation -> Mockito.mock(Connection.class));
+        DynamicDataSource dataSource = new DynamicDataSource();
+        ReflectionTestUtils.setField(dataSource, "defaultDataSource", "db01");
+        dataSource.setTargetDataSources(Collections.singletonMap("db01", pool));
+        ShardBulkhead bulkhead = new ShardBulkhead("db01", 1, 1, 1, THRESHOLD, 5, TimeUnit.SECONDS.toNanos(5));
+        dataSource.setBulkheads(Collections.singletonMap("db01", bulkhead));
+        dataSource.afterPropertiesSet();
+
+        Connection conn = dataSource.getConnection("app", "secret");
+        Assert.assertEquals(1, bulkhead.getInflight());
+        try {
+            dataSource.getConnection("app", "secret");
+            Assert.fail("limit reached, expect fail fast");
+        } catch (SQLTransientConnectionException expected) {
+        }
+        conn.close();
+        Assert.assertEquals(0, bulkhead.getInflight());
+    }
+}
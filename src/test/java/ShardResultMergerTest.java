@@ -0,0 +1,42 @@
+import cn.wzz.middleware.db.router.annotation.BroadcastMerge;
+import cn.wzz.middleware.db.router.broadcast.ShardResultMerger;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ShardResultMergerTest {
+
+    @Test
+    public void test_orderByLimit() throws Throwable {
+        ShardResultMerger merger = new ShardResultMerger(BroadcastMerge.ORDER_BY, "id", true, 4, List.class);
+        Object merged = merger.merge(Arrays.asList(
+                Arrays.asList(row(9), row(5), row(1)),
+                Collections.emptyList(),
+                null,
+                Arrays.asList(row(8), row(7), row(2))));
+        Assert.assertEquals(Arrays.asList(row(9), row(8), row(7), row(5)), merged);
+    }
+
+    @Test
+    public void test_aggregate() throws Throwable {
+        Assert.assertEquals(6L, new ShardResultMerger(BroadcastMerge.COUNT, "", false, 0, long.class)
+                .merge(Arrays.asList(1L, 2, 3L)));
+        Assert.assertNull(new ShardResultMerger(BroadcastMerge.SUM, "", false, 0, Integer.class)
+                .merge(Arrays.asList(null, null)));
+        Assert.assertEquals(7, new ShardResultMerger(BroadcastMerge.MAX, "", false, 0, Integer.class)
+                .merge(Arrays.asList(3, null, 7, 5)));
+        Assert.assertEquals(Arrays.asList(1, 2, 3), new ShardResultMerger(BroadcastMerge.CONCAT, "", false, 0, List.class)
+                .merge(Arrays.asList(Arrays.asList(1, 2), null, Collections.singletonList(3))));
+    }
+
+    private static Map<String, Object> row(long id) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", id);
+        return row;
+    }
+}
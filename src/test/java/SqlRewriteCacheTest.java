@@ -0,0 +1,78 @@
+import cn.wzz.middleware.db.router.dynamic.SqlRewriteCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SqlRewriteCacheTest {
+
+    @Test
+    public void test_hitAndMissCounters() {
+        SqlRewriteCache cache = new SqlRewriteCache(4);
+        String sql = "select * from user where id = ?";
+        Assert.assertNull(cache.get(sql, "001"));
+        cache.put(sql, "001", "select * from user_001 where id = ?");
+        Assert.assertEquals("select * from user_001 where id = ?", cache.get(sql, "001"));
+        Assert.assertEquals("select * from user_001 where id = ?", cache.get(sql, "001"));
+
+        // 同一条 SQL 的其它分表单独计为未命中, 写入后共用同一个条目
+        Assert.assertNull(cache.get(sql, "002"));
+        cache.put(sql, "002", "select * from user_002 where id = ?");
+        Assert.assertEquals("select * from user_002 where id = ?", cache.get(sql, "002"));
+
+        Assert.assertEquals(3, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+        Assert.assertEquals(0.6, cache.getHitRate(), 1e-9);
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void test_evictNotRecentlyUsed() {
+        SqlRewriteCache cache = new SqlRewriteCache(3);
+        for (int i = 1; i <= 3; i++) {
+            cache.put("select " + i, "000", "select " + i + " /* 000 */");
+        }
+        Assert.assertNotNull(cache.get("select 1", "000"));
+
+        // 超出容量时跳过并清除 "select 1" 的访问标记, 淘汰没有被访问过的 "select 2", 刚写入的条目不会被淘汰
+        cache.put("select 4", "000", "select 4 /* 000 */");
+        Assert.assertEquals(3, cache.size());
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertNull(cache.get("select 2", "000"));
+        Assert.assertNotNull(cache.get("select 1", "000"));
+        Assert.assertNotNull(cache.get("select 3", "000"));
+        Assert.assertNotNull(cache.get("select 4", "000"));
+
+        // 已有 SQL 增加分表不会触发淘汰
+        cache.put("select 4", "001", "select 4 /* 001 */");
+        Assert.assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void test_hotEntrySurvivesOverflow() {
+        SqlRewriteCache cache = new SqlRewriteCache(8);
+        cache.put("select hot", "000", "select hot /* 000 */");
+        for (int i = 1; i < 8; i++) {
+            cache.put("select " + i, "000", "select " + i + " /* 000 */");
+        }
+        // 大量只访问一次的 SQL 持续写入, 期间一直被访问的条目始终保留
+        for (int i = 8; i < 1000; i++) {
+            Assert.assertNotNull(cache.get("select hot", "000"));
+            cache.put("select " + i, "000", "select " + i + " /* 000 */");
+        }
+        Assert.assertEquals("select hot /* 000 */", cache.get("select hot", "000"));
+        Assert.assertEquals(8, cache.size());
+        Assert.assertEquals(992, cache.getEvictionCount());
+
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+        for (int i = 0; i < 8; i++) {
+            cache.put("select " + i, "000", "select " + i + " /* 000 */");
+        }
+        Assert.assertEquals(992, cache.getEvictionCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_invalidSize() {
+        new SqlRewriteCache(0);
+    }
+}
@@ -0,0 +1,99 @@
+import cn.wzz.middleware.db.router.dynamic.SqlTableRewriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class SqlTableRewriterTest {
+
+    private final SqlTableRewriter rewriteAll = new SqlTableRewriter();
+
+    private final SqlTableRewriter rewriteUser = new SqlTableRewriter(Arrays.asList("user", "user_order"));
+
+    @Test
+    public void test_simpleStatements() {
+        Assert.assertEquals("select * from user_001 where id = ?",
+                rewriteAll.rewrite("select * from user where id = ?", "001"));
+        Assert.assertEquals("insert into `user_001` (id, name) values (?, ?)",
+                rewriteAll.rewrite("insert into `user` (id, name) values (?, ?)", "001"));
+        Assert.assertEquals("UPDATE user_001 SET name = ? WHERE id = ?",
+                rewriteAll.rewrite("UPDATE user SET name = ? WHERE id = ?", "001"));
+        Assert.assertEquals("delete from user_001 where id = ?",
+                rewriteAll.rewrite("delete from user where id = ?", "001"));
+    }
+
+    @Test
+    public void test_joinAndCommaTables() {
+        Assert.assertEquals("select u.id from user_002 u left join user_order_002 o on u.id = o.uid, dept d",
+                rewriteUser.rewrite("select u.id from user u left join user_order o on u.id = o.uid, dept d", "002"));
+        Assert.assertEquals("select * from user_002 u, user_order_002 o where u.id = o.uid",
+                rewriteUser.rewrite("select * from user u, user_order o where u.id = o.uid", "002"));
+        Assert.assertEquals("delete from user_002 using user_002 join dept d using (dept_id)",
+                rewriteUser.rewrite("delete from user using user join dept d using (dept_id)", "002"));
+    }
+
+    @Test
+    public void test_joinTargetsKeptWithoutConfiguredTables() {
+        // 未配置分表逻辑表名时只改写 FROM 直接跟随的表, JOIN、USING 与逗号之后的表保持不变
+        Assert.assertEquals("select * from user_003 u join dept d on u.dept_id = d.id",
+                rewriteAll.rewrite("select * from user u join dept d on u.dept_id = d.id", "003"));
+        Assert.assertEquals("select * from user_003 u, dept d where u.dept_id = d.id",
+                rewriteAll.rewrite("select * from user u, dept d where u.dept_id = d.id", "003"));
+        Assert.assertEquals("delete from user_003 using user join dept d using (dept_id)",
+                rewriteAll.rewrite("delete from user using user join dept d using (dept_id)", "003"));
+        Assert.assertEquals("select * from user_003 where dept_id in (select id from dept_003)",
+                rewriteAll.rewrite("select * from user where dept_id in (select id from dept)", "003"));
+    }
+
+    @Test
+    public void test_literalsAndCommentsUntouched() {
+        String sql = "select 'from user' as a /* from user */ from user -- from user\n where name = 'update user'";
+        Assert.assertEquals("select 'from user' as a /* from user */ from user_003 -- from user\n where name = 'update user'",
+                rewriteAll.rewrite(sql, "003"));
+        Assert.assertEquals("select extract(year from create_time) from user_003",
+                rewriteAll.rewrite("select extract(year from create_time) from user", "003"));
+        Assert.assertEquals("insert into user_003 (id) values (?) on duplicate key update id = values(id)",
+                rewriteAll.rewrite("insert into user (id) values (?) on duplicate key update id = values(id)", "003"));
+    }
+
+    @Test
+    public void test_onlyConfiguredTables() {
+        Assert.assertEquals("select user_001.id from user_001 join dept on user_001.dept_id = dept.id",
+                rewriteUser.rewrite("select user.id from user join dept on user.dept_id = dept.id", "001"));
+        Assert.assertEquals("select * from user_001 where id in (select uid from user_order_001 where 1 = 1)",
+                rewriteUser.rewrite("select * from user where id in (select uid from user_order where 1 = 1)", "001"));
+        String untouched = "select * from dept where id = ?";
+        Assert.assertSame(untouched, rewriteUser.rewrite(untouched, "001"));
+    }
+
+    @Test
+    public void test_qualifiersWithoutConfiguredTables() {
+        // 未配置分表逻辑表名时, 只改写与本条语句中被改写的表同名的列限定符
+        Assert.assertEquals("select t_order_004.id, d.name from t_order_004 join dept d on t_order_004.dept_id = d.id",
+                rewriteAll.rewrite("select t_order.id, d.name from t_order join dept d on t_order.dept_id = d.id", "004"));
+        Assert.assertEquals("update t_order_004 set t_order_004.status = ? where t_order_004.id = ?",
+                rewriteAll.rewrite("update t_order set t_order.status = ? where t_order.id = ?", "004"));
+        Assert.assertEquals("select * from db.t_order_004 where db.t_order_004.id = ?",
+                rewriteAll.rewrite("select * from db.t_order where db.t_order.id = ?", "004"));
+        Assert.assertEquals("select o.id, dept.name from t_order_004 o, dept where o.dept_id = dept.id",
+                rewriteAll.rewrite("select o.id, dept.name from t_order o, dept where o.dept_id = dept.id", "004"));
+    }
+
+    @Test
+    public void test_correlatedSubqueryWithoutConfiguredTables() {
+        Assert.assertEquals("select * from t_order_004 where exists(select 1 from t_item_004 where t_item_004.oid = t_order_004.id)",
+                rewriteAll.rewrite("select * from t_order where exists(select 1 from t_item where t_item.oid = t_order.id)", "004"));
+        Assert.assertEquals("select t_order_004.id, (select count(*) from t_item_004 where t_item_004.oid = t_order_004.id) from t_order_004",
+                rewriteAll.rewrite("select t_order.id, (select count(*) from t_item where t_item.oid = t_order.id) from t_order", "004"));
+    }
+
+    @Test
+    public void test_cteNamesWithoutConfiguredTables() {
+        Assert.assertEquals("with x as (select * from t_order_005 where uid = ?) select * from x where x.id > 0",
+                rewriteAll.rewrite("with x as (select * from t_order where uid = ?) select * from x where x.id > 0", "005"));
+        Assert.assertEquals("with recursive x (id) as (select id from t_order_005), y as (select * from x) select * from y",
+                rewriteAll.rewrite("with recursive x (id) as (select id from t_order), y as (select * from x) select * from y", "005"));
+        Assert.assertEquals("select * from t_order_005 where id in (with x as (select 1 as id) select id from x)",
+                rewriteAll.rewrite("select * from t_order where id in (with x as (select 1 as id) select id from x)", "005"));
+    }
+}
@@ -0,0 +1,362 @@
+import cn.wzz.middleware.db.router.context.RouteContext;
+import cn.wzz.middleware.db.router.dynamic.CustomConnection;
+import cn.wzz.middleware.db.router.tx.BranchXid;
+import cn.wzz.middleware.db.router.tx.H2XaDialect;
+import cn.wzz.middleware.db.router.tx.ShardTxOutcome;
+import cn.wzz.middleware.db.router.tx.XaDialect;
+import cn.wzz.middleware.db.router.tx.XaRecovery;
+import cn.wzz.middleware.db.router.tx.XaTxCoordinator;
+import cn.wzz.middleware.db.router.tx.XaTxLog;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class XaTransactionTest {
+
+    private File logDir;
+
+    @Before
+    public void setUp() throws Exception {
+        logDir = Files.createTempDirectory("xa-log").toFile();
+        for (String db : Arrays.asList("db01", "db02")) {
+            try (Connection conn = open(db); Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS user_order (id BIGINT PRIMARY KEY)");
+                stmt.execute("DELETE FROM user_order");
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        RouteContext.current().resetTx();
+        File[] files = logDir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        logDir.delete();
+    }
+
+    @Test
+    public void test_txLogReplay() throws Exception {
+        try (XaTxLog log = new XaTxLog(logDir, "node", 4096)) {
+            log.logCommit("node.a.1");
+            log.logCommit("node.a.2");
+            log.logDone("node.a.1");
+        }
+        try (XaTxLog log = new XaTxLog(logDir, "node", 4096)) {
+            Assert.assertFalse(log.isCommitting("node.a.1"));
+            Assert.assertTrue(log.isCommitting("node.a.2"));
+            // 写满后切换文件, 未完成的记录被复制到新文件
+            for (int i = 0; i < 1000; i++) {
+                log.logCommit("node.b." + i);
+                log.logDone("node.b." + i);
+            }
+        }
+        try (XaTxLog log = new XaTxLog(logDir, "node", 4096)) {
+            Assert.assertEquals(1, log.getCommitting().size());
+            Assert.assertTrue(log.isCommitting("node.a.2"));
+        }
+        Assert.assertEquals(1, logDir.listFiles().length);
+    }
+
+    @Test
+    public void test_txLogClosed() throws Exception {
+        XaTxLog log = new XaTxLog(logDir, "node", 4096);
+        log.logCommit("node.a.1");
+        log.close();
+        log.close();
+        // 关闭后仍在第二阶段的线程写入记录时得到明确的异常, 不访问已释放的映射
+        for (String gtrid : new String[]{"node.a.1", "node.a.2"}) {
+            try {
+                log.logDone(gtrid);
+                log.logCommit(gtrid);
+                Assert.fail("log closed, expect IllegalStateException");
+            } catch (IllegalStateException expected) {
+            }
+        }
+        try (XaTxLog reopened = new XaTxLog(logDir, "node", 4096)) {
+            Assert.assertTrue(reopened.isCommitting("node.a.1"));
+            Assert.assertFalse(reopened.isCommitting("node.a.2"));
+        }
+    }
+
+    @Test
+    public void test_committingExceedsFileSize() throws Exception {
+        char[] padding = new char[100];
+        Arrays.fill(padding, 'x');
+        String prefix = "node." + new String(padding) + ".";
+        int committed = 0;
+        try (XaTxLog log = new XaTxLog(logDir, "node", 8192)) {
+            // 未完成的 COMMIT 记录占满整个文件后, 追加明确失败, 不修改日志状态
+            try {
+                for (; committed < 100; committed++) {
+                    log.logCommit(prefix + committed);
+                }
+                Assert.fail("committing transactions exceed fileSize, expect IllegalStateException");
+            } catch (IllegalStateException expected) {
+            }
+            Assert.assertEquals(committed, log.getCommitting().size());
+            Assert.assertFalse(log.isCommitting(prefix + committed));
+
+            // 第二阶段完成、腾出空间后可以继续追加
+            for (int i = committed * 3 / 4; i < committed; i++) {
+                log.logDone(prefix + i);
+            }
+            log.logCommit("node.a.1");
+        }
+        Assert.assertEquals(1, logDir.listFiles().length);
+
+        // 以更小的文件大小重新打开时无法切换文件: 删除未完成的新文件, 旧文件保持不变
+        File[] before = logDir.listFiles();
+        try {
+            new XaTxLog(logDir, "node", 4096);
+            Assert.fail("committing transactions exceed fileSize, expect IOException");
+        } catch (IOException expected) {
+        }
+        Assert.assertArrayEquals(before, logDir.listFiles());
+        try (XaTxLog log = new XaTxLog(logDir, "node", 8192)) {
+            Assert.assertEquals(committed * 3 / 4 + 1, log.getCommitting().size());
+            Assert.assertTrue(log.isCommitting(prefix + 0));
+            Assert.assertTrue(log.isCommitting("node.a.1"));
+        }
+    }
+
+    @Test
+    public void test_unrelatedFilesIgnored() throws Exception {
+        // 与前缀相同但不是 name.<代数>.log 的文件不参与回放, 也不会被删除
+        String[] strays = {"node.log", "node..log", "node.x.log", "node.-1.log", "node.1.log.bak"};
+        for (String stray : strays) {
+            Assert.assertTrue(new File(logDir, stray).createNewFile());
+        }
+        try (XaTxLog log = new XaTxLog(logDir, "node", 4096)) {
+            log.logCommit("node.a.1");
+        }
+        try (XaTxLog log = new XaTxLog(logDir, "node", 4096)) {
+            Assert.assertTrue(log.isCommitting("node.a.1"));
+        }
+        for (String stray : strays) {
+            Assert.assertTrue(new File(logDir, stray).exists());
+        }
+        Assert.assertEquals(strays.length + 1, logDir.listFiles().length);
+    }
+
+    @Test
+    public void test_concurrentCommitAcrossRoll() throws Exception {
+        int threads = 8;
+        int pending = 10;
+        Set<String> expected = ConcurrentHashMap.newKeySet();
+        try (XaTxLog log = new XaTxLog(logDir, "node", 4096)) {
+            CountDownLatch start = new CountDownLatch(1);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    // 已完成的事务持续写满文件触发切换, 每个线程留下 pending 个未完成的提交决策
+                    for (int i = 0; i < 2000; i++) {
+                        String gtrid = "node.c." + thread + "." + i;
+                        log.logCommit(gtrid);
+                        Assert.assertTrue(log.isCommitting(gtrid));
+                        if (i % 200 == 0 && expected.size() < threads * pending) {
+                            expected.add(gtrid);
+                        } else {
+                            log.logDone(gtrid);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+            Assert.assertEquals(expected, log.getCommitting());
+        }
+        try (XaTxLog log = new XaTxLog(logDir, "node", 4096)) {
+            Assert.assertEquals(expected, log.getCommitting());
+        }
+    }
+
+    @Test
+    public void test_txLogAborted() throws Exception {
+        try (XaTxLog log = new XaTxLog(logDir, "node", 4096)) {
+            log.logCommit("node.a.1");
+            log.logAborted("node.a.1");
+            Assert.assertFalse(log.isCommitting("node.a.1"));
+        }
+        try (XaTxLog log = new XaTxLog(logDir, "node", 4096)) {
+            Assert.assertTrue(log.getCommitting().isEmpty());
+        }
+    }
+
+    @Test
+    public void test_twoPhaseCommitAndRollback() throws Exception {
+        XaDialect dialect = new H2XaDialect();
+        try (XaTxLog log = new XaTxLog(logDir, "node", 4096)) {
+            XaTxCoordinator coordinator = new XaTxCoordinator(dialect, log, "node", null, 0);
+
+            List<CustomConnection> conns = begin(coordinator, dialect, 1);
+            List<ShardTxOutcome> outcomes = coordinator.commit(conns);
+            Assert.assertEquals(ShardTxOutcome.Status.COMMITTED, outcomes.get(0).getStatus());
+            Assert.assertEquals(ShardTxOutcome.Status.COMMITTED, outcomes.get(1).getStatus());
+            Assert.assertTrue(log.getCommitting().isEmpty());
+            RouteContext.current().resetTx();
+
+            conns = begin(coordinator, dialect, 2);
+            outcomes = coordinator.rollback(conns);
+            Assert.assertEquals(ShardTxOutcome.Status.ROLLED_BACK, outcomes.get(1).getStatus());
+            RouteContext.current().resetTx();
+        }
+        Assert.assertEquals(1, count("db01"));
+        Assert.assertEquals(1, count("db02"));
+    }
+
+    @Test
+    public void test_retryUnfinishedCommit() throws Exception {
+        RecordingDialect dialect = new RecordingDialect();
+        try (XaTxLog log = new XaTxLog(logDir, "node", 4096)) {
+            XaTxCoordinator coordinator = new XaTxCoordinator(dialect, log, "node", null, 0);
+            RouteContext ctx = RouteContext.current();
+            ctx.openTx();
+            coordinator.begin(ctx);
+            String gtrid = ctx.getXaGtrid();
+            for (String db : Arrays.asList("db01", "db02")) {
+                ctx.addTxConnection(db, new CustomConnection(Mockito.mock(Connection.class), db));
+            }
+
+            // db02 第二阶段失败, 事务进入重试集合, 提交决策保留在日志中
+            dialect.failCommit = "db02";
+            List<ShardTxOutcome> outcomes = coordinator.commit(ctx.getTxConnections());
+            Assert.assertEquals(ShardTxOutcome.Status.COMMITTED, outcomes.get(0).getStatus());
+            Assert.assertTrue(outcomes.get(1).isFailed());
+            Assert.assertEquals(Collections.singleton(gtrid), coordinator.getUnfinished());
+            Assert.assertTrue(log.isCommitting(gtrid));
+
+            Map<Object, DataSource> dataSources = new HashMap<>();
+            for (String db : Arrays.asList("db01", "db02")) {
+                DataSource dataSource = Mockito.mock(DataSource.class);
+                Mockito.when(dataSource.getConnection()).thenReturn(Mockito.mock(Connection.class));
+                dataSources.put(db, dataSource);
+            }
+            dialect.prepared.add(new BranchXid(gtrid, "db02"));
+            // 进行中的其它事务, 运行期重试不能回滚
+            dialect.prepared.add(new BranchXid("node.live.1", "db01"));
+            coordinator.startRetry(new XaRecovery(dialect, log, "node"), dataSources, 0);
+
+            Assert.assertEquals(0, coordinator.retryUnfinished());
+            Assert.assertEquals(Collections.singletonList(gtrid + ".db02"), dialect.committed);
+            Assert.assertTrue(dialect.rolledBack.isEmpty());
+            Assert.assertFalse(log.isCommitting(gtrid));
+        }
+    }
+
+    private static class RecordingDialect implements XaDialect {
+
+        private String failCommit;
+
+        private final List<BranchXid> prepared = new ArrayList<>();
+
+        private final List<String> committed = new ArrayList<>();
+
+        private final List<String> rolledBack = new ArrayList<>();
+
+        @Override
+        public void start(Connection conn, BranchXid xid) {
+        }
+
+        @Override
+        public void end(Connection conn, BranchXid xid) {
+        }
+
+        @Override
+        public void prepare(Connection conn, BranchXid xid) {
+        }
+
+        @Override
+        public void commit(Connection conn, BranchXid xid) throws SQLException {
+            if (xid.getBqual().equals(failCommit)) {
+                throw new SQLException("connection lost");
+            }
+        }
+
+        @Override
+        public void commitOnePhase(Connection conn, BranchXid xid) {
+        }
+
+        @Override
+        public void rollback(Connection conn, BranchXid xid) {
+        }
+
+        @Override
+        public List<BranchXid> recover(Connection conn) {
+            return new ArrayList<>(prepared);
+        }
+
+        @Override
+        public void commitRecovered(Connection conn, BranchXid xid) {
+            prepared.remove(xid);
+            committed.add(xid.getGtrid() + "." + xid.getBqual());
+        }
+
+        @Override
+        public void rollbackRecovered(Connection conn, BranchXid xid) {
+            prepared.remove(xid);
+            rolledBack.add(xid.getGtrid() + "." + xid.getBqual());
+        }
+    }
+
+    private List<CustomConnection> begin(XaTxCoordinator coordinator, XaDialect dialect, long id) throws SQLException {
+        RouteContext ctx = RouteContext.current();
+        ctx.openTx();
+        coordinator.begin(ctx);
+        for (String db : Arrays.asList("db01", "db02")) {
+            CustomConnection conn = new CustomConnection(open(db), db);
+            dialect.start(conn, new BranchXid(ctx.getXaGtrid(), db));
+            ctx.addTxConnection(db, conn);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("INSERT INTO user_order (id) VALUES (" + id + ")");
+            }
+        }
+        return ctx.getTxConnections();
+    }
+
+    private static long count(String db) throws SQLException {
+        try (Connection conn = open(db); Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM user_order")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private static Connection open(String db) throws SQLException {
+        return DriverManager.getConnection("jdbc:h2:mem:" + db + ";DB_CLOSE_DELAY=-1", "sa", "");
+    }
+}
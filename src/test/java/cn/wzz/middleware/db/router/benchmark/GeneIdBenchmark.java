@@ -0,0 +1,46 @@
+package cn.wzz.middleware.db.router.benchmark;
+
+import cn.wzz.middleware.db.router.DBRouterConfig;
+import cn.wzz.middleware.db.router.id.GeneIdGenerator;
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+import cn.wzz.middleware.db.router.strategy.impl.DBRouterStrategyHash;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基因 ID 生成吞吐, 多线程时各线程从共享游标 CAS 预占号段
+ * 注: 持续生成的上限为每毫秒 2^sequenceBits 个(2 库 4 表、6 位机器号时为 8192 个), 超出后借用未来时间,
+ * 借用超过 1 秒才开始等待, 因此短时间测量的吞吐会高于该上限
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="GeneIdBenchmark -prof gc"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GeneIdBenchmark {
+
+    private GeneIdGenerator generator;
+
+    private ShardRoute route;
+
+    @Setup
+    public void setup() {
+        DBRouterStrategyHash strategy = new DBRouterStrategyHash(new DBRouterConfig(2, 4));
+        generator = new GeneIdGenerator(strategy, 1);
+        route = strategy.getRouteTable().get(5);
+    }
+
+    @Benchmark
+    public long nextId() {
+        return generator.nextId(route);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long nextId4Threads() {
+        return generator.nextId(route);
+    }
+}
@@ -0,0 +1,95 @@
+package cn.wzz.middleware.db.router.benchmark;
+
+import cn.wzz.middleware.db.router.DBRouterConfig;
+import cn.wzz.middleware.db.router.strategy.hash.HashFunction;
+import cn.wzz.middleware.db.router.strategy.impl.DBRouterStrategyHash;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 哈希函数吞吐量与分片分布:
+ * 1. 吞吐量由 JMH 统计
+ * 2. 每组参数结束时输出 corpus 在 shards 个分片上的分布: 卡方值(自由度 shards - 1)与最大/平均比,
+ *    分片下标由 DBRouterStrategyHash 计算, 与实际路由一致(非 2 的幂次时为乘法-移位映射)
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="HashFunctionBenchmark"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HashFunctionBenchmark {
+
+    private static final int CORPUS_SIZE = 1 << 16;
+
+    @Param({"jdk", "murmur3", "xxhash"})
+    public String hash;
+
+    // sequential: 连续数字 ID; snowflake: 雪花 ID; phone: 手机号; uuid: 随机 UUID
+    @Param({"sequential", "snowflake", "phone", "uuid"})
+    public String corpus;
+
+    // 总分表数 dbCount * tbCount, 按 2 个分库拆分; 6、24 不是 2 的幂次
+    @Param({"6", "8", "24", "32"})
+    public int shards;
+
+    private HashFunction hashFunction;
+
+    private DBRouterStrategyHash strategy;
+
+    private String[] keys;
+
+    private int next;
+
+    @Setup
+    public void setup() {
+        hashFunction = HashFunction.of(hash);
+        strategy = new DBRouterStrategyHash(new DBRouterConfig(2, shards / 2), hashFunction);
+        keys = new String[CORPUS_SIZE];
+        Random random = new Random(42);
+        long snowflake = 1690000000000L << 22;
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            switch (corpus) {
+                case "sequential":
+                    keys[i] = String.valueOf(10000000L + i);
+                    break;
+                case "snowflake":
+                    snowflake += (1L << 22) * random.nextInt(3) + 1;
+                    keys[i] = String.valueOf(snowflake);
+                    break;
+                case "phone":
+                    keys[i] = "13" + (100000000 + random.nextInt(900000000));
+                    break;
+                default:
+                    keys[i] = new UUID(random.nextLong(), random.nextLong()).toString();
+                    break;
+            }
+        }
+    }
+
+    @TearDown
+    public void report() {
+        long[] counts = new long[shards];
+        for (String key : keys) {
+            counts[strategy.route(key).getSlot()]++;
+        }
+        double mean = (double) keys.length / shards;
+        double chiSquare = 0;
+        long max = 0;
+        for (long count : counts) {
+            chiSquare += (count - mean) * (count - mean) / mean;
+            max = Math.max(max, count);
+        }
+        System.out.printf("%n[distribution] hash=%s corpus=%s shards=%d chi-square=%.1f (df=%d) max/mean=%.3f%n",
+                hash, corpus, shards, chiSquare, shards - 1, max / mean);
+    }
+
+    @Benchmark
+    public int hash() {
+        return hashFunction.hash(keys[next++ & (CORPUS_SIZE - 1)]);
+    }
+}
@@ -0,0 +1,59 @@
+package cn.wzz.middleware.db.router.benchmark;
+
+import cn.wzz.middleware.db.router.DBRouterConfig;
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+import cn.wzz.middleware.db.router.strategy.impl.DBRouterStrategyHash;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 路由下标计算: 2 的幂次分表数使用掩码, 其余分表数使用乘法-移位, 与取模实现对比
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="RangeReductionBenchmark"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RangeReductionBenchmark {
+
+    // dbCount x tbCount
+    @Param({"2x4", "4x8", "3x4", "6x5"})
+    public String layout;
+
+    private DBRouterStrategyHash strategy;
+
+    private int slotCount;
+
+    private String[] keys;
+
+    private int next;
+
+    @Setup
+    public void setup() {
+        String[] parts = layout.split("x");
+        int dbCount = Integer.parseInt(parts[0]);
+        int tbCount = Integer.parseInt(parts[1]);
+        strategy = new DBRouterStrategyHash(new DBRouterConfig(dbCount, tbCount));
+        slotCount = dbCount * tbCount;
+        keys = new String[1024];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = String.valueOf(100000000L + i * 7919L);
+            keys[i].hashCode();
+        }
+    }
+
+    @Benchmark
+    public ShardRoute strategyRoute() {
+        return strategy.route(keys[next++ & (keys.length - 1)]);
+    }
+
+    // 对照组: 取模映射
+    @Benchmark
+    public int modulo() {
+        int h = keys[next++ & (keys.length - 1)].hashCode();
+        return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % slotCount;
+    }
+}
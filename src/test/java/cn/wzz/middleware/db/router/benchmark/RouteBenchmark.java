@@ -0,0 +1,93 @@
+package cn.wzz.middleware.db.router.benchmark;
+
+import cn.wzz.middleware.db.router.DBRouterConfig;
+import cn.wzz.middleware.db.router.context.DBContextHolder;
+import cn.wzz.middleware.db.router.strategy.ShardRoute;
+import cn.wzz.middleware.db.router.strategy.impl.DBRouterStrategyDirectory;
+import cn.wzz.middleware.db.router.strategy.impl.DBRouterStrategyHash;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 路由计算开销, 配合 GC profiler 验证路由过程不分配对象(gc.alloc.rate.norm 应为 0 B/op):
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="RouteBenchmark -prof gc"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RouteBenchmark {
+
+    private DBRouterStrategyHash strategy;
+
+    // 目录中包含一半的路由键, 另一半回退到哈希
+    private DBRouterStrategyDirectory directoryStrategy;
+
+    private File directoryDir;
+
+    private String[] keys;
+
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        DBRouterConfig config = new DBRouterConfig(2, 4);
+        strategy = new DBRouterStrategyHash(config);
+        keys = new String[1024];
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = String.valueOf(100000000L + i * 7919L);
+            // 预先计算 String#hashCode, 与业务中重复使用的路由键一致
+            keys[i].hashCode();
+            if (i % 2 == 0) {
+                lines.add(keys[i] + ",db02.001");
+            }
+        }
+        directoryDir = Files.createTempDirectory("route-benchmark").toFile();
+        File csv = new File(directoryDir, "directory.csv");
+        Files.write(csv.toPath(), lines, StandardCharsets.UTF_8);
+        directoryStrategy = new DBRouterStrategyDirectory(config, strategy, csv);
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] files = directoryDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directoryDir.delete();
+    }
+
+    private String nextKey() {
+        return keys[next++ & (keys.length - 1)];
+    }
+
+    @Benchmark
+    public ShardRoute route() {
+        return strategy.route(nextKey());
+    }
+
+    @Benchmark
+    public ShardRoute directoryRoute() {
+        return directoryStrategy.route(nextKey());
+    }
+
+    @Benchmark
+    public Object routeAndPublish() {
+        strategy.dbRouter(nextKey());
+        Object dataSourceKey = DBContextHolder.getRoute().getDataSourceKey();
+        strategy.clear();
+        return dataSourceKey;
+    }
+}
@@ -0,0 +1,211 @@
+package cn.wzz.middleware.db.router.benchmark;
+
+import cn.wzz.middleware.db.router.DBRouterConfig;
+import cn.wzz.middleware.db.router.annotation.DBRouter;
+import cn.wzz.middleware.db.router.annotation.RouterStrategy;
+import cn.wzz.middleware.db.router.aop.DBRouterJoinPoint;
+import cn.wzz.middleware.db.router.context.RouteContext;
+import cn.wzz.middleware.db.router.dynamic.DynamicDataSource;
+import cn.wzz.middleware.db.router.dynamic.DynamicMybatisPlugin;
+import cn.wzz.middleware.db.router.bulkhead.ShardBulkhead;
+import cn.wzz.middleware.db.router.dynamic.PreparedStatementCache;
+import cn.wzz.middleware.db.router.strategy.ShardRouteTable;
+import cn.wzz.middleware.db.router.strategy.impl.DBRouterStrategyHash;
+import com.zaxxer.hikari.HikariDataSource;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 H2 内存库(HikariCP 连接池)的端到端开销, 2 库 4 表:
+ * 1. getConnection: DynamicDataSource 按路由结果从连接池获取并归还连接
+ * 2. routedMapperCall: @DBRouter 切面 + 路由 + SQL 改写 + 执行查询的完整调用
+ * 3. mapperCall: 不经过切面直接执行未分表的查询, 作为对照
+ * statementCacheSize > 0 时开启按物理连接的 PreparedStatement 缓存, bulkhead=true 时每个分库开启舱壁
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="RoutedMapperBenchmark -prof gc"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoutedMapperBenchmark {
+
+    private static final int DB_COUNT = 2;
+
+    private static final int TB_COUNT = 4;
+
+    @Param({"0", "64"})
+    private int statementCacheSize;
+
+    @Param({"false", "true"})
+    private boolean bulkhead;
+
+    private final List<HikariDataSource> pools = new ArrayList<>();
+
+    private DynamicDataSource dataSource;
+
+    private SqlSessionFactory sqlSessionFactory;
+
+    private UserDao userDao;
+
+    private ShardRouteTable routeTable;
+
+    @State(Scope.Thread)
+    public static class Keys {
+        private final UserOrder[] requests = new UserOrder[1024];
+
+        private int next;
+
+        @Setup
+        public void setup() {
+            for (int i = 0; i < requests.length; i++) {
+                UserOrder request = new UserOrder();
+                request.setUserId(String.valueOf(100000000L + i * 7919L));
+                requests[i] = request;
+            }
+        }
+
+        UserOrder next() {
+            return requests[next++ & (requests.length - 1)];
+        }
+    }
+
+    @Setup
+    public void setup() throws SQLException {
+        Map<Object, Object> targets = new HashMap<>();
+        Map<Object, ShardBulkhead> bulkheads = new HashMap<>();
+        for (int dbIdx = 1; dbIdx <= DB_COUNT; dbIdx++) {
+            String dsName = String.format("db%02d", dbIdx);
+            HikariDataSource pool = new HikariDataSource();
+            pool.setJdbcUrl("jdbc:h2:mem:bench_" + dsName + ";DB_CLOSE_DELAY=-1");
+            pool.setMaximumPoolSize(8);
+            pools.add(pool);
+            targets.put(dsName, pool);
+            bulkheads.put(dsName, new ShardBulkhead(dsName, 20, 1, 100, TimeUnit.SECONDS.toNanos(1), 5, TimeUnit.SECONDS.toNanos(5)));
+            try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS user_order (id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id VARCHAR(32))");
+                for (int tbIdx = 0; tbIdx <= TB_COUNT; tbIdx++) {
+                    String table = String.format("user_order_%03d", tbIdx);
+                    stmt.execute("CREATE TABLE IF NOT EXISTS " + table + " (id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id VARCHAR(32))");
+                    stmt.execute("INSERT INTO " + table + " (user_id) VALUES ('100000000')");
+                }
+            }
+        }
+
+        dataSource = new DynamicDataSource();
+        ReflectionTestUtils.setField(dataSource, "defaultDataSource", "db01");
+        dataSource.setTargetDataSources(targets);
+        if (statementCacheSize > 0) {
+            dataSource.setStatementCache(new PreparedStatementCache(statementCacheSize));
+        }
+        if (bulkhead) {
+            dataSource.setBulkheads(bulkheads);
+        }
+        dataSource.afterPropertiesSet();
+
+        Configuration configuration = new Configuration(new Environment("bench", new JdbcTransactionFactory(), dataSource));
+        configuration.addMapper(UserOrderMapper.class);
+        configuration.addInterceptor(new DynamicMybatisPlugin(1024, Collections.singletonList("user_order")));
+        sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+
+        DBRouterConfig routerConfig = new DBRouterConfig(DB_COUNT, TB_COUNT);
+        DBRouterStrategyHash strategy = new DBRouterStrategyHash(routerConfig);
+        routeTable = strategy.getRouteTable();
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(new UserDao(sqlSessionFactory));
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAspect(new DBRouterJoinPoint(routerConfig, strategy, null));
+        userDao = proxyFactory.getProxy();
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (HikariDataSource pool : pools) {
+            pool.close();
+        }
+    }
+
+    @Benchmark
+    public Object getConnection(Keys keys) throws SQLException {
+        RouteContext ctx = RouteContext.current();
+        ctx.setRoute(routeTable.get((keys.next++ & 7) % routeTable.size()));
+        try (Connection conn = dataSource.getConnection()) {
+            return conn;
+        } finally {
+            ctx.setRoute(null);
+        }
+    }
+
+    @Benchmark
+    public Object routedMapperCall(Keys keys) {
+        return userDao.queryUserOrder(keys.next());
+    }
+
+    @Benchmark
+    public Object mapperCall(Keys keys) {
+        try (SqlSession session = sqlSessionFactory.openSession(true)) {
+            return session.getMapper(UserOrderMapper.class).queryUserOrder(keys.next());
+        }
+    }
+
+    @RouterStrategy(splitTable = true)
+    public interface UserOrderMapper {
+        @Select("SELECT id, user_id AS userId FROM user_order WHERE user_id = #{userId}")
+        List<UserOrder> queryUserOrder(UserOrder request);
+    }
+
+    public static class UserDao {
+        private final SqlSessionFactory sqlSessionFactory;
+
+        public UserDao(SqlSessionFactory sqlSessionFactory) {
+            this.sqlSessionFactory = sqlSessionFactory;
+        }
+
+        @DBRouter(key = "userId")
+        public List<UserOrder> queryUserOrder(UserOrder request) {
+            try (SqlSession session = sqlSessionFactory.openSession(true)) {
+                return session.getMapper(UserOrderMapper.class).queryUserOrder(request);
+            }
+        }
+    }
+
+    public static class UserOrder {
+        private Long id;
+
+        private String userId;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public void setUserId(String userId) {
+            this.userId = userId;
+        }
+    }
+}
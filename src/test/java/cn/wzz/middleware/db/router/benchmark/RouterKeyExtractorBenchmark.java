@@ -0,0 +1,66 @@
+package cn.wzz.middleware.db.router.benchmark;
+
+import cn.wzz.middleware.db.router.annotation.RouterKey;
+import cn.wzz.middleware.db.router.aop.RouterKeyExtractor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DBRouterJoinPoint 提取路由键的开销: 读取入参对象的路由字段 / 读取 @RouterKey 标记的入参
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="RouterKeyExtractorBenchmark -prof gc"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RouterKeyExtractorBenchmark {
+
+    private RouterKeyExtractor fieldExtractor;
+
+    private RouterKeyExtractor paramExtractor;
+
+    private Object[] fieldArgs;
+
+    private Object[] paramArgs;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        fieldExtractor = new RouterKeyExtractor(Dao.class.getMethod("queryByOrder", String.class, Order.class), "userId");
+        paramExtractor = new RouterKeyExtractor(Dao.class.getMethod("queryByUserId", String.class, String.class), "");
+        Order order = new Order();
+        order.setUserId("100000001");
+        fieldArgs = new Object[]{"tag", order};
+        paramArgs = new Object[]{"tag", "100000001"};
+    }
+
+    @Benchmark
+    public Object fieldKey() throws Throwable {
+        return fieldExtractor.extract(fieldArgs);
+    }
+
+    @Benchmark
+    public Object routerKeyParam() throws Throwable {
+        return paramExtractor.extract(paramArgs);
+    }
+
+    public interface Dao {
+        Object queryByOrder(String tag, Order order);
+
+        Object queryByUserId(String tag, @RouterKey String userId);
+    }
+
+    public static class Order {
+        private String userId;
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public void setUserId(String userId) {
+            this.userId = userId;
+        }
+    }
+}
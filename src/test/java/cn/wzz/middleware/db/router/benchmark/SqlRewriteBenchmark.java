@@ -0,0 +1,82 @@
+package cn.wzz.middleware.db.router.benchmark;
+
+import cn.wzz.middleware.db.router.dynamic.SqlTableRewriter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 分表 SQL 改写: 旧版正则实现 vs SqlTableRewriter 单次扫描
+ * 运行: mvn -Pbenchmark test-compile exec:exec -Djmh.args="SqlRewriteBenchmark"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SqlRewriteBenchmark {
+
+    // 旧版 DynamicMybatisPlugin 使用的正则
+    private static final Pattern LEGACY_PATTERN =
+            Pattern.compile("(from|into|update)[\\s]{1,}`?(\\w{1,})`?", Pattern.CASE_INSENSITIVE);
+
+    @Param({"select", "insert", "update", "join"})
+    public String statement;
+
+    private String sql;
+
+    private final SqlTableRewriter rewriteAll = new SqlTableRewriter();
+
+    private final SqlTableRewriter rewriteConfigured = new SqlTableRewriter(Arrays.asList("user_order"));
+
+    @Setup
+    public void setup() {
+        switch (statement) {
+            case "select":
+                sql = "SELECT id, user_id, order_id, amount, status, create_time, update_time\n"
+                        + "        FROM user_order\n"
+                        + "        WHERE user_id = ? AND status IN (?, ?, ?)\n"
+                        + "        ORDER BY create_time DESC LIMIT ?, ?";
+                break;
+            case "insert":
+                sql = "INSERT INTO user_order (user_id, order_id, amount, status, create_time, update_time)\n"
+                        + "        VALUES (?, ?, ?, ?, now(), now())";
+                break;
+            case "update":
+                sql = "UPDATE user_order SET status = ?, update_time = now()\n"
+                        + "        WHERE user_id = ? AND order_id = ? AND status = ?";
+                break;
+            default:
+                sql = "SELECT o.order_id, o.amount, i.sku_id, i.quantity\n"
+                        + "        FROM user_order o LEFT JOIN order_item i ON o.order_id = i.order_id\n"
+                        + "        WHERE o.user_id = ? AND o.create_time > ?";
+                break;
+        }
+    }
+
+    @Benchmark
+    public void legacyRegex(Blackhole bh) {
+        Matcher matcher = LEGACY_PATTERN.matcher(sql);
+        if (matcher.find()) {
+            String tbName = matcher.group(2) + "_" + "003";
+            bh.consume(matcher.replaceAll(matcher.group(1) + " " + tbName));
+        } else {
+            bh.consume(sql);
+        }
+    }
+
+    @Benchmark
+    public String tokenizerAllTables() {
+        return rewriteAll.rewrite(sql, "003");
+    }
+
+    @Benchmark
+    public String tokenizerConfiguredTables() {
+        return rewriteConfigured.rewrite(sql, "003");
+    }
+}